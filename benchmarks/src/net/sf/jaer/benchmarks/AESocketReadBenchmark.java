@@ -0,0 +1,129 @@
+package net.sf.jaer.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.eventio.AESocket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures AESocket.readPacket decoding the TCP event stream, i.e. AEDAT-3.1
+ * polarity packets as sent by cAER, with the DataInputStream reader and with
+ * the bulk read mode. Scores are ns/event; 100 ns/event is 10 Meps.
+ * <p>
+ * The socket returns the stream from memory, endlessly repeated, in the
+ * chunks that a BufferedInputStream of the default AESocket stream buffer size
+ * asks for, so that only the reading and decoding is measured and not the
+ * network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AESocketReadBenchmark {
+
+    private static final int STREAM_EVENTS = BenchmarkData.EVENTS_PER_PACKET * BenchmarkData.NUM_PACKETS;
+
+    @Param({"false", "true"})
+    public boolean bulkReadEnabled;
+
+    private AESocket socket;
+    private boolean oldBulkReadEnabled;
+    private int surplusEvents = 0; // events read beyond STREAM_EVENTS by the last invocation
+
+    @Setup
+    public void setup() throws Exception {
+        final AEChip chip = BenchmarkData.constructChip();
+        final AEPacketRaw[] packets = BenchmarkData.syntheticPackets(chip.getSizeX(), chip.getSizeY());
+        final ByteBuffer stream = ByteBuffer.allocate(packets.length * (28 + (8 * BenchmarkData.EVENTS_PER_PACKET)));
+        for (AEPacketRaw p : packets) {
+            stream.put(BenchmarkData.jaer3PolarityBuffer(new AEPacketRaw[]{p}, chip.getSizeX()));
+        }
+        final InputStream in = new BufferedInputStream(new RepeatingInputStream(stream.array(), stream.position()),
+                AESocket.DEFAULT_BUFFERED_STREAM_SIZE_BYTES);
+        socket = new AESocket(new Socket() {
+            @Override
+            public InputStream getInputStream() {
+                return in;
+            }
+        });
+        oldBulkReadEnabled = socket.isBulkReadEnabled();
+        socket.setBulkReadEnabled(bulkReadEnabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        socket.setBulkReadEnabled(oldBulkReadEnabled); // it is a stored preference
+    }
+
+    /**
+     * Reads packets until one repetition of the stream has been read.
+     *
+     * @return the number of events read
+     * @throws IOException
+     */
+    @Benchmark
+    @OperationsPerInvocation(STREAM_EVENTS)
+    public int readPackets() throws IOException {
+        int n = surplusEvents;
+        while (n < STREAM_EVENTS) {
+            n += socket.readPacket().getNumEvents();
+        }
+        surplusEvents = n - STREAM_EVENTS;
+        return n;
+    }
+
+    /**
+     * Returns the first length bytes of data over and over.
+     */
+    private static class RepeatingInputStream extends InputStream {
+
+        private final byte[] data;
+        private final int length;
+        private int position = 0;
+
+        RepeatingInputStream(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            final int b = data[position] & 0xff;
+            position = (position + 1) % length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            final int n = Math.min(len, length - position);
+            System.arraycopy(data, position, b, off, n);
+            position = (position + n) % length;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+    }
+}
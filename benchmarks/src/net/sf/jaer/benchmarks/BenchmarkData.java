@@ -0,0 +1,248 @@
+package net.sf.jaer.benchmarks;
+
+import eu.seebetter.ini.chips.DavisChip;
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.logging.Logger;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.eventio.Jaer3BufferParser;
+
+/**
+ * Synthetic and recorded input data shared by the jAER benchmarks.
+ * <p>
+ * Synthetic data is a mixture of uniformly distributed background activity
+ * noise and events from a few blobs that move across the array, so that noise
+ * filters and trackers have something to do. The generator is seeded so that
+ * every run sees the same events.
+ * <p>
+ * Recorded data is used instead when the system property
+ * <code>jaer.benchmark.file</code> names an AEDAT recording. The chip class
+ * can be set with <code>jaer.benchmark.chip</code> and defaults to
+ * {@link #DEFAULT_CHIP_CLASS}.
+ */
+public class BenchmarkData {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.benchmarks");
+
+    /**
+     * Number of events in each packet; benchmarks divide by this with
+     * OperationsPerInvocation so that scores are in ns/event.
+     */
+    public static final int EVENTS_PER_PACKET = 10000;
+    /** Number of consecutive packets generated or read */
+    public static final int NUM_PACKETS = 16;
+    /** The chip used unless jaer.benchmark.chip is set */
+    public static final String DEFAULT_CHIP_CLASS = "eu.seebetter.ini.chips.davis.Davis346B";
+    /** Mean interval between synthetic events in us, i.e. 1 Meps */
+    public static final int MEAN_EVENT_INTERVAL_US = 1;
+    /** Fraction of synthetic events that come from the moving blobs */
+    public static final float SIGNAL_FRACTION = 0.7f;
+    /** Number of moving blobs */
+    public static final int NUM_BLOBS = 4;
+    /** Standard deviation of blob size in pixels */
+    public static final float BLOB_SIGMA_PIXELS = 4;
+    /** Blob speed in pixels per second */
+    public static final float BLOB_SPEED_PPS = 200;
+    /** Interval between IMU samples added by {@link #withImuSamples}, i.e. 1 kHz */
+    public static final int IMU_SAMPLE_INTERVAL_US = 1000;
+
+    private static final long SEED = 42;
+
+    /**
+     * Constructs the chip, in headless mode unless java.awt.headless is already
+     * set.
+     *
+     * @return the chip
+     * @throws Exception if the chip cannot be constructed
+     */
+    public static AEChip constructChip() throws Exception {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        final String className = System.getProperty("jaer.benchmark.chip", DEFAULT_CHIP_CLASS);
+        final Class chipClass = Class.forName(className);
+        final Constructor<AEChip> constructor = chipClass.getConstructor();
+        return constructor.newInstance((Object[]) null);
+    }
+
+    /**
+     * Returns the raw DAVIS AEDAT-2.0 packets to benchmark, either read from
+     * the recording named by jaer.benchmark.file or synthesized.
+     *
+     * @param chip the chip, which supplies the array size and is used to open
+     * the recording
+     * @return NUM_PACKETS packets of EVENTS_PER_PACKET events, or fewer if the
+     * recording is short
+     * @throws IOException if the recording cannot be read
+     */
+    public static AEPacketRaw[] rawPackets(AEChip chip) throws IOException {
+        final String fileName = System.getProperty("jaer.benchmark.file");
+        if (fileName != null && !fileName.isEmpty()) {
+            return recordedPackets(new File(fileName), chip);
+        }
+        return syntheticPackets(chip.getSizeX(), chip.getSizeY());
+    }
+
+    private static AEPacketRaw[] recordedPackets(File file, AEChip chip) throws IOException {
+        log.info("reading benchmark packets from " + file);
+        final AEFileInputStream fis = new AEFileInputStream(file, chip);
+        fis.setRepeat(false);
+        final int n = (int) Math.min(NUM_PACKETS, Math.max(1, fis.size() / EVENTS_PER_PACKET));
+        final AEPacketRaw[] packets = new AEPacketRaw[n];
+        for (int i = 0; i < n; i++) {
+            final AEPacketRaw read = fis.readPacketByNumber(EVENTS_PER_PACKET);
+            packets[i] = new AEPacketRaw(read.getNumEvents()); // copy because the stream reuses its packet
+            AEPacketRaw.copy(read, 0, packets[i], 0, read.getNumEvents());
+        }
+        fis.close();
+        return packets;
+    }
+
+    /**
+     * Synthesizes consecutive packets of DAVIS DVS addresses and timestamps.
+     *
+     * @param sx array width
+     * @param sy array height
+     * @return the packets
+     */
+    public static AEPacketRaw[] syntheticPackets(int sx, int sy) {
+        final Random r = new Random(SEED);
+        final float[][] blobs = new float[NUM_BLOBS][4]; // x, y, vx, vy
+        for (float[] b : blobs) {
+            b[0] = r.nextFloat() * sx;
+            b[1] = r.nextFloat() * sy;
+            final double angle = r.nextDouble() * 2 * Math.PI;
+            b[2] = (float) (BLOB_SPEED_PPS * Math.cos(angle)) * 1e-6f;
+            b[3] = (float) (BLOB_SPEED_PPS * Math.sin(angle)) * 1e-6f;
+        }
+        final AEPacketRaw[] packets = new AEPacketRaw[NUM_PACKETS];
+        int ts = 0;
+        for (int p = 0; p < NUM_PACKETS; p++) {
+            final AEPacketRaw packet = new AEPacketRaw(EVENTS_PER_PACKET);
+            final int[] addresses = packet.getAddresses(), timestamps = packet.getTimestamps();
+            for (int i = 0; i < EVENTS_PER_PACKET; i++) {
+                final int dt = (int) (-MEAN_EVENT_INTERVAL_US * Math.log(1 - r.nextDouble()));
+                ts += dt;
+                int x, y;
+                if (r.nextFloat() < SIGNAL_FRACTION) {
+                    final float[] b = blobs[r.nextInt(NUM_BLOBS)];
+                    x = (int) (b[0] + r.nextGaussian() * BLOB_SIGMA_PIXELS);
+                    y = (int) (b[1] + r.nextGaussian() * BLOB_SIGMA_PIXELS);
+                } else {
+                    x = r.nextInt(sx);
+                    y = r.nextInt(sy);
+                }
+                x = Math.max(0, Math.min(sx - 1, x));
+                y = Math.max(0, Math.min(sy - 1, y));
+                final boolean on = r.nextBoolean();
+                addresses[i] = DavisChip.ADDRESS_TYPE_DVS
+                        | (y << DavisChip.YSHIFT)
+                        | ((sx - 1 - x) << DavisChip.XSHIFT) // extractor flips x
+                        | (on ? DavisChip.POLMASK : 0);
+                timestamps[i] = ts;
+                for (float[] b : blobs) {
+                    moveBlob(b, dt, sx, sy);
+                }
+            }
+            packet.setNumEvents(EVENTS_PER_PACKET);
+            packets[p] = packet;
+        }
+        return packets;
+    }
+
+    /**
+     * Returns copies of DAVIS packets with an IMU sample inserted every
+     * intervalUs, as a DAVIS with enabled IMU sends them.
+     *
+     * @param packets the packets, e.g. from
+     * {@link #syntheticPackets(int, int)}
+     * @param intervalUs the interval between samples in us
+     * @return the packets with IMU samples
+     */
+    public static AEPacketRaw[] withImuSamples(AEPacketRaw[] packets, int intervalUs) {
+        final AEPacketRaw[] result = new AEPacketRaw[packets.length];
+        final short[] data = new short[IMUSample.SIZE_EVENTS];
+        int nextTs = Integer.MIN_VALUE;
+        for (int p = 0; p < packets.length; p++) {
+            final int n = packets[p].getNumEvents();
+            final int[] a = packets[p].getAddresses(), t = packets[p].getTimestamps();
+            if (nextTs == Integer.MIN_VALUE && n > 0) {
+                nextTs = t[0];
+            }
+            final int duration = n > 0 ? t[n - 1] - t[0] : 0;
+            final AEPacketRaw packet = new AEPacketRaw(n + (((duration / intervalUs) + 2) * IMUSample.SIZE_EVENTS));
+            packet.setNumEvents(0);
+            for (int i = 0; i < n; i++) {
+                while (t[i] >= nextTs) {
+                    data[0] = (short) nextTs; // some varying data
+                    new IMUSample(nextTs, data).writeToPacket(packet, packet.getNumEvents());
+                    nextTs += intervalUs;
+                }
+                final int k = packet.getNumEvents();
+                packet.getAddresses()[k] = a[i];
+                packet.getTimestamps()[k] = t[i];
+                packet.setNumEvents(k + 1);
+            }
+            result[p] = packet;
+        }
+        return result;
+    }
+
+    private static void moveBlob(float[] b, int dt, int sx, int sy) {
+        b[0] += b[2] * dt;
+        b[1] += b[3] * dt;
+        if (b[0] < 0 || b[0] >= sx) {
+            b[2] = -b[2];
+            b[0] = Math.max(0, Math.min(sx - 1, b[0]));
+        }
+        if (b[1] < 0 || b[1] >= sy) {
+            b[3] = -b[3];
+            b[1] = Math.max(0, Math.min(sy - 1, b[1]));
+        }
+    }
+
+    /**
+     * Encodes AEDAT-2.0 DAVIS DVS packets as one AEDAT-3.1 polarity event
+     * packet, as received from cAER over the network.
+     *
+     * @param packets the DAVIS packets, e.g. from
+     * {@link #syntheticPackets(int, int)}
+     * @param sx array width
+     * @return the buffer, positioned at 0
+     */
+    public static ByteBuffer jaer3PolarityBuffer(AEPacketRaw[] packets, int sx) {
+        int n = 0;
+        for (AEPacketRaw p : packets) {
+            n += p.getNumEvents();
+        }
+        final int headerSize = 28, eventSize = 8;
+        final ByteBuffer buf = ByteBuffer.allocate(headerSize + (n * eventSize)).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putShort((short) 1); // PolarityEvent
+        buf.putShort((short) 1); // source
+        buf.putInt(eventSize);
+        buf.putInt(4); // timestamp offset
+        buf.putInt(0); // timestamp overflow
+        buf.putInt(n); // capacity
+        buf.putInt(n); // number
+        buf.putInt(n); // valid
+        for (AEPacketRaw p : packets) {
+            final int[] a = p.getAddresses(), t = p.getTimestamps();
+            for (int i = 0; i < p.getNumEvents(); i++) {
+                final int x = sx - 1 - ((a[i] & DavisChip.XMASK) >>> DavisChip.XSHIFT);
+                final int y = (a[i] & DavisChip.YMASK) >>> DavisChip.YSHIFT;
+                final int pol = (a[i] & DavisChip.POLMASK) != 0 ? 1 : 0;
+                buf.putInt((x << Jaer3BufferParser.JAER3XSHIFT) | (y << Jaer3BufferParser.JAER3YSHIFT) | (pol << Jaer3BufferParser.JAER3POLSHIFT) | 1);
+                buf.putInt(t[i]);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+}
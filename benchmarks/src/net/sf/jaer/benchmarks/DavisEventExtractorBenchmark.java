@@ -0,0 +1,74 @@
+package net.sf.jaer.benchmarks;
+
+import eu.seebetter.ini.chips.davis.DavisBaseCamera;
+import java.util.concurrent.TimeUnit;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures extraction of DAVIS AEDAT-2.0 raw events to ApsDvsEvents with
+ * DavisBaseCamera.DavisEventExtractor.extractPacket. Scores are ns/event.
+ * <p>
+ * IMU samples are added to the packets at 1 kHz. Run with the gc profiler
+ * (the default of "ant jaer-benchmarks") to compare gc.alloc.rate.norm with
+ * and without allocation free extraction; the allocation free extractor
+ * should allocate nothing per event in steady state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DavisEventExtractorBenchmark {
+
+    private EventExtractor2D extractor;
+    private AEPacketRaw[] packets;
+    private int packetNumber = 0;
+    private AEChip chip;
+    private boolean oldAllocationFreeExtraction;
+
+    @Param({"false", "true"})
+    public boolean allocationFreeExtraction;
+
+    @Setup
+    public void setup() throws Exception {
+        chip = BenchmarkData.constructChip();
+        packets = BenchmarkData.withImuSamples(BenchmarkData.rawPackets(chip), BenchmarkData.IMU_SAMPLE_INTERVAL_US);
+        if (chip instanceof DavisBaseCamera) {
+            oldAllocationFreeExtraction = ((DavisBaseCamera) chip).isAllocationFreeExtractionEnabled();
+            ((DavisBaseCamera) chip).setAllocationFreeExtractionEnabled(allocationFreeExtraction);
+        }
+        extractor = chip.getEventExtractor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (chip instanceof DavisBaseCamera) {
+            ((DavisBaseCamera) chip).setAllocationFreeExtractionEnabled(oldAllocationFreeExtraction); // it is a stored preference
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.EVENTS_PER_PACKET)
+    public EventPacket extractPacket() {
+        final AEPacketRaw packet = packets[packetNumber];
+        packetNumber = (packetNumber + 1) % packets.length;
+        return extractor.extractPacket(packet);
+    }
+}
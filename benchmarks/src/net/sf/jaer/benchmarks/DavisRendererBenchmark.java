@@ -0,0 +1,68 @@
+package net.sf.jaer.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.graphics.AEChipRenderer;
+import net.sf.jaer.graphics.DavisRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering of extracted DAVIS packets to the pixmap with the chip's
+ * renderer, a DavisRenderer for DAVIS chips. No OpenGL drawing is done, but
+ * with dirtyRegionRendering the changed tiles are packed for upload. Scores
+ * are ns/event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DavisRendererBenchmark {
+
+    @Param({"false", "true"})
+    public boolean dirtyRegionRendering;
+
+    private AEChipRenderer renderer;
+    private EventPacket[] packets;
+    private int packetNumber = 0;
+    private boolean oldDirtyRegionRendering;
+
+    @Setup
+    public void setup() throws Exception {
+        final AEChip chip = BenchmarkData.constructChip();
+        packets = NoiseFilterBenchmark.extractAll(chip, BenchmarkData.rawPackets(chip));
+        renderer = chip.getRenderer();
+        if (renderer instanceof DavisRenderer) {
+            oldDirtyRegionRendering = ((DavisRenderer) renderer).isDirtyRegionRenderingEnabled();
+            ((DavisRenderer) renderer).setDirtyRegionRenderingEnabled(dirtyRegionRendering);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (renderer instanceof DavisRenderer) {
+            ((DavisRenderer) renderer).setDirtyRegionRenderingEnabled(oldDirtyRegionRendering); // it is a stored preference
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.EVENTS_PER_PACKET)
+    public void render() {
+        renderer.render(packets[packetNumber]);
+        packetNumber = (packetNumber + 1) % packets.length;
+    }
+}
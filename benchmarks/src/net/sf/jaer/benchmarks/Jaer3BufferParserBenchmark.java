@@ -0,0 +1,87 @@
+package net.sf.jaer.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.aemonitor.EventRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventio.Jaer3BufferParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing of an AEDAT-3.1 polarity event packet (as received from cAER
+ * over the network) with Jaer3BufferParser, and extraction of the parsed
+ * events with its Jaer3EventExtractor, the same way AEUnicastInput does it.
+ * Scores are ns/event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Jaer3BufferParserBenchmark {
+
+    private AEChip chip;
+    private ByteBuffer buffer;
+    private final AEPacketRaw raw = new AEPacketRaw(BenchmarkData.EVENTS_PER_PACKET);
+
+    @Setup
+    public void setup() throws Exception {
+        chip = BenchmarkData.constructChip();
+        final AEPacketRaw[] packets = BenchmarkData.syntheticPackets(chip.getSizeX(), chip.getSizeY());
+        buffer = BenchmarkData.jaer3PolarityBuffer(new AEPacketRaw[]{packets[0]}, chip.getSizeX());
+    }
+
+    /**
+     * Parses the buffer to raw jAER 2.0 events.
+     *
+     * @return the raw packet
+     * @throws IOException
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.EVENTS_PER_PACKET)
+    public AEPacketRaw parse() throws IOException {
+        buffer.position(0);
+        final Jaer3BufferParser parser = new Jaer3BufferParser(buffer, chip);
+        final int n = (int) parser.size();
+        raw.ensureCapacity(n);
+        final EventRaw.EventType[] etypes = raw.getEventtypes();
+        final int[] pixelData = raw.getPixelDataArray();
+        final int[] addresses = raw.getAddresses();
+        final int[] timestamps = raw.getTimestamps();
+        for (int i = 0; i < n; i++) {
+            final ByteBuffer e = parser.getJaer2EventBuf();
+            etypes[i] = EventRaw.EventType.values()[e.getInt()];
+            addresses[i] = e.getInt();
+            timestamps[i] = e.getInt();
+            pixelData[i] = e.getInt();
+        }
+        raw.setNumEvents(n);
+        return raw;
+    }
+
+    /**
+     * Parses the buffer and extracts the events.
+     *
+     * @return the extracted packet
+     * @throws IOException
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.EVENTS_PER_PACKET)
+    public EventPacket parseAndExtract() throws IOException {
+        return chip.getEventExtractor().extractPacket(parse()); // the parser installs its extractor in the chip
+    }
+}
@@ -0,0 +1,91 @@
+package net.sf.jaer.benchmarks;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventprocessing.EventFilter2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the background activity noise filters on extracted DAVIS packets.
+ * Scores are ns/event.
+ * <p>
+ * The filters mark events as filtered out in place, so each invocation works
+ * on a fresh copy of the next extracted packet, made in an invocation-level
+ * setup that is not timed. The filter is reset when the packets wrap around so
+ * that time never runs backwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoiseFilterBenchmark {
+
+    @Param({"net.sf.jaer.eventprocessing.filter.BackgroundActivityFilter",
+        "net.sf.jaer.eventprocessing.filter.SpatioTemporalCorrelationFilter"})
+    public String filterClass;
+
+    private EventFilter2D filter;
+    private EventPacket[] packets;
+    private EventPacket work;
+    private int packetNumber = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        final AEChip chip = BenchmarkData.constructChip();
+        packets = extractAll(chip, BenchmarkData.rawPackets(chip));
+        work = packets[0].constructNewPacket();
+        final Constructor<? extends EventFilter2D> c = Class.forName(filterClass).asSubclass(EventFilter2D.class).getConstructor(AEChip.class);
+        filter = c.newInstance(chip);
+        filter.initFilter();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextPacket() {
+        if (packetNumber == 0) {
+            filter.resetFilter();
+        }
+        work.copyFrom(packets[packetNumber]);
+        packetNumber = (packetNumber + 1) % packets.length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.EVENTS_PER_PACKET)
+    public EventPacket filterPacket() {
+        return filter.filterPacket(work);
+    }
+
+    /**
+     * Extracts deep copies of all the raw packets, since the extractor reuses
+     * its output packet.
+     *
+     * @param chip the chip
+     * @param raw the raw packets
+     * @return the extracted packets
+     */
+    static EventPacket[] extractAll(AEChip chip, AEPacketRaw[] raw) {
+        final EventPacket[] packets = new EventPacket[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            final EventPacket extracted = chip.getEventExtractor().extractPacket(raw[i]);
+            packets[i] = extracted.constructNewPacket();
+            packets[i].copyFrom(extracted);
+        }
+        return packets;
+    }
+}
@@ -0,0 +1,86 @@
+package net.sf.jaer.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventprocessing.tracking.RectangularClusterTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures RectangularClusterTracker on extracted DAVIS packets, which with
+ * synthetic data hold a few moving blobs in background noise. Scores are
+ * ns/event.
+ * <p>
+ * The background noise seeds clusters up to maxNumClusters, so comparing the
+ * scores for increasing maxNumClusters with and without the spatial index
+ * shows how the cost of finding the cluster for an event grows with the
+ * number of clusters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RectangularClusterTrackerBenchmark {
+
+    private RectangularClusterTracker tracker;
+    private EventPacket[] packets;
+    private EventPacket work;
+    private int packetNumber = 0;
+    private int oldMaxNumClusters;
+    private boolean oldSpatialIndexEnabled;
+
+    @Param({"10", "50", "100"})
+    public int maxNumClusters;
+
+    @Param({"true", "false"})
+    public boolean spatialIndexEnabled;
+
+    @Setup
+    public void setup() throws Exception {
+        final AEChip chip = BenchmarkData.constructChip();
+        packets = NoiseFilterBenchmark.extractAll(chip, BenchmarkData.rawPackets(chip));
+        work = packets[0].constructNewPacket();
+        tracker = new RectangularClusterTracker(chip);
+        tracker.initFilter();
+        oldMaxNumClusters = tracker.getMaxNumClusters();
+        oldSpatialIndexEnabled = tracker.isSpatialIndexEnabled();
+        tracker.setMaxNumClusters(maxNumClusters);
+        tracker.setSpatialIndexEnabled(spatialIndexEnabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracker.setMaxNumClusters(oldMaxNumClusters); // they are stored preferences
+        tracker.setSpatialIndexEnabled(oldSpatialIndexEnabled);
+    }
+
+    @Setup(Level.Invocation)
+    public void nextPacket() {
+        if (packetNumber == 0) {
+            tracker.resetFilter();
+        }
+        work.copyFrom(packets[packetNumber]);
+        packetNumber = (packetNumber + 1) % packets.length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.EVENTS_PER_PACKET)
+    public EventPacket filterPacket() {
+        return tracker.filterPacket(work);
+    }
+}
@@ -32,6 +32,8 @@ import net.sf.jaer.stereopsis.MultiCameraInterface;
 import net.sf.jaer.aemonitor.AEPacketRaw;
 import net.sf.jaer.aemonitor.EventRaw;
 import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.ApsDvsEventPacket;
 import net.sf.jaer.event.OutputEventIterator;
@@ -49,11 +51,13 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Frame;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import javax.swing.Action;
 import javax.swing.KeyStroke;
 import java.awt.event.KeyEvent;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JSeparator;
@@ -107,6 +111,9 @@ abstract public class MultiDavisCameraChip extends DavisBaseCamera implements Mu
 
     private JMenu multiCameraMenu = null;
 
+    private boolean fusedExtractionEnabled = getPrefs().getBoolean("MultiDavisCameraChip.fusedExtractionEnabled", true);
+    private boolean cameraPacketsEnabled = getPrefs().getBoolean("MultiDavisCameraChip.cameraPacketsEnabled", false);
+
 //    public MulticameraDavisRenderer  MultiDavisRenderer;
 
     /** Creates a new instance of  */
@@ -151,6 +158,24 @@ abstract public class MultiDavisCameraChip extends DavisBaseCamera implements Mu
         }
         multiCameraMenu = new JMenu("MultiCameraMenu");
         multiCameraMenu.add(new JMenuItem(new SelectCamera()));
+        final JCheckBoxMenuItem fusedExtractionItem = new JCheckBoxMenuItem("Fused extraction", isFusedExtractionEnabled());
+        fusedExtractionItem.setToolTipText("Decode the raw events directly into the multi camera events instead of extracting and copying a DAVIS packet");
+        fusedExtractionItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setFusedExtractionEnabled(fusedExtractionItem.isSelected());
+            }
+        });
+        multiCameraMenu.add(fusedExtractionItem);
+        final JCheckBoxMenuItem cameraPacketsItem = new JCheckBoxMenuItem("Per camera packets", isCameraPacketsEnabled());
+        cameraPacketsItem.setToolTipText("With fused extraction, sort the events into one packet per camera and output only the packet of the selected camera");
+        cameraPacketsItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setCameraPacketsEnabled(cameraPacketsItem.isSelected());
+            }
+        });
+        multiCameraMenu.add(cameraPacketsItem);
         multiCameraMenu.add(new JSeparator());
         multiCameraMenu.add(new JMenuItem(new ApsDisplay()));
 //        multiCameraMenu.appendCopy(new JMenuItem(new createMultipleAEViewer()));
@@ -306,6 +331,74 @@ abstract public class MultiDavisCameraChip extends DavisBaseCamera implements Mu
         }
     }
 
+    /**
+     * Returns whether the extractor decodes the raw events directly into the
+     * MultiCameraApsDvsEvents of its output packet, assigning the camera of
+     * each event as it is decoded, rather than extracting an intermediate
+     * DAVIS packet and copying it.
+     *
+     * @return true if fused extraction is enabled
+     */
+    public boolean isFusedExtractionEnabled() {
+        return fusedExtractionEnabled;
+    }
+
+    /**
+     * Sets whether the extractor decodes the raw events directly into its
+     * output packet. Unless allocation free extraction is also enabled, the
+     * cameras are then assigned in a second pass over the decoded packet,
+     * which still saves the intermediate DAVIS packet and the copy.
+     *
+     * @param yes true to enable
+     * @see #isFusedExtractionEnabled()
+     */
+    public void setFusedExtractionEnabled(boolean yes) {
+        fusedExtractionEnabled = yes;
+        getPrefs().putBoolean("MultiDavisCameraChip.fusedExtractionEnabled", yes);
+    }
+
+    /**
+     * Returns whether the fused extractor sorts the events into one packet
+     * per camera (see {@link #getCameraPackets()}) instead of marking the
+     * events of the cameras not selected for display as filtered out. When a
+     * single camera is selected, the extractor then returns the packet of that
+     * camera.
+     *
+     * @return true if per camera packets are built
+     */
+    public boolean isCameraPacketsEnabled() {
+        return cameraPacketsEnabled;
+    }
+
+    /**
+     * Sets whether the fused extractor builds per camera packets.
+     *
+     * @param yes true to enable
+     * @see #isCameraPacketsEnabled()
+     */
+    public void setCameraPacketsEnabled(boolean yes) {
+        cameraPacketsEnabled = yes;
+        getPrefs().putBoolean("MultiDavisCameraChip.cameraPacketsEnabled", yes);
+    }
+
+    /**
+     * Returns the per camera packets of the last extracted packet, if
+     * {@link #isCameraPacketsEnabled()} and fused extraction are enabled.
+     * <p>
+     * The packets are views: they hold the same event objects as the full
+     * packet decoded by the extractor, are reused for the next packet, and must not
+     * be written to with an output iterator.
+     *
+     * @return the packets, indexed by camera, or null if they are not built
+     */
+    public ApsDvsEventPacket[] getCameraPackets() {
+        EventExtractor2D extractor = getEventExtractor();
+        if (!(extractor instanceof Extractor)) {
+            return null;
+        }
+        return ((Extractor) extractor).cameraPackets;
+    }
+
     /** the event extractor for the multi chip.
      * It extracts from each event the x,y,type of the event and in addition,
      * it adds getNumCellTypes to each type to signal
@@ -314,6 +407,9 @@ abstract public class MultiDavisCameraChip extends DavisBaseCamera implements Mu
     public class Extractor extends DavisBaseCamera.DavisEventExtractor {
        
         DavisEventExtractor davisEventExtractor=null;
+        private ApsDvsEventPacket[] cameraPackets = null;
+        private int numCamerasAssigned = 0; // the events of out before this index have their camera assigned
+
         public Extractor(MultiDavisCameraChip chip) {
             super(chip); // they are the same type
         }
@@ -327,7 +423,104 @@ abstract public class MultiDavisCameraChip extends DavisBaseCamera implements Mu
             if (!(getChip() instanceof MultiDavisCameraChip)) {
                 return null;
             }
-            
+            if (!isFusedExtractionEnabled()) {
+                cameraPackets = null;
+                return extractPacketAndCopy(in);
+            }
+            if (out == null) {
+                out = new ApsDvsEventPacket(MultiCameraApsDvsEvent.class);
+            }
+            if (isCameraPacketsEnabled()) {
+                prepareCameraPackets();
+            } else {
+                cameraPackets = null;
+            }
+            numCamerasAssigned = 0;
+            // the DAVIS extractor writes into the MultiCameraApsDvsEvents of out, since they are the event class of this chip;
+            // with allocation free extraction, the cameras are assigned after each run of DVS events in extractDvsRun;
+            // otherwise (the default) all of them are assigned in a second pass over out at the end
+            super.extractPacket(in);
+            if (in != null) {
+                assignCameras(numCamerasAssigned, out.getSize());
+            }
+            if (cameraPackets != null && displaycamera >= 0 && displaycamera < cameraPackets.length) {
+                cameraPackets[displaycamera].setRawPacket(in);
+                return cameraPackets[displaycamera];
+            }
+            return (ApsDvsEventPacket) out;
+        }
+
+        /**
+         * Overridden to assign the cameras of the events decoded before the
+         * run and of the run itself while they are still in the cache.
+         */
+        @Override
+        protected int extractDvsRun(final AEPacketRaw in, final int start, final int sx1) {
+            assignCameras(numCamerasAssigned, out.getSize());
+            final int end = super.extractDvsRun(in, start, sx1);
+            assignCameras(numCamerasAssigned, out.getSize());
+            return end;
+        }
+
+        /**
+         * Sets the camera of the events of out from index from to index to,
+         * and either adds them to the camera packets or marks the events of
+         * cameras not displayed as filtered out.
+         */
+        private void assignCameras(final int from, final int to) {
+            final BasicEvent[] events = out.elementData;
+            final ApsDvsEventPacket[] packets = cameraPackets;
+            for (int i = from; i < to; i++) {
+                final MultiCameraApsDvsEvent e = (MultiCameraApsDvsEvent) events[i];
+                if (e.isDVSEvent()) {
+                    e.camera = MultiCameraApsDvsEvent.getCameraFromRawAddressDVS(e.address);
+                } else if (e.isApsData() && !e.isImuSample()) {
+                    e.camera = MultiCameraApsDvsEvent.getCameraFromRawAddressAPS(e.address, NUM_CAMERAS);
+                }
+                if (NUM_CAMERAS == 0) {
+                    findMaxNumCameras(e);
+                }
+                e.NUM_CAMERAS = NUM_CAMERAS;
+                if (packets != null) {
+                    if (e.camera >= 0 && e.camera < packets.length) {
+                        addToCameraPacket(packets[e.camera], e);
+                    }
+                } else if (displaycamera < NUM_CAMERAS && e.camera != displaycamera) {
+                    e.setFilteredOut(true);
+                }
+            }
+            numCamerasAssigned = to;
+        }
+
+        private void prepareCameraPackets() {
+            if (cameraPackets == null || cameraPackets.length != NUM_CAMERAS) {
+                cameraPackets = new ApsDvsEventPacket[NUM_CAMERAS];
+                for (int c = 0; c < NUM_CAMERAS; c++) {
+                    cameraPackets[c] = new ApsDvsEventPacket(MultiCameraApsDvsEvent.class);
+                }
+            }
+            for (ApsDvsEventPacket p : cameraPackets) {
+                p.clear();
+            }
+        }
+
+        /**
+         * Appends a reference to event e to packet p, which is a view on the
+         * events of out
+         */
+        private void addToCameraPacket(final ApsDvsEventPacket p, final MultiCameraApsDvsEvent e) {
+            if (p.size >= p.elementData.length) {
+                p.allocate(Math.max(2 * p.elementData.length, out.elementData.length));
+            }
+            p.elementData[p.size++] = e;
+        }
+
+        /**
+         * The original two pass extraction: extracts a DAVIS packet with a
+         * separate extractor and copies its events to out, assigning the
+         * cameras
+         */
+        private ApsDvsEventPacket extractPacketAndCopy(AEPacketRaw in) {
             final int sx = getChipType().getSizeX()-1;
             final int sy = getChipType().getSizeY()-1;
             
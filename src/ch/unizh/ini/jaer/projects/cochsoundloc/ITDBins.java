@@ -84,6 +84,20 @@ public class ITDBins {
         //this.timestamp = timestamp;
     }
 
+    /**
+     * Decays the bins to the timestamp and adds ITDs that were already decayed
+     * to it, e.g. the partial histograms of {@link ParallelITDEngine}.
+     *
+     * @param decayedBins the weighted ITDs per bin, decayed to timestamp
+     * @param timestamp the time of decayedBins in us
+     */
+    public void addDecayedBins(float[] decayedBins, int timestamp) {
+        updateTime(0, timestamp);
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] += decayedBins[i];
+        }
+    }
+
     public float convertITD2BIN(int ITD) {
         float binIndex = ((ITD + this.maxITD) * bins.length) / (2 * this.maxITD);
         return binIndex;
@@ -16,6 +16,7 @@ import java.net.InetSocketAddress;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Observable;
 import java.util.Observer;
@@ -88,6 +89,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
     private int numOfCochleaChannels = getPrefs().getInt("ITDFilter.numOfCochleaChannels", 32);
     private boolean useCalibration = getPrefs().getBoolean("ITDFilter.useCalibration", false);
     private String calibrationFilePath = getPrefs().get("ITDFilter.calibrationFilePath", null);
+    private boolean parallelITDEnabled = getBoolean("parallelITDEnabled", false);
     /// beamforming
     private boolean beamFormingEnabled = getBoolean("beamFormingEnabled", false);
     private int beamFormingRangeUs = getInt("beamFormingRangeUs", 100);
@@ -116,8 +118,14 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
     //private LinkedList[][] lastTimestamps;
     //private ArrayList<LinkedList<Integer>> lastTimestamps0;
     //private ArrayList<LinkedList<Integer>> lastTimestamps1;
-    private int[][][][] lastTs;
-    private int[][][] lastTsCursor;
+    /**
+     * Ring buffers of the last dimLastTs spike times of each channel,
+     * threshold and ear, flattened as described in {@link ParallelITDEngine}
+     */
+    private int[] lastTs;
+    private int[] lastTsCursor;
+    private int lastTsNumThresholds = 1;
+    private final ParallelITDEngine parallelITDEngine = new ParallelITDEngine();
     //private int[][] AbsoluteLastTimestamp;
     Iterator iterator;
     private float lastWeight = 1f;
@@ -402,6 +410,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         setPropertyTooltip("normToConfThresh", "Normalize the bins before every spike to the value of the confidence Threshold");
         setPropertyTooltip("ToggleITDDisplay", "Toggles graphical display of ITD");
         setPropertyTooltip("TimeLocalExtremaDetection", "Sets the timescale in which local extrema in the ITD Confidence are detected (in us)");
+        setPropertyTooltip("parallelITDEnabled", "<html>Computes the ITDs of each packet in parallel over the cochlea channels and adds them to the bins once per packet.<br>Not used with normToConfThresh, calibration, beam forming, frequency bins or writing or sending individual ITDs.");
         addPropertyToGroup("ITDWeighting", "useLaterSpikeForWeight");
         addPropertyToGroup("ITDWeighting", "usePriorSpikeForWeight");
         addPropertyToGroup("ITDWeighting", "maxWeight");
@@ -467,139 +476,152 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
 
         OutputEventIterator outItr = out.outputIterator();
         int nleft = 0, nright = 0;
-        for (Object e : in) {
-            BinauralCochleaEvent i = (BinauralCochleaEvent) e;
-            if (i.isSpecial() || i.isFilteredOut()) {
-                continue;
-            }
-            int ganglionCellThreshold;
-            if (hasMultipleGanglionCellTypes
-                    && ((amsProcessingMethod == AMSprocessingMethod.NeuronsIndividually)
-                    || (amsProcessingMethod == AMSprocessingMethod.StoreSeparetlyCompareEvery))) {
-                CochleaAMSEvent camsevent = ((CochleaAMSEvent) i);
-                ganglionCellThreshold = camsevent.getThreshold();
-                //                if (useGanglionCellType != camsevent.getFilterType()) {
-                //                    continue;
-                //                }
-            } else {
-                ganglionCellThreshold = 0;
-            }
-            try {
-                int ear;
-                if (i.getEar() == Ear.RIGHT) {
-                    ear = 0;
+        if (parallelITDEnabled && canUseParallelITDEngine() && gatherParallelITDEvents(in)) {
+            parallelITDEngine.setWeighting(useLaterSpikeForWeight, usePriorSpikeForWeight, maxWeight, maxWeightTime, weightFrequencies ? frequencyWeights : null);
+            parallelITDEngine.process(myBins, lastTs, lastTsCursor, numOfCochleaChannels, lastTsNumThresholds, dimLastTs, in.getLastTimestamp());
+            nleft = parallelITDEngine.getNumLeft();
+            nright = parallelITDEngine.getNumRight();
+            lastWeight = parallelITDEngine.getLastWeight();
+        } else {
+            for (Object e : in) {
+                BinauralCochleaEvent i = (BinauralCochleaEvent) e;
+                if (i.isSpecial() || i.isFilteredOut()) {
+                    continue;
+                }
+                int ganglionCellThreshold;
+                if (hasMultipleGanglionCellTypes
+                        && ((amsProcessingMethod == AMSprocessingMethod.NeuronsIndividually)
+                        || (amsProcessingMethod == AMSprocessingMethod.StoreSeparetlyCompareEvery))) {
+                    CochleaAMSEvent camsevent = ((CochleaAMSEvent) i);
+                    ganglionCellThreshold = camsevent.getThreshold();
+                    //                if (useGanglionCellType != camsevent.getFilterType()) {
+                    //                    continue;
+                    //                }
                 } else {
-                    ear = 1;
+                    ganglionCellThreshold = 0;
                 }
+                try {
+                    int ear;
+                    if (i.getEar() == Ear.RIGHT) {
+                        ear = 0;
+                    } else {
+                        ear = 1;
+                    }
 
-                if (invert) {
-                    ear = (ear + 1) % 2;
-                }
+                    if (invert) {
+                        ear = (ear + 1) % 2;
+                    }
 
-                if (i.x >= numOfCochleaChannels) {
-                    log.warning("there was a BasicEvent i with i.x=" + i.x + " >= " + numOfCochleaChannels + "=numOfCochleaChannels! Therefore set numOfCochleaChannels=" + (i.x + 1));
-                    setNumOfCochleaChannels(i.x + 1);
-                } else {
-                    int cursor = lastTsCursor[i.x][ganglionCellThreshold][1 - ear];
-                    do {
-                        int diff = i.timestamp - lastTs[i.x][ganglionCellThreshold][1 - ear][cursor];
-                        if (ear == 0) {
-                            diff = -diff;
-                            nright++;
-                        } else {
-                            nleft++;
+                    if (i.x >= numOfCochleaChannels) {
+                        log.warning("there was a BasicEvent i with i.x=" + i.x + " >= " + numOfCochleaChannels + "=numOfCochleaChannels! Therefore set numOfCochleaChannels=" + (i.x + 1));
+                        setNumOfCochleaChannels(i.x + 1);
+                    } else {
+                        if (ganglionCellThreshold < 0 || ganglionCellThreshold >= lastTsNumThresholds) {
+                            throw new ArrayIndexOutOfBoundsException("ganglion cell threshold " + ganglionCellThreshold + " is outside 0.." + (lastTsNumThresholds - 1));
                         }
-                        int absdiff = java.lang.Math.abs(diff);
-                        if (absdiff < maxITD) {
-
-                            lastWeight = 1f;
-                            //Compute weight:
-                            if (useLaterSpikeForWeight == true) {
-                                int weightTimeThisSide = i.timestamp - lastTs[i.x][ganglionCellThreshold][ear][lastTsCursor[i.x][ganglionCellThreshold][ear]];
-                                if (weightTimeThisSide > maxWeightTime) {
-                                    weightTimeThisSide = maxWeightTime;
-                                }
-                                lastWeight *= ((weightTimeThisSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
-                                if (weightTimeThisSide < 0) {
-                                    //log.warning("weightTimeThisSide < 0");
-                                    lastWeight = 0;
-                                }
+                        final int thisSlot = ParallelITDEngine.slot(i.x, ganglionCellThreshold, ear, lastTsNumThresholds);
+                        final int otherSlot = ParallelITDEngine.slot(i.x, ganglionCellThreshold, 1 - ear, lastTsNumThresholds);
+                        int cursor = lastTsCursor[otherSlot];
+                        do {
+                            int diff = i.timestamp - lastTs[(otherSlot * dimLastTs) + cursor];
+                            if (ear == 0) {
+                                diff = -diff;
+                                nright++;
+                            } else {
+                                nleft++;
                             }
-                            if (usePriorSpikeForWeight == true) {
-                                int weightTimeOtherSide = lastTs[i.x][ganglionCellThreshold][1 - ear][cursor] - lastTs[i.x][ganglionCellThreshold][1 - ear][(cursor + 1) % dimLastTs];
-                                if (weightTimeOtherSide > maxWeightTime) {
-                                    weightTimeOtherSide = maxWeightTime;
+                            int absdiff = java.lang.Math.abs(diff);
+                            if (absdiff < maxITD) {
+
+                                lastWeight = 1f;
+                                //Compute weight:
+                                if (useLaterSpikeForWeight == true) {
+                                    int weightTimeThisSide = i.timestamp - lastTs[(thisSlot * dimLastTs) + lastTsCursor[thisSlot]];
+                                    if (weightTimeThisSide > maxWeightTime) {
+                                        weightTimeThisSide = maxWeightTime;
+                                    }
+                                    lastWeight *= ((weightTimeThisSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
+                                    if (weightTimeThisSide < 0) {
+                                        //log.warning("weightTimeThisSide < 0");
+                                        lastWeight = 0;
+                                    }
                                 }
-                                lastWeight *= ((weightTimeOtherSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
-                                if (weightTimeOtherSide < 0) {
-                                    //log.warning("weightTimeOtherSide < 0");
-                                    lastWeight = 0;
+                                if (usePriorSpikeForWeight == true) {
+                                    int weightTimeOtherSide = lastTs[(otherSlot * dimLastTs) + cursor] - lastTs[(otherSlot * dimLastTs) + ((cursor + 1) % dimLastTs)];
+                                    if (weightTimeOtherSide > maxWeightTime) {
+                                        weightTimeOtherSide = maxWeightTime;
+                                    }
+                                    lastWeight *= ((weightTimeOtherSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
+                                    if (weightTimeOtherSide < 0) {
+                                        //log.warning("weightTimeOtherSide < 0");
+                                        lastWeight = 0;
+                                    }
                                 }
-                            }
-                            if (weightFrequencies && (frequencyWeights != null)) {
-                                lastWeight *= frequencyWeights[i.x];
-                            }
-                            if (normToConfThresh == true) {
-                                myBins.addITD(diff, i.timestamp, i.x, lastWeight, confidenceThreshold);
-                            } else {
-                                myBins.addITD(diff, i.timestamp, i.x, lastWeight, 0);
-                            }
-                            if (freqBins != null) {
-                                freqBins[i.x].addITD(diff, i.timestamp, i.x, lastWeight, 0);
-                            }
-                            if ((writeITD2File == true) && (ITDFile != null)) {
-                                ITDFile.write(i.timestamp + "\t" + diff + "\t" + i.x + "\t" + lastWeight + "\n");
-                            }
-                            if (sendITDsToOtherThread) {
-                                if (ITDEventQueue == null) {
-                                    ITDEventQueue = new ArrayBlockingQueue(itdEventQueueSize);
+                                if (weightFrequencies && (frequencyWeights != null)) {
+                                    lastWeight *= frequencyWeights[i.x];
                                 }
-                                ITDEvent itdEvent = new ITDEvent(diff, i.timestamp, i.x, lastWeight);
-                                boolean success = ITDEventQueue.offer(itdEvent);
-                                if (success == false) {
-                                    ITDEventQueueFull = true;
-                                    log.warning("Could not add ITD-Event to the ITDEventQueue. Probably itdEventQueueSize is too small!!!");
+                                if (normToConfThresh == true) {
+                                    myBins.addITD(diff, i.timestamp, i.x, lastWeight, confidenceThreshold);
                                 } else {
-                                    ITDEventQueueFull = false;
+                                    myBins.addITD(diff, i.timestamp, i.x, lastWeight, 0);
+                                }
+                                if (freqBins != null) {
+                                    freqBins[i.x].addITD(diff, i.timestamp, i.x, lastWeight, 0);
+                                }
+                                if ((writeITD2File == true) && (ITDFile != null)) {
+                                    ITDFile.write(i.timestamp + "\t" + diff + "\t" + i.x + "\t" + lastWeight + "\n");
+                                }
+                                if (sendITDsToOtherThread) {
+                                    if (ITDEventQueue == null) {
+                                        ITDEventQueue = new ArrayBlockingQueue(itdEventQueueSize);
+                                    }
+                                    ITDEvent itdEvent = new ITDEvent(diff, i.timestamp, i.x, lastWeight);
+                                    boolean success = ITDEventQueue.offer(itdEvent);
+                                    if (success == false) {
+                                        ITDEventQueueFull = true;
+                                        log.warning("Could not add ITD-Event to the ITDEventQueue. Probably itdEventQueueSize is too small!!!");
+                                    } else {
+                                        ITDEventQueueFull = false;
+                                    }
                                 }
-                            }
 
-                            if (isBeamFormingEnabled()) {
-                                // if
-                                int bestITD = Float.isNaN(beamFormingITDUs) ? (int) beamFormingITDUs : getBestITD();
-                                if (Math.abs(diff - bestITD) < beamFormingRangeUs) {
-                                    BinauralCochleaEvent oe = (BinauralCochleaEvent) outItr.nextOutput();
-                                    oe.copyFrom(i);
+                                if (isBeamFormingEnabled()) {
+                                    // if
+                                    int bestITD = Float.isNaN(beamFormingITDUs) ? (int) beamFormingITDUs : getBestITD();
+                                    if (Math.abs(diff - bestITD) < beamFormingRangeUs) {
+                                        BinauralCochleaEvent oe = (BinauralCochleaEvent) outItr.nextOutput();
+                                        oe.copyFrom(i);
+                                    }
                                 }
+                            } else {
+                                break;
                             }
-                        } else {
-                            break;
-                        }
-                        cursor = (++cursor) % dimLastTs;
-                    } while (cursor != lastTsCursor[i.x][ganglionCellThreshold][1 - ear]);
-                    //Now decrement the cursor (circularly)
-                    if (lastTsCursor[i.x][ganglionCellThreshold][ear] == 0) {
-                        lastTsCursor[i.x][ganglionCellThreshold][ear] = dimLastTs;
-                    }
-                    lastTsCursor[i.x][ganglionCellThreshold][ear]--;
-                    //Add the new timestamp to the list
-                    lastTs[i.x][ganglionCellThreshold][ear][lastTsCursor[i.x][ganglionCellThreshold][ear]] = i.timestamp;
-
-                    if (write2FileForEverySpike == true) {
-                        if ((writeAvgITD2File == true) && (AvgITDFile != null)) {
-                            refreshITD();
-                            AvgITDFile.write(i.timestamp + "\t" + bestITD + "\t" + avgITDConfidence + "\n");
+                            cursor = (++cursor) % dimLastTs;
+                        } while (cursor != lastTsCursor[otherSlot]);
+                        //Now decrement the cursor (circularly)
+                        if (lastTsCursor[thisSlot] == 0) {
+                            lastTsCursor[thisSlot] = dimLastTs;
                         }
-                        if ((writeBin2File == true) && (BinFile != null)) {
-                            refreshITD();
-                            BinFile.write(i.timestamp + "\t" + myBins.toString() + "\n");
+                        lastTsCursor[thisSlot]--;
+                        //Add the new timestamp to the list
+                        lastTs[(thisSlot * dimLastTs) + lastTsCursor[thisSlot]] = i.timestamp;
+
+                        if (write2FileForEverySpike == true) {
+                            if ((writeAvgITD2File == true) && (AvgITDFile != null)) {
+                                refreshITD();
+                                AvgITDFile.write(i.timestamp + "\t" + bestITD + "\t" + avgITDConfidence + "\n");
+                            }
+                            if ((writeBin2File == true) && (BinFile != null)) {
+                                refreshITD();
+                                BinFile.write(i.timestamp + "\t" + myBins.toString() + "\n");
+                            }
                         }
                     }
-                }
 
-            } catch (Exception e1) {
-                log.warning("In for-loop in filterPacket caught exception " + e1);
-                e1.printStackTrace();
+                } catch (Exception e1) {
+                    log.warning("In for-loop in filterPacket caught exception " + e1);
+                    e1.printStackTrace();
+                }
             }
         }
         try {
@@ -680,6 +702,58 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         return isBeamFormingEnabled() ? out : in;
     }
 
+    /**
+     * @return true if the current options allow computing the ITDs of a
+     * packet with the ParallelITDEngine, i.e. nothing needs to be done for
+     * each ITD in packet order
+     */
+    private boolean canUseParallelITDEngine() {
+        return myBins != null && myBins.getCalibration() == null
+                && !normToConfThresh
+                && freqBins == null
+                && !(writeITD2File && (ITDFile != null))
+                && !sendITDsToOtherThread
+                && !isBeamFormingEnabled()
+                && !(write2FileForEverySpike && (((writeAvgITD2File == true) && (AvgITDFile != null)) || ((writeBin2File == true) && (BinFile != null))));
+    }
+
+    /**
+     * Gathers the events of the packet into the ParallelITDEngine, in the same
+     * way as the sequential loop in filterPacket.
+     *
+     * @return false if the packet must be processed by the sequential loop,
+     * because an event needs more channels, has an unexpected threshold, or
+     * timestamps go backwards
+     */
+    private boolean gatherParallelITDEvents(EventPacket<? extends BasicEvent> in) {
+        parallelITDEngine.clear();
+        final int lastTimestamp = in.getLastTimestamp();
+        int prevTs = myBins.getTimestamp();
+        for (Object e : in) {
+            BinauralCochleaEvent i = (BinauralCochleaEvent) e;
+            if (i.isSpecial() || i.isFilteredOut()) {
+                continue;
+            }
+            int ganglionCellThreshold = 0;
+            if (hasMultipleGanglionCellTypes
+                    && ((amsProcessingMethod == AMSprocessingMethod.NeuronsIndividually)
+                    || (amsProcessingMethod == AMSprocessingMethod.StoreSeparetlyCompareEvery))) {
+                ganglionCellThreshold = ((CochleaAMSEvent) i).getThreshold();
+            }
+            int ear = i.getEar() == Ear.RIGHT ? 0 : 1;
+            if (invert) {
+                ear = (ear + 1) % 2;
+            }
+            if (i.x < 0 || i.x >= numOfCochleaChannels || ganglionCellThreshold < 0 || ganglionCellThreshold >= lastTsNumThresholds
+                    || i.timestamp < prevTs || i.timestamp > lastTimestamp) {
+                return false;
+            }
+            prevTs = i.timestamp;
+            parallelITDEngine.addEvent(i.x, ganglionCellThreshold, ear, i.timestamp);
+        }
+        return true;
+    }
+
     public void refreshITD() {
 
         int avgITDtemp = 0;
@@ -794,18 +868,10 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
             case StoreSeparetlyCompareEvery:
                 dim = numNeuronTypes;
         }
-        lastTs = new int[numOfCochleaChannels][dim][2][dimLastTs];
-        lastTsCursor = new int[numOfCochleaChannels][dim][2];
-
-        for (int i = 0; i < numOfCochleaChannels; i++) {
-            for (int j = 0; j < dim; j++) {
-                for (int k = 0; k < 2; k++) {
-                    for (int l = 0; l < dimLastTs; l++) {
-                        lastTs[i][j][k][l] = Integer.MIN_VALUE;
-                    }
-                }
-            }
-        }
+        lastTsNumThresholds = dim;
+        lastTs = new int[numOfCochleaChannels * dim * 2 * dimLastTs];
+        lastTsCursor = new int[numOfCochleaChannels * dim * 2];
+        Arrays.fill(lastTs, Integer.MIN_VALUE);
 
         ConfidenceRecentMax = 0;
         ConfidenceRecentMaxTime = 0;
@@ -984,8 +1050,9 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         getPrefs().putInt("ITDFilter.numOfCochleaChannels", numOfCochleaChannels);
         getSupport().firePropertyChange("numOfCochleaChannels", this.numOfCochleaChannels, numOfCochleaChannels);
         this.numOfCochleaChannels = numOfCochleaChannels;
-        lastTs = new int[numOfCochleaChannels][numNeuronTypes][2][dimLastTs];
-        lastTsCursor = new int[numOfCochleaChannels][numNeuronTypes][2];
+        lastTsNumThresholds = numNeuronTypes;
+        lastTs = new int[numOfCochleaChannels * numNeuronTypes * 2 * dimLastTs];
+        lastTsCursor = new int[numOfCochleaChannels * numNeuronTypes * 2];
     }
 
     public float getAveragingDecay() {
@@ -1641,6 +1708,24 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         return myBins;
     }
 
+    /**
+     * @return true if the ITDs are computed by the ParallelITDEngine when the
+     * other options allow it
+     */
+    public boolean isParallelITDEnabled() {
+        return parallelITDEnabled;
+    }
+
+    /**
+     * @param parallelITDEnabled true to compute the ITDs of each packet in
+     * parallel over the cochlea channels
+     * @see ParallelITDEngine
+     */
+    public void setParallelITDEnabled(boolean parallelITDEnabled) {
+        this.parallelITDEnabled = parallelITDEnabled;
+        putBoolean("parallelITDEnabled", parallelITDEnabled);
+    }
+
     /**
      * @return the beamFormingEnabled
      */
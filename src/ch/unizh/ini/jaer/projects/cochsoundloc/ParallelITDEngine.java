@@ -0,0 +1,397 @@
+package ch.unizh.ini.jaer.projects.cochsoundloc;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the ITD histogram of a packet of binaural cochlea events in
+ * parallel over the cochlea channels, for {@link ITDFilter}.
+ * <p>
+ * Each event is only compared with the past spikes of the other ear in its
+ * own channel (and ganglion cell threshold), so the channels are independent.
+ * The events of a packet are gathered with {@link #addEvent}, sorted by
+ * channel, and groups of channels are processed on the common fork-join pool
+ * in packet order against the shared ring buffers of past spike times. Each
+ * group adds its weighted ITDs to its own partial histogram, already decayed
+ * to the end of the packet, and the partial histograms are added to the
+ * {@link ITDBins} once per packet.
+ * <p>
+ * The ring buffers are flattened int arrays indexed by {@link #slot}, holding
+ * dimLastTs spike times per slot, most recent at the cursor. They stay the
+ * state of ITDFilter between packets, so the filter can switch between this
+ * engine and its sequential loop at any time.
+ * <p>
+ * Adding the decayed ITDs at the end of the packet is the same sum as
+ * decaying the histogram at every ITD as ITDBins.addITD does, up to float
+ * rounding, provided that the timestamps do not go backwards. It is not the
+ * same if the histogram is normalized at every ITD (normToConfThresh), which
+ * ITDFilter therefore still does sequentially.
+ */
+public class ParallelITDEngine {
+
+    /**
+     * Packets with fewer events than this are processed on the calling thread
+     */
+    public static final int MIN_PARALLEL_PACKET_SIZE = 1024;
+
+    private int numEvents = 0;
+    private int[] channels = new int[0], thresholds = new int[0], ears = new int[0], timestamps = new int[0];
+    private int[] order = new int[0]; // event indices sorted by channel, in packet order within a channel
+    private int[] channelStart = new int[0]; // start of each channel in order, with a last entry numEvents
+
+    // configuration for one packet
+    private int maxITD, numBins, numThresholds, dimLastTs;
+    private boolean useLaterSpikeForWeight, usePriorSpikeForWeight;
+    private int maxWeight, maxWeightTime;
+    private double[] frequencyWeights;
+    private int[] lastTs, lastTsCursor;
+    private int endTimestamp;
+    private float averagingDecayUs;
+
+    private Group[] groups = new Group[0];
+    private int numGroups = 0;
+    private int numLeft, numRight;
+    private float lastWeight = 1f;
+
+    /**
+     * The events of a range of channels and the partial histogram of their
+     * ITDs
+     */
+    private static class Group {
+
+        int firstChannel, lastChannel; // channel range [firstChannel,lastChannel)
+        float[] bins = new float[0];
+        int numLeft, numRight;
+        int lastWeightEvent; // index of the last event that added an ITD, or -1
+        float lastWeight;
+    }
+
+    /**
+     * Returns the index of the ring buffer of a channel, threshold and ear,
+     * in lastTsCursor; the spike times are at slot*dimLastTs in lastTs.
+     *
+     * @param channel the cochlea channel
+     * @param threshold the ganglion cell threshold, 0 if thresholds are not
+     * separated
+     * @param ear 0 for right, 1 for left
+     * @param numThresholds the number of thresholds in the buffers
+     * @return the slot index
+     */
+    public static int slot(int channel, int threshold, int ear, int numThresholds) {
+        return ((channel * numThresholds) + threshold) * 2 + ear;
+    }
+
+    /**
+     * Starts gathering a new packet.
+     */
+    public void clear() {
+        numEvents = 0;
+    }
+
+    /**
+     * Adds an event to the packet.
+     *
+     * @param channel the cochlea channel, must be below the number of
+     * channels given to {@link #process}
+     * @param threshold the ganglion cell threshold
+     * @param ear 0 for right, 1 for left (after any inversion)
+     * @param timestamp the timestamp in us
+     */
+    public void addEvent(int channel, int threshold, int ear, int timestamp) {
+        if (numEvents == channels.length) {
+            final int n = Math.max(1024, numEvents * 2);
+            channels = Arrays.copyOf(channels, n);
+            thresholds = Arrays.copyOf(thresholds, n);
+            ears = Arrays.copyOf(ears, n);
+            timestamps = Arrays.copyOf(timestamps, n);
+        }
+        channels[numEvents] = channel;
+        thresholds[numEvents] = threshold;
+        ears[numEvents] = ear;
+        timestamps[numEvents] = timestamp;
+        numEvents++;
+    }
+
+    /**
+     * @return the number of events gathered
+     */
+    public int getNumEvents() {
+        return numEvents;
+    }
+
+    /**
+     * Sets how the ITDs are weighted, as in ITDFilter.
+     *
+     * @param useLaterSpikeForWeight weight by the time since the previous
+     * spike of the later ear
+     * @param usePriorSpikeForWeight weight by the time between the two last
+     * spikes of the prior ear
+     * @param maxWeight the maximum weight
+     * @param maxWeightTime the time in us at which the maximum weight is
+     * reached
+     * @param frequencyWeights the per-channel weights, or null
+     */
+    public void setWeighting(boolean useLaterSpikeForWeight, boolean usePriorSpikeForWeight, int maxWeight, int maxWeightTime, double[] frequencyWeights) {
+        this.useLaterSpikeForWeight = useLaterSpikeForWeight;
+        this.usePriorSpikeForWeight = usePriorSpikeForWeight;
+        this.maxWeight = maxWeight;
+        this.maxWeightTime = maxWeightTime;
+        this.frequencyWeights = frequencyWeights;
+    }
+
+    /**
+     * Computes the ITDs of the gathered events, updates the ring buffers and
+     * adds the ITDs to the histogram, decayed to endTimestamp. The histogram
+     * must not use a calibration.
+     *
+     * @param itdBins the histogram
+     * @param lastTs the spike time ring buffers
+     * @param lastTsCursor the ring buffer cursors
+     * @param numChannels the number of channels in the buffers
+     * @param numThresholds the number of thresholds in the buffers
+     * @param dimLastTs the length of each ring buffer
+     * @param endTimestamp the timestamp to decay the ITDs to, at least the
+     * last event timestamp
+     */
+    public void process(ITDBins itdBins, int[] lastTs, int[] lastTsCursor, int numChannels, int numThresholds, int dimLastTs, int endTimestamp) {
+        this.lastTs = lastTs;
+        this.lastTsCursor = lastTsCursor;
+        this.numThresholds = numThresholds;
+        this.dimLastTs = dimLastTs;
+        this.endTimestamp = endTimestamp;
+        this.maxITD = itdBins.getMaxITD();
+        this.numBins = itdBins.getNumOfBins();
+        this.averagingDecayUs = itdBins.getAveragingDecay();
+        sortByChannel(numChannels);
+        makeGroups(numChannels);
+        if (numGroups == 1) {
+            processGroup(groups[0]);
+        } else {
+            ForkJoinPool.commonPool().invoke(new GroupTask(0, numGroups));
+        }
+        // merge in channel order so that the sum does not depend on scheduling
+        final float[] sum = groups[0].bins;
+        numLeft = groups[0].numLeft;
+        numRight = groups[0].numRight;
+        int lastWeightEvent = groups[0].lastWeightEvent;
+        float lw = groups[0].lastWeight;
+        for (int g = 1; g < numGroups; g++) {
+            final Group group = groups[g];
+            for (int b = 0; b < numBins; b++) {
+                sum[b] += group.bins[b];
+            }
+            numLeft += group.numLeft;
+            numRight += group.numRight;
+            if (group.lastWeightEvent > lastWeightEvent) {
+                lastWeightEvent = group.lastWeightEvent;
+                lw = group.lastWeight;
+            }
+        }
+        if (lastWeightEvent >= 0) {
+            lastWeight = lw;
+        }
+        itdBins.addDecayedBins(sum, endTimestamp);
+        this.lastTs = null;
+        this.lastTsCursor = null;
+    }
+
+    /**
+     * @return the number of comparisons with a past left spike in the last
+     * packet, counted as in ITDFilter for the ILD
+     */
+    public int getNumLeft() {
+        return numLeft;
+    }
+
+    /**
+     * @return the number of comparisons with a past right spike in the last
+     * packet
+     */
+    public int getNumRight() {
+        return numRight;
+    }
+
+    /**
+     * @return the weight of the last ITD added
+     */
+    public float getLastWeight() {
+        return lastWeight;
+    }
+
+    private void sortByChannel(int numChannels) {
+        if (channelStart.length < numChannels + 1) {
+            channelStart = new int[numChannels + 1];
+        } else {
+            Arrays.fill(channelStart, 0, numChannels + 1, 0);
+        }
+        if (order.length < numEvents) {
+            order = new int[channels.length];
+        }
+        for (int i = 0; i < numEvents; i++) {
+            channelStart[channels[i] + 1]++;
+        }
+        for (int c = 0; c < numChannels; c++) {
+            channelStart[c + 1] += channelStart[c];
+        }
+        final int[] next = Arrays.copyOf(channelStart, numChannels);
+        for (int i = 0; i < numEvents; i++) {
+            order[next[channels[i]]++] = i;
+        }
+    }
+
+    /**
+     * Splits the channels into contiguous groups of about equal numbers of
+     * events, about four per pool thread for load balancing
+     */
+    private void makeGroups(int numChannels) {
+        final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int n = 1;
+        if (numEvents >= MIN_PARALLEL_PACKET_SIZE && parallelism >= 2) {
+            n = Math.min(numChannels, parallelism * 4);
+        }
+        if (groups.length < n) {
+            final Group[] g = Arrays.copyOf(groups, n);
+            for (int i = groups.length; i < n; i++) {
+                g[i] = new Group();
+            }
+            groups = g;
+        }
+        numGroups = 0;
+        int channel = 0;
+        for (int g = 0; g < n && channel < numChannels; g++) {
+            final Group group = groups[numGroups++];
+            group.firstChannel = channel;
+            final long target = ((long) numEvents * (g + 1)) / n;
+            do {
+                channel++;
+            } while (channel < numChannels && channelStart[channel] < target);
+            if (g == n - 1) {
+                channel = numChannels;
+            }
+            group.lastChannel = channel;
+        }
+        for (int g = 0; g < numGroups; g++) {
+            final Group group = groups[g];
+            if (group.bins.length != numBins) {
+                group.bins = new float[numBins];
+            } else {
+                Arrays.fill(group.bins, 0);
+            }
+            group.numLeft = 0;
+            group.numRight = 0;
+            group.lastWeightEvent = -1;
+        }
+    }
+
+    /**
+     * Processes a range of groups, splitting the range in halves.
+     */
+    private class GroupTask extends RecursiveAction {
+
+        final int lo, hi;
+
+        GroupTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                final int mid = (lo + hi) >>> 1;
+                invokeAll(new GroupTask(lo, mid), new GroupTask(mid, hi));
+            } else {
+                processGroup(groups[lo]);
+            }
+        }
+    }
+
+    /**
+     * The per event loop of ITDFilter.filterPacket, for the events of a group
+     * of channels. Only touches the ring buffers of these channels.
+     */
+    private void processGroup(final Group group) {
+        final int[] ts = lastTs, cursors = lastTsCursor;
+        final float[] bins = group.bins;
+        final int dim = dimLastTs, nb = numBins, mitd = maxITD;
+        final float decay = averagingDecayUs;
+        int nleft = 0, nright = 0;
+        for (int k = channelStart[group.firstChannel], end = channelStart[group.lastChannel]; k < end; k++) {
+            final int e = order[k];
+            final int x = channels[e], ear = ears[e], t = timestamps[e];
+            final int thisSlot = slot(x, thresholds[e], ear, numThresholds);
+            final int otherSlot = thisSlot + 1 - 2 * ear; // same channel and threshold, other ear
+            final int otherBase = otherSlot * dim, thisBase = thisSlot * dim;
+            final int startCursor = cursors[otherSlot];
+            float decayFactor = -1; // computed for the first ITD of the event
+            boolean aborted = false;
+            int cursor = startCursor;
+            do {
+                int diff = t - ts[otherBase + cursor];
+                if (ear == 0) {
+                    diff = -diff;
+                    nright++;
+                } else {
+                    nleft++;
+                }
+                if (Math.abs(diff) < mitd) {
+                    float weight = 1f;
+                    if (useLaterSpikeForWeight) {
+                        int weightTimeThisSide = t - ts[thisBase + cursors[thisSlot]];
+                        if (weightTimeThisSide > maxWeightTime) {
+                            weightTimeThisSide = maxWeightTime;
+                        }
+                        weight *= ((weightTimeThisSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
+                        if (weightTimeThisSide < 0) {
+                            weight = 0;
+                        }
+                    }
+                    if (usePriorSpikeForWeight) {
+                        int weightTimeOtherSide = ts[otherBase + cursor] - ts[otherBase + ((cursor + 1) % dim)];
+                        if (weightTimeOtherSide > maxWeightTime) {
+                            weightTimeOtherSide = maxWeightTime;
+                        }
+                        weight *= ((weightTimeOtherSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
+                        if (weightTimeOtherSide < 0) {
+                            weight = 0;
+                        }
+                    }
+                    if (frequencyWeights != null) {
+                        weight *= frequencyWeights[x];
+                    }
+                    final int index = ((diff + mitd) * nb) / (2 * mitd);
+                    if (index < 0 || index >= nb) {
+                        // ITDBins.addITD throws here (e.g. for the initial Integer.MIN_VALUE spike times), and the sequential loop skips the rest of the event
+                        aborted = true;
+                        break;
+                    }
+                    if (decayFactor < 0) {
+                        decayFactor = decay != 0 && t < endTimestamp ? (float) Math.exp(-(endTimestamp - t) / decay) : 1f;
+                    }
+                    bins[index] += weight * decayFactor;
+                    if (e >= group.lastWeightEvent) { // events are in channel order, not packet order
+                        group.lastWeightEvent = e;
+                        group.lastWeight = weight;
+                    }
+                } else {
+                    break;
+                }
+                cursor = (cursor + 1) % dim;
+            } while (cursor != startCursor);
+            if (aborted) {
+                continue;
+            }
+            // decrement the cursor circularly and store the new spike time
+            int c = cursors[thisSlot];
+            if (c == 0) {
+                c = dim;
+            }
+            c--;
+            cursors[thisSlot] = c;
+            ts[thisBase + c] = t;
+        }
+        group.numLeft = nleft;
+        group.numRight = nright;
+    }
+}
@@ -152,6 +152,12 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
     public static final int SLICE_MAX_VALUE_DEFAULT = 15;
     private int sliceMaxValue = getInt("sliceMaxValue", SLICE_MAX_VALUE_DEFAULT);
     private boolean rectifyPolarties = getBoolean("rectifyPolarties", false);
+    private boolean batchedSadEnabled = getBoolean("batchedSadEnabled", true);
+    private final SADBlockMatcher sadBlockMatcher = new SADBlockMatcher();
+    private static final int SAD_SPEEDUP_SAMPLES = 1000; // number of full searches timed by doMeasureSadSpeedup
+    private int sadSpeedupSamplesLeft = 0;
+    private double[] sadBatchedSearchNs = null, sadLegacySearchNs = null;
+    private int sadSpeedupMismatchCount = 0;
 
     private int sliceDurationMinLimitUS = getInt("sliceDurationMinLimitUS", 100);
     private int sliceDurationMaxLimitUS = getInt("sliceDurationMaxLimitUS", 300000);
@@ -395,6 +401,8 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         setPropertyTooltip(patchTT, "numSlices", "<html>Number of bitmaps to use.  <p>At least 3: 1 to collect on, and two more to match on. <br>If >3, then best match is found between last slice reference block and all previous slices.");
         setPropertyTooltip(patchTT, "numScales", "<html>Number of scales to search over for minimum SAD value; 1 for single full resolution scale, 2 for full + 2x2 subsampling, etc.");
         setPropertyTooltip(patchTT, "sliceMaxValue", "<html> the maximum value used to represent each pixel in the time slice:<br>1 for binary or signed binary slice, (in conjunction with rectifyEventPolarities==true), etc, <br>up to 127 by these byte values");
+        setPropertyTooltip(patchTT, "batchedSadEnabled", "<html>Evaluates all SAD candidates of a block with a flattened reference block and branch free counters, <br>splitting large full searches over all cores. <p>Flow output is identical; disable to use the original per candidate sadDistance.");
+        setPropertyTooltip(patchTT, "measureSadSpeedup", "<html>Times the next " + SAD_SPEEDUP_SAMPLES + " full searches with both the batched and the original SAD computation <br>and logs the statistics and speedup. Requires batchedSadEnabled and FullSearch.");
         setPropertyTooltip(patchTT, "rectifyPolarties", "<html> whether to rectify ON and OFF polarities to unsigned counts; true ignores polarity for block matching, false uses polarity with sliceNumBits>1");
         setPropertyTooltip(patchTT, "scalesToCompute", "Scales to compute, e.g. 1,2; blank for all scales. 0 is full resolution, 1 is subsampled 2x2, etc");
         setPropertyTooltip(patchTT, "enableImuTimesliceLogging", "Logs IMU and rate gyro");
@@ -467,6 +475,18 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         sadValueLogger.setEnabled(false);
     }
 
+    synchronized public void doMeasureSadSpeedup() {
+        if (!batchedSadEnabled || getSearchMethod() != SearchMethod.FullSearch) {
+            log.warning("measureSadSpeedup needs batchedSadEnabled and FullSearch searchMethod");
+            return;
+        }
+        sadBatchedSearchNs = new double[SAD_SPEEDUP_SAMPLES];
+        sadLegacySearchNs = new double[SAD_SPEEDUP_SAMPLES];
+        sadSpeedupMismatchCount = 0;
+        sadSpeedupSamplesLeft = SAD_SPEEDUP_SAMPLES;
+        log.info("measuring SAD speedup over the next " + SAD_SPEEDUP_SAMPLES + " full searches");
+    }
+
     @Override
     synchronized public EventPacket filterPacket(EventPacket in) {
         if (in == null) {
@@ -1621,6 +1641,10 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
             result.scale = subSampleBy;
             return result;
         }
+        final boolean batched = batchedSadEnabled;
+        if (batched) {
+            sadBlockMatcher.setReference(curSlice[subSampleBy], x >> subSampleBy, y >> subSampleBy, r);
+        }
 
         switch (searchMethod) {
             case DiamondSearch:
@@ -1672,7 +1696,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
 
                         /* We just calculate the blocks that haven't been calculated before */
                         if (computedFlg[xidx][yidx] == false) {
-                            sumArray[xidx][yidx] = sadDistance(x, y, dx_init + dx, dy_init + dy, curSlice, prevSlice, subSampleBy);
+                            sumArray[xidx][yidx] = batched
+                                    ? batchedSadDistance(dx_init + dx, dy_init + dy, prevSlice, subSampleBy, r)
+                                    : sadDistance(x, y, dx_init + dx, dy_init + dy, curSlice, prevSlice, subSampleBy);
                             computedFlg[xidx][yidx] = true;
                             if (outputSearchErrorInfo) {
                                 DSAverageNum++;
@@ -1717,7 +1743,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
 
                     /* We just calculate the blocks that haven't been calculated before */
                     if (computedFlg[xidx][yidx] == false) {
-                        sumArray[xidx][yidx] = sadDistance(x, y, dx_init + dx, dy_init + dy, curSlice, prevSlice, subSampleBy);
+                        sumArray[xidx][yidx] = batched
+                                    ? batchedSadDistance(dx_init + dx, dy_init + dy, prevSlice, subSampleBy, r)
+                                    : sadDistance(x, y, dx_init + dx, dy_init + dy, curSlice, prevSlice, subSampleBy);
                         computedFlg[xidx][yidx] = true;
                         if (outputSearchErrorInfo) {
                             DSAverageNum++;
@@ -1769,9 +1797,22 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
                     }
                 }
 
+                long startNs = 0;
+                if (batched) {
+                    if (sadSpeedupSamplesLeft > 0) {
+                        startNs = System.nanoTime();
+                    }
+                    sadBlockMatcher.evaluateAll(prevSlice[subSampleBy], dx_init - searchDistance, dy_init - searchDistance, searchRange);
+                }
                 for (dx = -searchDistance; dx <= searchDistance; dx++) {
                     for (dy = -searchDistance; dy <= searchDistance; dy++) {
-                        sum = sadDistance(x, y, dx_init + dx, dy_init + dy, curSlice, prevSlice, subSampleBy);
+                        if (batched) {
+                            final int k = ((dx + searchDistance) * searchRange) + dy + searchDistance;
+                            sum = sadDistance(r, sadBlockMatcher.sumDists[k], sadBlockMatcher.getRefValidPixNum(),
+                                    sadBlockMatcher.validPixNumsPrevSlice[k], sadBlockMatcher.nonZeroMatchCounts[k]);
+                        } else {
+                            sum = sadDistance(x, y, dx_init + dx, dy_init + dy, curSlice, prevSlice, subSampleBy);
+                        }
                         sumArray[dx + searchDistance][dy + searchDistance] = sum;
                         if (sum < minSum) {
                             minSum = sum;
@@ -1782,6 +1823,10 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
                     }
                 }
 
+                if (batched && sadSpeedupSamplesLeft > 0) {
+                    measureSadSpeedup(startNs, x, y, dx_init, dy_init, curSlice, prevSlice, subSampleBy);
+                }
+
 //                System.out.printf("result is %s: \n", result.toString());
                 if (outputSearchErrorInfo) {
                     FSCnt += 1;
@@ -1919,7 +1964,36 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         // debug
 //        if(dx==-1 && dy==-1) return 0; else return Float.MAX_VALUE;
 
-        sumDist = sumDist;
+        return sadDistance(r, sumDist, validPixNumCurSlice, validPixNumPrevSlice, nonZeroMatchCount);
+    }
+
+    /**
+     * Computes the SAD distance of the block at offset dx,dy in prevSlice
+     * from the reference block set in sadBlockMatcher
+     *
+     * @return same value as sadDistance for this offset
+     */
+    private float batchedSadDistance(final int dx, final int dy, final byte[][][] prevSlice, final int subsampleBy, final int r) {
+        sadBlockMatcher.evaluate(prevSlice[subsampleBy], dx, dy);
+        return sadDistance(r, sadBlockMatcher.sumDist, sadBlockMatcher.getRefValidPixNum(),
+                sadBlockMatcher.validPixNumPrevSlice, sadBlockMatcher.nonZeroMatchCount);
+    }
+
+    /**
+     * Turns the pixel counts of a block comparison into the normalized
+     * distance
+     *
+     * @param r the block radius
+     * @param sumDist sum of absolute differences
+     * @param validPixNumCurSlice number of nonzero pixels in the current
+     * (reference) block
+     * @param validPixNumPrevSlice number of nonzero pixels in the past block
+     * @param nonZeroMatchCount number of pixels nonzero in both blocks
+     * @return Distance value, max 1 when all pixels differ, min 0 when all the
+     * same
+     */
+    private float sadDistance(final int r, final int sumDist,
+            final int validPixNumCurSlice, final int validPixNumPrevSlice, final int nonZeroMatchCount) {
         final int blockDim = (2 * r) + 1;
 
         final int blockArea = (blockDim) * (blockDim); // TODO check math here for fraction correct with subsampling
@@ -2246,6 +2320,42 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
 
     }
 
+    /**
+     * Times the legacy per candidate sadDistance over the full search just
+     * done by the batched matcher and records both times; logs the
+     * statistics once SAD_SPEEDUP_SAMPLES searches are measured
+     */
+    private void measureSadSpeedup(final long batchedStartNs, final int x, final int y, final int dx_init, final int dy_init,
+            final byte[][][] curSlice, final byte[][][] prevSlice, final int subSampleBy) {
+        final long batchedEndNs = System.nanoTime();
+        final int searchRange = (2 * searchDistance) + 1;
+        final float[] legacy = new float[searchRange * searchRange];
+        final long legacyStartNs = System.nanoTime();
+        for (int dx = -searchDistance; dx <= searchDistance; dx++) {
+            for (int dy = -searchDistance; dy <= searchDistance; dy++) {
+                legacy[((dx + searchDistance) * searchRange) + dy + searchDistance] = sadDistance(x, y, dx_init + dx, dy_init + dy, curSlice, prevSlice, subSampleBy);
+            }
+        }
+        final long legacyEndNs = System.nanoTime();
+        for (int dx = 0; dx < searchRange; dx++) {
+            for (int dy = 0; dy < searchRange; dy++) {
+                if (Float.compare(legacy[(dx * searchRange) + dy], sumArray[dx][dy]) != 0) {
+                    sadSpeedupMismatchCount++;
+                }
+            }
+        }
+        final int i = SAD_SPEEDUP_SAMPLES - sadSpeedupSamplesLeft;
+        sadBatchedSearchNs[i] = batchedEndNs - batchedStartNs;
+        sadLegacySearchNs[i] = legacyEndNs - legacyStartNs;
+        if (--sadSpeedupSamplesLeft == 0) {
+            Statistics batchedStats = new Statistics(sadBatchedSearchNs), legacyStats = new Statistics(sadLegacySearchNs);
+            final double batchedMedian = batchedStats.median(), legacyMedian = legacyStats.median();
+            log.info(String.format("SAD full search over %d searches: batched mean %.1fus (median %.1fus), original mean %.1fus (median %.1fus); median speedup %.2fx; %d mismatched distances",
+                    SAD_SPEEDUP_SAMPLES, batchedStats.getMean() * 1e-3, batchedMedian * 1e-3, legacyStats.getMean() * 1e-3, legacyMedian * 1e-3,
+                    legacyMedian / batchedMedian, sadSpeedupMismatchCount));
+        }
+    }
+
     private class Statistics {
 
         double[] data;
@@ -2718,6 +2828,21 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         putBoolean("showSlices", showSlices);
     }
 
+    /**
+     * @return the batchedSadEnabled
+     */
+    public boolean isBatchedSadEnabled() {
+        return batchedSadEnabled;
+    }
+
+    /**
+     * @param batchedSadEnabled the batchedSadEnabled to set
+     */
+    synchronized public void setBatchedSadEnabled(boolean batchedSadEnabled) {
+        this.batchedSadEnabled = batchedSadEnabled;
+        putBoolean("batchedSadEnabled", batchedSadEnabled);
+    }
+
     synchronized public void setOutputSearchErrorInfo(boolean outputSearchErrorInfo) {
         this.outputSearchErrorInfo = outputSearchErrorInfo;
         if (!outputSearchErrorInfo) {
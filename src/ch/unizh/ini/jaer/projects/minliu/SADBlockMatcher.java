@@ -0,0 +1,198 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ch.unizh.ini.jaer.projects.minliu;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batched sum of absolute differences (SAD) block matching for
+ * {@link PatchMatchFlow}.
+ * <p>
+ * The reference block from the current slice is copied once per search into a
+ * flat array together with a 0/1 mask of its nonzero pixels, so that the
+ * reference pixel count is computed only once and each candidate offset only
+ * has to walk the past slice rows. The per pixel counters are computed
+ * without branches. All candidates of a full search are evaluated by
+ * {@link #evaluateAll}, split over rows of candidates on the common fork-join
+ * pool when the search is large enough.
+ * <p>
+ * The matcher only produces the integer counts; {@link PatchMatchFlow} turns
+ * them into the normalized distance exactly as its per candidate sadDistance
+ * does, so the resulting flow is identical.
+ */
+public class SADBlockMatcher {
+
+    /**
+     * Full searches with fewer pixel comparisons than this run on the calling
+     * thread
+     */
+    public static final int MIN_PARALLEL_PIXEL_COMPARISONS = 1 << 16;
+
+    private int[] ref = new int[0]; // reference block, row by row
+    private int[] refNonZero = new int[0]; // 1 where ref!=0
+    private int refValidPixNum = 0;
+    private int x0, y0, blockDim; // first pixel and size of reference block
+
+    /**
+     * Results of the last {@link #evaluate} call
+     */
+    int sumDist, validPixNumPrevSlice, nonZeroMatchCount;
+    private final int[] single = new int[3];
+
+    /**
+     * Results of the last {@link #evaluateAll}, indexed by
+     * candidate i*n+j for offset (dx0+i,dy0+j)
+     */
+    int[] sumDists = new int[0], validPixNumsPrevSlice = new int[0], nonZeroMatchCounts = new int[0];
+
+    // the present full search, for the tasks
+    private byte[][] prev;
+    private int dx0, dy0, n;
+
+    /**
+     * Copies the reference block of radius r centered on x,y from the current
+     * slice.
+     *
+     * @param cur the current slice at the scale of the search
+     * @param x block center x in the subsampled space of cur
+     * @param y block center y
+     * @param r block radius
+     */
+    public void setReference(final byte[][] cur, final int x, final int y, final int r) {
+        x0 = x - r;
+        y0 = y - r;
+        blockDim = (2 * r) + 1;
+        final int area = blockDim * blockDim;
+        if (ref.length < area) {
+            ref = new int[area];
+            refNonZero = new int[area];
+        }
+        int p = 0, valid = 0;
+        for (int xx = 0; xx < blockDim; xx++) {
+            final byte[] row = cur[x0 + xx];
+            for (int yy = 0; yy < blockDim; yy++) {
+                final int v = row[y0 + yy];
+                final int nz = (v | -v) >>> 31;
+                ref[p] = v;
+                refNonZero[p] = nz;
+                valid += nz;
+                p++;
+            }
+        }
+        refValidPixNum = valid;
+    }
+
+    /**
+     * @return the number of nonzero pixels in the reference block
+     */
+    public int getRefValidPixNum() {
+        return refValidPixNum;
+    }
+
+    /**
+     * Compares the reference block with the block at offset dx,dy in the past
+     * slice. The counts are left in sumDist, validPixNumPrevSlice and
+     * nonZeroMatchCount.
+     *
+     * @param prevSlice the past slice at the scale of the search
+     * @param dx offset of the past block in the subsampled space
+     * @param dy
+     */
+    public void evaluate(final byte[][] prevSlice, final int dx, final int dy) {
+        compare(prevSlice, dx, dy, single, single, single, 0, 1, 2);
+        sumDist = single[0];
+        validPixNumPrevSlice = single[1];
+        nonZeroMatchCount = single[2];
+    }
+
+    /**
+     * Compares the reference block with all n*n past blocks at offsets
+     * dx0..dx0+n-1, dy0..dy0+n-1. Results are left in sumDists,
+     * validPixNumsPrevSlice and nonZeroMatchCounts.
+     *
+     * @param prevSlice the past slice at the scale of the search
+     * @param dx0 the first x offset
+     * @param dy0 the first y offset
+     * @param n the number of offsets in x and y
+     */
+    public void evaluateAll(final byte[][] prevSlice, final int dx0, final int dy0, final int n) {
+        if (sumDists.length < n * n) {
+            sumDists = new int[n * n];
+            validPixNumsPrevSlice = new int[n * n];
+            nonZeroMatchCounts = new int[n * n];
+        }
+        this.prev = prevSlice;
+        this.dx0 = dx0;
+        this.dy0 = dy0;
+        this.n = n;
+        if ((long) n * n * blockDim * blockDim < MIN_PARALLEL_PIXEL_COMPARISONS || n < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            evaluateRows(0, n);
+        } else {
+            ForkJoinPool.commonPool().invoke(new EvaluateTask(0, n));
+        }
+        this.prev = null;
+    }
+
+    private void evaluateRows(final int i0, final int i1) {
+        for (int i = i0; i < i1; i++) {
+            for (int j = 0; j < n; j++) {
+                final int k = (i * n) + j;
+                compare(prev, dx0 + i, dy0 + j, sumDists, validPixNumsPrevSlice, nonZeroMatchCounts, k, k, k);
+            }
+        }
+    }
+
+    /**
+     * Compares one candidate block and stores the sum of absolute differences,
+     * the number of nonzero past pixels and the number of pixels nonzero in
+     * both blocks to the given arrays and indices.
+     */
+    private void compare(final byte[][] prevSlice, final int dx, final int dy,
+            final int[] sums, final int[] valids, final int[] matches, final int ks, final int kv, final int km) {
+        final int[] rv = ref, rnz = refNonZero;
+        final int bd = blockDim, py0 = y0 + dy;
+        int sum = 0, validPrev = 0, match = 0, p = 0;
+        for (int xx = 0; xx < bd; xx++) {
+            final byte[] row = prevSlice[x0 + xx + dx];
+            for (int yy = 0; yy < bd; yy++, p++) {
+                final int pv = row[py0 + yy];
+                final int d = rv[p] - pv;
+                final int sign = d >> 31;
+                sum += (d ^ sign) - sign;
+                final int nz = (pv | -pv) >>> 31;
+                validPrev += nz;
+                match += nz & rnz[p];
+            }
+        }
+        sums[ks] = sum;
+        valids[kv] = validPrev;
+        matches[km] = match;
+    }
+
+    /**
+     * Splits the candidate rows in halves
+     */
+    private class EvaluateTask extends RecursiveAction {
+
+        final int lo, hi;
+
+        EvaluateTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                final int mid = (lo + hi) >>> 1;
+                invokeAll(new EvaluateTask(lo, mid), new EvaluateTask(mid, hi));
+            } else {
+                evaluateRows(lo, hi);
+            }
+        }
+    }
+}
@@ -72,6 +72,7 @@ public abstract class AbstractDavisCNN {
     protected long startProcessingTimeNs = 0;
     protected boolean softMaxOutput = false;
     protected boolean zeroPadding = false; // tobi changed to make default so that roshambo just runs out of box
+    protected boolean gemmConvolutionEnabled = true; // compute conv layers as im2col matrix multiply, used by DavisCNNPureJava
     protected EngineeringFormat engFmt = new EngineeringFormat();
     /**
      * This flag is set true once the network has run once. Some constants are
@@ -204,6 +205,24 @@ public abstract class AbstractDavisCNN {
         this.zeroPadding = zeroPadding;
     }
 
+    /**
+     * @return the gemmConvolutionEnabled
+     */
+    public boolean isGemmConvolutionEnabled() {
+        return gemmConvolutionEnabled;
+    }
+
+    /**
+     * Selects computing convolutional layers with the multithreaded
+     * {@link GemmConvolutionEngine} rather than one kernel at a time. Only
+     * used by {@link DavisCNNPureJava}.
+     *
+     * @param gemmConvolutionEnabled the gemmConvolutionEnabled to set
+     */
+    public void setGemmConvolutionEnabled(boolean gemmConvolutionEnabled) {
+        this.gemmConvolutionEnabled = gemmConvolutionEnabled;
+    }
+
     protected void checkActivationsFrame() {
         if (activationsFrame != null) {
             return;
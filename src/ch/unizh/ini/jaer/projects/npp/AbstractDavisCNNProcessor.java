@@ -92,6 +92,7 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
     public ImageDisplay inputImageDisplay;
     protected boolean softMaxOutput = getBoolean("softMaxOutput", true); // more reasonable output by setting true
     protected boolean zeroPadding = getBoolean("zeroPadding", false); // false for original nullhop and roshambo nets
+    protected boolean gemmConvolutionEnabled = getBoolean("gemmConvolutionEnabled", true);
     protected boolean normalizeDVSForZsNullhop = getBoolean("normalizeDVSForZsNullhop", false); // uses DvsFramer normalizeFrame method to normalize DVS histogram images and in addition it shifts the pixel values to be centered around zero with range -1 to +1
     protected int lastProcessedEventTimestamp = 0;
     protected String performanceString = null; // holds string representation of processing time
@@ -149,6 +150,7 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
         setPropertyTooltip(anal, "processAPSDVSFrames", "sends 2-channel APS and DVS frame input to CNN to process each time either APS or DVS frame is updated");
         setPropertyTooltip(anal, "processAPSDVSTogetherInAPSNet", "sends APS frames and DVS time slices to single convnet");
         setPropertyTooltip(anal, "zeroPadding", "CNN uses zero padding; must be set properly according to CNN to run CNN");
+        setPropertyTooltip(anal, "gemmConvolutionEnabled", "<html>pure java CNN computes convolutional layers as a matrix multiply (im2col+GEMM) split over all cores. <br>Disable to use the original single threaded kernel loops.");
         setPropertyTooltip(anal, "processingTimeLimitMs", "<html>time limit for processing packet in ms to process OF events (events still accumulate). <br> Set to 0 to disable. <p>Alternative to the system EventPacket timelimiter, which cannot be used here because we still need to accumulate and render the events");
         setPropertyTooltip(anal, "maxFrameAccumulationTimeToProcessMs", "maximum time in ms for accumulated DvsFrame to process it; set this to a value of e.g. 300ms to avoid processing DVS frames from very slow movements. Set to 0 to disable.");
         setPropertyTooltip(tf, "makeRGBFrames", "(TensorFlow only) Tells the CNN to make RGB input from grayscale DVS/APS frames; use it with a network configured for RGB input");
@@ -548,6 +550,7 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
                 }
                 apsDvsNet.setSoftMaxOutput(softMaxOutput); // must set manually since net doesn't know option kept here.
                 apsDvsNet.setZeroPadding(zeroPadding); // must set manually since net doesn't know option kept here.
+                apsDvsNet.setGemmConvolutionEnabled(gemmConvolutionEnabled);
                 dvsFramer.setFromNetwork(apsDvsNet);
             } else {
                 log.warning("file " + f + " does not exist");
@@ -997,6 +1000,25 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
         apsDvsNet.setZeroPadding(zeroPadding);
     }
 
+    /**
+     * @return the gemmConvolutionEnabled
+     */
+    public boolean isGemmConvolutionEnabled() {
+        return gemmConvolutionEnabled;
+    }
+
+    /**
+     * @param gemmConvolutionEnabled the gemmConvolutionEnabled to set
+     */
+    public void setGemmConvolutionEnabled(boolean gemmConvolutionEnabled) {
+        this.gemmConvolutionEnabled = gemmConvolutionEnabled;
+        putBoolean("gemmConvolutionEnabled", gemmConvolutionEnabled);
+        if (apsDvsNet == null) {
+            return;
+        }
+        apsDvsNet.setGemmConvolutionEnabled(gemmConvolutionEnabled);
+    }
+
     @Override
     public synchronized void setFilterEnabled(boolean yes) {
         super.setFilterEnabled(yes);
@@ -730,6 +730,12 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         private ImageDisplay[] activationDisplays = null;
         private ImageDisplay[][] kernelDisplays = null;
         private int warningCountMax = 10;
+        private float[][] newInputArray = null; // reused zero padded input for conv()
+        private boolean caffeNet = false; // set per frame, since testing the net type for each kernel sum of products is expensive
+        private final GemmConvolutionEngine gemmEngine = new GemmConvolutionEngine();
+        private float[] gemmPlanes = null, gemmWeights = null;
+        private float[] gemmWeightsPackedFrom = null; // the kernels that gemmWeights were packed from
+        private boolean gemmWeightsFlipped = false;
 
         private ActivationFunction activationFunction = ActivationFunction.Undefined; // default is the sigmoid, the only choice in DeepLearnToolbox
 
@@ -852,21 +858,82 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
                 Arrays.fill(activations, 0);  // clear the output, since results from inputMaps will be accumulated
             }
 
-            for (int inputMap = 0; inputMap < nInputMaps; inputMap++) { // for each inputMap
-                for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) { // for each kernel/outputMap
-                    conv(inputLayer, outputMap, inputMap);
+            caffeNet = "caffe_net".equals(getNettype());
+            if (isGemmConvolutionEnabled()) {
+                convGemm(inputLayer);
+            } else {
+                for (int inputMap = 0; inputMap < nInputMaps; inputMap++) { // for each inputMap
+                    for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) { // for each kernel/outputMap
+                        conv(inputLayer, outputMap, inputMap);
+                    }
                 }
             }
 
             applyBiasAndNonlinearity();
         }
 
+        /**
+         * Computes the same convolutions as conv() for all input and output
+         * maps at once with the {@link GemmConvolutionEngine}. The input maps
+         * are copied to planes that hold exactly what conv() reads: the input
+         * maps for valid convolution, or the zero padded newInputArray for
+         * zero padding.
+         *
+         * @param inputLayer the input to this layer
+         */
+        private void convGemm(Layer inputLayer) {
+            final int planeDim = zeroPadding ? inputMapDim + (2 * halfKernelDim) : inputMapDim;
+            final int outputDim = zeroPadding ? inputMapDim : inputMapDim - (2 * halfKernelDim); // as the loops of conv()
+            if (outputDim <= 0) {
+                return;
+            }
+            final int planeLength = planeDim * planeDim;
+            if ((gemmPlanes == null) || (gemmPlanes.length != nInputMaps * planeLength)) {
+                gemmPlanes = new float[nInputMaps * planeLength];
+            }
+            for (int inputMap = 0; inputMap < nInputMaps; inputMap++) {
+                final int plane = inputMap * planeLength;
+                if (zeroPadding) {
+                    Arrays.fill(gemmPlanes, plane, plane + planeLength, 0);
+                    for (int xi = halfKernelDim; xi <= inputMapDim - halfKernelDim; xi++) { // same region as conv()
+                        for (int yi = halfKernelDim; yi <= inputMapDim - halfKernelDim; yi++) {
+                            gemmPlanes[plane + (planeDim * xi) + yi] = inputLayer.a(inputMap, xi - halfKernelDim, yi - halfKernelDim);
+                        }
+                    }
+                } else {
+                    for (int x = 0; x < inputMapDim; x++) {
+                        for (int y = 0; y < inputMapDim; y++) {
+                            gemmPlanes[plane + (planeDim * x) + y] = inputLayer.a(inputMap, x, y);
+                        }
+                    }
+                }
+            }
+            // convsingle() flips the kernel except for caffe nets; convsingle_zp() never does
+            final boolean flipped = !zeroPadding && !caffeNet;
+            if ((gemmWeights == null) || (gemmWeightsPackedFrom != kernels) || (gemmWeightsFlipped != flipped)) {
+                final int kd1 = kernelDim - 1;
+                gemmWeights = GemmConvolutionEngine.packWeights(kernels, nInputMaps, nOutputMaps, kernelDim,
+                        flipped ? (i, o, x, y) -> k(i, o, kd1 - x, kd1 - y) : (i, o, x, y) -> k(i, o, x, y), gemmWeights);
+                gemmWeightsPackedFrom = kernels;
+                gemmWeightsFlipped = flipped;
+            }
+            gemmEngine.convolve(gemmPlanes, nInputMaps, planeDim, kernelDim, gemmWeights, nOutputMaps, outputDim,
+                    activations, outputMapLength, outputMapDim);
+            operationCounter += 2 * nOutputMaps * nInputMaps * singleKernelLength * outputDim * outputDim;
+        }
+
         // convolves a given kernel over the inputMap and accumulates output to activations
         private void conv(Layer inputLayer, int outputMap, int inputMap) {
             int startx = halfKernelDim, starty = halfKernelDim, endx = inputMapDim - halfKernelDim, endy = inputMapDim - halfKernelDim;
-            float[][] newInputArray;
-            newInputArray = new float[inputMapDim + 2 * halfKernelDim][inputMapDim + 2 * halfKernelDim];
             if (zeroPadding) {
+                final int paddedDim = inputMapDim + 2 * halfKernelDim;
+                if ((newInputArray == null) || (newInputArray.length != paddedDim)) {
+                    newInputArray = new float[paddedDim][paddedDim];
+                } else {
+                    for (float[] row : newInputArray) {
+                        Arrays.fill(row, 0);
+                    }
+                }
                 startx = halfKernelDim;
                 starty = halfKernelDim;
                 endx = inputMapDim + halfKernelDim;
@@ -901,7 +968,7 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
             float sum = 0;
 //            int nterms=0;
             // march over kernel y and x
-            if (getNettype().equals("caffe_net")) {
+            if (caffeNet) {
                 for (int xx = 0; xx < kernelDim; xx++) { // kernel coordinate
                     int inx = (xincenter + xx) - halfKernelDim; // input coordinate
                     for (int yy = 0; yy < kernelDim; yy++) { //yy is kernel coordinate
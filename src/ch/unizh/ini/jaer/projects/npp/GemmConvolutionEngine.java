@@ -0,0 +1,205 @@
+package ch.unizh.ini.jaer.projects.npp;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes a convolutional layer of {@link DavisCNNPureJava} as a matrix
+ * multiply (im2col + GEMM) rather than by one kernel sum of products per
+ * output pixel.
+ * <p>
+ * The input maps are first copied by the layer into square (and possibly
+ * padded) input planes. The engine unrolls the planes into a column matrix
+ * with one row per (input map, kernel x, kernel y) and one column per output
+ * pixel, and multiplies it with the packed weight matrix, which has one row
+ * per output map. The multiply is blocked over rows and columns so that the
+ * active part of the column matrix stays in cache, and the output maps are
+ * split across the common fork-join pool. All scratch buffers are kept and
+ * reused for the next frame.
+ * <p>
+ * Planes and outputs are stored like the layer activations: plane i is at
+ * i*planeDim*planeDim, with x major, i.e. element (x,y) is at planeDim*x+y.
+ * Output pixel (x,y) is computed from the plane elements (x+kx,y+ky) for all
+ * kernel coordinates kx,ky.
+ */
+public class GemmConvolutionEngine {
+
+    /**
+     * Layers with fewer multiply-accumulates than this run on the calling
+     * thread, since splitting them costs more than it gains.
+     */
+    public static final long MIN_PARALLEL_MACS = 1 << 18;
+    /** Number of columns (output pixels) in a block of the multiply */
+    private static final int COLUMN_BLOCK = 256;
+    /** Number of rows of the column matrix in a block of the multiply */
+    private static final int ROW_BLOCK = 64;
+
+    private float[] columns = new float[0];
+    private float[] product = new float[0];
+
+    // the present problem, set by convolve() for the tasks
+    private float[] weights;
+    private int nOutputMaps, rowLength, nColumns;
+
+    /**
+     * Convolves the input planes with the packed weights.
+     *
+     * @param planes the input planes, nInputMaps planes of planeDim*planeDim
+     * @param nInputMaps the number of input maps
+     * @param planeDim the size of each plane
+     * @param kernelDim the size of the kernels
+     * @param weights the packed weights, see {@link #packWeights}
+     * @param nOutputMaps the number of output maps
+     * @param outputDim the number of output pixels computed in x and y
+     * @param output the output activations; output map o pixel (x,y) is
+     * written to output[o*outputMapLength+outputMapDim*x+y]
+     * @param outputMapLength the length of an output map in output
+     * @param outputMapDim the size of an output map in output, which may be
+     * larger than outputDim
+     */
+    public void convolve(final float[] planes, final int nInputMaps, final int planeDim, final int kernelDim,
+            final float[] weights, final int nOutputMaps, final int outputDim,
+            final float[] output, final int outputMapLength, final int outputMapDim) {
+        final int kk = kernelDim * kernelDim;
+        rowLength = nInputMaps * kk;
+        nColumns = outputDim * outputDim;
+        this.weights = weights;
+        this.nOutputMaps = nOutputMaps;
+        if (columns.length < rowLength * nColumns) {
+            columns = new float[rowLength * nColumns];
+        }
+        if (product.length < nOutputMaps * nColumns) {
+            product = new float[nOutputMaps * nColumns];
+        }
+        im2col(planes, nInputMaps, planeDim, kernelDim, outputDim);
+        final long macs = (long) nOutputMaps * rowLength * nColumns;
+        if (macs < MIN_PARALLEL_MACS || nOutputMaps < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            multiply(0, nOutputMaps);
+        } else {
+            ForkJoinPool.commonPool().invoke(new MultiplyTask(0, nOutputMaps));
+        }
+        // scatter the product to the output maps
+        for (int o = 0; o < nOutputMaps; o++) {
+            final int p = o * nColumns;
+            if (outputDim == outputMapDim) {
+                System.arraycopy(product, p, output, o * outputMapLength, nColumns);
+            } else {
+                for (int x = 0; x < outputDim; x++) {
+                    System.arraycopy(product, p + (outputDim * x), output, (o * outputMapLength) + (outputMapDim * x), outputDim);
+                }
+            }
+        }
+        this.weights = null;
+    }
+
+    /**
+     * Packs kernels into the weight matrix used by convolve, with one row of
+     * nInputMaps*kernelDim*kernelDim weights per output map.
+     *
+     * @param kernels the kernels of the layer
+     * @param nInputMaps the number of input maps
+     * @param nOutputMaps the number of output maps
+     * @param kernelDim the size of the kernels
+     * @param index gives the index into kernels of the weight for input map,
+     * output map and plane offsets kx,ky
+     * @param packed an array to reuse, or null
+     * @return the packed weights
+     */
+    public static float[] packWeights(final float[] kernels, final int nInputMaps, final int nOutputMaps, final int kernelDim,
+            final KernelIndex index, float[] packed) {
+        final int kk = kernelDim * kernelDim, rowLength = nInputMaps * kk;
+        if (packed == null || packed.length != nOutputMaps * rowLength) {
+            packed = new float[nOutputMaps * rowLength];
+        }
+        for (int o = 0; o < nOutputMaps; o++) {
+            for (int i = 0; i < nInputMaps; i++) {
+                for (int kx = 0; kx < kernelDim; kx++) {
+                    for (int ky = 0; ky < kernelDim; ky++) {
+                        packed[(o * rowLength) + (i * kk) + (kx * kernelDim) + ky] = kernels[index.k(i, o, kx, ky)];
+                    }
+                }
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Maps input map, output map and plane offset to the index of the weight
+     * in the kernels of a layer, including any flipping of the kernel.
+     */
+    public interface KernelIndex {
+
+        int k(int inputMap, int outputMap, int kx, int ky);
+    }
+
+    private void im2col(final float[] planes, final int nInputMaps, final int planeDim, final int kernelDim, final int outputDim) {
+        final int planeLength = planeDim * planeDim;
+        final float[] c = columns;
+        int row = 0;
+        for (int i = 0; i < nInputMaps; i++) {
+            final int plane = i * planeLength;
+            for (int kx = 0; kx < kernelDim; kx++) {
+                for (int ky = 0; ky < kernelDim; ky++) {
+                    int p = row * nColumns;
+                    for (int x = 0; x < outputDim; x++) {
+                        System.arraycopy(planes, plane + (planeDim * (x + kx)) + ky, c, p, outputDim);
+                        p += outputDim;
+                    }
+                    row++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the product rows of output maps o0 to o1-1, blocked over
+     * columns and rows of the column matrix.
+     */
+    private void multiply(final int o0, final int o1) {
+        final float[] w = weights, c = columns, out = product;
+        final int n = nColumns, rl = rowLength;
+        for (int o = o0; o < o1; o++) {
+            Arrays.fill(out, o * n, (o + 1) * n, 0);
+        }
+        for (int j0 = 0; j0 < n; j0 += COLUMN_BLOCK) {
+            final int j1 = Math.min(n, j0 + COLUMN_BLOCK);
+            for (int r0 = 0; r0 < rl; r0 += ROW_BLOCK) {
+                final int r1 = Math.min(rl, r0 + ROW_BLOCK);
+                for (int o = o0; o < o1; o++) {
+                    final int wo = o * rl, po = o * n;
+                    for (int r = r0; r < r1; r++) {
+                        final float a = w[wo + r];
+                        final int cr = r * n;
+                        for (int j = j0; j < j1; j++) {
+                            out[po + j] += a * c[cr + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the output maps in halves down to single maps.
+     */
+    private class MultiplyTask extends RecursiveAction {
+
+        final int lo, hi;
+
+        MultiplyTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                final int mid = (lo + hi) >>> 1;
+                invokeAll(new MultiplyTask(lo, mid), new MultiplyTask(mid, hi));
+            } else {
+                multiply(lo, hi);
+            }
+        }
+    }
+}
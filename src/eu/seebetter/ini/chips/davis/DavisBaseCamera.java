@@ -43,6 +43,7 @@ import net.sf.jaer.event.ApsDvsEvent;
 import net.sf.jaer.event.ApsDvsEvent.ColorFilter;
 import net.sf.jaer.event.ApsDvsEvent.ReadoutType;
 import net.sf.jaer.event.ApsDvsEventPacket;
+import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.OutputEventIterator;
 import net.sf.jaer.event.TypedEvent;
@@ -82,6 +83,7 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
 
     private int autoshotThresholdEvents = getPrefs().getInt("DavisBaseCamera.autoshotThresholdEvents", 0);
     private boolean showImageHistogram = getPrefs().getBoolean("DavisBaseCamera.showImageHistogram", false);
+    private boolean allocationFreeExtractionEnabled = getPrefs().getBoolean("DavisBaseCamera.allocationFreeExtractionEnabled", false);
     private float exposureMs;
     protected int exposureDurationUs;
     protected int frameExposureEndTimestampUs; // end of exposureControlRegister (first events of signal read)
@@ -175,6 +177,8 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
         davisMenu.add(new JMenuItem(new ToggleFrameCaptureDisplayAction()));
         davisMenu.add(new JSeparator());
         davisMenu.add(new JMenuItem(new ToggleHistogram()));
+        davisMenu.add(new JMenuItem(new ToggleAllocationFreeExtraction()));
+        davisMenu.add(new JMenuItem(new ToggleDirtyRegionRendering()));
         davisMenu.add(new JSeparator());
         davisMenu.add(new JMenuItem(new ToggleGlobalRollingShutter()));
         davisMenu.add(new JSeparator());
@@ -240,6 +244,31 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
         getPrefs().putBoolean("DavisBaseCamera.showImageHistogram", yes);
     }
 
+    /**
+     * Returns whether the extractor runs without allocating objects per
+     * packet: IMUSamples come from a pool owned by the extractor, the events
+     * that hold them are the reused events of the output packet, and runs of
+     * DVS addresses are decoded in bulk. Samples are reused after
+     * {@link DavisEventExtractor#IMU_SAMPLE_POOL_SIZE} later samples, so code
+     * that keeps IMUSamples for longer must copy them.
+     *
+     * @return true if allocation free extraction is enabled
+     */
+    public boolean isAllocationFreeExtractionEnabled() {
+        return allocationFreeExtractionEnabled;
+    }
+
+    /**
+     * Sets whether the extractor runs without allocating objects per packet.
+     *
+     * @param yes true to enable
+     * @see #isAllocationFreeExtractionEnabled()
+     */
+    public void setAllocationFreeExtractionEnabled(final boolean yes) {
+        allocationFreeExtractionEnabled = yes;
+        getPrefs().putBoolean("DavisBaseCamera.allocationFreeExtractionEnabled", yes);
+    }
+
     /**
      * Returns measured exposure time.
      *
@@ -431,6 +460,8 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
             final int n = in.getNumEvents(); // addresses.length;
             final int sx1 = getChip().getSizeX() - 1;
             final boolean rollingShutter = !getDavisConfig().isGlobalShutter();
+            final boolean allocationFree = isAllocationFreeExtractionEnabled();
+            imuSamplesInPacket = 0;
 
             final int[] datas = in.getAddresses();
             final int[] timestamps = in.getTimestamps();
@@ -448,6 +479,12 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
                 // events and still delivering frames
                 final int data = datas[i];
 
+                if (allocationFree && (incompleteIMUSampleException == null)
+                        && ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_DVS)) {
+                    i = extractDvsRun(in, i, sx1) - 1; // decode the whole run of DVS events starting here
+                    continue;
+                }
+
                 // IMU samples are handled using ApsDvsEvents by having a field in each ApsDvsEvent that holds a possible ImuSample.
                 // The ImuSample is newed for each new sample. This is not super efficient but only occurs at max 1kHz.
                 // It does mean that the IMUSamples will build up in the ApsDvsEvent objects (which are reused), so the IMUSample
@@ -456,14 +493,11 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
                     if (IMUSample.extractSampleTypeCode(data) == 0) { // / only start getting an IMUSample at code 0,
                         // the first sample type
                         try {
-                            final IMUSample possibleSample = IMUSample.constructFromAEPacketRaw(in, i, incompleteIMUSampleException);
+                            final IMUSample possibleSample = constructImuSample(in, i, allocationFree);
                             i += IMUSample.SIZE_EVENTS - 1;
                             incompleteIMUSampleException = null;
                             imuSample = possibleSample; // asking for sample from AEChip now gives this value
-                            final ApsDvsEvent imuEvent = new ApsDvsEvent(); // this davis event holds the IMUSample
-                            imuEvent.setTimestamp(imuSample.getTimestampUs());
-                            imuEvent.setImuSample(imuSample);
-                            outItr.writeToNextOutput(imuEvent); // also write the event out to the next output event
+                            writeImuEvent(outItr, imuSample, allocationFree); // also write the event out to the next output event
                             // System.out.println("lastImu dt="+(imuSample.timestamp-lastImuTs));
                             // lastImuTs=imuSample.timestamp;
                             continue;
@@ -605,6 +639,125 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
             return e;
         }
 
+        /**
+         * Decodes the run of DVS addresses that starts at raw event i directly
+         * into the events of the output packet, without the per event type
+         * dispatch of extractPacket. The result is the same as decoding the
+         * events one by one.
+         *
+         * @param in the raw packet
+         * @param start the index of the first DVS event of the run
+         * @param sx1 the chip size in x minus one, for flipping x
+         * @return the index of the first raw event after the run
+         */
+        protected int extractDvsRun(final AEPacketRaw in, final int start, final int sx1) {
+            final int[] datas = in.getAddresses();
+            final int[] timestamps = in.getTimestamps();
+            final int n = in.getNumEvents();
+            int end = start;
+            while ((end < n) && ((datas[end] & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_DVS)) {
+                end++;
+            }
+            final int size = out.getSize(), needed = size + (end - start);
+            if (needed > out.elementData.length) {
+                out.allocate(Math.max(needed, 2 * out.elementData.length)); // grow geometrically like nextOutput, so a growing packet is not copied for every run
+            }
+            final BasicEvent[] events = out.elementData;
+            int k = size;
+            for (int i = start; i < end; i++) {
+                final int data = datas[i];
+                final ApsDvsEvent e = (ApsDvsEvent) events[k++];
+                e.reset();
+                e.setReadoutType(ReadoutType.DVS);
+                e.setSpecial((data & DavisChip.EXTERNAL_INPUT_EVENT_ADDR) != 0);
+                e.address = data;
+                e.timestamp = timestamps[i];
+                final boolean on = (data & DavisChip.POLMASK) == DavisChip.POLMASK;
+                e.polarity = on ? ApsDvsEvent.Polarity.On : ApsDvsEvent.Polarity.Off;
+                e.type = (byte) (on ? 1 : 0);
+                e.x = (short) (sx1 - ((data & DavisChip.XMASK) >>> DavisChip.XSHIFT));
+                e.y = (short) ((data & DavisChip.YMASK) >>> DavisChip.YSHIFT);
+            }
+            out.setSize(k);
+            autoshotEventsSinceLastShot += end - start;
+            return end;
+        }
+
+        /**
+         * Number of IMUSamples in the pool used for allocation free
+         * extraction. A sample is reused only after this many later samples,
+         * i.e. after about a second at the usual IMU sample rate of 1 kHz. The
+         * pool grows if a single packet holds more samples.
+         */
+        public static final int IMU_SAMPLE_POOL_SIZE = 1024;
+        private IMUSample[] imuSamplePool = null;
+        private int imuSamplePoolIndex = 0;
+        /**
+         * Number of pooled samples taken in the present packet; reset by
+         * extractPacket.
+         */
+        protected int imuSamplesInPacket = 0;
+
+        /**
+         * Constructs the IMUSample that starts at raw event i, completing a
+         * partial sample from the previous packet if there is one.
+         *
+         * @param in the raw packet
+         * @param i the index of the first IMU raw event of the sample
+         * @param allocationFree true to take the sample from the pool rather
+         * than constructing a new one
+         * @return the sample
+         * @throws IMUSample.IncompleteIMUSampleException if the packet ends
+         * before the sample is complete
+         * @throws IMUSample.BadIMUDataException if the sample holds bad data
+         */
+        protected IMUSample constructImuSample(final AEPacketRaw in, final int i, final boolean allocationFree)
+                throws IMUSample.IncompleteIMUSampleException, IMUSample.BadIMUDataException {
+            if (!allocationFree || (incompleteIMUSampleException != null)) {
+                return IMUSample.constructFromAEPacketRaw(in, i, incompleteIMUSampleException);
+            }
+            return IMUSample.constructFromAEPacketRaw(in, i, null, nextPooledImuSample());
+        }
+
+        private IMUSample nextPooledImuSample() {
+            if (imuSamplePool == null) {
+                imuSamplePool = new IMUSample[IMU_SAMPLE_POOL_SIZE];
+            }
+            if (++imuSamplesInPacket > imuSamplePool.length) {
+                // more samples in this packet than in the pool; grow it rather than overwrite samples of this packet
+                final IMUSample[] old = imuSamplePool;
+                imuSamplePool = new IMUSample[old.length * 2];
+                System.arraycopy(old, imuSamplePoolIndex, imuSamplePool, 0, old.length - imuSamplePoolIndex);
+                System.arraycopy(old, 0, imuSamplePool, old.length - imuSamplePoolIndex, imuSamplePoolIndex);
+                imuSamplePoolIndex = old.length;
+                Chip.log.info("enlarged IMUSample pool to " + imuSamplePool.length + " samples");
+            }
+            IMUSample s = imuSamplePool[imuSamplePoolIndex];
+            if (s == null) {
+                s = new IMUSample(0, new short[IMUSample.SIZE_EVENTS]);
+                imuSamplePool[imuSamplePoolIndex] = s;
+            }
+            imuSamplePoolIndex = (imuSamplePoolIndex + 1) % imuSamplePool.length;
+            return s;
+        }
+
+        /**
+         * Writes the event that holds an IMUSample to the output packet.
+         *
+         * @param outItr the output iterator
+         * @param sample the sample
+         * @param allocationFree true to reuse the next event of the output
+         * packet rather than constructing a new event
+         */
+        protected void writeImuEvent(final OutputEventIterator outItr, final IMUSample sample, final boolean allocationFree) {
+            final ApsDvsEvent imuEvent = allocationFree ? nextApsDvsEvent(outItr) : new ApsDvsEvent(); // this davis event holds the IMUSample
+            imuEvent.setTimestamp(sample.getTimestampUs());
+            imuEvent.setImuSample(sample);
+            if (!allocationFree) {
+                outItr.writeToNextOutput(imuEvent);
+            }
+        }
+
         /**
          * creates a special ApsDvsEvent in output packet just for flagging APS
          * frame markers such as start of frame, reset, end of frame.
@@ -777,6 +930,8 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
             final int n = in.getNumEvents(); // addresses.length;
             final int sx1 = ((isDVSQuarterOfAPS) ? (getChip().getSizeX() / 2) : (getChip().getSizeX())) - 1;
             final boolean rollingShutter = !getDavisConfig().isGlobalShutter();
+            final boolean allocationFree = isAllocationFreeExtractionEnabled();
+            imuSamplesInPacket = 0;
 
             final int[] datas = in.getAddresses();
             final int[] timestamps = in.getTimestamps();
@@ -796,14 +951,11 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
                     if (IMUSample.extractSampleTypeCode(data) == 0) { // / only start getting an IMUSample at code 0,
                         // the first sample type
                         try {
-                            final IMUSample possibleSample = IMUSample.constructFromAEPacketRaw(in, i, incompleteIMUSampleException);
+                            final IMUSample possibleSample = constructImuSample(in, i, allocationFree);
                             i += IMUSample.SIZE_EVENTS - 1;
                             incompleteIMUSampleException = null;
                             imuSample = possibleSample; // asking for sample from AEChip now gives this value
-                            final ApsDvsEvent imuEvent = new ApsDvsEvent(); // this davis event holds the IMUSample
-                            imuEvent.setTimestamp(imuSample.getTimestampUs());
-                            imuEvent.setImuSample(imuSample);
-                            outItr.writeToNextOutput(imuEvent); // also write the event out to the next output event
+                            writeImuEvent(outItr, imuSample, allocationFree); // also write the event out to the next output event
                             // System.out.println("lastImu dt="+(imuSample.timestamp-lastImuTs));
                             // lastImuTs=imuSample.timestamp;
                             continue;
@@ -1480,6 +1632,44 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
         }
     }
 
+    final public class ToggleAllocationFreeExtraction extends DavisMenuAction {
+
+        public ToggleAllocationFreeExtraction() {
+            super("Toggle allocation free extraction",
+                    "<html>Toggles whether events are extracted without allocating objects, which avoids GC pauses at high event rates."
+                    + "<p>IMU samples are then reused, so filters that keep them for long must copy them.",
+                    "ToggleAllocationFreeExtraction");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            setAllocationFreeExtractionEnabled(!isAllocationFreeExtractionEnabled());
+            log.info("allocationFreeExtractionEnabled = " + isAllocationFreeExtractionEnabled());
+            putValue(Action.SELECTED_KEY, true);
+        }
+    }
+
+    final public class ToggleDirtyRegionRendering extends DavisMenuAction {
+
+        public ToggleDirtyRegionRendering() {
+            super("Toggle dirty region rendering",
+                    "<html>Toggles whether only the changed regions of the rendered maps are reset and uploaded to the display as 8-bit textures."
+                    + "<p>Reduces rendering bandwidth at high event rates.",
+                    "ToggleDirtyRegionRendering");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!(getRenderer() instanceof DavisRenderer)) {
+                return;
+            }
+            final DavisRenderer r = (DavisRenderer) getRenderer();
+            r.setDirtyRegionRenderingEnabled(!r.isDirtyRegionRenderingEnabled());
+            log.info("dirtyRegionRenderingEnabled = " + r.isDirtyRegionRenderingEnabled());
+            putValue(Action.SELECTED_KEY, true);
+        }
+    }
+
     /**
      * Adds event capture/display option
      */
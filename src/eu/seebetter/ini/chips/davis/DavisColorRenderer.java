@@ -150,6 +150,9 @@ public class DavisColorRenderer extends DavisRenderer {
 		if ((index < 0) || (index >= map.length)) {
 			return;
 		}
+		if (dirtyRegionRenderingEnabled) {
+			markDvsEventsMapDirty(index);
+		}
 
 		// Support expanding one DVS event to cover a four pixel box, resulting in
 		// an expansion to four pixels, for visualization without holes.
@@ -160,6 +163,11 @@ public class DavisColorRenderer extends DavisRenderer {
 			idx1 = getPixMapIndex(e.x + 1, e.y);
 			idx2 = getPixMapIndex(e.x, e.y + 1);
 			idx3 = getPixMapIndex(e.x + 1, e.y + 1);
+			if (dirtyRegionRenderingEnabled) {
+				markDvsEventsMapDirty(idx1);
+				markDvsEventsMapDirty(idx2);
+				markDvsEventsMapDirty(idx3);
+			}
 		}
 
 		// Change colors of DVS if SeparatyAPSByColor is selected: instead of Red/Green
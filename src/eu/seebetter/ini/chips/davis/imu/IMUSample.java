@@ -243,11 +243,34 @@ public class IMUSample {
      */
     public static IMUSample constructFromAEPacketRaw(final AEPacketRaw packet, final int start,
             final IncompleteIMUSampleException previousException) throws IncompleteIMUSampleException, BadIMUDataException {
+        return constructFromAEPacketRaw(packet, start, previousException, null);
+    }
+
+    /**
+     * Like {@link #constructFromAEPacketRaw(AEPacketRaw, int, IncompleteIMUSampleException)},
+     * but fills in an existing sample rather than a new one, so that
+     * extractors can reuse samples from a pool.
+     *
+     * @param packet the packet.
+     * @param start the starting index where the sample starts.
+     * @param previousException null ordinarily, or a previous exception if the
+     * sample was not completed.
+     * @param reuse the sample to fill in if previousException is null, or null
+     * to construct a new sample
+     * @return the sample
+     * @throws IncompleteIMUSampleException if the packet is too short to
+     * contain the entire sample
+     * @throws BadIMUDataException if bogus data was detected in the sample
+     */
+    public static IMUSample constructFromAEPacketRaw(final AEPacketRaw packet, final int start,
+            final IncompleteIMUSampleException previousException, final IMUSample reuse) throws IncompleteIMUSampleException, BadIMUDataException {
         IMUSample sample;
         int startingCode = 0;
         if (previousException != null) {
             sample = previousException.partialSample;
             startingCode = previousException.nextCode;
+        } else if (reuse != null) {
+            sample = reuse;
         } else {
             sample = new IMUSample();
         }
@@ -0,0 +1,415 @@
+package net.sf.jaer.aemonitor;
+
+import java.util.logging.Logger;
+
+/**
+ * Merges the raw event streams from several AEMonitorInterfaces (e.g. the
+ * cameras of a stereo pair or multi camera rig) into a single stream ordered
+ * by timestamp.
+ * <p>
+ * The events of each packet added with {@link #addPacket} are copied into a
+ * buffer per stream, so the source packets can be reused by their drivers
+ * right away. {@link #merge} writes the events that are safe to release in
+ * timestamp order, using a binary heap of the streams ordered by the
+ * timestamp of their oldest buffered event. An event with timestamp t is
+ * released when every stream that has delivered events has delivered an event
+ * at least as late as t, or when t is more than the lateness bound older than
+ * the latest timestamp of any stream. The lateness bound thus limits how long
+ * events are held back for a stream that is silent or lagging; events that
+ * arrive later than that are counted as late, and either dropped or released
+ * out of order by the next merge.
+ * <p>
+ * A jump of a stream's timestamps by more than
+ * {@link #TIMESTAMP_RESET_DT_US} (a timestamp wrap or a reset of only some of
+ * the devices) discards the buffered events, as the ordering cannot be
+ * recovered.
+ * <p>
+ * The merger is not thread safe; the aggregating interface calls it from its
+ * synchronized acquireAvailableEventsFromDriver.
+ */
+public class AEStreamMerger {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    /**
+     * Default lateness bound in us
+     */
+    public static final int DEFAULT_LATENESS_BOUND_US = 20000;
+
+    /**
+     * A timestamp that differs by this much from the latest timestamp of all
+     * streams discards the buffered events and restarts the merge
+     */
+    public static final long TIMESTAMP_RESET_DT_US = 1L << 30;
+
+    /**
+     * The buffered events of one input stream, sorted by timestamp, from
+     * index head up to tail
+     */
+    private static final class Stream {
+
+        int[] timestamps = new int[1024];
+        int[] addresses = new int[1024];
+        int head = 0, tail = 0;
+        boolean received = false;
+        int lastTimestamp = 0; // latest timestamp received
+
+        int size() {
+            return tail - head;
+        }
+
+        void clear() {
+            head = 0;
+            tail = 0;
+            received = false;
+        }
+
+        /**
+         * Makes room for n more events at the tail
+         */
+        void ensureRoom(int n) {
+            if (tail + n <= timestamps.length) {
+                return;
+            }
+            final int size = size();
+            if (size + n > timestamps.length) {
+                final int cap = Math.max(2 * timestamps.length, size + n);
+                int[] t = new int[cap], a = new int[cap];
+                System.arraycopy(timestamps, head, t, 0, size);
+                System.arraycopy(addresses, head, a, 0, size);
+                timestamps = t;
+                addresses = a;
+            } else {
+                System.arraycopy(timestamps, head, timestamps, 0, size);
+                System.arraycopy(addresses, head, addresses, 0, size);
+            }
+            head = 0;
+            tail = size;
+        }
+
+        /**
+         * Adds an event, keeping the buffer sorted; events are normally in
+         * order so this is an append
+         */
+        void add(int timestamp, int address) {
+            int i = tail++;
+            while (i > head && timestamps[i - 1] > timestamp) {
+                timestamps[i] = timestamps[i - 1];
+                addresses[i] = addresses[i - 1];
+                i--;
+            }
+            timestamps[i] = timestamp;
+            addresses[i] = address;
+        }
+    }
+
+    private final Stream[] streams;
+    private final int[] heap; // stream indexes, the stream with the earliest buffered event first
+    private int latenessBoundUs = DEFAULT_LATENESS_BOUND_US;
+    private boolean dropLateEvents = false;
+    private boolean anyReceived = false, anyReleased = false;
+    private int maxTimestamp = 0; // latest timestamp received from any stream
+    private int lastReleasedTimestamp = 0;
+    private long numMergedEvents = 0, numLateEvents = 0, numDroppedEvents = 0, numTimestampResets = 0;
+
+    /**
+     * Constructs a merger with the default lateness bound.
+     *
+     * @param numStreams the number of input streams
+     */
+    public AEStreamMerger(int numStreams) {
+        this(numStreams, DEFAULT_LATENESS_BOUND_US);
+    }
+
+    /**
+     * Constructs a merger.
+     *
+     * @param numStreams the number of input streams
+     * @param latenessBoundUs the lateness bound in us
+     */
+    public AEStreamMerger(int numStreams, int latenessBoundUs) {
+        if (numStreams < 1) {
+            throw new IllegalArgumentException("need at least one stream, got " + numStreams);
+        }
+        streams = new Stream[numStreams];
+        for (int i = 0; i < numStreams; i++) {
+            streams[i] = new Stream();
+        }
+        heap = new int[numStreams];
+        setLatenessBoundUs(latenessBoundUs);
+    }
+
+    /**
+     * Copies the events of a packet into the buffer of a stream.
+     *
+     * @param stream the stream index
+     * @param packet the packet, can be null
+     */
+    public void addPacket(int stream, AEPacketRaw packet) {
+        if (packet == null || packet.getNumEvents() == 0) {
+            return;
+        }
+        final Stream s = streams[stream];
+        final int n = packet.getNumEvents();
+        final int[] ts = packet.getTimestamps(), addr = packet.getAddresses();
+        s.ensureRoom(n);
+        for (int i = 0; i < n; i++) {
+            final int t = ts[i];
+            if (anyReceived && Math.abs((long) t - maxTimestamp) > TIMESTAMP_RESET_DT_US) {
+                log.warning(String.format("timestamp %,d of stream %d differs by more than %,d us from latest timestamp %,d, discarding %,d buffered events",
+                        t, stream, TIMESTAMP_RESET_DT_US, maxTimestamp, getNumPendingEvents()));
+                numTimestampResets++;
+                clear();
+                s.ensureRoom(n - i);
+            }
+            if (anyReleased && t < lastReleasedTimestamp) {
+                numLateEvents++;
+                if (dropLateEvents) {
+                    numDroppedEvents++;
+                    continue;
+                }
+            }
+            s.add(t, addr[i]);
+            if (!s.received || t > s.lastTimestamp) {
+                s.lastTimestamp = t;
+            }
+            s.received = true;
+            if (!anyReceived || t > maxTimestamp) {
+                maxTimestamp = t;
+            }
+            anyReceived = true;
+        }
+    }
+
+    /**
+     * Writes the buffered events that are safe to release to a packet, in
+     * timestamp order.
+     *
+     * @param out the packet, which is cleared first
+     * @return the number of events written
+     */
+    public int merge(AEPacketRaw out) {
+        if (!anyReceived) {
+            out.clear();
+            return 0;
+        }
+        long watermark = (long) maxTimestamp - latenessBoundUs;
+        long minLast = Long.MAX_VALUE;
+        for (Stream s : streams) {
+            if (s.received && s.lastTimestamp < minLast) {
+                minLast = s.lastTimestamp;
+            }
+        }
+        if (minLast > watermark) {
+            watermark = minLast;
+        }
+        return release(out, watermark);
+    }
+
+    /**
+     * Writes all buffered events to a packet in timestamp order, e.g. when
+     * the devices are closed or ordering is turned off.
+     *
+     * @param out the packet, which is cleared first
+     * @return the number of events written
+     */
+    public int flush(AEPacketRaw out) {
+        return release(out, Long.MAX_VALUE);
+    }
+
+    private int release(AEPacketRaw out, long watermark) {
+        out.clear();
+        final int pending = getNumPendingEvents();
+        if (pending == 0) {
+            return 0;
+        }
+        out.ensureCapacity(pending);
+        final int[] outTs = out.getTimestamps(), outAddr = out.getAddresses();
+        int heapSize = 0;
+        for (int i = 0; i < streams.length; i++) {
+            if (streams[i].size() > 0) {
+                heap[heapSize++] = i;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i, heapSize);
+        }
+        int count = 0;
+        while (heapSize > 0) {
+            final Stream s = streams[heap[0]];
+            final int t = s.timestamps[s.head];
+            if (t > watermark) {
+                break;
+            }
+            outTs[count] = t;
+            outAddr[count++] = s.addresses[s.head++];
+            if (s.size() == 0) {
+                s.head = 0;
+                s.tail = 0;
+                heap[0] = heap[--heapSize];
+            }
+            if (heapSize > 0) {
+                siftDown(0, heapSize);
+            }
+        }
+        out.setNumEvents(count);
+        if (count > 0) {
+            lastReleasedTimestamp = outTs[count - 1];
+            anyReleased = true;
+            numMergedEvents += count;
+        }
+        return count;
+    }
+
+    /**
+     * Restores the heap order below position i; ties go to the lower stream
+     * index
+     */
+    private void siftDown(int i, final int heapSize) {
+        final int stream = heap[i];
+        final int t = streams[stream].timestamps[streams[stream].head];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && earlier(heap[child + 1], heap[child])) {
+                child++;
+            }
+            final Stream c = streams[heap[child]];
+            final int ct = c.timestamps[c.head];
+            if (ct > t || (ct == t && heap[child] > stream)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = stream;
+    }
+
+    private boolean earlier(int a, int b) {
+        final int ta = streams[a].timestamps[streams[a].head], tb = streams[b].timestamps[streams[b].head];
+        return ta < tb || (ta == tb && a < b);
+    }
+
+    /**
+     * Discards all buffered events, e.g. after a timestamp reset of the
+     * devices. The counters are not reset.
+     */
+    public void clear() {
+        for (Stream s : streams) {
+            s.clear();
+        }
+        anyReceived = false;
+        anyReleased = false;
+    }
+
+    /**
+     * Resets the event counters
+     */
+    public void resetCounters() {
+        numMergedEvents = 0;
+        numLateEvents = 0;
+        numDroppedEvents = 0;
+        numTimestampResets = 0;
+    }
+
+    /**
+     * @return the number of input streams
+     */
+    public int getNumStreams() {
+        return streams.length;
+    }
+
+    /**
+     * @return the total number of events buffered and not yet released
+     */
+    public int getNumPendingEvents() {
+        int n = 0;
+        for (Stream s : streams) {
+            n += s.size();
+        }
+        return n;
+    }
+
+    /**
+     * @param stream the stream index
+     * @return the number of events of the stream buffered and not yet
+     * released
+     */
+    public int getNumPendingEvents(int stream) {
+        return streams[stream].size();
+    }
+
+    /**
+     * @return the lateness bound in us
+     */
+    public int getLatenessBoundUs() {
+        return latenessBoundUs;
+    }
+
+    /**
+     * Sets how long events are held back waiting for earlier events from
+     * other streams. Larger values tolerate more jitter between the devices
+     * but add latency when a device is silent.
+     *
+     * @param latenessBoundUs the lateness bound in us, clipped to be &gt;=0
+     */
+    public void setLatenessBoundUs(int latenessBoundUs) {
+        this.latenessBoundUs = Math.max(0, latenessBoundUs);
+    }
+
+    /**
+     * @return true if events arriving after later events were released are
+     * dropped
+     */
+    public boolean isDropLateEvents() {
+        return dropLateEvents;
+    }
+
+    /**
+     * Sets whether late events are dropped, which keeps the output monotonic,
+     * or released out of order by the next merge.
+     *
+     * @param dropLateEvents true to drop late events
+     */
+    public void setDropLateEvents(boolean dropLateEvents) {
+        this.dropLateEvents = dropLateEvents;
+    }
+
+    /**
+     * @return the number of events released so far
+     */
+    public long getNumMergedEvents() {
+        return numMergedEvents;
+    }
+
+    /**
+     * @return the number of events that arrived earlier than the last
+     * released event, including those that were dropped
+     */
+    public long getNumLateEvents() {
+        return numLateEvents;
+    }
+
+    /**
+     * @return the number of late events dropped
+     */
+    public long getNumDroppedEvents() {
+        return numDroppedEvents;
+    }
+
+    /**
+     * @return the number of times the buffered events were discarded because
+     * of a timestamp jump
+     */
+    public long getNumTimestampResets() {
+        return numTimestampResets;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AEStreamMerger with %d streams, lateness bound %,d us: %,d merged, %,d pending, %,d late, %,d dropped, %,d timestamp resets",
+                streams.length, latenessBoundUs, numMergedEvents, getNumPendingEvents(), numLateEvents, numDroppedEvents, numTimestampResets);
+    }
+}
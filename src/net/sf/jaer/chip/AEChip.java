@@ -169,6 +169,7 @@ public class AEChip extends Chip2D {
 
         filterChain = new FilterChain(this);
         filterChain.contructPreferredFilters();
+        filterChain.getMetrics().addRemoteControlCommands(getRemoteControl());
     }
 
     /**
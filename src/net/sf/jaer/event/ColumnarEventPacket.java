@@ -0,0 +1,364 @@
+package net.sf.jaer.event;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A structure-of-arrays view of an {@link EventPacket}. The timestamp, x, y
+ * and type fields of the events are held in parallel primitive arrays and the
+ * filteredOut and special flags are held in bitsets, so that a filter that only
+ * needs these fields can stream over contiguous memory rather than
+ * dereferencing one event object per event.
+ * <p>
+ * The usual pattern in a filter is
+ * <pre>
+ * ColumnarEventPacket c = getColumnarPacket(in); // loads the columns from in
+ * final int[] ts = c.timestamp;
+ * final short[] xs = c.x, ys = c.y;
+ * for (PrimitiveIterator.OfInt it = c.inputIndices(); it.hasNext();) {
+ *     final int i = it.nextInt();
+ *     ... use ts[i], xs[i], ys[i]
+ *     c.setFilteredOut(i, true);
+ * }
+ * c.applyFilteredOut(); // writes filteredOut flags back to the events of in
+ * return in;
+ * </pre> The columns are reused between packets and only enlarged when a
+ * larger packet arrives, like the events in EventPacket.
+ * <p>
+ * Events that the source packet's own input iterator would skip, e.g. the APS
+ * samples in an {@link ApsDvsEventPacket}, are marked as hidden; they are
+ * skipped by {@link #inputIndices()} and their flags are never written back.
+ *
+ * @see net.sf.jaer.eventprocessing.EventFilter2D#getColumnarPacket(net.sf.jaer.event.EventPacket)
+ */
+public class ColumnarEventPacket {
+
+    /** The initial capacity in events */
+    public static final int DEFAULT_INITIAL_CAPACITY = 4096;
+
+    /** Event timestamps in us */
+    public int[] timestamp;
+    /** Event x addresses */
+    public short[] x;
+    /** Event y addresses */
+    public short[] y;
+    /** Event types, as returned by {@link BasicEvent#getType()} */
+    public byte[] type;
+
+    private long[] filteredOutBits;
+    private long[] specialBits;
+    private long[] hiddenBits;
+
+    private int size = 0;
+    private int capacity = 0;
+    private EventPacket<?> source = null;
+    private InIndexItr inputIndices = null;
+
+    /**
+     * Constructs a new packet with the default initial capacity.
+     */
+    public ColumnarEventPacket() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new packet.
+     *
+     * @param initialCapacity the initial capacity in events
+     */
+    public ColumnarEventPacket(int initialCapacity) {
+        allocate(Math.max(initialCapacity, 1));
+    }
+
+    /**
+     * Loads the columns from all the events of an EventPacket, replacing the
+     * present contents. The packet is remembered as the source for
+     * {@link #applyFilteredOut()} and {@link #getSourceEvent(int)}.
+     *
+     * @param src the packet to load from
+     */
+    public void copyFrom(final EventPacket<?> src) {
+        source = src;
+        final int n = src.getSize();
+        allocate(n);
+        clearBits(n);
+        final BasicEvent[] data = src.getElementData();
+        final boolean dvsOnly = src instanceof ApsDvsEventPacket;
+        for (int i = 0; i < n; i++) {
+            final BasicEvent e = data[i];
+            if (e == null) {
+                setBit(hiddenBits, i);
+                continue;
+            }
+            timestamp[i] = e.timestamp;
+            x[i] = e.x;
+            y[i] = e.y;
+            type[i] = (byte) e.getType();
+            if (e.isFilteredOut()) {
+                setBit(filteredOutBits, i);
+            }
+            if (e.isSpecial()) {
+                setBit(specialBits, i);
+            }
+            if (dvsOnly && !((ApsDvsEvent) e).isDVSEvent()) {
+                setBit(hiddenBits, i);
+            }
+        }
+        size = n;
+    }
+
+    /**
+     * Writes the filteredOut flags back to the events of the source packet
+     * that were loaded by {@link #copyFrom(net.sf.jaer.event.EventPacket)}.
+     * Hidden events are not touched. Does nothing if there is no source.
+     */
+    public void applyFilteredOut() {
+        if (source == null) {
+            return;
+        }
+        applyFilteredOutTo(source);
+    }
+
+    /**
+     * Writes the filteredOut flags to the events of a packet, which must hold
+     * the same events in the same order as the packet these columns were
+     * loaded from. Hidden events are not touched.
+     *
+     * @param dst the packet to write the flags to
+     */
+    public void applyFilteredOutTo(final EventPacket<?> dst) {
+        final BasicEvent[] data = dst.getElementData();
+        final int n = Math.min(size, dst.getSize());
+        for (int i = 0; i < n; i++) {
+            if (getBit(hiddenBits, i) || data[i] == null) {
+                continue;
+            }
+            data[i].setFilteredOut(getBit(filteredOutBits, i));
+        }
+    }
+
+    /**
+     * Writes the events that are not filtered out or hidden to an output
+     * packet, e.g. the output packet of a filter. The timestamp, x, y, and
+     * special fields are written; the type is written to {@link TypedEvent}s,
+     * and to the polarity of {@link PolarityEvent}s. All other fields of the
+     * output events are left as they were.
+     *
+     * @param <E> the event type of the output packet
+     * @param dst the output packet, which is reset to start from the first
+     * event
+     * @return dst
+     */
+    public <E extends BasicEvent> EventPacket<E> copyTo(final EventPacket<E> dst) {
+        final OutputEventIterator<E> outItr = dst.outputIterator();
+        for (int i = 0; i < size; i++) {
+            if (getBit(filteredOutBits, i) || getBit(hiddenBits, i)) {
+                continue;
+            }
+            final E e = outItr.nextOutput();
+            e.timestamp = timestamp[i];
+            e.x = x[i];
+            e.y = y[i];
+            e.setSpecial(getBit(specialBits, i));
+            if (e instanceof PolarityEvent) {
+                ((PolarityEvent) e).setPolarity(type[i] == 0 ? PolarityEvent.Polarity.Off : PolarityEvent.Polarity.On);
+            } else if (e instanceof TypedEvent) {
+                ((TypedEvent) e).setType(type[i]);
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Returns the iterator over the indices of the events that are not
+     * filtered out and not hidden. The iterator is reused and reset by this
+     * call, so it must not be used by two loops at the same time. Events that
+     * are filtered out during the iteration are skipped if they have not yet
+     * been reached.
+     *
+     * @return the iterator
+     */
+    public PrimitiveIterator.OfInt inputIndices() {
+        if (inputIndices == null) {
+            inputIndices = new InIndexItr();
+        } else {
+            inputIndices.cursor = 0;
+        }
+        return inputIndices;
+    }
+
+    /**
+     * Iterates over the indices of the events that are not filtered out or
+     * hidden.
+     */
+    private class InIndexItr implements PrimitiveIterator.OfInt {
+
+        int cursor = 0;
+
+        @Override
+        public boolean hasNext() {
+            while (cursor < size && (getBit(filteredOutBits, cursor) || getBit(hiddenBits, cursor))) {
+                cursor++;
+            }
+            return cursor < size;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("cursor=" + cursor + " size=" + size);
+            }
+            return cursor++;
+        }
+
+        @Override
+        public String toString() {
+            return "InIndexItr cursor=" + cursor + " for packet with size=" + size;
+        }
+    }
+
+    /**
+     * Ensures the capacity of the columns, keeping the existing contents.
+     *
+     * @param n the needed capacity in events
+     */
+    public final void allocate(final int n) {
+        if (n <= capacity) {
+            return;
+        }
+        timestamp = Arrays.copyOf(timestamp == null ? new int[0] : timestamp, n);
+        x = Arrays.copyOf(x == null ? new short[0] : x, n);
+        y = Arrays.copyOf(y == null ? new short[0] : y, n);
+        type = Arrays.copyOf(type == null ? new byte[0] : type, n);
+        final int nwords = (n + 63) >>> 6;
+        filteredOutBits = Arrays.copyOf(filteredOutBits == null ? new long[0] : filteredOutBits, nwords);
+        specialBits = Arrays.copyOf(specialBits == null ? new long[0] : specialBits, nwords);
+        hiddenBits = Arrays.copyOf(hiddenBits == null ? new long[0] : hiddenBits, nwords);
+        capacity = n;
+    }
+
+    /**
+     * Sets the size to zero and forgets the source packet, without changing
+     * capacity.
+     */
+    public void clear() {
+        size = 0;
+        source = null;
+    }
+
+    private void clearBits(final int n) {
+        final int nwords = (n + 63) >>> 6;
+        Arrays.fill(filteredOutBits, 0, nwords, 0);
+        Arrays.fill(specialBits, 0, nwords, 0);
+        Arrays.fill(hiddenBits, 0, nwords, 0);
+    }
+
+    private static boolean getBit(final long[] bits, final int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void setBit(final long[] bits, final int i) {
+        bits[i >>> 6] |= (1L << i);
+    }
+
+    private static void clearBit(final long[] bits, final int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    /**
+     * @param i the event index
+     * @return true if event i is filtered out
+     */
+    public boolean isFilteredOut(final int i) {
+        return getBit(filteredOutBits, i);
+    }
+
+    /**
+     * Sets the filteredOut flag of an event in the columns; use
+     * {@link #applyFilteredOut()} to write the flags back to the source
+     * packet.
+     *
+     * @param i the event index
+     * @param yes true to filter out the event
+     */
+    public void setFilteredOut(final int i, final boolean yes) {
+        if (yes) {
+            setBit(filteredOutBits, i);
+        } else {
+            clearBit(filteredOutBits, i);
+        }
+    }
+
+    /**
+     * @param i the event index
+     * @return true if event i is special
+     * @see BasicEvent#isSpecial()
+     */
+    public boolean isSpecial(final int i) {
+        return getBit(specialBits, i);
+    }
+
+    /**
+     * @param i the event index
+     * @return true if event i is not visible to input iteration of the source
+     * packet, e.g. an APS sample
+     */
+    public boolean isHidden(final int i) {
+        return getBit(hiddenBits, i);
+    }
+
+    /**
+     * Returns the event object in the source packet for event i, e.g. to
+     * access fields that are not held in the columns.
+     *
+     * @param i the event index
+     * @return the event, or null if there is no source packet
+     */
+    public BasicEvent getSourceEvent(final int i) {
+        return source == null ? null : source.getElementData()[i];
+    }
+
+    /**
+     * @return the packet the columns were loaded from, or null
+     */
+    public EventPacket<?> getSource() {
+        return source;
+    }
+
+    /**
+     * @return the number of events, including filtered out and hidden ones
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the capacity in events
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of events that are neither filtered out nor hidden
+     */
+    public int getSizeNotFilteredOut() {
+        int n = 0;
+        final int nwords = (size + 63) >>> 6;
+        for (int w = 0; w < nwords; w++) {
+            long valid = ~(filteredOutBits[w] | hiddenBits[w]);
+            if (w == nwords - 1 && (size & 63) != 0) {
+                valid &= (1L << (size & 63)) - 1;
+            }
+            n += Long.bitCount(valid);
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s with size %d (%d not filtered out) and capacity %d",
+                getClass().getSimpleName(), size, getSizeNotFilteredOut(), capacity);
+    }
+}
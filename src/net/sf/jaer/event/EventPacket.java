@@ -686,6 +686,29 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
         elementData[size++].copyFrom(event);
     }
 
+    /**
+     * Makes this packet a deep copy of another packet. The fields of all the
+     * source events, including the filteredOut flag, are copied into this
+     * packet's own (reused) events, so that the source packet can be reused
+     * while this copy is consumed by another thread. If the event class
+     * differs, this packet is first refilled with the source event class.
+     *
+     * @param src the packet to copy from
+     */
+    public void copyFrom(final EventPacket<?> src) {
+        if (src.getEventClass() != getEventClass()) {
+            setEventClass(src.getEventClass());
+        }
+        allocate(src.size);
+        final BasicEvent[] srcData = src.elementData;
+        for (int i = 0; i < src.size; i++) {
+            elementData[i].copyFrom(srcData[i]);
+        }
+        size = src.size;
+        rawPacket = src.getRawPacket();
+        systemModificationTimeNs = src.systemModificationTimeNs;
+    }
+
     // public static void main(String[] args){
     // EventPacket p=new EventPacket();
     // p.test();
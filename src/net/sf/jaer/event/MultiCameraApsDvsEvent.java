@@ -133,6 +133,13 @@ public class MultiCameraApsDvsEvent extends ApsDvsEvent {
 //        return 2*NUM_CAMERAS;
 //    }
     
+    /** Overridden to also reset the camera to 0, since the extractors reuse events. */
+    @Override
+    public void reset() {
+        super.reset();
+        camera = 0;
+    }
+
        /** copies fields from source event src to this event 
      @param src the event to copy from 
      */
@@ -30,6 +30,9 @@ public interface AEDataFile {
     /** file extension for index files that contain information about a set of related data files, ".adidx", including '.'. */
     public static final String INDEX_FILE_EXTENSION = ".aeidx"; // changed from .dat Apr 2010
     public static final String OLD_INDEX_FILE_EXTENSION = ".index"; // changed from .dat Apr 2010
+    /** file extension appended to the full data file name for the sidecar file that holds the timestamp index of a data file, ".tsidx", including '.'.
+     * @see AEFileTimestampIndex */
+    public static final String TIMESTAMP_INDEX_FILE_EXTENSION = ".tsidx";
     /** Used to mark end of header block after 15.11.2016. Next line starts binary data. */
     public static final String END_OF_HEADER_STRING="End Of ASCII Header";
     /** line starting with this string is written just before data block starts */
@@ -23,7 +23,9 @@ import java.lang.reflect.Method;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
@@ -34,8 +36,13 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.format.ResolverStyle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -222,6 +229,15 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      */
     private ZoneId zoneId = ZoneId.systemDefault();
 
+    /**
+     * Files with at least this many events get their timestamp index saved to
+     * a sidecar file; the index of smaller files is quicker to build than to
+     * manage as an extra file.
+     */
+    public static final long MIN_EVENTS_TO_SAVE_TIMESTAMP_INDEX = 1000000;
+    private volatile AEFileTimestampIndex timestampIndex = null;
+    private Thread timestampIndexBuilder = null;
+
     /**
      * Creates a new instance of AEInputStream
      *
@@ -245,6 +261,155 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         init(new FileInputStream(f));
 
         setFile(f);
+        startTimestampIndex();
+    }
+
+    /**
+     * Loads the sidecar timestamp index of the file, or starts building it in
+     * the background if there is none. jAER 3.x files have variable size
+     * events and are not indexed.
+     */
+    private void startTimestampIndex() {
+        if (jaer3EnableFlg || file == null) {
+            return;
+        }
+        timestampIndex = AEFileTimestampIndex.load(file, headerOffset, eventSizeBytes);
+        if (timestampIndex != null) {
+            return;
+        }
+        final File f = file;
+        final long hOffset = headerOffset;
+        final int evSize = eventSizeBytes;
+        final long numEvents = size();
+        timestampIndexBuilder = new Thread("AEFileTimestampIndexBuilder") {
+            @Override
+            public void run() {
+                try (FileInputStream fis = new FileInputStream(f)) {
+                    // use own channel so that reading the index does not disturb the memory mapped playback
+                    AEFileTimestampIndex index = AEFileTimestampIndex.build(fis.getChannel(), hOffset, evSize, evSize - (Integer.SIZE / 8), numEvents, AEFileTimestampIndex.DEFAULT_INTERVAL_EVENTS);
+                    timestampIndex = index;
+                    if (numEvents >= MIN_EVENTS_TO_SAVE_TIMESTAMP_INDEX) {
+                        index.save(f, hOffset, evSize);
+                    }
+                } catch (ClosedByInterruptException e) {
+                    log.info("building timestamp index of " + f + " was interrupted");
+                } catch (IOException e) {
+                    log.warning("could not build timestamp index of " + f + ": " + e);
+                }
+            }
+        };
+        timestampIndexBuilder.setDaemon(true);
+        timestampIndexBuilder.setPriority(Thread.MIN_PRIORITY);
+        timestampIndexBuilder.start();
+    }
+
+    /**
+     * Returns the timestamp index of the file. Does not wait for the index to
+     * be built, since it is called by the seek methods, which hold the lock
+     * of this stream, e.g. from the Swing thread.
+     *
+     * @return the index, or null while it is being built, for jAER 3.x files
+     * or if the index could not be built
+     */
+    public AEFileTimestampIndex getTimestampIndex() {
+        return timestampIndex;
+    }
+
+    /**
+     * Sets the position to the first event with timestamp at or after a
+     * timestamp, using the timestamp index to find it without reading the file
+     * up to there. The current start timestamp for
+     * {@link #readPacketByTime(int)} is set to the timestamp of that event.
+     * Fires property change AEInputStream.EVENT_POSITION.
+     *
+     * If the file is longer than a wrap of the int32 timestamp, the timestamp
+     * is taken to be the one closest to the current position, see
+     * {@link AEFileTimestampIndex#toTimeUs(int, long)}.
+     *
+     * @param timestamp the raw timestamp in us, as in the file
+     * @return true if the position was set, false if there is no timestamp
+     * index yet or the timestamp is after the end of the file, in which case
+     * the position is unchanged
+     */
+    synchronized public boolean positionToTimestamp(int timestamp) {
+        final AEFileTimestampIndex index = getTimestampIndex();
+        if (index == null || index.getNumEntries() == 0) {
+            return false;
+        }
+        return positionToTime(Math.max(0, index.toTimeUs(timestamp, position())));
+    }
+
+    /**
+     * Sets the position to the first event at or after a time relative to the
+     * start of the file. Unlike timestamps, this time stays unique when the
+     * int32 timestamp wraps.
+     *
+     * @param timeUs time in us since the first event of the file
+     * @return true if the position was set, false if there is no timestamp
+     * index yet or the time is after the end of the file, in which case the
+     * position is unchanged
+     * @see #positionToTimestamp(int)
+     */
+    synchronized public boolean positionToTime(long timeUs) {
+        final AEFileTimestampIndex index = getTimestampIndex();
+        if (index == null || index.getNumEntries() == 0 || timestampResetBitmask != 0) {
+            return false; // with timestamp resets the index timestamps are not those that are read
+        }
+        final long oldPosition = position();
+        final int entry = index.getEntryBefore(timeUs);
+        long t = index.getTimeUs(entry);
+        int lastTs = index.getTimestamp(entry);
+        final long end = size();
+        try {
+            for (long ev = index.getPosition(entry); ev < end; ev++) {
+                final int ts = readTimestampAt(ev);
+                if (ts == 0) {
+                    continue; // same as readEventForwards
+                }
+                t += ts - lastTs;
+                lastTs = ts;
+                if (t >= timeUs) {
+                    position(ev);
+                    mostRecentTimestamp = ts;
+                    currentStartTimestamp = ts;
+                    getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            log.warning("could not seek to time " + timeUs + " us: " + e);
+        }
+        position(oldPosition); // reading the timestamps mapped other chunks
+        return false;
+    }
+
+    /**
+     * Sets the position to a fraction of the duration of the file, rather
+     * than of the number of events as {@link #setFractionalPosition(float)}
+     * does.
+     *
+     * @param frac 0-1 float range, 0 at start, 1 at end
+     * @return true if the position was set, false if there is no timestamp
+     * index yet
+     */
+    synchronized public boolean setFractionalTimePosition(float frac) {
+        final AEFileTimestampIndex index = getTimestampIndex();
+        if (index == null) {
+            return false;
+        }
+        return positionToTime((long) (frac * index.getDurationUs()));
+    }
+
+    /**
+     * Reads the timestamp of an event without changing the read position,
+     * mapping the chunk of the event if necessary.
+     */
+    private int readTimestampAt(long event) throws IOException {
+        final int chunk = getChunkNumber(event);
+        if (chunk != chunkNumber) {
+            mapChunk(chunk);
+        }
+        return byteBuffer.getInt((int) ((event * eventSizeBytes) % chunkSizeBytes) + eventSizeBytes - (Integer.SIZE / 8));
     }
 
     @Override
@@ -519,6 +684,117 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         }
     }
 
+    /**
+     * Number of events decoded at once by
+     * {@link #readEventsForwardsBulk(int[], int[], EventType[], int[], int, int, int)}
+     */
+    private static final int BULK_BLOCK_EVENTS = 4096;
+    private boolean bulkDecodingEnabled = true;
+    private final int[] bulkInts = new int[2 * BULK_BLOCK_EVENTS];
+    private final short[] bulkShorts = new short[3 * BULK_BLOCK_EVENTS];
+    private final int[] bulkAddresses = new int[BULK_BLOCK_EVENTS], bulkTimestamps = new int[BULK_BLOCK_EVENTS];
+
+    /**
+     * Decodes as many events as possible forwards from the mapped chunk
+     * directly into packet arrays, a block of events at a time through int or
+     * short views of the byte buffer. Decoding stops before the first event
+     * that needs the special handling of {@link #readEventForwards(int)}: a
+     * zero, non-monotonic or wrapped timestamp, a timestamp at or after
+     * maxTimestamp, the out marker or the end of the chunk. The caller then
+     * reads that event with readEventForwards, so that the result is the same
+     * as reading all events with readEventForwards.
+     * <p>
+     * Does nothing for jAER 3.x files or when a timestamp reset bitmask is
+     * set.
+     *
+     * @param addr the address array to fill
+     * @param ts the timestamp array to fill
+     * @param etypes the event type array to fill
+     * @param pixelData the pixel data array to fill
+     * @param offset the array index of the first event
+     * @param maxEvents the maximum number of events to read
+     * @param maxTimestamp the events read have timestamps earlier than this
+     * @return the number of events read, may be 0
+     */
+    private int readEventsForwardsBulk(int[] addr, int[] ts, EventType[] etypes, int[] pixelData, int offset, int maxEvents, int maxTimestamp) {
+        if (!bulkDecodingEnabled || jaer3EnableFlg || timestampResetBitmask != 0 || byteBuffer == null) {
+            return 0;
+        }
+        int n = Math.min(maxEvents, byteBuffer.remaining() / eventSizeBytes);
+        if (markOut > position) {
+            n = (int) Math.min(n, markOut - position);
+        } else if (markOut == position) {
+            return 0;
+        }
+        if (n <= 0) {
+            return 0;
+        }
+        final boolean intAddresses = addressType == Integer.TYPE;
+        final IntBuffer intBuffer = intAddresses ? byteBuffer.asIntBuffer() : null;
+        final ShortBuffer shortBuffer = intAddresses ? null : byteBuffer.asShortBuffer();
+        int count = 0, prev = mostRecentTimestamp;
+        while (count < n) {
+            final int nb = Math.min(BULK_BLOCK_EVENTS, n - count);
+            if (intAddresses) {
+                intBuffer.get(bulkInts, 0, 2 * nb);
+                for (int k = 0, j = 0; k < nb; k++, j += 2) {
+                    bulkAddresses[k] = bulkInts[j];
+                    bulkTimestamps[k] = bulkInts[j + 1];
+                }
+            } else {
+                shortBuffer.get(bulkShorts, 0, 3 * nb);
+                for (int k = 0, j = 0; k < nb; k++, j += 3) {
+                    bulkAddresses[k] = bulkShorts[j] & 0xffff;
+                    bulkTimestamps[k] = (bulkShorts[j + 1] << 16) | (bulkShorts[j + 2] & 0xffff);
+                }
+            }
+            // find the end of the run of ordinary events in this block in one pass over the timestamps
+            int k = 0;
+            for (; k < nb; k++) {
+                final int t = bulkTimestamps[k];
+                if ((t == 0) | (t >= maxTimestamp) | (t < prev)) {
+                    break;
+                }
+                prev = t;
+            }
+            System.arraycopy(bulkAddresses, 0, addr, offset + count, k);
+            System.arraycopy(bulkTimestamps, 0, ts, offset + count, k);
+            count += k;
+            if (k < nb) {
+                break;
+            }
+        }
+        if (count > 0) {
+            Arrays.fill(etypes, offset, offset + count, EventType.PolarityEvent); // as set by readEventForwards for jAER 2.0 files
+            Arrays.fill(pixelData, offset, offset + count, 0);
+            byteBuffer.position(byteBuffer.position() + (count * eventSizeBytes));
+            position += count;
+            mostRecentTimestamp = prev;
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether packets are read by decoding blocks of events directly
+     * from the mapped file rather than one event at a time.
+     *
+     * @return true if bulk decoding is enabled (default)
+     */
+    public boolean isBulkDecodingEnabled() {
+        return bulkDecodingEnabled;
+    }
+
+    /**
+     * Enables decoding blocks of events directly from the mapped file. The
+     * packets are the same either way; disabling it is for comparing
+     * performance.
+     *
+     * @param bulkDecodingEnabled true to enable
+     */
+    public void setBulkDecodingEnabled(boolean bulkDecodingEnabled) {
+        this.bulkDecodingEnabled = bulkDecodingEnabled;
+    }
+
     /**
      * Reads the next event backwards and leaves the position and byte buffer
      * pointing to event one earlier than the one we just read. I.e., we back
@@ -621,7 +897,18 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         int count = 0;
         try {
             if (n > 0) {
+                EventType[] etypes = packet.getEventtypes();
+                int[] pixelDataArray = packet.getPixelDataArray();
                 for (int i = 0; i < n; i++) {
+                    int nb = readEventsForwardsBulk(addr, ts, etypes, pixelDataArray, i, n - i, Integer.MAX_VALUE);
+                    if (nb > 0) {
+                        count += nb;
+                        i += nb;
+                        currentStartTimestamp = ts[i - 1];
+                        if (i == n) {
+                            break;
+                        }
+                    }
                     ev = readEventForwards();  // TODO since repeat is always true in existing code, then can never get null event right now TODO; fix this
                     count++;
                     addr[i] = ev.address; // could get null pointer exception here if repeat was false
@@ -726,6 +1013,10 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             if (dt > 0) { // read forwards
                 if (!bigWrap) { // normal situation
                     do {
+                        i += readEventsForwardsBulk(addr, ts, etypes, pixelDataArray, i, addr.length - i, endTimestamp);
+                        if (i == addr.length) {
+                            break;
+                        }
                         ae = readEventForwards(endTimestamp); // if we hit end (mark or file), we rewind here and get the first event and rewindFlag is set
                         if (ae == null) {
                             break;
@@ -921,6 +1212,7 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         } catch (Exception e) {
             log.warning("When changing fractional position, got " + e.toString());
         }
+        currentStartTimestamp = mostRecentTimestamp; // otherwise readPacketByTime returns single events until it catches up with the new position
     }
 
     /**
@@ -1085,6 +1377,18 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     @Override
     public void close() throws IOException {
         super.close();
+        if (timestampIndexBuilder != null) {
+            timestampIndexBuilder.interrupt();
+            timestampIndexBuilder = null;
+        }
+        if (prefetchExecutor != null) {
+            discardPrefetch();
+            prefetchExecutor.shutdown(); // not shutdownNow, which would interrupt and close the channel during a map
+            prefetchExecutor = null;
+            if (prefetchHits + prefetchMisses > 0) {
+                log.info(String.format("prefetch hit rate %.1f%% for %d chunk crossings", 100 * getPrefetchHitRate(), prefetchHits + prefetchMisses));
+            }
+        }
         if (fileChannel != null) {
             if (getByteBuffer() != null) {
                 closeDirectBuffer(getByteBuffer());
@@ -1368,6 +1672,149 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     private int chunksMapped = 0;
     private final int GC_EVERY_THIS_MANY_CHUNKS = 8;
 
+    /**
+     * Read-ahead of the next chunk: after a chunk is mapped, the following
+     * chunk is mapped and its pages loaded on a background thread, so that
+     * crossing the chunk boundary during playback does not block on I/O.
+     */
+    private boolean prefetchEnabled = true;
+    private ExecutorService prefetchExecutor = null;
+    private Future<MappedByteBuffer> prefetchFuture = null;
+    private int prefetchChunkNumber = -1;
+    private int lastMappedChunkNumber = -1;
+    private int prefetchHits = 0, prefetchMisses = 0;
+
+    /**
+     * Starts mapping and loading a chunk in the background unless it is
+     * already being prefetched.
+     *
+     * @param chunk the chunk number
+     */
+    private void startPrefetch(final int chunk) {
+        if (!prefetchEnabled || chunk >= numChunks || chunk == prefetchChunkNumber) {
+            return;
+        }
+        discardPrefetch();
+        final long start = getChunkStartPosition(chunk);
+        if (start >= fileSize) {
+            return;
+        }
+        final long numBytesToMap = Math.min(chunkSizeBytes, fileSize - start);
+        final FileChannel channel = fileChannel;
+        if (prefetchExecutor == null) {
+            prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "AEFileInputStreamPrefetch");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        prefetchChunkNumber = chunk;
+        prefetchFuture = prefetchExecutor.submit(() -> {
+            MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, start, numBytesToMap);
+            b.load(); // touch all pages so that reading them later does not fault to disk
+            return b;
+        });
+    }
+
+    /**
+     * Returns the prefetched buffer of a chunk, waiting for it if it is still
+     * being loaded, and counts the hit or miss.
+     *
+     * @param chunk the chunk number
+     * @return the buffer, or null if the chunk was not prefetched
+     */
+    private MappedByteBuffer takePrefetchedChunk(int chunk) {
+        if (prefetchFuture == null || chunk != prefetchChunkNumber) {
+            if (prefetchEnabled && chunk == lastMappedChunkNumber + 1) {
+                prefetchMisses++; // sequential read that was not prefetched
+            }
+            return null;
+        }
+        final Future<MappedByteBuffer> f = prefetchFuture;
+        prefetchFuture = null;
+        prefetchChunkNumber = -1;
+        if (f.isDone()) {
+            prefetchHits++;
+        } else {
+            prefetchMisses++;
+        }
+        try {
+            return f.get(); // waits for a prefetch in progress rather than mapping the same chunk twice
+        } catch (InterruptedException | ExecutionException e) {
+            log.warning("prefetching chunk " + chunk + " failed, mapping it directly: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Drops a prefetched chunk that is not needed, e.g. after repositioning.
+     * The prefetch is not interrupted, because interrupting a thread in a
+     * channel operation closes the channel.
+     */
+    private void discardPrefetch() {
+        if (prefetchFuture == null) {
+            return;
+        }
+        prefetchFuture.cancel(false);
+        if (prefetchFuture.isDone() && !prefetchFuture.isCancelled()) {
+            try {
+                closeDirectBuffer(prefetchFuture.get());
+            } catch (InterruptedException | ExecutionException e) {
+                // nothing was mapped
+            }
+        }
+        prefetchFuture = null;
+        prefetchChunkNumber = -1;
+    }
+
+    /**
+     * Returns the fraction of sequential chunk crossings for which the next
+     * chunk was already mapped and loaded by the read-ahead thread.
+     *
+     * @return the hit rate 0-1, or NaN if no chunk boundary has been crossed
+     */
+    public float getPrefetchHitRate() {
+        final int n = prefetchHits + prefetchMisses;
+        return n == 0 ? Float.NaN : (float) prefetchHits / n;
+    }
+
+    /**
+     * @return the number of chunk crossings for which the next chunk was
+     * already prefetched
+     */
+    public int getPrefetchHits() {
+        return prefetchHits;
+    }
+
+    /**
+     * @return the number of sequential chunk crossings that had to wait for
+     * the chunk to be mapped
+     */
+    public int getPrefetchMisses() {
+        return prefetchMisses;
+    }
+
+    /**
+     * @return true if the next chunk is mapped ahead on a background thread
+     * (default)
+     */
+    public boolean isPrefetchEnabled() {
+        return prefetchEnabled;
+    }
+
+    /**
+     * Enables mapping and loading the next chunk of the file ahead on a
+     * background thread.
+     *
+     * @param prefetchEnabled true to enable
+     */
+    synchronized public void setPrefetchEnabled(boolean prefetchEnabled) {
+        this.prefetchEnabled = prefetchEnabled;
+        if (!prefetchEnabled) {
+            discardPrefetch();
+        }
+    }
+
     /**
      * memory-maps a chunk of the input file.
      *
@@ -1391,7 +1838,8 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             }
             log.info("had to reopen fileChannel from fileInputStream");
         }
-        byteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, numBytesToMap);
+        final MappedByteBuffer prefetched = takePrefetchedChunk(chunkNumber);
+        byteBuffer = prefetched != null ? prefetched : fileChannel.map(FileChannel.MapMode.READ_ONLY, start, numBytesToMap);
         if (byteBuffer == null) {
             log.severe("got null byteBuffer from fileChannel.map(FileChannel.MapMode.READ_ONLY,start,numBytesToMap) with start=" + start
                     + " numBytesToMap=" + numBytesToMap);
@@ -1423,6 +1871,8 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         } else {
             jaer3BufferParser = null; // should call finalize method to restore the extractor
         }
+        lastMappedChunkNumber = chunkNumber;
+        startPrefetch(chunkNumber + 1);
     }
 
     /**
@@ -16,6 +16,8 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Date;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.BackingStoreException;
@@ -23,10 +25,21 @@ import java.util.prefs.BackingStoreException;
 import net.sf.jaer.aemonitor.AEConstants;
 import net.sf.jaer.aemonitor.AEPacketRaw;
 import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.util.RecyclingHandoffQueue;
 
 /**
  * Streams out packets of events in binary. The only difference to AEOuputStream
  * is the addition of a file header in text format.
+ * <p>
+ * By default, events are written to the file on the thread that calls
+ * writePacket. After {@link #enableAsyncWriting(boolean)}, writePacket only
+ * copies the events into one of a ring of large buffers, and a writer thread
+ * writes the filled buffers to the file, with all buffers that are waiting
+ * written together by one gathering write. A slow disk then does not stall
+ * the acquisition thread until all buffers are full. What happens then is
+ * chosen when async writing is enabled: either writePacket waits for the disk
+ * (no data is lost) or the buffer is dropped and its events are counted in
+ * {@link #getEventsDropped()}.
  *
  * @author tobi
  */
@@ -39,12 +52,42 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
     private static final int BUFFER_EVENTS = 8192;
     private static final int SIZE_EVENT = (Integer.SIZE / 8) * 2;
 
+    /**
+     * Default number of events in each buffer in async writing mode (4MB)
+     */
+    public static final int ASYNC_BUFFER_EVENTS = 1 << 19;
+    /**
+     * Default maximum number of filled buffers waiting for the disk in async
+     * writing mode
+     */
+    public static final int ASYNC_NUM_BUFFERS = 8;
+    /**
+     * In async mode, the writer thread writes a partly filled buffer if it is
+     * older than this, so that data gets to disk at low event rates and when
+     * no more packets are written
+     */
+    private static final long ASYNC_FLUSH_INTERVAL_MS = 200;
+    private static final long ASYNC_POLL_INTERVAL_MS = 100;
+
     private FileChannel channel = null;
     private ByteBuffer byteBuf = null;
+    private final ReentrantLock bufferLock = new ReentrantLock(); // guards byteBuf, which the async writer thread flushes when idle
 
     private int eventCounter = 0;
     private String dataFileVersionNumber;
 
+    private RecyclingHandoffQueue<ByteBuffer> asyncQueue = null; // non-null in async writing mode
+    private Thread asyncWriterThread = null;
+    private boolean asyncDropWhenDiskBusy = false;
+    private boolean asyncHandedOffFirstBuffer = false;
+    private long asyncLastHandoffTimeMs = 0;
+    private volatile boolean asyncClosing = false;
+    private volatile IOException asyncError = null;
+    private volatile long bytesWritten = 0;
+    private volatile float bytesPerSecond = 0;
+    private volatile long numGatheringWrites = 0;
+    private long eventsDropped = 0;
+
     /**
      * Creates a new instance of AEOutputStream and writes the header. If there
      * is any IOException a stack trace is printed.
@@ -110,6 +153,58 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
         this(os, null, null);
     }
 
+    /**
+     * Switches to asynchronous writing with the default buffer sizes.
+     *
+     * @param dropWhenDiskBusy what to do when all buffers are waiting for the
+     * disk: false to make writePacket wait, true to drop the events that do not
+     * fit
+     * @return true if async writing was enabled, false if the stream is not
+     * writing to a file
+     * @see #enableAsyncWriting(int, int, boolean)
+     */
+    public boolean enableAsyncWriting(boolean dropWhenDiskBusy) {
+        return enableAsyncWriting(ASYNC_BUFFER_EVENTS, ASYNC_NUM_BUFFERS, dropWhenDiskBusy);
+    }
+
+    /**
+     * Switches to asynchronous writing: from now on writePacket copies the
+     * events into large buffers that are written to the file by a writer
+     * thread. Must be called before the first packet is written.
+     *
+     * @param bufferEvents the number of events in each buffer
+     * @param numBuffers the maximum number of filled buffers waiting for the
+     * disk
+     * @param dropWhenDiskBusy what to do when numBuffers are waiting: false to
+     * make writePacket wait for the disk, true to drop the buffer that did not
+     * fit and count its events in getEventsDropped()
+     * @return true if async writing was enabled, false if the stream is not
+     * writing to a file
+     * @throws IllegalStateException if a packet was already written or async
+     * writing is already enabled
+     */
+    public synchronized boolean enableAsyncWriting(int bufferEvents, int numBuffers, boolean dropWhenDiskBusy) {
+        if (wrotePacket || asyncQueue != null) {
+            throw new IllegalStateException("async writing must be enabled once, before writing any packets");
+        }
+        if (channel == null) {
+            log.warning("output stream is not a FileOutputStream, cannot write asynchronously");
+            return false;
+        }
+        final int capacity = Math.max(1, bufferEvents) * SIZE_EVENT;
+        asyncQueue = new RecyclingHandoffQueue<>("AEFileOutputStream", Math.max(1, numBuffers), () -> ByteBuffer.allocateDirect(capacity));
+        asyncDropWhenDiskBusy = dropWhenDiskBusy;
+        byteBuf = asyncQueue.obtain();
+        asyncLastHandoffTimeMs = System.currentTimeMillis();
+        asyncWriterThread = new Thread(this::asyncWriteLoop, "AEFileOutputStream writer");
+        asyncWriterThread.setPriority(Thread.NORM_PRIORITY + 1); // the disk should keep up with acquisition
+        asyncWriterThread.setDaemon(true);
+        asyncWriterThread.start();
+        log.info(String.format("writing asynchronously with up to %d buffers of %,d events waiting for the disk; when they are all full, %s",
+                numBuffers, bufferEvents, dropWhenDiskBusy ? "events are dropped" : "writePacket waits for the disk"));
+        return true;
+    }
+
     /**
      * Writes a comment header line. Writes the string with prepended '#' and
      * appended '\r\n' (CRLF)
@@ -198,17 +293,20 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
         // Check the data file version, if it's 2.0, then it just put addr and timestamp in sequence. 
         // If it's 3.1, then we should add packet header for every different event types.
         if (dataFileVersionNumber.equals("2.0")) {
-            for (int i = startIdx; i < n; i++) {
-                byteBuf.putInt(addr[i]);
-                byteBuf.putInt(ts[i]);
+            bufferLock.lock();
+            try {
+                for (int i = startIdx; i < n; i++) {
+                    byteBuf.putInt(addr[i]);
+                    byteBuf.putInt(ts[i]);
 
-                eventCounter++;
+                    eventCounter++;
 
-                if (byteBuf.remaining() < AEFileOutputStream.SIZE_EVENT) {
-                    byteBuf.rewind();
-                    channel.write(byteBuf);
-                    byteBuf.clear();
+                    if (byteBuf.remaining() < AEFileOutputStream.SIZE_EVENT) {
+                        writeBuffer(true);
+                    }
                 }
+            } finally {
+                bufferLock.unlock();
             }
 
             wrotePacket = true;
@@ -216,18 +314,233 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
 
     }
 
-    @Override
-    public void close() throws IOException {
-        // Flush last buffer to file, to avoid loosing small amounts of data.
+    /**
+     * Writes the filled part of byteBuf to the file, or in async mode hands it
+     * to the writer thread, and clears it
+     *
+     * @param mayDrop true if the buffer may be dropped when the disk is busy
+     */
+    private void writeBuffer(boolean mayDrop) throws IOException {
+        if (asyncQueue == null) {
+            byteBuf.flip();
+            final int bytes = byteBuf.remaining();
+            while (byteBuf.hasRemaining()) {
+                channel.write(byteBuf);
+            }
+            byteBuf.clear();
+            bytesWritten += bytes;
+            return;
+        }
+        checkAsyncError();
+        if (byteBuf.position() == 0) {
+            return;
+        }
+        asyncLastHandoffTimeMs = System.currentTimeMillis();
         byteBuf.flip();
-        channel.write(byteBuf);
+        // never drop the first buffer, because the start of the data must not look like a header comment line
+        if (mayDrop && asyncDropWhenDiskBusy && asyncHandedOffFirstBuffer) {
+            if (!asyncQueue.offer(byteBuf)) {
+                final int n = byteBuf.remaining() / SIZE_EVENT;
+                if (eventsDropped == 0) {
+                    log.warning(String.format("disk is not keeping up, dropped %,d events; further drops are counted in getEventsDropped()", n));
+                }
+                eventsDropped += n;
+                byteBuf.clear();
+                return;
+            }
+        } else {
+            try {
+                while (!asyncQueue.offer(byteBuf, ASYNC_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    checkAsyncError(); // don't wait forever for a writer that died
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for disk: " + e.toString());
+            }
+        }
+        asyncHandedOffFirstBuffer = true;
+        byteBuf = asyncQueue.obtain();
         byteBuf.clear();
+    }
 
-        channel.close();
-        byteBuf = null;
+    private void checkAsyncError() throws IOException {
+        if (asyncError != null) {
+            throw asyncError;
+        }
+    }
 
-        super.close();
+    /**
+     * The async writer thread. Takes all the filled buffers that are waiting
+     * and writes them with one gathering write, so that when the disk falls
+     * behind the writes get larger rather than more frequent.
+     */
+    private void asyncWriteLoop() {
+        final ByteBuffer[] batch = new ByteBuffer[asyncQueue.getCapacity()];
+        long rateStartNs = System.nanoTime(), rateStartBytes = 0;
+        try {
+            while (true) {
+                ByteBuffer b = asyncQueue.poll(ASYNC_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (b != null) {
+                    int n = 0;
+                    long bytes = 0;
+                    do {
+                        batch[n++] = b;
+                        bytes += b.remaining();
+                    } while (n < batch.length && (b = asyncQueue.poll()) != null);
+                    try {
+                        long written = 0;
+                        while (written < bytes) {
+                            written += channel.write(batch, 0, n);
+                        }
+                        bytesWritten += bytes;
+                        numGatheringWrites++;
+                    } finally {
+                        for (int i = 0; i < n; i++) {
+                            asyncQueue.recycle(batch[i]);
+                            batch[i] = null;
+                        }
+                    }
+                }
+                if (asyncClosing && asyncQueue.getDepth() == 0) {
+                    break; // close() hands off the last buffer before setting asyncClosing
+                }
+                if (b == null) {
+                    flushIdleBuffer();
+                }
+                final long nowNs = System.nanoTime();
+                if (nowNs - rateStartNs > 1000000000L) {
+                    final long total = bytesWritten;
+                    bytesPerSecond = (total - rateStartBytes) * 1e9f / (nowNs - rateStartNs);
+                    rateStartNs = nowNs;
+                    rateStartBytes = total;
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "could not write to file: " + e.toString(), e);
+            asyncError = e;
+            asyncQueue.clear(); // release a producer waiting for room; it sees the error next
+        } catch (InterruptedException e) {
+            asyncError = new IOException("writer thread interrupted");
+            asyncQueue.clear();
+        }
+    }
 
-        AEOutputStream.log.info(String.format("wrote %,d events",eventCounter));
+    /**
+     * Called by the async writer thread when no filled buffer is waiting.
+     * Writes the partly filled buffer of writePacket if it is older than
+     * ASYNC_FLUSH_INTERVAL_MS. Skipped while writePacket holds the buffer,
+     * since it may be waiting for this thread to make room in the queue.
+     */
+    private void flushIdleBuffer() throws IOException {
+        if (!bufferLock.tryLock()) {
+            return;
+        }
+        try {
+            if (byteBuf == null || byteBuf.position() == 0 || asyncQueue.getDepth() > 0
+                    || System.currentTimeMillis() - asyncLastHandoffTimeMs < ASYNC_FLUSH_INTERVAL_MS) {
+                return;
+            }
+            byteBuf.flip();
+            final int bytes = byteBuf.remaining();
+            while (byteBuf.hasRemaining()) {
+                channel.write(byteBuf);
+            }
+            byteBuf.clear();
+            bytesWritten += bytes;
+            asyncHandedOffFirstBuffer = true;
+            asyncLastHandoffTimeMs = System.currentTimeMillis();
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if events are written to disk by a writer thread
+     * @see #enableAsyncWriting(boolean)
+     */
+    public boolean isAsyncWriting() {
+        return asyncQueue != null;
+    }
+
+    /**
+     * @return the number of filled buffers waiting for the disk in async
+     * mode, or 0
+     */
+    public int getAsyncQueueDepth() {
+        return asyncQueue == null ? 0 : asyncQueue.getDepth();
+    }
+
+    /**
+     * @return the number of event bytes written to the file so far, not
+     * counting the header
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the rate at which the async writer thread wrote to disk over
+     * about the last second, in bytes per second; 0 if not writing
+     * asynchronously
+     */
+    public float getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return the number of events dropped because the disk was busy, if
+     * dropping was enabled
+     * @see #enableAsyncWriting(int, int, boolean)
+     */
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    /**
+     * @return a one-line summary of async writing: queue depth, rate, write
+     * sizes and drops
+     */
+    public String getAsyncStatistics() {
+        if (asyncQueue == null) {
+            return "AEFileOutputStream: synchronous writing, " + bytesWritten + " bytes written";
+        }
+        final long writes = numGatheringWrites;
+        return String.format("AEFileOutputStream: %,d bytes written at %.1f MB/s in %,d writes (avg %,d bytes), %,d events dropped; %s",
+                bytesWritten, bytesPerSecond * 1e-6f, writes, writes == 0 ? 0 : bytesWritten / writes, eventsDropped, asyncQueue.toString());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (channel != null) {
+                // Flush last buffer to file, to avoid loosing small amounts of data.
+                if (asyncQueue == null) {
+                    writeBuffer(false);
+                } else {
+                    bufferLock.lock();
+                    try {
+                        if (asyncError == null) {
+                            writeBuffer(false);
+                        }
+                    } finally {
+                        bufferLock.unlock();
+                        asyncClosing = true;
+                        try {
+                            asyncWriterThread.join();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            asyncWriterThread.interrupt();
+                        }
+                    }
+                    AEOutputStream.log.info(getAsyncStatistics());
+                }
+                channel.close();
+            }
+        } finally {
+            byteBuf = null;
+            super.close();
+        }
+        AEOutputStream.log.info(String.format("wrote %,d events", eventCounter - eventsDropped));
+        checkAsyncError();
     }
 }
@@ -0,0 +1,354 @@
+/*
+ * AEFileTimestampIndex.java
+ */
+package net.sf.jaer.eventio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * A sparse index from time to event position for AEDAT-1.0 and AEDAT-2.0
+ * files, in which all events have the same size so that the position of an
+ * event in the file follows from its number. The index holds the timestamp of
+ * every {@link #getIntervalEvents()}'th event, so that the position of any
+ * time can be found by a binary search of the index followed by a scan of at
+ * most one interval of events.
+ * <p>
+ * Times in the index are unwrapped, i.e. they are in us relative to the
+ * timestamp of the first event of the file and continue to increase when the
+ * int32 timestamp wraps around. Non-monotonic timestamps are tolerated; the
+ * search uses the running maximum of the sampled times. Zero timestamps,
+ * which some devices emit on errors, are not sampled.
+ * <p>
+ * Building the index reads only one timestamp per interval, but for large
+ * files on slow storage this still takes a while, so the index is cached in a
+ * sidecar file next to the data file with extension
+ * {@link AEDataFile#TIMESTAMP_INDEX_FILE_EXTENSION}. The sidecar records the
+ * size and modification time of the data file and is ignored if they do not
+ * match.
+ *
+ * @see AEFileInputStream#positionToTimestamp(int)
+ */
+public class AEFileTimestampIndex {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+
+    /** Default number of events between index entries */
+    public static final int DEFAULT_INTERVAL_EVENTS = 10000;
+    private static final int MAGIC = 0x4a545358; // "JTSX"
+    private static final int VERSION = 1;
+
+    private final int intervalEvents;
+    private final long numEvents;
+    private final int firstTimestamp;
+    /** raw timestamps of the sampled events */
+    private final int[] timestamps;
+    /** event positions of the sampled events */
+    private final long[] positions;
+    /** unwrapped times of the sampled events, relative to firstTimestamp */
+    private final long[] timesUs;
+    /** running maximum of timesUs, for binary search */
+    private final long[] maxTimesUs;
+    private final long lastTimeUs;
+
+    private AEFileTimestampIndex(int intervalEvents, long numEvents, int[] timestamps, long[] positions, int n, int lastTimestamp) {
+        this.intervalEvents = intervalEvents;
+        this.numEvents = numEvents;
+        this.timestamps = java.util.Arrays.copyOf(timestamps, n);
+        this.positions = java.util.Arrays.copyOf(positions, n);
+        this.firstTimestamp = n > 0 ? timestamps[0] : 0;
+        timesUs = new long[n];
+        maxTimesUs = new long[n];
+        long t = 0, max = 0;
+        for (int k = 0; k < n; k++) {
+            if (k > 0) {
+                t += timestamps[k] - timestamps[k - 1]; // int difference unwraps a wrap of the int32 timestamp
+            }
+            timesUs[k] = t;
+            max = Math.max(max, t);
+            maxTimesUs[k] = max;
+        }
+        lastTimeUs = n == 0 ? 0 : Math.max(max, t + (lastTimestamp - timestamps[n - 1]));
+    }
+
+    /**
+     * Builds the index by reading one timestamp per interval from a file
+     * channel. The channel position is not used and not changed.
+     *
+     * @param channel the channel of the data file
+     * @param headerOffset the offset in bytes of the first event
+     * @param eventSizeBytes the size of an event in bytes
+     * @param addressSizeBytes the size of the address that precedes the int32
+     * timestamp in each event
+     * @param numEvents the number of events in the file
+     * @param intervalEvents the number of events between index entries
+     * @return the index
+     * @throws IOException if the file cannot be read, or
+     * ClosedByInterruptException if the building thread is interrupted
+     */
+    public static AEFileTimestampIndex build(FileChannel channel, long headerOffset, int eventSizeBytes, int addressSizeBytes, long numEvents, int intervalEvents) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final int n = (int) ((numEvents + intervalEvents - 1) / intervalEvents);
+        final int[] ts = new int[n];
+        final long[] pos = new long[n];
+        final ByteBuffer buf = ByteBuffer.allocate(4); // big endian like the data file
+        int k = 0;
+        for (long p = 0; p < numEvents; p += intervalEvents) {
+            // skip zero timestamps, they are errors that would break unwrapping
+            long q = p;
+            final long end = Math.min(numEvents, p + intervalEvents);
+            int t = 0;
+            while (q < end && (t = readTimestamp(channel, buf, headerOffset, eventSizeBytes, addressSizeBytes, q)) == 0) {
+                q++;
+            }
+            if (q < end) {
+                ts[k] = t;
+                pos[k] = q;
+                k++;
+            }
+        }
+        final int lastTs = numEvents > 0 ? readTimestamp(channel, buf, headerOffset, eventSizeBytes, addressSizeBytes, numEvents - 1) : 0;
+        final AEFileTimestampIndex index = new AEFileTimestampIndex(intervalEvents, numEvents, ts, pos, k, lastTs);
+        log.info(String.format("built %s in %,d ms", index, System.currentTimeMillis() - startTime));
+        return index;
+    }
+
+    private static int readTimestamp(FileChannel channel, ByteBuffer buf, long headerOffset, int eventSizeBytes, int addressSizeBytes, long event) throws IOException {
+        buf.clear();
+        final long offset = headerOffset + (event * eventSizeBytes) + addressSizeBytes;
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                throw new EOFException("end of file reading timestamp of event " + event);
+            }
+        }
+        return buf.getInt(0);
+    }
+
+    /**
+     * Returns the sidecar index file of a data file.
+     *
+     * @param dataFile the data file
+     * @return the sidecar file, which may not exist
+     */
+    public static File getSidecarFile(File dataFile) {
+        return new File(dataFile.getPath() + AEDataFile.TIMESTAMP_INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Loads the sidecar index of a data file if it exists and matches the
+     * data file.
+     *
+     * @param dataFile the data file
+     * @param headerOffset the offset in bytes of the first event
+     * @param eventSizeBytes the size of an event in bytes
+     * @return the index, or null if there is no valid sidecar index
+     */
+    public static AEFileTimestampIndex load(File dataFile, long headerOffset, int eventSizeBytes) {
+        final File f = getSidecarFile(dataFile);
+        if (!f.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warning(f + " is not a timestamp index file of this version, ignoring it");
+                return null;
+            }
+            if (in.readLong() != dataFile.length() || in.readLong() != dataFile.lastModified()
+                    || in.readLong() != headerOffset || in.readInt() != eventSizeBytes) {
+                log.info(f + " does not match " + dataFile + ", ignoring it");
+                return null;
+            }
+            final int intervalEvents = in.readInt();
+            final long numEvents = in.readLong();
+            final int lastTs = in.readInt();
+            final int n = in.readInt();
+            final int[] ts = new int[n];
+            final long[] pos = new long[n];
+            for (int k = 0; k < n; k++) {
+                pos[k] = in.readLong();
+                ts[k] = in.readInt();
+            }
+            final AEFileTimestampIndex index = new AEFileTimestampIndex(intervalEvents, numEvents, ts, pos, n, lastTs);
+            log.info("loaded " + index + " from " + f);
+            return index;
+        } catch (IOException e) {
+            log.warning("could not read timestamp index " + f + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the index to the sidecar file of a data file. Failures, e.g. for a
+     * read-only directory, are logged but otherwise ignored, since the index
+     * can always be built again.
+     *
+     * @param dataFile the data file
+     * @param headerOffset the offset in bytes of the first event
+     * @param eventSizeBytes the size of an event in bytes
+     * @return true if the index was saved
+     */
+    public boolean save(File dataFile, long headerOffset, int eventSizeBytes) {
+        final File f = getSidecarFile(dataFile);
+        final File tmp = new File(f.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(dataFile.length());
+            out.writeLong(dataFile.lastModified());
+            out.writeLong(headerOffset);
+            out.writeInt(eventSizeBytes);
+            out.writeInt(intervalEvents);
+            out.writeLong(numEvents);
+            out.writeInt(firstTimestamp + (int) lastTimeUs);
+            out.writeInt(timestamps.length);
+            for (int k = 0; k < timestamps.length; k++) {
+                out.writeLong(positions[k]);
+                out.writeInt(timestamps[k]);
+            }
+        } catch (IOException e) {
+            log.info("could not save timestamp index to " + f + ": " + e);
+            tmp.delete();
+            return false;
+        }
+        if ((f.exists() && !f.delete()) || !tmp.renameTo(f)) {
+            log.info("could not rename " + tmp + " to " + f);
+            tmp.delete();
+            return false;
+        }
+        log.info("saved timestamp index to " + f);
+        return true;
+    }
+
+    /**
+     * Converts a raw timestamp to the unwrapped time of the index. Since the
+     * int32 timestamp wraps every 2^32 us (about 71 minutes), a raw timestamp
+     * is ambiguous in longer files; it is taken to be the time closest to the
+     * index entry at an event position, e.g. the current read position. The
+     * result is correct if the timestamp is within 2^31 us (about 35 minutes)
+     * of the time of that entry.
+     *
+     * @param timestamp the raw timestamp in us
+     * @param position the event position near which the timestamp is
+     * @return the time in us relative to the first timestamp, or -1 if the
+     * index is empty
+     */
+    public long toTimeUs(int timestamp, long position) {
+        if (timestamps.length == 0) {
+            return -1;
+        }
+        final int entry = getEntryAtPosition(position);
+        return timesUs[entry] + (timestamp - timestamps[entry]); // int difference unwraps a wrap of the int32 timestamp
+    }
+
+    /**
+     * Returns the last index entry at or before an event position.
+     *
+     * @param position the event position
+     * @return the entry number, 0 if the position is before the first entry
+     */
+    public int getEntryAtPosition(long position) {
+        int lo = 0, hi = positions.length - 1, found = 0;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (positions[mid] <= position) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the index entry to start scanning from to find a time, i.e. the
+     * last entry before which all sampled times are earlier than timeUs.
+     *
+     * @param timeUs the time in us relative to the first timestamp
+     * @return the entry number, 0 if the time is before the first entry
+     */
+    public int getEntryBefore(long timeUs) {
+        int lo = 0, hi = maxTimesUs.length - 1, found = 0;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (maxTimesUs[mid] < timeUs) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the event position of the entry
+     */
+    public long getPosition(int entry) {
+        return positions[entry];
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the raw timestamp of the entry
+     */
+    public int getTimestamp(int entry) {
+        return timestamps[entry];
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the unwrapped time of the entry in us relative to the first
+     * timestamp
+     */
+    public long getTimeUs(int entry) {
+        return timesUs[entry];
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int getNumEntries() {
+        return timestamps.length;
+    }
+
+    /**
+     * @return the number of events between entries
+     */
+    public int getIntervalEvents() {
+        return intervalEvents;
+    }
+
+    /**
+     * @return the number of events in the indexed file
+     */
+    public long getNumEvents() {
+        return numEvents;
+    }
+
+    /**
+     * @return the unwrapped duration of the file in us, which unlike
+     * AEFileInputStream.getDurationUs() is correct for files in which the
+     * timestamp wraps
+     */
+    public long getDurationUs() {
+        return lastTimeUs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s with %,d entries every %,d events for %,d events and %.3f s",
+                getClass().getSimpleName(), timestamps.length, intervalEvents, numEvents, 1e-6 * lastTimeUs);
+    }
+}
@@ -14,22 +14,40 @@ package net.sf.jaer.eventio;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
+import net.sf.jaer.aemonitor.AEPacketRaw;
 
 /**
- * Following is target functionality (right now this class only opens a single socket to most recent client connecting to it
-and events are only streamed to this one socket): This server socket allows a source host to listen for connections from other hosts and open AESockets to them to allow
-streaming AE data to them, so as a server, we stream events to the clients.
+ * This server socket allows a source host to listen for connections from other hosts and stream AE data to them,
+ * so as a server, we stream events to the clients.
 These stream socket connections transmit data reliably.
 <p>
-Multile clients can recieve events from a single server through the use of java.nio channels and selectors.
+Multiple clients can receive events from a single server through the use of java.nio channels and a selector.
+Each packet passed to {@link #writePacket} is serialized once into a shared buffer in the {@link AESocket} stream format
+for all clients that have the same timestamp reference, and a view of this buffer is queued for each of them.
+As with one AESocket per client, each client's timestamps start at 0 when it connects, and in ISI mode are relative
+to the last event the client was sent, so that dropped packets do not shift its time. A single selector thread writes the queued packets to the
+clients as fast as each one can take them, so writePacket never blocks the caller (the AEViewer ViewLoop).
 <p>
-The AESocket's are manufactured when a client connects to the AEViewer. The AESocket's are built with options that are
-set using the AEServerSocketOptionsDialog.
+Each client has its own send queue, bounded by {@link #getMaxClientQueueBytes()}. When a slow client's queue is full,
+the {@link SlowClientPolicy} decides whether the packet is dropped for that client or the client is disconnected;
+other clients and acquisition are never stalled. Clients only receive whole packets, so the event stream of a client that
+drops packets stays aligned.
+<p>
+The clients are built with options that are set using the AEServerSocketOptionsDialog.
 This AEServerSocket is a Thread and it must be started after construction to allow incoming connections.
 <p>
  * AEServerSocket has PropertyChangeSupport; see the {@link #getSupport() } method for change event information.
@@ -41,93 +59,449 @@ public class AEServerSocket extends Thread {
     static Logger log = Logger.getLogger("AEServerSocket");
     private PropertyChangeSupport support = new PropertyChangeSupport(this);
     public static final int DEFAULT_BUFFERED_STREAM_SIZE_BYTES = 8192;
-    public static final int DEFAULT_SEND_BUFFER_SIZE_BYTES = 8192;
+    /** Default socket send buffer size of each client; small buffers limit the throughput of the non-blocking writes */
+    public static final int DEFAULT_SEND_BUFFER_SIZE_BYTES = 1 << 16;
     public static final int DEFAULT_RECIEVE_BUFFER_SIZE_BYTES = 8192;
-    private ServerSocket serverSocket;
-    private AESocket socket = null;
+    /** Default maximum number of bytes queued for each client */
+    public static final int DEFAULT_MAX_CLIENT_QUEUE_BYTES = 1 << 22;
+    /** The maximum number of packets written to a client with one gathering write */
+    private static final int MAX_BUFFERS_PER_WRITE = 16;
+
+    /** What to do with a packet when a client's send queue is full */
+    public enum SlowClientPolicy {
+        /** Drop the packet for this client only */
+        Drop,
+        /** Close the connection to this client */
+        Disconnect
+    };
+
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
     private int bufferedStreamSize = prefs.getInt("AEServerSocket.bufferedStreamSize", DEFAULT_BUFFERED_STREAM_SIZE_BYTES);
     private int sendBufferSize = prefs.getInt("AEServerSocket.sendBufferSize", DEFAULT_SEND_BUFFER_SIZE_BYTES);
     private int port = prefs.getInt("AEServerSocket.port", AENetworkInterfaceConstants.STREAM_PORT);
     private int receiveBufferSize = prefs.getInt("AEServerSocket.receiveBufferSize", DEFAULT_RECIEVE_BUFFER_SIZE_BYTES);
     private boolean flushPackets = prefs.getBoolean("AESocket.flushPackets", true);
     private boolean useBufferedStreams = prefs.getBoolean("AEServerSocket.useBufferedStreams", true);
+    private int maxClientQueueBytes = prefs.getInt("AEServerSocket.maxClientQueueBytes", DEFAULT_MAX_CLIENT_QUEUE_BYTES);
+    private SlowClientPolicy slowClientPolicy = SlowClientPolicy.valueOf(prefs.get("AEServerSocket.slowClientPolicy", SlowClientPolicy.Drop.toString()));
+    private final boolean swapBytesEnabled = AESocket.prefs.getBoolean("AESocket.swapBytesEnabled", false);
     private Thread T = null;
 
+    /** Serialized packets that are no longer queued for any client, for reuse */
+    private final ArrayDeque<SharedPacket> pool = new ArrayDeque<>();
+    /** The packets serialized by the current writePacket, one for each timestamp reference; only used by writePacket */
+    private final ArrayList<SharedPacket> serialized = new ArrayList<>();
+    private volatile long numPacketsWritten = 0, numPacketsDropped = 0, numClientsDisconnected = 0;
+
+    /** A serialized packet, shared by the clients it is queued for */
+    private final class SharedPacket {
+
+        ByteBuffer buffer = ByteBuffer.allocate(0);
+        int references = 0; // guarded by pool
+        boolean t0Valid; // the timestamp reference the packet was serialized with, as in AESocket.normalize
+        int t0;
+
+        void release() {
+            synchronized (pool) {
+                if (--references == 0) {
+                    pool.push(this);
+                }
+            }
+        }
+    }
+
+    /** The state of one connected client */
+    private final class Client {
+
+        final SocketChannel channel;
+        final String name;
+        final ArrayDeque<SharedPacket> packets = new ArrayDeque<>(); // guarded by this
+        final ArrayDeque<ByteBuffer> views = new ArrayDeque<>(); // the remaining bytes of each queued packet, guarded by this
+        int queuedBytes = 0; // guarded by this
+        final ByteBuffer[] batch = new ByteBuffer[MAX_BUFFERS_PER_WRITE]; // only used by the selector thread
+        volatile boolean closeRequested = false;
+        volatile long packetsSent = 0, packetsDropped = 0;
+        SelectionKey key;
+        boolean t0Valid = false; // timestamp reference of the events queued so far, as in AESocket.normalize; only used by writePacket
+        int t0 = 0;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            SocketAddress a = null;
+            try {
+                a = channel.getRemoteAddress();
+            } catch (IOException e) {
+            }
+            name = a == null ? "unknown" : a.toString();
+        }
+
+        /**
+         * Queues a packet.
+         *
+         * @return the number of packets queued including this one, so 1 if
+         * the queue was empty and the selector thread must be woken, or 0 if
+         * the queue was full
+         */
+        synchronized int offer(SharedPacket p) {
+            final int n = p.buffer.remaining();
+            if (queuedBytes > 0 && queuedBytes + n > maxClientQueueBytes) {
+                return 0;
+            }
+            packets.add(p);
+            views.add(p.buffer.duplicate());
+            queuedBytes += n;
+            return packets.size();
+        }
+
+        /**
+         * Writes as much of the queue as the socket takes without blocking.
+         *
+         * @return true if the queue is empty afterwards
+         */
+        boolean write() throws IOException {
+            final int k;
+            synchronized (this) {
+                if (views.isEmpty()) {
+                    return true;
+                }
+                k = Math.min(views.size(), MAX_BUFFERS_PER_WRITE);
+                Iterator<ByteBuffer> it = views.iterator();
+                for (int i = 0; i < k; i++) {
+                    batch[i] = it.next();
+                }
+            }
+            final long n = channel.write(batch, 0, k);
+            synchronized (this) {
+                queuedBytes -= n;
+                while (!views.isEmpty() && !views.peek().hasRemaining()) {
+                    views.poll();
+                    packets.poll().release();
+                    packetsSent++;
+                }
+                return views.isEmpty();
+            }
+        }
+
+        synchronized boolean isEmpty() {
+            return views.isEmpty();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warning("while closing client " + name + " caught " + e.toString());
+            }
+            synchronized (this) {
+                for (SharedPacket p : packets) {
+                    p.release();
+                }
+                packets.clear();
+                views.clear();
+                queuedBytes = 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("client %s: %,d packets sent, %,d dropped, %,d bytes queued", name, packetsSent, packetsDropped, queuedBytes);
+        }
+    }
+
     /** Creates a new instance of AEServerSocket. This Thread must be started to serve connections.
     @throws java.net.BindException when the socket is already bound (probably by another viewer)
      */
     public AEServerSocket() throws java.io.IOException {
         T = this;
-        serverSocket = new ServerSocket();
-        serverSocket.setReceiveBufferSize(receiveBufferSize);
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        selector = Selector.open();
         /*}catch(java.net.BindException be){
         log.warning("server socket already bound to port (probably from another AEViewer)");
          */
         setName("AEServerSocket port=" + port);
+        setDaemon(true);
     }
 
     public String toString() {
-        return "AEServerSocket on port=" + port;
+        return "AEServerSocket on port=" + port + " with " + clients.size() + " clients";
     }
 
-    /** Accepts incoming connections and manufactures AESocket's for them. Currently only a single
-     * client is supported.
+    /** Accepts incoming connections and writes the queued packets to the clients.
      */
     public void run() {
-        if (serverSocket == null) {
+        if (serverChannel == null) {
             return; // port was already bound
         }
-        while (!isInterrupted()) {
-            try {
-                if (!serverSocket.isBound()) {
-                    try {
-                        serverSocket.bind(new InetSocketAddress(port)); // FIXME TODO, if we have a port here that is already in use, then we can't use the ServerSocket options dialog to change it!!
-                        log.info("bound " + this);
-                    } catch (IOException ioe) {
-                        log.warning("couldn't bind AEServerSocket to port " + port + " : " + ioe+ "; this run() will break. A new AEServerSocket should be contructed.");
-                        break;
+        try {
+            serverChannel.bind(new InetSocketAddress(port)); // FIXME TODO, if we have a port here that is already in use, then we can't use the ServerSocket options dialog to change it!!
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            log.info("bound " + this);
+        } catch (IOException ioe) {
+            log.warning("couldn't bind AEServerSocket to port " + port + " : " + ioe + "; this run() will break. A new AEServerSocket should be contructed.");
+            return;
+        }
+        final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+        try {
+            while (!isInterrupted() && serverChannel.isOpen()) {
+                selector.select();
+                if (!serverChannel.isOpen()) {
+                    break;
+                }
+                // clients with newly queued packets or to be closed; interest ops are only changed on this thread
+                for (Client c : clients) {
+                    if (c.closeRequested) {
+                        removeClient(c, "slow client disconnected");
+                    } else if (!c.isEmpty() && c.key.isValid() && (c.key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                        c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
                     }
                 }
-                Socket newSocket = serverSocket.accept(); // makes a new socket to the connecting client
-                if (socket != null) {
-                    log.info("closing existing stream TCP output socket " + socket + " to accept a new connection"); // TODO multiple clients should be possible
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Client c = (Client) key.attachment();
                     try {
-                        socket.close();
-                    } catch (IOException ioe) {
-                        log.warning("while closing old socket caught " + ioe.getMessage());
+                        if (key.isReadable()) {
+                            readBuffer.clear();
+                            if (c.channel.read(readBuffer) < 0) { // clients don't send us anything, but this is how we notice they closed
+                                removeClient(c, "client closed connection");
+                                continue;
+                            }
+                        }
+                        if (key.isValid() && key.isWritable() && c.write()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    } catch (IOException e) {
+                        removeClient(c, e.toString());
                     }
                 }
-                newSocket.setSendBufferSize(sendBufferSize);
-                if (newSocket.getSendBufferSize() != getSendBufferSize()) {
-                    log.warning("accepted connection and asked for sendBufferSize=" + getSendBufferSize() + " but only got sendBufferSize=" + newSocket.getSendBufferSize());
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!isInterrupted() && serverChannel.isOpen()) {
+                log.warning(e.toString() + ": AEServerSocket on port " + port + " stopped serving");
+            }
+        } finally {
+            for (Client c : clients) {
+                removeClient(c, "server closing");
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = serverChannel.accept();
+        if (ch == null) {
+            return;
+        }
+        ch.configureBlocking(false);
+        ch.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+        if (ch.getOption(StandardSocketOptions.SO_SNDBUF) != getSendBufferSize()) {
+            log.warning("accepted connection and asked for sendBufferSize=" + getSendBufferSize() + " but only got sendBufferSize=" + ch.getOption(StandardSocketOptions.SO_SNDBUF));
+        }
+        Client c = new Client(ch);
+        c.key = ch.register(selector, SelectionKey.OP_READ, c);
+        clients.add(c);
+        log.info("accepted incoming stream TCP connection from " + c.name + ", now serving " + clients.size() + " clients");
+        getSupport().firePropertyChange("clientconnected", null, c.name);
+    }
+
+    private void removeClient(Client c, String reason) {
+        if (!clients.remove(c)) {
+            return;
+        }
+        c.close();
+        log.info("closed " + c + ": " + reason + "; now serving " + clients.size() + " clients");
+        getSupport().firePropertyChange("clientdisconnected", c.name, null);
+    }
+
+    /**
+     * Queues a packet for all connected clients. Never blocks: a client whose
+     * queue is full gets the packet dropped or is disconnected, according to
+     * the {@link #getSlowClientPolicy() slow client policy}.
+     * <p>
+     * The events are written as in {@link AESocket#writePacket}: int32
+     * timestamp, int32 address, with timestamps relative to the first event
+     * sent to the client (or to the previous event sent to it if AESocket ISI
+     * mode is enabled), and byte swapping if enabled in the AESocket
+     * preferences. The packet is serialized once for all clients with the
+     * same timestamp reference.
+     *
+     * @param packet the packet, returns doing nothing if null or empty
+     */
+    public void writePacket(AEPacketRaw packet) {
+        if (packet == null || packet.getNumEvents() == 0) {
+            return;
+        }
+        if (clients.isEmpty()) {
+            return;
+        }
+        final int[] ts = packet.getTimestamps();
+        final int n = packet.getNumEvents();
+        final boolean isi = AESocket.isiEnabled;
+        boolean wakeup = false;
+        for (Client c : clients) {
+            if (c.closeRequested) {
+                continue;
+            }
+            SharedPacket p = null;
+            for (SharedPacket s : serialized) {
+                if (s.t0Valid == c.t0Valid && (!c.t0Valid || s.t0 == c.t0)) {
+                    p = s;
+                    break;
                 }
-                AESocket aeSocket = new AESocket(newSocket);
-                aeSocket.setFlushPackets(isFlushPackets());
-                aeSocket.setUseBufferedStreams(isUseBufferedStreams());
-                AESocket oldSocket = aeSocket;
-                synchronized (this) {
-                    setSocket(aeSocket);
+            }
+            if (p == null) {
+                p = serialize(packet, c.t0Valid, c.t0, isi);
+                synchronized (pool) {
+                    p.references = 1; // ours, so the packet is not recycled while we queue it
                 }
-                log.info("accepted incoming stream TCP socket request to send events on socket " + newSocket);
-                getSupport().firePropertyChange("clientconnected", oldSocket, aeSocket);
-            }catch(SocketException se){
-                log.info("socket closed gracefully? caught "+ se.toString());
-                break;
-            } catch (IOException e) {
-                if (!isInterrupted()) {
-                    log.warning(e.toString() + ": AEServerSocket on port " + port + " may already be bound by another viewer");
+                serialized.add(p);
+            }
+            synchronized (pool) {
+                p.references++; // before queueing, since the selector thread can send and release it right away
+            }
+            // whether the queue was empty is decided under the client's lock, so the selector cannot miss the packet
+            final int queued = c.offer(p);
+            if (queued > 0) {
+                wakeup |= queued == 1;
+                if (isi) {
+                    c.t0 = ts[n - 1];
+                    c.t0Valid = true;
+                } else if (!c.t0Valid) {
+                    c.t0 = ts[0];
+                    c.t0Valid = true;
                 }
-                break;
+                continue;
+            }
+            p.release(); // the client's time reference stays at the last event it was sent
+            if (slowClientPolicy == SlowClientPolicy.Drop) {
+                c.packetsDropped++;
+                numPacketsDropped++;
+            } else {
+                c.closeRequested = true;
+                numClientsDisconnected++;
+                wakeup = true;
+            }
+        }
+        for (SharedPacket p : serialized) {
+            p.release();
+        }
+        serialized.clear();
+        numPacketsWritten++;
+        if (wakeup) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Serializes a packet like AESocket.writePacket.
+     *
+     * @param t0Valid false if no event was sent before, so the timestamps
+     * start at 0
+     * @param t0 the timestamp the first event is relative to
+     * @param isi true to make each timestamp relative to the previous event
+     */
+    private SharedPacket serialize(AEPacketRaw packet, boolean t0Valid, int t0, boolean isi) {
+        SharedPacket p;
+        synchronized (pool) {
+            p = pool.isEmpty() ? new SharedPacket() : pool.pop();
+        }
+        final int n = packet.getNumEvents();
+        if (p.buffer.capacity() < 8 * n) {
+            p.buffer = ByteBuffer.allocate(8 * n);
+        }
+        final ByteBuffer b = p.buffer;
+        b.clear();
+        p.t0Valid = t0Valid;
+        p.t0 = t0;
+        final int[] ts = packet.getTimestamps(), a = packet.getAddresses();
+        for (int i = 0; i < n; i++) {
+            int t;
+            if (!t0Valid) {
+                t0 = ts[i];
+                t0Valid = true;
+                t = 0;
+            } else {
+                t = ts[i] - t0;
+            }
+            if (isi) {
+                t0 = ts[i];
             }
+            if (swapBytesEnabled) {
+                b.putInt(Integer.reverseBytes(t));
+                b.putInt(Integer.reverseBytes(a[i]));
+            } else {
+                b.putInt(t);
+                b.putInt(a[i]);
+            }
+        }
+        b.flip();
+        return p;
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int getNumClients() {
+        return clients.size();
+    }
+
+    /**
+     * @return a description of each connected client and its queue
+     */
+    public ArrayList<String> getClientDescriptions() {
+        ArrayList<String> list = new ArrayList<>();
+        for (Client c : clients) {
+            list.add(c.toString());
         }
+        return list;
+    }
+
+    /**
+     * @return the number of packets passed to writePacket while clients were
+     * connected
+     */
+    public long getNumPacketsWritten() {
+        return numPacketsWritten;
+    }
+
+    /**
+     * @return the total number of packets dropped for slow clients
+     */
+    public long getNumPacketsDropped() {
+        return numPacketsDropped;
+    }
+
+    /**
+     * @return the number of clients disconnected because they were too slow
+     */
+    public long getNumClientsDisconnected() {
+        return numClientsDisconnected;
     }
 
+    /** Returns null; the clients are now served by {@link #writePacket}.
+     * @deprecated use {@link #writePacket} to send events to all clients
+     */
+    @Deprecated
     synchronized public AESocket getAESocket() {
-        return socket;
+        return null;
     }
 
+    /** Does nothing; the clients are now managed by the server thread.
+     * @deprecated the clients are managed by the server thread
+     */
+    @Deprecated
     public void setSocket(AESocket socket) {
-        this.socket = socket;
     }
 
     /** Tests class by constructing a socket and starting the thread */
@@ -160,6 +534,10 @@ public class AEServerSocket extends Thread {
         return sendBufferSize;
     }
 
+    /**
+     * @return the buffered stream size, which is no longer used since the
+     * clients are written directly from the queued packets
+     */
     public int getBufferedStreamSize() {
         return bufferedStreamSize;
     }
@@ -177,6 +555,10 @@ public class AEServerSocket extends Thread {
         return port;
     }
 
+    /**
+     * @return the flushPackets option, which is no longer used since each
+     * packet is written to the clients as soon as they can take it
+     */
     public boolean isFlushPackets() {
         return flushPackets;
     }
@@ -186,26 +568,56 @@ public class AEServerSocket extends Thread {
         prefs.putBoolean("AESocket.flushPackets", flushPackets);
     }
 
-    /** shuts down the server socket thread and closes the server socket */
+    /**
+     * @return the maximum number of bytes queued for each client
+     */
+    public int getMaxClientQueueBytes() {
+        return maxClientQueueBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes queued for each client. A packet
+     * larger than this is still queued for a client whose queue is empty.
+     *
+     * @param maxClientQueueBytes the maximum in bytes
+     */
+    public void setMaxClientQueueBytes(int maxClientQueueBytes) {
+        this.maxClientQueueBytes = maxClientQueueBytes;
+        prefs.putInt("AEServerSocket.maxClientQueueBytes", maxClientQueueBytes);
+    }
+
+    /**
+     * @return what is done when a client's queue is full
+     */
+    public SlowClientPolicy getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+
+    /**
+     * @param slowClientPolicy what to do when a client's queue is full
+     */
+    public void setSlowClientPolicy(SlowClientPolicy slowClientPolicy) {
+        this.slowClientPolicy = slowClientPolicy;
+        prefs.put("AEServerSocket.slowClientPolicy", slowClientPolicy.toString());
+    }
+
+    /** shuts down the server socket thread and closes the server socket and all client connections */
     public void close() throws IOException {
         log.info("closing AEServerSocket thread");
-//        T.interrupt();
-//        try {
-//            T.join(50,0); // wait some ms for server thread to die
-//        } catch (InterruptedException ex) {
-//            log.info("interrupted during thread shutdown");
-//        }
-        serverSocket.close();
+        serverChannel.close();
+        selector.wakeup();
         try {
             T.join(1000);
         } catch (InterruptedException ex) {
             log.info("join after server socket close was interrupted");
         }
+        selector.close();
         log.info("closed server socket");
     }
 
     /**
-     * @return the useBufferedStreams
+     * @return the useBufferedStreams option, which is no longer used since
+     * the clients are written directly from the queued packets
      */
     public boolean isUseBufferedStreams() {
         return useBufferedStreams;
@@ -221,7 +633,8 @@ public class AEServerSocket extends Thread {
     /**
      * PropertyChange events are fired as follows:
      * <ul>
-     * <li> "clientconnected" - when a client has connected to us.
+     * <li> "clientconnected" - when a client has connected to us; the new value is the client's address.
+     * <li> "clientdisconnected" - when a client has disconnected or was disconnected; the old value is the client's address.
      * </ul>
 
      * @return the support.
@@ -34,6 +34,14 @@ public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
         portTextField.setText(Integer.toString(aeServerSocket.getPort()));
         flushPacketsCheckBox.setSelected(aeServerSocket.isFlushPackets());
         useBufferedStreamsCheckBox.setSelected(aeServerSocket.isUseBufferedStreams());
+        // the server writes the queued packets directly to the client channels, so these options no longer do anything
+        final String unused = "not used: packets are queued for each client and written to it as soon as it can take them";
+        bufferSizeTextField.setEnabled(false);
+        bufferSizeTextField.setToolTipText(unused);
+        flushPacketsCheckBox.setEnabled(false);
+        flushPacketsCheckBox.setToolTipText(unused);
+        useBufferedStreamsCheckBox.setEnabled(false);
+        useBufferedStreamsCheckBox.setToolTipText(unused);
         getRootPane().setDefaultButton(okButton); // allows enter to just accept values
     }
 
@@ -16,6 +16,11 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.logging.Logger;
@@ -38,6 +43,10 @@ import net.sf.jaer.aemonitor.EventRaw;
  </pre>
  The timestamp tick is us. The addresses are raw device addresses. See the AEChip classes for their
  EventExtractor2D inner class extractor definitions for individual device address formats.
+ *<p>
+ * For high event rates, the bulk read mode (see {@link #setBulkReadEnabled(boolean)}) reads the socket through its
+ * channel into a large direct buffer and decodes packet headers and events through an int view of it, rather than
+ * reading every int with a DataInputStream.
  * @author tobi
  */
 public class AESocket implements AESocketSettings{
@@ -51,6 +60,7 @@ public class AESocket implements AESocketSettings{
     private int bufferedStreamSize=prefs.getInt("AESocket.bufferedStreamSize",DEFAULT_BUFFERED_STREAM_SIZE_BYTES);
     private boolean useBufferedStreams=prefs.getBoolean("AESocket.useBufferedStreams",true);
     private boolean flushPackets=prefs.getBoolean("AESocket.flushPackets",true);
+    private boolean bulkReadEnabled=prefs.getBoolean("AESocket.bulkReadEnabled",false);
     static Preferences prefs = Preferences.userNodeForPackage(AESocket.class);
     private boolean sequenceNumberEnabled = prefs.getBoolean("AESocket.sequenceNumberEnabled",true);
     private boolean addressFirstEnabled = prefs.getBoolean("AESocket.addressFirstEnabled",true);
@@ -82,6 +92,18 @@ public class AESocket implements AESocketSettings{
     private DataInputStream dis;
     private DataOutputStream dos;
 
+    /** Size of the direct buffer of the bulk read mode; it holds about 128k events */
+    public static final int BULK_READ_BUFFER_SIZE_BYTES=1<<20;
+    /** Number of int32 in the header that precedes the events of each packet in the stream */
+    private static final int HEADER_SIZE_INTS=7;
+    /** The first int32 of each packet header */
+    private static final int HEADER_TYPE_AND_SOURCE=0x10001;
+    // bulk read mode; readChannel is non-null while it is used
+    private ReadableByteChannel readChannel;
+    private ByteBuffer readBuffer; // holds undecoded bytes, e.g. a partial header or event, between readPacket calls
+    private int[] decodeInts=new int[0];
+    private int bulkEventsRemaining=0; // events of the current packet that have not been decoded yet
+
     /** Creates a new instance of AESocket  using an existing Socket.
      @param s the socket to use.
      */
@@ -159,6 +181,12 @@ public class AESocket implements AESocketSettings{
     int nEventCapacity =0;
     int nTmpCount = 0;
     public synchronized AEPacketRaw readPacket() throws IOException{
+        if(readChannel==null && dis==null && bulkReadEnabled){
+            openReadChannel();
+        }
+        if(readChannel!=null){
+            return readPacketBulk();
+        }
         checkDataInputStream();
 
         //        int n = dis.available() / AENetworkInterface.EVENT_SIZE_BYTES;
@@ -197,6 +225,111 @@ public class AESocket implements AESocketSettings{
             return packet;
         }*/
     }
+    /** Reads into the direct buffer whatever the socket has available, up to its size, and decodes all complete
+     * events in it. The bytes of a partial header or event are kept for the next call.
+     * @return the packet, which can be empty
+     * @throws EOFException if the peer closed the connection and no events are left
+     */
+    private AEPacketRaw readPacketBulk() throws IOException{
+        packet.setNumEvents(0);
+        boolean endOfStream=false;
+        try{
+            while(readBuffer.hasRemaining()){
+                final int n=readChannel.read(readBuffer);
+                if(n<0){
+                    endOfStream=true;
+                    break;
+                }else if(n==0){ // non-blocking channel has no more data now
+                    break;
+                }
+            }
+        }catch(SocketTimeoutException e){
+            // stream of a socket without channel has no more data now
+        }
+        readBuffer.flip();
+        decodeBulk();
+        readBuffer.compact();
+        if(endOfStream && packet.getNumEvents()==0){
+            throw new EOFException("end of stream from "+socket);
+        }
+        return packet;
+    }
+
+    /** Decodes the headers and events in readBuffer through an int view, advancing readBuffer past them. */
+    private void decodeBulk(){
+        final IntBuffer ints=readBuffer.asIntBuffer(); // little endian, like swapByteOrder(dis.readInt())
+        while(true){
+            if(bulkEventsRemaining==0){
+                if(ints.remaining()<HEADER_SIZE_INTS){
+                    break;
+                }
+                final int typeAndSource=ints.get();
+                if(typeAndSource!=HEADER_TYPE_AND_SOURCE){
+                    log.warning("!!!!!!!!!!The first byte of the packet is not 0x10001, is"+typeAndSource);
+                }
+                ints.position(ints.position()+3); // eventsize, eventoffset, eventoverflow
+                bulkEventsRemaining=Math.max(0,ints.get()); // eventcapacity
+                ints.position(ints.position()+2); // eventnumber, eventvalid
+                continue;
+            }
+            final int n=Math.min(bulkEventsRemaining,ints.remaining()/2);
+            if(n==0){
+                break;
+            }
+            if(decodeInts.length<2*n){
+                decodeInts=new int[2*n];
+            }
+            ints.get(decodeInts,0,2*n);
+            final int start=packet.getNumEvents();
+            packet.ensureCapacity(start+n);
+            final int[] addresses=packet.getAddresses();
+            final int[] timestamps=packet.getTimestamps();
+            if(isSwapBytesEnabled()){ // same as readEventForwards, timestamp first and read big endian
+                for(int i=0,j=0;i<n;i++,j+=2){
+                    timestamps[start+i]=Integer.reverseBytes(normalize(Integer.reverseBytes(decodeInts[j])));
+                    addresses[start+i]=convertAddress(decodeInts[j+1]);
+                }
+            }else{
+                for(int i=0,j=0;i<n;i++,j+=2){
+                    addresses[start+i]=convertAddress(decodeInts[j]);
+                    timestamps[start+i]=decodeInts[j+1];
+                }
+            }
+            packet.setNumEvents(start+n);
+            mostRecentTimestamp=timestamps[start+n-1];
+            bulkEventsRemaining-=n;
+        }
+        readBuffer.position(readBuffer.position()+(ints.position()*4));
+    }
+
+    /** Starts the bulk read mode, using the socket's channel in non-blocking mode if it has one, or otherwise a channel
+     * on its input stream, which returns when the socket times out.
+     */
+    private void openReadChannel() throws IOException{
+        final SocketChannel socketChannel=socket.getChannel();
+        if(socketChannel!=null){
+            socketChannel.configureBlocking(false);
+            readChannel=socketChannel;
+        }else{
+            readChannel=Channels.newChannel(socket.getInputStream());
+        }
+        if(readBuffer==null){
+            readBuffer=ByteBuffer.allocateDirect(BULK_READ_BUFFER_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        readBuffer.clear();
+        bulkEventsRemaining=0;
+        log.info("reading "+socket+" in bulk read mode");
+    }
+
+    /** Converts the address of a received event to the DVS128 address format.
+     * @param addr the received address
+     * @return the DVS128 address
+     */
+    private static int convertAddress(int addr){
+        //      x_addr                          y_addr          on_off event
+        return ((addr & 0xfe0000) >> 16) + ((addr  & 0x1fc) << 6) + ((addr & 2) >> 1);     //just for DVS128 data format convertion
+    }
+
     /** Writes the packet to the stream. Returns doing nothing if packet is null or empty.
      *
      * @param p the packet
@@ -283,7 +416,6 @@ public class AESocket implements AESocketSettings{
     private EventRaw readEventForwards() throws IOException{
         int ts=0;
         int addr=0;
-        byte pTmp[] = new byte[2000];
         if(isSwapBytesEnabled()){
             ts=this.swapByteOrder(normalize(dis.readInt()));
             addr=this.swapByteOrder(dis.readInt());
@@ -305,7 +437,7 @@ public class AESocket implements AESocketSettings{
         // tmpEvent.address=addr;
         // tmpEvent.timestamp=ts;
         //                        x_addr                          y_addr          on_off event
-        tmpEvent.address = ((addr & 0xfe0000) >> 16) + ((addr  & 0x1fc) << 6) + ((addr & 2) >> 1);     //just for DVS128 data format convertion
+        tmpEvent.address = convertAddress(addr);
         // tmpEvent.address = ((addr & 0x7fe0000) >> 5) + ((addr  & 0x7fc) << 20) + ((addr & 2) >> 1);     //just for DAVIS data format convertion
         tmpEvent.timestamp=ts;
         mostRecentTimestamp=ts;
@@ -450,6 +582,7 @@ public class AESocket implements AESocketSettings{
         socket.close();
         dis=null;
         dos=null;
+        readChannel=null;
         t0_ref=-1;
     }
     public String getHost(){
@@ -491,6 +624,9 @@ public class AESocket implements AESocketSettings{
     @Override
     public void connect() throws IOException{
         // socket has already been created either elsewhere or in the default constuctor
+        if(bulkReadEnabled && socket.getChannel()==null && !socket.isConnected() && !socket.isClosed()){
+            socket=SocketChannel.open().socket(); // so that the bulk read mode can read the channel without blocking
+        }
         // we now also make a selector for it to enable checking if it is really still working
         //        socket.setPerformancePreferences(0,1,0); // low latency
 //        socket.setTcpNoDelay(true); // disable aggregation of data into full packets
@@ -561,6 +697,27 @@ public class AESocket implements AESocketSettings{
         prefs.putBoolean("AESocket.flushPackets",flushPackets);
     }
 
+    /** Says whether the bulk read mode is used for sockets connected from now on.
+     * @return true if enabled
+     * @see #setBulkReadEnabled(boolean)
+     */
+    public boolean isBulkReadEnabled(){
+        return bulkReadEnabled;
+    }
+
+    /** Enables the bulk read mode, which takes effect on the next {@link #connect}. In this mode readPacket reads
+     * all data that is available from the socket channel, without blocking, into a direct buffer of
+     * {@link #BULK_READ_BUFFER_SIZE_BYTES}, and decodes packet headers and events in bulk through an int view of
+     * the buffer. Packets and events split across reads are reassembled. The channel is put in non-blocking mode,
+     * so a socket read in this mode cannot also be written with {@link #writePacket}.
+     *
+     * @param bulkReadEnabled true to enable
+     */
+    public void setBulkReadEnabled(boolean bulkReadEnabled){
+        this.bulkReadEnabled=bulkReadEnabled;
+        prefs.putBoolean("AESocket.bulkReadEnabled",bulkReadEnabled);
+    }
+
     /** Is this socket connected.
      @return false if underlying socket is null or is not connected
      */
@@ -60,6 +60,11 @@ public class AEUnicastDialog extends javax.swing.JDialog {
         useLocalTimestampsEnabledCheckBox.setSelected(unicastInterface.isLocalTimestampEnabled());
         spinProtRB.setSelected(unicastInterface.isSpinnakerProtocolEnabled());
         secProtRB.setSelected(unicastInterface.isSecDvsProtocolEnabled());
+        if (unicastInterface instanceof AEUnicastInput) {
+            highRateReceiveCheckBox.setSelected(((AEUnicastInput) unicastInterface).isHighRateReceiveEnabled());
+        } else {
+            highRateReceiveCheckBox.setEnabled(false);
+        }
         KeyStroke escape = KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0, false);
         Action escapeAction = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
@@ -107,6 +112,9 @@ public class AEUnicastDialog extends javax.swing.JDialog {
         unicastInterface.set4ByteAddrTimestampEnabled(use4ByteAddrTsCheckBox.isSelected());
         unicastInterface.setTimestampsEnabled(includeTimestampsCheckBox.isSelected());
         unicastInterface.setLocalTimestampEnabled(useLocalTimestampsEnabledCheckBox.isSelected());
+        if (unicastInterface instanceof AEUnicastInput) {
+            ((AEUnicastInput) unicastInterface).setHighRateReceiveEnabled(highRateReceiveCheckBox.isSelected());
+        }
         try {
             int size = Integer.parseInt(bufferSizeTextBox.getText());
             unicastInterface.setBufferSize(size);
@@ -154,6 +162,7 @@ public class AEUnicastDialog extends javax.swing.JDialog {
         includeTimestampsCheckBox = new javax.swing.JCheckBox();
         applyButton = new javax.swing.JButton();
         useLocalTimestampsEnabledCheckBox = new javax.swing.JCheckBox();
+        highRateReceiveCheckBox = new javax.swing.JCheckBox();
         jPanel1 = new javax.swing.JPanel();
         spinProtRB = new javax.swing.JRadioButton();
         secProtRB = new javax.swing.JRadioButton();
@@ -259,6 +268,9 @@ public class AEUnicastDialog extends javax.swing.JDialog {
         useLocalTimestampsEnabledCheckBox.setText("useLocalTimestampsEnabled");
         useLocalTimestampsEnabledCheckBox.setToolTipText("<html>Enable to use System.nanoTime/1000 for all sent or received timstamps. <br>\nCan be useful for unsynchronized input from multple sources.");
 
+        highRateReceiveCheckBox.setText("highRateReceiveEnabled (input only)");
+        highRateReceiveCheckBox.setToolTipText("Receive with a lock-free ring of direct buffers, draining all pending datagrams at once and decoding jAER datagrams in bulk, for event rates above a few Meps. Takes effect when the input is reopened. Sequence number gaps are counted rather than logged.");
+
         jPanel1.setBorder(javax.swing.BorderFactory.createLineBorder(new java.awt.Color(0, 0, 0)));
 
         protGroup.add(spinProtRB);
@@ -335,6 +347,7 @@ public class AEUnicastDialog extends javax.swing.JDialog {
                         .addGap(0, 0, Short.MAX_VALUE)
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(useLocalTimestampsEnabledCheckBox)
+                            .addComponent(highRateReceiveCheckBox)
                             .addComponent(swapBytesCheckBox)
                             .addComponent(use4ByteAddrTsCheckBox)
                             .addComponent(addressFirstEnabledCheckBox)
@@ -402,6 +415,8 @@ public class AEUnicastDialog extends javax.swing.JDialog {
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(useLocalTimestampsEnabledCheckBox)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(highRateReceiveCheckBox)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(jPanel1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
@@ -512,6 +527,7 @@ private void applyButtonActionPerformed (java.awt.event.ActionEvent evt) {//GEN-
     private javax.swing.JTextField bufferSizeTextBox;
     private javax.swing.JRadioButton caerDispRB;
     private javax.swing.JButton cancelButton;
+    private javax.swing.JCheckBox highRateReceiveCheckBox;
     private javax.swing.JTextField hostnameTextField;
     private javax.swing.JCheckBox includeTimestampsCheckBox;
     private javax.swing.JButton jAERDefaultsButton;
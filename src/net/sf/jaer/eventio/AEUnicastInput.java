@@ -16,10 +16,14 @@ import java.net.SocketTimeoutException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
@@ -58,6 +62,12 @@ import net.sf.jaer.eventio.Jaer3BufferParser.Jaer3EventExtractor;
  * <p>
  * The datagram socket is not connected to the receiver, i.e., connect() is not
  * called on the socket.
+ * <p>
+ * For event rates above a few Meps, the high rate receive mode (see
+ * {@link #setHighRateReceiveEnabled(boolean)}) replaces the blocking queues of
+ * buffers with a lock-free ring of direct buffers, drains all pending
+ * datagrams each time the socket becomes readable, and decodes plain jAER
+ * datagrams in bulk directly into the packet arrays.
  *
  * @see #setAddressFirstEnabled
  * @see #setSequenceNumberEnabled
@@ -106,6 +116,33 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     private int secGen2TimestampMSB = 0;
     private int secGen2TimestampLSB = 0;
 
+    private boolean highRateReceiveEnabled = prefs.getBoolean("AEUnicastInput.highRateReceiveEnabled", false);
+    private volatile boolean highRateReceiveActive = false; // set from highRateReceiveEnabled on open()
+    /**
+     * Number of datagram buffers in the ring of the high rate receive mode,
+     * must be a power of 2
+     */
+    private static final int RING_SIZE = 256;
+    /**
+     * Time the reader waits for datagrams in the high rate mode before
+     * checking if it should stop
+     */
+    private static final int SELECT_TIMEOUT_MS = 100;
+    private ByteBuffer[] ringBuffers = null;
+    private InetSocketAddress[] ringClients = null;
+    private ByteBuffer overrunBuffer = null;
+    /**
+     * The ring is written only by the Reader and read only by readPacket, so
+     * head and tail need no locks; head is the next slot to fill, tail the
+     * next slot to decode
+     */
+    private final AtomicLong ringHead = new AtomicLong(), ringTail = new AtomicLong();
+    private Selector selector = null;
+    private int[] decodeInts = new int[0];
+
+    // datagram statistics, written only by the Reader
+    private volatile long numDatagramsReceived = 0, numDatagramsMissed = 0, numSequenceGaps = 0, numDatagramsOutOfOrder = 0, numRingOverruns = 0;
+
     /**
      * Constructs an instance of AEUnicastInput and binds it to the default
      * port. The port preference value may have been modified from the
@@ -135,17 +172,38 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
 
     private void allocateBufffers() {
         availableBufferQueue.clear();
+        filledBufferQueue.clear();
+        ringBuffers = null;
+        ringClients = null;
+        overrunBuffer = null;
+        if (highRateReceiveActive) {
+            ringBuffers = new ByteBuffer[RING_SIZE];
+            ringClients = new InetSocketAddress[RING_SIZE];
+            for (int i = 0; i < RING_SIZE; i++) {
+                ringBuffers[i] = allocateBuffer();
+            }
+            overrunBuffer = allocateBuffer();
+            ringHead.set(0);
+            ringTail.set(0);
+            return;
+        }
         for (int i = 0; i < NBUFFERS; i++) {
-            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
-            buffer.order(swapBytesEnabled || spinnakerProtocolEnabled || secDvsProtocolEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN); //spinnaker always uses little endian
-            availableBufferQueue.add(buffer);
+            availableBufferQueue.add(allocateBuffer());
         }
-        filledBufferQueue.clear();
+    }
+
+    private ByteBuffer allocateBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        buffer.order(swapBytesEnabled || spinnakerProtocolEnabled || secDvsProtocolEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN); //spinnaker always uses little endian
+        return buffer;
     }
 
     private void freeBuffers() {
         availableBufferQueue.clear();
         filledBufferQueue.clear(); // allow GC to collect these references
+        ringBuffers = null;
+        ringClients = null;
+        overrunBuffer = null;
     }
 
     private int eventSize() {
@@ -175,6 +233,9 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     public AENetworkRawPacket readPacket() {
         packet.clear();
         readingThread.maxSizeExceeded = false;
+        if (highRateReceiveActive) {
+            return readPacketHighRate();
+        }
         try {
             returnearly:
             while (filledBufferQueue.peek() != null) {
@@ -194,12 +255,171 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
         }
     }
 
+    /**
+     * Decodes all datagrams that the Reader has put in the ring since the last
+     * call.
+     */
+    private AENetworkRawPacket readPacketHighRate() {
+        final ByteBuffer[] buffers = ringBuffers;
+        if (buffers == null) {
+            return packet;
+        }
+        final long head = ringHead.get();
+        for (long tail = ringTail.get(); tail < head; tail++) {
+            final int slot = (int) tail & (RING_SIZE - 1);
+            if (ringClients[slot] != null) {
+                packet.addClientAddress(ringClients[slot], packet.getNumEvents());
+            }
+            if (!extractEventsBulk(buffers[slot], packet)) {
+                extractEvents(buffers[slot], packet);
+            }
+            ringTail.lazySet(tail + 1); // hands the buffer back to the Reader
+        }
+        return packet;
+    }
+
+    /**
+     * Receives all datagrams that are pending on the socket into the ring,
+     * waiting up to SELECT_TIMEOUT_MS for the first. If the ring is full
+     * because readPacket is not called often enough, datagrams are received
+     * into a spare buffer and dropped, and counted as ring overruns.
+     */
+    private void receiveDatagramsHighRate() {
+        try {
+            if (selector == null) {
+                channel.configureBlocking(false);
+                selector = Selector.open();
+                channel.register(selector, SelectionKey.OP_READ);
+            }
+            final int nReady = selector.select(SELECT_TIMEOUT_MS);
+            Thread.interrupted(); // setPaused interrupts to wake us; clear it, because an interrupt in receive closes the channel
+            if (nReady == 0) {
+                return;
+            }
+            selector.selectedKeys().clear();
+            while (true) {
+                final long head = ringHead.get();
+                final boolean overrun = (head - ringTail.get()) >= RING_SIZE;
+                final int slot = (int) head & (RING_SIZE - 1);
+                final ByteBuffer buffer = overrun ? overrunBuffer : ringBuffers[slot];
+                buffer.clear();
+                SocketAddress client = channel.receive(buffer);
+                if (client == null) {
+                    break; // no more datagrams pending
+                }
+                numDatagramsReceived++;
+                if (!printedHost) {
+                    printedHost = true;
+                    log.info("received first packet from " + client + " of length " + buffer.position() + " bytes in high rate receive mode");
+                }
+                buffer.flip();
+                if (!spinnakerProtocolEnabled && !secDvsProtocolEnabled) {
+                    checkSequenceNumber(buffer);
+                }
+                if (overrun) {
+                    numRingOverruns++;
+                    continue;
+                }
+                ringClients[slot] = client instanceof InetSocketAddress ? (InetSocketAddress) client : null;
+                ringHead.lazySet(head + 1);
+            }
+        } catch (IOException e) {
+            if (!stopme) {
+                log.warning(e.toString());
+            }
+            if (!channel.isOpen() && selector != null) { // checkSocket will open a new channel that must be registered again
+                try {
+                    selector.close();
+                } catch (IOException ex) {
+                    log.warning("on closing Selector caught " + ex);
+                }
+                selector = null;
+            }
+        }
+    }
+
+    /**
+     * Decodes a datagram of the normal jAER protocol with int32 addresses and
+     * timestamps in bulk through an int view of the buffer. Other protocols
+     * and options are left to extractEvents.
+     *
+     * @return true if the datagram was decoded, false if extractEvents must
+     * be used
+     */
+    private boolean extractEventsBulk(ByteBuffer buffer, AENetworkRawPacket packet) {
+        if (spinnakerProtocolEnabled || secDvsProtocolEnabled || cAERStreamEnabled
+                || !use4ByteAddrTs || !timestampsEnabled || localTimestampsEnabled) {
+            return false;
+        }
+        final int n = buffer.remaining() / AENetworkInterfaceConstants.EVENT_SIZE_BYTES;
+        final int startingIndex = packet.getNumEvents();
+        packet.ensureCapacity(startingIndex + n);
+        final int[] addresses = packet.getAddresses();
+        final int[] timestamps = packet.getTimestamps();
+        ByteOrder order = buffer.order();
+        if (swapBytesEnabled) { // same as maybeSwapByteOrder applied to every value
+            order = order == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        }
+        final IntBuffer ints = buffer.duplicate().order(order).asIntBuffer();
+        if (decodeInts.length < (2 * n)) {
+            decodeInts = new int[2 * n];
+        }
+        ints.get(decodeInts, 0, 2 * n);
+        if (addressFirstEnabled) {
+            for (int i = 0, j = 0; i < n; i++, j += 2) {
+                addresses[startingIndex + i] = decodeInts[j];
+                timestamps[startingIndex + i] = zeroAndScaleTimestamp(decodeInts[j + 1]);
+            }
+        } else {
+            for (int i = 0, j = 0; i < n; i++, j += 2) {
+                timestamps[startingIndex + i] = decodeInts[j];
+                addresses[startingIndex + i] = decodeInts[j + 1];
+            }
+        }
+        buffer.position(buffer.position() + (n * AENetworkInterfaceConstants.EVENT_SIZE_BYTES));
+        packet.setNumEvents(startingIndex + n);
+        return true;
+    }
+
+    /**
+     * Subtracts the first timestamp received and applies the
+     * timestampMultiplier to an int32 remote timestamp.
+     */
+    private int zeroAndScaleTimestamp(int rawTime) {
+        int zeroedRawTime;
+        if (readTimeZeroAlready) {
+            // TODO TDS sends 32 bit timestamp which overflows after multiplication
+            // by timestampMultiplier and cast to int jaer timestamp
+            zeroedRawTime = rawTime - timeZero;
+        } else {
+            readTimeZeroAlready = true;
+            timeZero = rawTime;
+            zeroedRawTime = 0;
+        }
+        float floatFinalTime = timestampMultiplier * zeroedRawTime;
+        if ((floatFinalTime >= Integer.MAX_VALUE) || (floatFinalTime <= Integer.MIN_VALUE)) {
+            timeZero = rawTime; // after overflow reset timezero
+            return Integer.MIN_VALUE + (int) (floatFinalTime - Integer.MAX_VALUE); // Change to -2k seconds now - was: wrap around at 2k seconds, back to 0 seconds. TODO different than hardware which wraps back to -2k seconds
+        } else {
+            return (int) floatFinalTime;
+        }
+    }
+
     private void checkSequenceNumber(ByteBuffer buffer) {
         if (sequenceNumberEnabled) {
             datagramSequenceNumber = buffer.getInt(); // swab(buffer.getInt());
 //                log.info("recieved packet with sequence number "+packetSequenceNumber);
             if (datagramSequenceNumber != datagramCounter) {
-                log.warning(String.format("Dropped %d packets. (Incoming packet sequence number (%d) doesn't match expected packetCounter (%d), resetting packetCounter)", datagramSequenceNumber - datagramCounter, datagramSequenceNumber, datagramCounter));
+                final int gap = datagramSequenceNumber - datagramCounter;
+                if (gap > 0) {
+                    numSequenceGaps++;
+                    numDatagramsMissed += gap;
+                } else {
+                    numDatagramsOutOfOrder++;
+                }
+                if (!highRateReceiveActive) { // at high rates, gaps are only counted, see getNumDatagramsMissed()
+                    log.warning(String.format("Dropped %d packets. (Incoming packet sequence number (%d) doesn't match expected packetCounter (%d), resetting packetCounter)", datagramSequenceNumber - datagramCounter, datagramSequenceNumber, datagramCounter));
+                }
                 datagramCounter = datagramSequenceNumber;
             }
             datagramCounter++;
@@ -221,6 +441,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
 //            buffer.order(swapBytesEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
 
             client = channel.receive(buffer); // fill buffer with data from datagram, blocks here until packet received
+            numDatagramsReceived++;
             if (!printedHost) {
                 printedHost = true;
                 log.info("received first packet from " + client + " of length " + buffer.position() + " bytes"); // , connecting channel
@@ -627,26 +848,8 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                             //                      System.out.println("time jump at event "+i+"of "+nEventsInPacket);
                             //                  }
                             //                  lastts=rawTime;
-                            int zeroedRawTime;
-                            if (readTimeZeroAlready) {
-                                // TODO TDS sends 32 bit timestamp which overflows after multiplication
-                                // by timestampMultiplier and cast to int jaer timestamp
-                                zeroedRawTime = rawTime - timeZero;
-                            } else {
-                                readTimeZeroAlready = true;
-                                timeZero = rawTime;
-                                zeroedRawTime = 0;
-                            }
                             //                        int v3 = 0xffff & v2; // TODO hack for TDS sensor which uses all 32 bits causing overflow after multiplication by multiplier and int cast
-                            float floatFinalTime = timestampMultiplier * zeroedRawTime;
-                            int finalTime;
-                            if ((floatFinalTime >= Integer.MAX_VALUE) || (floatFinalTime <= Integer.MIN_VALUE)) {
-                                timeZero = rawTime; // after overflow reset timezero
-                                finalTime = Integer.MIN_VALUE + (int) (floatFinalTime - Integer.MAX_VALUE); // Change to -2k seconds now - was: wrap around at 2k seconds, back to 0 seconds. TODO different than hardware which wraps back to -2k seconds
-                            } else {
-                                finalTime = (int) floatFinalTime;
-                            }
-                            eventRaw.timestamp = finalTime;
+                            eventRaw.timestamp = zeroAndScaleTimestamp(rawTime);
                         } else { // timestamps not enabled, using local timestamps
                             //SmartEyeTDS
                             eventRaw.timestamp = ts; // this is local timestamp computed earlier
@@ -711,6 +914,17 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                 log.warning("on closing DatagramChannel caught " + ex);
             }
         }
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                log.warning("on closing Selector caught " + ex);
+            }
+            selector = null;
+        }
+        if (numDatagramsReceived > 0) {
+            log.info(getReceiveStatistics());
+        }
         freeBuffers();
     }
 
@@ -775,6 +989,8 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     @Override
     public void open() throws IOException {  // TODO cannot really throw exception because socket is opened in Reader
         close();
+        highRateReceiveActive = highRateReceiveEnabled;
+        resetReceiveStatistics();
         allocateBufffers();
         readingThread = new Reader();
         readingThread.start();
@@ -1010,6 +1226,90 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
         prefs.putBoolean("AEUnicastInput.secDvsProtocolEnabled", yes);
     }
 
+    /**
+     * @return true if the high rate receive mode is used after the next
+     * open()
+     * @see #setHighRateReceiveEnabled(boolean)
+     */
+    public boolean isHighRateReceiveEnabled() {
+        return highRateReceiveEnabled;
+    }
+
+    /**
+     * Enables the high rate receive mode, which takes effect on the next
+     * open(). In this mode datagrams are received into a lock-free ring of
+     * preallocated direct buffers, all pending datagrams are drained each
+     * time the socket becomes readable, and datagrams of the normal jAER
+     * protocol with 4 byte addresses and timestamps are decoded in bulk.
+     * Sequence number gaps are counted rather than logged.
+     *
+     * @param highRateReceiveEnabled true to enable
+     */
+    public void setHighRateReceiveEnabled(boolean highRateReceiveEnabled) {
+        this.highRateReceiveEnabled = highRateReceiveEnabled;
+        prefs.putBoolean("AEUnicastInput.highRateReceiveEnabled", highRateReceiveEnabled);
+    }
+
+    /**
+     * @return the number of datagrams received since open()
+     */
+    public long getNumDatagramsReceived() {
+        return numDatagramsReceived;
+    }
+
+    /**
+     * @return the number of datagrams missing according to the sequence
+     * numbers since open(), if sequence numbers are enabled
+     */
+    public long getNumDatagramsMissed() {
+        return numDatagramsMissed;
+    }
+
+    /**
+     * @return the number of forward jumps of the sequence number since open(),
+     * each of which may have missed several datagrams
+     */
+    public long getNumSequenceGaps() {
+        return numSequenceGaps;
+    }
+
+    /**
+     * @return the number of datagrams whose sequence number was earlier than
+     * expected since open(), e.g. from reordering or a restarted sender
+     */
+    public long getNumDatagramsOutOfOrder() {
+        return numDatagramsOutOfOrder;
+    }
+
+    /**
+     * @return the number of datagrams dropped in the high rate receive mode
+     * because readPacket did not empty the ring in time
+     */
+    public long getNumRingOverruns() {
+        return numRingOverruns;
+    }
+
+    /**
+     * Resets the datagram and sequence number statistics.
+     */
+    public void resetReceiveStatistics() {
+        numDatagramsReceived = 0;
+        numDatagramsMissed = 0;
+        numSequenceGaps = 0;
+        numDatagramsOutOfOrder = 0;
+        numRingOverruns = 0;
+    }
+
+    /**
+     * @return a summary of the datagram and sequence number statistics
+     */
+    public String getReceiveStatistics() {
+        final long expected = numDatagramsReceived + numDatagramsMissed;
+        return String.format("%s received %d datagrams, missed %d (%.2f%%) in %d sequence gaps, %d out of order, %d ring overruns",
+                this, numDatagramsReceived, numDatagramsMissed, expected == 0 ? 0f : (100f * numDatagramsMissed) / expected,
+                numSequenceGaps, numDatagramsOutOfOrder, numRingOverruns);
+    }
+
     /**
      * @return the secDvsProtocolEnabled
      */
@@ -1056,6 +1356,12 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                     }
                     continue;
                 }
+                if (highRateReceiveActive) {
+                    if (!paused) {
+                        receiveDatagramsHighRate();
+                    }
+                    continue;
+                }
                 if (packet.getNumEvents() >= AEPacket.MAX_PACKET_SIZE_EVENTS) {
                     if (!maxSizeExceeded) {
                         log.warning("packet " + packet + " has more than " + AEPacket.MAX_PACKET_SIZE_EVENTS + " disabling filling until packet is read");
@@ -17,6 +17,7 @@ import net.sf.jaer.aemonitor.AEConstants;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.ApsDvsEventPacket;
 import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
 import net.sf.jaer.event.EventPacket;
 
 /**
@@ -126,6 +127,29 @@ abstract public class EventFilter2D extends EventFilter implements PropertyChang
         out.clear();
     }
 
+    /**
+     * The reused columnar copy of the input packet, constructed on first use.
+     */
+    private ColumnarEventPacket columnarPacket = null;
+
+    /**
+     * Loads the built-in {@link ColumnarEventPacket} from the input packet and
+     * returns it. Filters can use this to iterate over primitive arrays of
+     * timestamps and addresses rather than over event objects, and then write
+     * their decisions back to <code>in</code> with
+     * {@link ColumnarEventPacket#applyFilteredOut()}.
+     *
+     * @param in the input packet
+     * @return the columnar packet, reused on each call
+     */
+    protected ColumnarEventPacket getColumnarPacket(EventPacket<?> in) {
+        if (columnarPacket == null) {
+            columnarPacket = new ColumnarEventPacket(Math.max(in.getSize(), ColumnarEventPacket.DEFAULT_INITIAL_CAPACITY));
+        }
+        columnarPacket.copyFrom(in);
+        return columnarPacket;
+    }
+
     /**
      * Subclasses implement this method to define custom processing.
      *
@@ -69,6 +69,8 @@ public class FilterChain extends LinkedList<EventFilter2D> {
 
     private PropertyChangeSupport support = new PropertyChangeSupport(this);
     private boolean measurePerformanceEnabled = false;
+    private volatile boolean metricsEnabled = false;
+    private FilterChainMetrics metrics = null;
     volatile private boolean resetPerformanceMeasurementStatistics = false; // flag to reset everyone on this cycle
     static final Logger log = Logger.getLogger("FilterChain");
     AEChip chip;
@@ -131,7 +133,9 @@ public class FilterChain extends LinkedList<EventFilter2D> {
     public FilterChain(AEChip chip) {
         this.chip = chip;
 //        AEViewer aeViewer=chip.getAeViewer();
-        getSupport().addPropertyChangeListener(chip.getFilterFrame());
+        if (chip.getFilterFrame() != null) { // there is no FilterFrame when running headless, e.g. from HeadlessFilterChainRunner
+            getSupport().addPropertyChangeListener(chip.getFilterFrame());
+        }
         timeLimitEnabled = chip.getPrefs().getBoolean("FilterChain.timeLimitEnabled", false);
         timeLimitMs = chip.getPrefs().getInt("FilterChain.timeLimitMs", 10);
         updateIntervalMs = chip.getPrefs().getFloat("FilterChain.updateIntervalMs", 10);
@@ -201,10 +205,16 @@ public class FilterChain extends LinkedList<EventFilter2D> {
             log.info("compute performance statistics reset");
             resetPerformanceMeasurementStatistics = false;
         }
+        final boolean collectMetrics = metricsEnabled;
         for (EventFilter2D f : this) {
             if (!f.isFilterEnabled()) {
                 continue;
             }
+            FilterChainMetrics.FilterMetrics filterMetrics = null;
+            if (collectMetrics) {
+                filterMetrics = getMetrics().getFilterMetrics(f);
+                filterMetrics.start(in);
+            }
             if (measurePerformanceEnabled) {
                 if (f.perf == null) {
                     EventProcessingPerformanceView view = new EventProcessingPerformanceView(f.getChip().getFilterFrame());
@@ -220,6 +230,9 @@ public class FilterChain extends LinkedList<EventFilter2D> {
             }
             out = f.filterPacket(in);
 //            timedOut = in.isTimedOut();
+            if (filterMetrics != null) {
+                filterMetrics.stop(out);
+            }
             if (measurePerformanceEnabled && f.perf != null) {
                 f.perf.stop();
 //                System.out.println(f.perf);
@@ -326,6 +339,40 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         this.measurePerformanceEnabled = measurePerformanceEnabled;
     }
 
+    /**
+     * @return true if headless per-filter metrics are collected
+     * @see #getMetrics()
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Sets whether headless per-filter metrics (latency histogram, events in
+     * and out, allocation) are collected for each enabled filter on each
+     * packet. Unlike measurePerformanceEnabled, this does not open any
+     * windows.
+     *
+     * @param metricsEnabled true to collect metrics
+     * @see #getMetrics()
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Returns the headless metrics of this chain, constructing them if
+     * needed.
+     *
+     * @return the metrics
+     */
+    public synchronized FilterChainMetrics getMetrics() {
+        if (metrics == null) {
+            metrics = new FilterChainMetrics(this);
+        }
+        return metrics;
+    }
+
     /**
      * disables all filters individually, which will turn off each of them.
      *
@@ -0,0 +1,351 @@
+/*
+ * FilterChainMetrics.java
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.logging.Logger;
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.util.RemoteControl;
+import net.sf.jaer.util.RemoteControlCommand;
+import net.sf.jaer.util.RemoteControlled;
+import net.sf.jaer.util.histogram.LogLinearHistogram;
+
+/**
+ * Headless performance metrics of the filters in a {@link FilterChain}. Unlike
+ * the EventProcessingPerformanceMeter used by the FilterFrame "Measure
+ * performance" option, this does not open any windows, so it can be used to
+ * watch production chains running in AEViewer, or in HeadlessFilterChainRunner
+ * batch processing.
+ * <p>
+ * For each filter the metrics hold
+ * <ul>
+ * <li>a histogram of the filterPacket latency per packet, from which p50, p99
+ * and max are reported,
+ * <li>the number of packets and of events in and out of the filter (events
+ * that are not filtered out),
+ * <li>the bytes allocated by the filter per packet, if the JVM supports
+ * per-thread allocation counting.
+ * </ul>
+ * Metrics are collected while {@link FilterChain#isMetricsEnabled()}. They
+ * can be exported as CSV or JSON, or queried through the chip's RemoteControl
+ * UDP interface with the {@link #REMOTE_FILTER_METRICS} command, e.g.
+ * <pre>
+ * > filtermetrics on
+ * > filtermetrics csv
+ * </pre>
+ */
+public class FilterChainMetrics implements RemoteControlled {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    /** The RemoteControl command */
+    public static final String REMOTE_FILTER_METRICS = "filtermetrics";
+
+    /** CSV header matching {@link FilterMetrics#toCsv()} */
+    public static final String CSV_HEADER = "filter,packets,eventsIn,eventsOut,outInRatio,latencyP50Us,latencyP99Us,latencyMaxUs,latencyMeanUs,nsPerEvent,allocBytesPerPacket";
+
+    private static final com.sun.management.ThreadMXBean threadMXBean;
+
+    static {
+        com.sun.management.ThreadMXBean b = null;
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+                b = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                if (!b.isThreadAllocatedMemorySupported()) {
+                    b = null;
+                } else if (!b.isThreadAllocatedMemoryEnabled()) {
+                    b.setThreadAllocatedMemoryEnabled(true);
+                }
+            }
+        } catch (Throwable t) { // e.g. a JVM without com.sun.management
+            log.warning("per-thread allocation counting not available, allocation metrics will be zero: " + t);
+            b = null;
+        }
+        threadMXBean = b;
+    }
+
+    private final FilterChain filterChain;
+    private final LinkedHashMap<EventFilter2D, FilterMetrics> metricsMap = new LinkedHashMap();
+
+    /**
+     * The metrics of one filter.
+     */
+    public class FilterMetrics {
+
+        private final String name;
+        private final LogLinearHistogram latencyNs = new LogLinearHistogram();
+        private long packets = 0, eventsIn = 0, eventsOut = 0, allocatedBytes = 0;
+        private long startNs, startAllocatedBytes;
+        private int startEvents;
+
+        FilterMetrics(EventFilter2D filter) {
+            name = filter.getClass().getSimpleName();
+        }
+
+        /**
+         * Called before the filter processes the packet.
+         *
+         * @param in the input packet
+         */
+        void start(EventPacket<?> in) {
+            startEvents = countNotFilteredOut(in);
+            startAllocatedBytes = allocatedBytes();
+            startNs = System.nanoTime();
+        }
+
+        /**
+         * Called after the filter has processed the packet.
+         *
+         * @param out the output packet
+         */
+        void stop(EventPacket<?> out) {
+            final long dtNs = System.nanoTime() - startNs;
+            final long alloc = allocatedBytes() - startAllocatedBytes;
+            final int nOut = countNotFilteredOut(out);
+            synchronized (FilterChainMetrics.this) {
+                latencyNs.add(dtNs);
+                packets++;
+                eventsIn += startEvents;
+                eventsOut += nOut;
+                allocatedBytes += alloc;
+            }
+        }
+
+        /** @return the filter class simple name */
+        public String getName() {
+            return name;
+        }
+
+        /** @return the number of packets processed */
+        public long getPackets() {
+            return packets;
+        }
+
+        /** @return the number of events into the filter */
+        public long getEventsIn() {
+            return eventsIn;
+        }
+
+        /** @return the number of events out of the filter */
+        public long getEventsOut() {
+            return eventsOut;
+        }
+
+        /** @return eventsOut/eventsIn, or 0 if there were no events */
+        public float getOutInRatio() {
+            return eventsIn == 0 ? 0 : (float) eventsOut / eventsIn;
+        }
+
+        /**
+         * @param percentile e.g. 50 for the median
+         * @return the latency per packet in ns at the percentile
+         */
+        public long getLatencyNsAtPercentile(double percentile) {
+            return latencyNs.getValueAtPercentile(percentile);
+        }
+
+        /** @return the maximum latency per packet in ns */
+        public long getMaxLatencyNs() {
+            return latencyNs.getMax();
+        }
+
+        /** @return the mean cost in ns per input event */
+        public float getNsPerEvent() {
+            return eventsIn == 0 ? 0 : (float) (latencyNs.getMean() * latencyNs.getN()) / eventsIn;
+        }
+
+        /** @return the mean bytes allocated per packet */
+        public float getAllocatedBytesPerPacket() {
+            return packets == 0 ? 0 : (float) allocatedBytes / packets;
+        }
+
+        void reset() {
+            latencyNs.reset();
+            packets = 0;
+            eventsIn = 0;
+            eventsOut = 0;
+            allocatedBytes = 0;
+        }
+
+        String toCsv() {
+            return String.format(Locale.US, "%s,%d,%d,%d,%.4f,%.1f,%.1f,%.1f,%.1f,%.2f,%.0f",
+                    name, packets, eventsIn, eventsOut, getOutInRatio(),
+                    1e-3f * latencyNs.getValueAtPercentile(50), 1e-3f * latencyNs.getValueAtPercentile(99), 1e-3f * latencyNs.getMax(), 1e-3 * latencyNs.getMean(),
+                    getNsPerEvent(), getAllocatedBytesPerPacket());
+        }
+
+        String toJson() {
+            return String.format(Locale.US, "{\"filter\":\"%s\",\"packets\":%d,\"eventsIn\":%d,\"eventsOut\":%d,\"outInRatio\":%.4f,"
+                    + "\"latencyP50Us\":%.1f,\"latencyP99Us\":%.1f,\"latencyMaxUs\":%.1f,\"latencyMeanUs\":%.1f,\"nsPerEvent\":%.2f,\"allocBytesPerPacket\":%.0f}",
+                    name, packets, eventsIn, eventsOut, getOutInRatio(),
+                    1e-3f * latencyNs.getValueAtPercentile(50), 1e-3f * latencyNs.getValueAtPercentile(99), 1e-3f * latencyNs.getMax(), 1e-3 * latencyNs.getMean(),
+                    getNsPerEvent(), getAllocatedBytesPerPacket());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d packets, %d->%d events, latency p50=%.1fus p99=%.1fus max=%.1fus, %.1f ns/event, %.0f bytes/packet allocated",
+                    name, packets, eventsIn, eventsOut,
+                    1e-3f * latencyNs.getValueAtPercentile(50), 1e-3f * latencyNs.getValueAtPercentile(99), 1e-3f * latencyNs.getMax(),
+                    getNsPerEvent(), getAllocatedBytesPerPacket());
+        }
+    }
+
+    /**
+     * Constructs new metrics for a chain.
+     *
+     * @param filterChain the chain
+     */
+    public FilterChainMetrics(FilterChain filterChain) {
+        this.filterChain = filterChain;
+    }
+
+    /**
+     * Returns the metrics of a filter, constructing them on first use.
+     *
+     * @param filter the filter
+     * @return the metrics
+     */
+    public synchronized FilterMetrics getFilterMetrics(EventFilter2D filter) {
+        FilterMetrics m = metricsMap.get(filter);
+        if (m == null) {
+            m = new FilterMetrics(filter);
+            metricsMap.put(filter, m);
+        }
+        return m;
+    }
+
+    /**
+     * @return a snapshot list of the metrics of all filters measured so far,
+     * in the order they were first measured
+     */
+    public synchronized ArrayList<FilterMetrics> getAllFilterMetrics() {
+        return new ArrayList(metricsMap.values());
+    }
+
+    /** Resets the metrics of all filters. */
+    public synchronized void reset() {
+        for (FilterMetrics m : metricsMap.values()) {
+            m.reset();
+        }
+    }
+
+    /**
+     * @return the metrics as CSV, one line per filter with a header line
+     */
+    public synchronized String toCsv() {
+        StringBuilder sb = new StringBuilder(CSV_HEADER).append('\n');
+        for (FilterMetrics m : metricsMap.values()) {
+            sb.append(m.toCsv()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the metrics as a JSON array with one object per filter
+     */
+    public synchronized String toJson() {
+        StringBuilder sb = new StringBuilder("[");
+        boolean first = true;
+        for (FilterMetrics m : metricsMap.values()) {
+            if (!first) {
+                sb.append(",\n");
+            }
+            sb.append(m.toJson());
+            first = false;
+        }
+        return sb.append("]\n").toString();
+    }
+
+    /**
+     * Writes the metrics to a file, as JSON if the file name ends with .json
+     * and otherwise as CSV.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        try (Writer w = new FileWriter(file)) {
+            w.write(file.getName().toLowerCase().endsWith(".json") ? toJson() : toCsv());
+        }
+        log.info("wrote filter metrics to " + file);
+    }
+
+    /**
+     * Adds the {@link #REMOTE_FILTER_METRICS} command to a RemoteControl.
+     *
+     * @param remoteControl the RemoteControl, null is ignored
+     */
+    public void addRemoteControlCommands(RemoteControl remoteControl) {
+        if (remoteControl == null) {
+            return;
+        }
+        remoteControl.addCommandListener(this, REMOTE_FILTER_METRICS + " [on|off|reset|csv|json]",
+                "controls and reports per-filter latency, event count and allocation metrics of the FilterChain; default is csv");
+    }
+
+    @Override
+    public String processRemoteControlCommand(RemoteControlCommand command, String input) {
+        String[] tok = input.trim().split("\\s+");
+        String arg = tok.length < 2 ? "csv" : tok[1].toLowerCase();
+        switch (arg) {
+            case "on":
+                filterChain.setMetricsEnabled(true);
+                return "filter metrics enabled\n";
+            case "off":
+                filterChain.setMetricsEnabled(false);
+                return "filter metrics disabled\n";
+            case "reset":
+                reset();
+                return "filter metrics reset\n";
+            case "json":
+                return toJson();
+            case "csv":
+                return toCsv();
+            default:
+                return "unknown argument " + arg + "; usage: " + command.getCmd() + "\n";
+        }
+    }
+
+    /**
+     * Counts the events that are not filtered out. Unlike
+     * EventPacket.getSizeNotFilteredOut() this does not depend on an earlier
+     * iteration over the packet.
+     */
+    private static int countNotFilteredOut(EventPacket<?> packet) {
+        if (packet == null) {
+            return 0;
+        }
+        final BasicEvent[] data = packet.getElementData();
+        final int n = packet.getSize();
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (data[i] != null && !data[i].isFilteredOut()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long allocatedBytes() {
+        return threadMXBean == null ? 0 : threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("FilterChainMetrics:\n");
+        for (FilterMetrics m : metricsMap.values()) {
+            sb.append('\t').append(m).append('\n');
+        }
+        return sb.toString();
+    }
+}
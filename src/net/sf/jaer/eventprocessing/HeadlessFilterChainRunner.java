@@ -0,0 +1,426 @@
+/*
+ * HeadlessFilterChainRunner.java
+ */
+package net.sf.jaer.eventprocessing;
+
+import static net.sf.jaer.graphics.AEViewer.DEFAULT_CHIP_CLASS;
+import static net.sf.jaer.graphics.AEViewer.prefs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.Preferences;
+
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.util.EngineeringFormat;
+import net.sf.jaer.util.LoggingAnsiColorConsoleFormatter;
+
+/**
+ * Runs the FilterChain of an AEChip over recorded data files from the command
+ * line, without an AEViewer, as fast as possible, and reports the processing
+ * throughput in events per second. Use it to batch process archives of
+ * recordings on servers.
+ * <p>
+ * The data is driven from AEFileInputStream through the chip's
+ * EventExtractor2D and FilterChain exactly as AEViewer does it in playback
+ * mode, but with no rendering and no real-time pacing. The filters are
+ * constructed from the chip's stored Preferences, optionally first imported
+ * from a filter settings XML file exported by the FilterFrame "Save settings"
+ * menu. The enabled state of each filter is restored from the preferences,
+ * as FilterFrame does.
+ * <p>
+ * The runner sets java.awt.headless=true unless the property is already set,
+ * so no windows are opened and the chip's ChipCanvas does not create its
+ * OpenGL canvas; it runs on machines without a display or OpenGL. Filters that need an AEViewer or that open their
+ * own windows will not work in this mode; there is no viewer, so
+ * chip.getAeViewer() and chip.getFilterFrame() return null.
+ */
+public class HeadlessFilterChainRunner {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    public static final String USAGE = "java net.sf.jaer.eventprocessing.HeadlessFilterChainRunner \n"
+            + "     [-aechip=aechipclassname (either shortcut dvs128, davis240c, davis346blue, davis346red, davis640, or fully qualified class name, e.g. eu.seebetter.ini.chips.davis.DAVIS240C)] \n"
+            + "     [-filtersettings=filterSettings.xml (exported from FilterFrame File/Save settings...)] \n"
+            + "     [-packetsize=10000 (events per packet read from file)] \n"
+            + "     [-enablefilters=true (restore each filter's stored enabled state; false runs no filters)] \n"
+            + "     [-metrics=metrics.csv (write per-filter latency, event count and allocation metrics; .json for JSON)] \n"
+            + "     [-verbose] \n"
+            + "         inputFile1.aedat [inputFile2.aedat ...]\n"
+            + "Arguments values are assigned with =, not space";
+
+    /**
+     * Shortcut names for the common chip classes
+     */
+    public static final HashMap<String, String> chipClassesMap = new HashMap();
+
+    static {
+        chipClassesMap.put("dvs128", "ch.unizh.ini.jaer.chip.retina.DVS128");
+        chipClassesMap.put("davis240c", "eu.seebetter.ini.chips.davis.DAVIS240C");
+        chipClassesMap.put("davis346blue", "eu.seebetter.ini.chips.davis.Davis346blue");
+        chipClassesMap.put("davis346red", "eu.seebetter.ini.chips.davis.Davis346red");
+        chipClassesMap.put("davis640", "eu.seebetter.ini.chips.davis.Davis640");
+    }
+
+    /**
+     * Default number of events read from the file per packet
+     */
+    public static final int DEFAULT_PACKET_SIZE = 10000;
+
+    private final AEChip chip;
+    private final FilterChain filterChain;
+    private int packetSize = DEFAULT_PACKET_SIZE;
+    private boolean filteringEnabled = true;
+
+    /**
+     * Holds the statistics of processing one or more files
+     */
+    public static class Result {
+
+        /**
+         * Number of raw events read from the file(s)
+         */
+        public long eventsIn = 0;
+        /**
+         * Number of events that were not filtered out at the output of the
+         * FilterChain
+         */
+        public long eventsOut = 0;
+        /**
+         * Number of packets processed
+         */
+        public long packets = 0;
+        /**
+         * Wall clock time in ns spent reading, extracting and filtering
+         */
+        public long readNs = 0, extractNs = 0, filterNs = 0;
+        /**
+         * Duration of the data in us according to the event timestamps
+         */
+        public long dataDurationUs = 0;
+        /**
+         * Number of file chunk crossings, and how many of them found the next
+         * chunk already read ahead
+         */
+        public long chunkCrossings = 0, prefetchHits = 0;
+
+        /**
+         * @return the total wall clock processing time in ns
+         */
+        public long getTotalNs() {
+            return readNs + extractNs + filterNs;
+        }
+
+        /**
+         * @return the throughput in input events per second of wall clock
+         * time
+         */
+        public float getEventsPerSecond() {
+            final long ns = getTotalNs();
+            return ns == 0 ? 0 : (1e9f * eventsIn) / ns;
+        }
+
+        /**
+         * @return how many times faster than real time the data was processed
+         */
+        public float getRealTimeFactor() {
+            final long ns = getTotalNs();
+            return ns == 0 ? 0 : (1e3f * dataDurationUs) / ns;
+        }
+
+        void add(Result r) {
+            eventsIn += r.eventsIn;
+            eventsOut += r.eventsOut;
+            packets += r.packets;
+            readNs += r.readNs;
+            extractNs += r.extractNs;
+            filterNs += r.filterNs;
+            dataDurationUs += r.dataDurationUs;
+            chunkCrossings += r.chunkCrossings;
+            prefetchHits += r.prefetchHits;
+        }
+
+        @Override
+        public String toString() {
+            EngineeringFormat fmt = new EngineeringFormat();
+            return String.format("%s events in, %s events out, %d packets in %ss (read %ss, extract %ss, filter %ss): %s events/s, %sX real time",
+                    fmt.format(eventsIn), fmt.format(eventsOut), packets,
+                    fmt.format(getTotalNs() * 1e-9f), fmt.format(readNs * 1e-9f), fmt.format(extractNs * 1e-9f), fmt.format(filterNs * 1e-9f),
+                    fmt.format(getEventsPerSecond()), fmt.format(getRealTimeFactor()))
+                    + (chunkCrossings == 0 ? "" : String.format(", prefetch hits %d/%d", prefetchHits, chunkCrossings));
+        }
+    }
+
+    /**
+     * Constructs a new runner for the chip. The chip's FilterChain is
+     * initialized and the filters are enabled according to their stored
+     * preferences.
+     *
+     * @param chip the chip, which holds the extractor and FilterChain
+     */
+    public HeadlessFilterChainRunner(AEChip chip) {
+        this.chip = chip;
+        this.filterChain = chip.getFilterChain();
+        filterChain.initFilters();
+        for (EventFilter f : filterChain) {
+            f.setPreferredEnabledState();
+        }
+    }
+
+    /**
+     * Processes one data file from start to end through the extractor and
+     * FilterChain.
+     *
+     * @param file the file
+     * @return the statistics
+     * @throws IOException if the file cannot be opened or read
+     */
+    public Result process(File file) throws IOException {
+        final Result r = new Result();
+        AEFileInputStream ais = new AEFileInputStream(file, chip);
+        try {
+            ais.setNonMonotonicTimeExceptionsChecked(false); // to avoid wrap and big wrap exceptions in long recordings
+            filterChain.reset();
+            // never read up to the out marker, which is the last event when no marks are set, so that the stream does not rewind and throw EOFException
+            final long end = Math.min(ais.size(), ais.getMarkOutPosition());
+            long firstTs = Long.MIN_VALUE, lastTs = 0;
+            while (ais.position() < end) {
+                final int n = (int) Math.min(packetSize, end - ais.position());
+                long t0 = System.nanoTime();
+                AEPacketRaw raw = ais.readPacketByNumber(n);
+                long t1 = System.nanoTime();
+                if (raw == null || raw.getNumEvents() == 0) {
+                    break;
+                }
+                EventExtractor2D extractor = chip.getEventExtractor(); // the file input stream can change the extractor, e.g. for aedat-3.x files
+                EventPacket cooked = extractor.extractPacket(raw);
+                cooked.setRawPacket(raw);
+                long t2 = System.nanoTime();
+                if (filteringEnabled) {
+                    cooked = filterChain.filterPacket(cooked);
+                }
+                long t3 = System.nanoTime();
+                r.readNs += t1 - t0;
+                r.extractNs += t2 - t1;
+                r.filterNs += t3 - t2;
+                r.eventsIn += raw.getNumEvents();
+                r.eventsOut += cooked.getSizeNotFilteredOut();
+                r.packets++;
+                if (firstTs == Long.MIN_VALUE) {
+                    firstTs = raw.getFirstTimestamp();
+                }
+                lastTs = raw.getLastTimestamp();
+            }
+            if (firstTs != Long.MIN_VALUE) {
+                r.dataDurationUs = lastTs - firstTs;
+            }
+            r.prefetchHits = ais.getPrefetchHits();
+            r.chunkCrossings = ais.getPrefetchHits() + ais.getPrefetchMisses();
+        } finally {
+            ais.close();
+        }
+        return r;
+    }
+
+    /**
+     * @return the number of events read from the file per packet
+     */
+    public int getPacketSize() {
+        return packetSize;
+    }
+
+    /**
+     * @param packetSize the number of events read from the file per packet
+     */
+    public void setPacketSize(int packetSize) {
+        if (packetSize < 1) {
+            throw new IllegalArgumentException("packetSize must be positive, got " + packetSize);
+        }
+        this.packetSize = packetSize;
+    }
+
+    /**
+     * @return true if packets are passed through the FilterChain
+     */
+    public boolean isFilteringEnabled() {
+        return filteringEnabled;
+    }
+
+    /**
+     * @param filteringEnabled false to only read and extract, e.g. to measure
+     * the cost of the filters
+     */
+    public void setFilteringEnabled(boolean filteringEnabled) {
+        this.filteringEnabled = filteringEnabled;
+    }
+
+    /**
+     * @return the FilterChain that is run
+     */
+    public FilterChain getFilterChain() {
+        return filterChain;
+    }
+
+    /**
+     * Imports a preferences XML file, e.g. one exported by FilterFrame, into
+     * the user Preferences. This must be done before constructing the AEChip,
+     * since the chip constructs its FilterChain from the preferences.
+     *
+     * @param f the XML file
+     * @throws Exception if the file cannot be read or parsed
+     */
+    public static void importFilterSettings(File f) throws Exception {
+        try (InputStream is = new FileInputStream(f)) {
+            Preferences.importPreferences(is);
+        }
+        log.info("imported preferences from " + f);
+    }
+
+    /**
+     * Constructs an AEChip from a shortcut name or fully qualified class name.
+     *
+     * @param chipname the name, e.g. davis240c or
+     * eu.seebetter.ini.chips.davis.DAVIS240C
+     * @return the chip
+     * @throws Exception if the class cannot be found or constructed
+     */
+    public static AEChip constructChip(String chipname) throws Exception {
+        String className = chipClassesMap.get(chipname.toLowerCase());
+        if (className == null) {
+            className = chipname;
+        } else {
+            log.info("from " + chipname + " found fully qualified class name " + className);
+        }
+        log.info("constructing AEChip " + className);
+        Class chipClass = Class.forName(className);
+        Constructor<AEChip> constructor = chipClass.getConstructor();
+        return constructor.newInstance((java.lang.Object[]) null);
+    }
+
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        // setup logging to console
+        ConsoleHandler handler = new ConsoleHandler();
+        Formatter formatter = new LoggingAnsiColorConsoleFormatter();
+        handler.setFormatter(formatter);
+        log.setUseParentHandlers(false);
+        log.addHandler(handler);
+        log.setLevel(Level.WARNING); // default only warnings, -verbose adds info logging
+
+        Options opt = new Options(args, 1, Integer.MAX_VALUE);
+        opt.getSet().addOption("aechip", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("filtersettings", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("packetsize", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("enablefilters", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("metrics", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("verbose", Multiplicity.ZERO_OR_ONE);
+        if (!opt.check()) {
+            log.warning(opt.getCheckErrors());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        if (opt.getSet().isSet("verbose")) {
+            log.setLevel(Level.INFO);
+            log.info("Turned on verbose logging");
+        }
+
+        if (opt.getSet().isSet("filtersettings")) {
+            File f = new File(opt.getSet().getOption("filtersettings").getResultValue(0));
+            try {
+                importFilterSettings(f);
+            } catch (Exception e) {
+                log.warning("Could not import filter settings from " + f + ": " + e.toString());
+                System.exit(1);
+            }
+        }
+
+        String chipname;
+        if (opt.getSet().isSet("aechip")) {
+            chipname = opt.getSet().getOption("aechip").getResultValue(0);
+        } else {
+            chipname = prefs.get("AEViewer.aeChipClassName", DEFAULT_CHIP_CLASS);
+        }
+        AEChip chip = null;
+        try {
+            chip = constructChip(chipname);
+        } catch (Exception ex) {
+            log.warning("Could not construct instance of aechip=" + chipname + ": " + ex.toString());
+            System.exit(1);
+        }
+
+        HeadlessFilterChainRunner runner = new HeadlessFilterChainRunner(chip);
+        if (opt.getSet().isSet("packetsize")) {
+            try {
+                runner.setPacketSize(Integer.parseInt(opt.getSet().getOption("packetsize").getResultValue(0)));
+            } catch (IllegalArgumentException e) {
+                log.warning("Bad packetsize argument: " + e.toString());
+                System.exit(1);
+            }
+        }
+        if (opt.getSet().isSet("enablefilters")) {
+            runner.setFilteringEnabled(Boolean.parseBoolean(opt.getSet().getOption("enablefilters").getResultValue(0)));
+        }
+        File metricsFile = null;
+        if (opt.getSet().isSet("metrics")) {
+            metricsFile = new File(opt.getSet().getOption("metrics").getResultValue(0));
+            runner.getFilterChain().setMetricsEnabled(true);
+        }
+
+        ArrayList<String> enabled = new ArrayList();
+        for (EventFilter f : runner.getFilterChain()) {
+            if (f.isFilterEnabled()) {
+                enabled.add(f.getClass().getSimpleName());
+            }
+        }
+        System.out.println(String.format("chip %s, enabled filters %s", chip.getClass().getSimpleName(), runner.isFilteringEnabled() ? enabled.toString() : "none"));
+
+        Result total = new Result();
+        int exitCode = 0;
+        for (String filename : opt.getSet().getData()) {
+            File f = new File(filename);
+            try {
+                Result r = runner.process(f);
+                total.add(r);
+                System.out.println(f.getName() + ": " + r.toString());
+            } catch (IOException e) {
+                log.warning("Could not process " + f + ": " + e.toString());
+                exitCode = 1;
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Filter or extractor exception processing " + f + ": " + e.toString(), e);
+                exitCode = 1;
+            }
+        }
+        if (opt.getSet().getData().size() > 1) {
+            System.out.println("total: " + total.toString());
+        }
+        if (metricsFile != null) {
+            System.out.print(runner.getFilterChain().getMetrics().toString());
+            try {
+                runner.getFilterChain().getMetrics().write(metricsFile);
+            } catch (IOException e) {
+                log.warning("Could not write metrics to " + metricsFile + ": " + e.toString());
+                exitCode = 1;
+            }
+        }
+        runner.getFilterChain().cleanup();
+        System.exit(exitCode);
+    }
+}
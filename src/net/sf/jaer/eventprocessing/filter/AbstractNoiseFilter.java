@@ -28,8 +28,10 @@ import java.beans.SimpleBeanInfo;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.PrimitiveIterator;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventio.AEInputStream;
 import net.sf.jaer.eventprocessing.EventFilter;
@@ -107,7 +109,20 @@ public abstract class AbstractNoiseFilter extends EventFilter2D implements Frame
      */
     private NoiseFilterControl noiseFilterControl = null;
 
-    protected final String TT_FILT_CONTROL = "1. Denoising control", TT_DISP = "2. Display", TT_ADAP = "3. Adaptive Filtering";
+    /**
+     * Process packets in parallel over spatial tiles, for filters that
+     * support it
+     */
+    protected boolean parallelTilesEnabled = getBoolean("parallelTilesEnabled", false);
+
+    /**
+     * Tile size in (subsampled) pixels for parallel processing
+     */
+    protected int parallelTileSize = getInt("parallelTileSize", TiledNoiseFilterExecutor.DEFAULT_TILE_SIZE);
+
+    private TiledNoiseFilterExecutor tiledExecutor = null;
+
+    protected final String TT_FILT_CONTROL = "1. Denoising control", TT_DISP = "2. Display", TT_ADAP = "3. Adaptive Filtering", TT_PERF = "4. Performance";
 
     public AbstractNoiseFilter(AEChip chip) {
         super(chip);
@@ -123,6 +138,8 @@ public abstract class AbstractNoiseFilter extends EventFilter2D implements Frame
         setPropertyTooltip(TT_FILT_CONTROL, "subsampleBy", "Past events are spatially subsampled (address right shifted) by this many bits");
         setPropertyTooltip(TT_ADAP, "adaptiveFilteringEnabled", "Controls whether filter is automatically adapted with NoiseFilterControl algorithm (if filter adopts it for controlling itself).");
         setPropertyTooltip(TT_FILT_CONTROL, "letFirstEventThrough", "After reset, let's first event through; if false, first event from each pixel is blocked");
+        setPropertyTooltip(TT_PERF, "parallelTilesEnabled", "<html>Process large packets in parallel over spatial tiles on all cores, for noise filters that support it.<p>The output is identical to sequential processing; NoiseTesterFilter can verify this with verifyParallelTiles.");
+        setPropertyTooltip(TT_PERF, "parallelTileSize", "Size in (subsampled) pixels of the square tiles for parallelTilesEnabled");
         setPropertyTooltip(TT_FILT_CONTROL, "antiCasualEnabled", "<html>Enable sending previous events that were filtered out if later event shows they were actually correlated (depends on filter if supported).<p>Note that timestamp will not be correct; event will inherit timestamp of current event to keep event stream monotonic in time.");
         getSupport().addPropertyChangeListener(this);
 //        getSupport().addPropertyChangeListener(AEInputStream.EVENT_REWOUND, this);
@@ -155,6 +172,150 @@ public abstract class AbstractNoiseFilter extends EventFilter2D implements Frame
         }
     }
 
+    /**
+     * Use to filter out event i of a columnar packet, updates the list of such
+     * events when recordFilteredOutEvents is true
+     *
+     * @param packet the columnar packet, loaded from the input packet
+     * @param i the event index
+     */
+    final protected void filterOut(ColumnarEventPacket packet, int i) {
+        packet.setFilteredOut(i, true);
+        filteredOutEventCount++;
+        if (recordFilteredOutEvents) {
+            final BasicEvent e = packet.getSourceEvent(i);
+            e.setFilteredOut(true);
+            filteredOutEvents.add(new FilteredEventWithNNb(e));
+        }
+    }
+
+    /**
+     * Use to filter in event i of a columnar packet, updates the list of such
+     * events when recordFilteredOutEvents is true
+     *
+     * @param packet the columnar packet, loaded from the input packet
+     * @param i the event index
+     */
+    final protected void filterIn(ColumnarEventPacket packet, int i) {
+        packet.setFilteredOut(i, false);
+        if (recordFilteredOutEvents) {
+            final BasicEvent e = packet.getSourceEvent(i);
+            e.setFilteredOut(false);
+            filteredInEvents.add(new FilteredEventWithNNb(e));
+        }
+    }
+
+    /**
+     * Applies the decisions of the last
+     * {@link TiledNoiseFilterExecutor#process} to the events of a columnar
+     * packet and its source packet in packet order, counting and recording
+     * the events as the sequential filter does with filterIn and filterOut.
+     *
+     * @param packet the columnar packet that was processed
+     * @param executor the executor that processed it
+     */
+    protected void applyTiledDecisions(ColumnarEventPacket packet, TiledNoiseFilterExecutor executor) {
+        for (PrimitiveIterator.OfInt it = packet.inputIndices(); it.hasNext();) {
+            final int i = it.nextInt();
+            if (packet.isSpecial(i)) {
+                continue;
+            }
+            totalEventCount++;
+            if (executor.isFilteredOut(i)) {
+                filterOut(packet, i);
+            } else {
+                filterIn(packet, i);
+            }
+        }
+        packet.applyFilteredOut();
+    }
+
+    /**
+     * Returns the executor for parallel tiled processing, constructing it on
+     * first use.
+     *
+     * @return the executor
+     */
+    protected TiledNoiseFilterExecutor getTiledExecutor() {
+        if (tiledExecutor == null) {
+            tiledExecutor = new TiledNoiseFilterExecutor();
+        }
+        tiledExecutor.setTileSize(parallelTileSize);
+        return tiledExecutor;
+    }
+
+    /**
+     * Returns true if a packet should be processed in parallel tiles, i.e. if
+     * parallelTilesEnabled and the packet is large enough to be worth it.
+     *
+     * @param in the input packet
+     * @return true to use the TiledNoiseFilterExecutor
+     */
+    protected boolean isParallelTilesUsed(EventPacket<?> in) {
+        return parallelTilesEnabled && in.getSize() >= TiledNoiseFilterExecutor.MIN_PARALLEL_PACKET_SIZE;
+    }
+
+    /**
+     * Copies the parameters and the past event maps of another filter of the
+     * same class to this one, so that both produce the same output for the
+     * next packet. NoiseTesterFilter uses this to verify parallel tiled
+     * processing against sequential processing. This method copies the
+     * parameters common to all noise filters; filters that support parallel
+     * tiles override it to copy their own parameters and maps.
+     *
+     * @param other the filter to copy from
+     * @return true if the state was copied, false if this filter does not
+     * support copying its state
+     */
+    protected boolean copyStateFrom(AbstractNoiseFilter other) {
+        correlationTimeS = other.correlationTimeS;
+        sigmaDistPixels = other.sigmaDistPixels;
+        subsampleBy = other.subsampleBy;
+        letFirstEventThrough = other.letFirstEventThrough;
+        filterHotPixels = other.filterHotPixels;
+        return false;
+    }
+
+    /**
+     * Copies a past event map into another one, allocating the copy if needed.
+     *
+     * @param src the map to copy
+     * @param dst the map to copy to, may be null
+     * @return dst, or a new map if dst was null or had a different size
+     */
+    protected static int[][] copyMap(int[][] src, int[][] dst) {
+        if (src == null) {
+            return null;
+        }
+        if (dst == null || dst.length != src.length || dst[0].length != src[0].length) {
+            dst = new int[src.length][src[0].length];
+        }
+        for (int x = 0; x < src.length; x++) {
+            System.arraycopy(src[x], 0, dst[x], 0, src[x].length);
+        }
+        return dst;
+    }
+
+    /**
+     * Copies a past event map into another one, allocating the copy if needed.
+     *
+     * @param src the map to copy
+     * @param dst the map to copy to, may be null
+     * @return dst, or a new map if dst was null or had a different size
+     */
+    protected static byte[][] copyMap(byte[][] src, byte[][] dst) {
+        if (src == null) {
+            return null;
+        }
+        if (dst == null || dst.length != src.length || dst[0].length != src[0].length) {
+            dst = new byte[src.length][src[0].length];
+        }
+        for (int x = 0; x < src.length; x++) {
+            System.arraycopy(src[x], 0, dst[x], 0, src[x].length);
+        }
+        return dst;
+    }
+
 //    /**
 //     * Use to filter out events, updates the list of such events when
 //     * recordFilteredOutEvents is true
@@ -500,6 +661,12 @@ public abstract class AbstractNoiseFilter extends EventFilter2D implements Frame
             case "antiCasualEnabled":
                 setAntiCasualEnabled((boolean) evt.getNewValue());
                 break;
+            case "parallelTilesEnabled":
+                setParallelTilesEnabled((boolean) evt.getNewValue());
+                break;
+            case "parallelTileSize":
+                setParallelTileSize((int) evt.getNewValue());
+                break;
         }
     }
 
@@ -584,6 +751,43 @@ public abstract class AbstractNoiseFilter extends EventFilter2D implements Frame
         getSupport().firePropertyChange("antiCasualEnabled", old, this.antiCasualEnabled);
     }
 
+    /**
+     * @return the parallelTilesEnabled
+     */
+    public boolean isParallelTilesEnabled() {
+        return parallelTilesEnabled;
+    }
+
+    /**
+     * @param parallelTilesEnabled the parallelTilesEnabled to set
+     */
+    public void setParallelTilesEnabled(boolean parallelTilesEnabled) {
+        boolean old = this.parallelTilesEnabled;
+        this.parallelTilesEnabled = parallelTilesEnabled;
+        putBoolean("parallelTilesEnabled", parallelTilesEnabled);
+        getSupport().firePropertyChange("parallelTilesEnabled", old, this.parallelTilesEnabled);
+    }
+
+    /**
+     * @return the parallelTileSize
+     */
+    public int getParallelTileSize() {
+        return parallelTileSize;
+    }
+
+    /**
+     * @param parallelTileSize the parallelTileSize to set
+     */
+    public void setParallelTileSize(int parallelTileSize) {
+        int old = this.parallelTileSize;
+        if (parallelTileSize < 8) {
+            parallelTileSize = 8;
+        }
+        this.parallelTileSize = parallelTileSize;
+        putInt("parallelTileSize", parallelTileSize);
+        getSupport().firePropertyChange("parallelTileSize", old, this.parallelTileSize);
+    }
+
 //    /**
 //     * Exclude a property from Introspector to hide it from GUI. Use this for
 //     * example to hide the "correlationTimeS" property for noise filters that do
@@ -12,6 +12,7 @@ import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.chip.Chip2D;
 import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
 import net.sf.jaer.event.EventPacket;
 import static net.sf.jaer.eventprocessing.EventFilter.log;
 import net.sf.jaer.eventprocessing.EventFilter2D;
@@ -32,6 +33,7 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter {
     private int sy;
 
     int[][] timestampImage;
+    private final TileKernel tileKernel = new TileKernel();
     private int ts = 0, lastTimestamp = DEFAULT_TIMESTAMP; // used to reset filter
 
     public BackgroundActivityFilter(AEChip chip) {
@@ -54,6 +56,15 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter {
         }
 
         int dt = (int) Math.round(getCorrelationTimeS() * 1e6f);
+        if (isParallelTilesUsed(in)) {
+            // the tiles work on the primitive timestamp and address columns of the packet
+            final ColumnarEventPacket c = getColumnarPacket(in);
+            tileKernel.dt = dt;
+            getTiledExecutor().process(c, subsampleBy, sx, sy, 1, timestampImage, null, tileKernel);
+            applyTiledDecisions(c, getTiledExecutor());
+            getNoiseFilterControl().maybePerformControl(in);
+            return in;
+        }
         // for each event only keep it if it is within dt of the last time
         // an event happened in the direct neighborhood
         for (BasicEvent e : in) {
@@ -112,6 +123,54 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter {
         return in;
     }
 
+    /**
+     * The per-event part of filterPacket for parallel tiles, with the same
+     * logic as the sequential loop.
+     */
+    private class TileKernel implements TiledNoiseFilterExecutor.Kernel {
+
+        int dt;
+
+        @Override
+        public boolean filterOut(TiledNoiseFilterExecutor.Tile tile, ColumnarEventPacket c, int i, int x, int y) {
+            final int[] map = tile.timestamps;
+            final int ts = c.timestamp[i];
+            if (map[tile.index(x, y)] == DEFAULT_TIMESTAMP) {
+                return !letFirstEventThrough;
+            }
+            for (int xx = x - 1; xx <= x + 1; xx++) {
+                for (int yy = y - 1; yy <= y + 1; yy++) {
+                    if ((xx < 0) || (xx > sx) || (yy < 0) || (yy > sy)) {
+                        continue;
+                    }
+                    if (filterHotPixels && xx == x && yy == y) {
+                        continue;
+                    }
+                    final int lastT = map[tile.index(xx, yy)];
+                    if ((ts - lastT) < dt && lastT != DEFAULT_TIMESTAMP) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void update(TiledNoiseFilterExecutor.Tile tile, ColumnarEventPacket c, int i, int x, int y) {
+            tile.timestamps[tile.index(x, y)] = c.timestamp[i];
+        }
+    }
+
+    @Override
+    protected boolean copyStateFrom(AbstractNoiseFilter other) {
+        super.copyStateFrom(other);
+        final BackgroundActivityFilter o = (BackgroundActivityFilter) other;
+        sx = o.sx;
+        sy = o.sy;
+        timestampImage = copyMap(o.timestampImage, timestampImage);
+        return true;
+    }
+
     @Override
     public synchronized final void resetFilter() {
         super.resetFilter();
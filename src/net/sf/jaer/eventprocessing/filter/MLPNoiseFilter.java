@@ -111,6 +111,16 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
     private int tfNumInBatchSoFar = 0;
     private FloatBuffer tfInputFloatBuffer = null;
     private ArrayList<BasicEvent> eventList = new ArrayList(tfBatchSizeEvents);
+    private float[] tfOutputVector = null; // reused output of TensorFlow backend
+
+    /**
+     * The engine used to run the MLP
+     */
+    public enum InferenceBackend {
+        TensorFlow, PureJava
+    };
+    private InferenceBackend inferenceBackend = InferenceBackend.valueOf(getString("inferenceBackend", InferenceBackend.TensorFlow.toString()));
+    private MLPPureJava pureJavaMlp = null;
     protected float signalClassifierThreshold = getFloat("signalClassifierThreshold", 0.5f);
     protected float timeWindowS = getFloat("timeWindowS", .1f);
 
@@ -196,6 +206,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         setPropertyTooltip(tf, "inputLayerName", "(TensorFlow only) Input layer; parse it from loading the network and examining console output for layers for lines starting with ****");
         setPropertyTooltip(tf, "outputLayerName", "(TensorFlow only) Output layer; parse it from loading the network and examining console output for layers for lines starting with ****");
         setPropertyTooltip(tf, "tfBatchSizeEvents", "Number of events to process in parallel for inference");
+        setPropertyTooltip(tf, "inferenceBackend", "<html>Engine that runs the MLP:<br>TensorFlow: native TensorFlow session, loads .pb file or SavedModelBundle folder<br>PureJava: in-process Java engine that needs no native library, loads the weights from the frozen .pb file and splits batches across cores");
         setPropertyTooltip(tf, "patchWidthAndHeightPixels", "<html>Dimension s<sub>MLPF</sub> (width and height in pixels) of the timestamp image input to DNN around each event (default 11)"); // TODO fix default to match training
         setPropertyTooltip(tf, "signalClassifierThreshold", "<html>Threshold T<sub>MLPF</sub>  for clasifying event as signal"); // TODO fix default to match training
         setPropertyTooltip(tf, "useTI", "use TI only as input of MLP"); // TODO fix default to match training
@@ -434,26 +445,8 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
      *
      */
     synchronized private void classifyEvents() {
-        // Create input tensor with channel first. Each event's input TI patch is a vector arranged according to for loop order above,
-        // i.e. y last order, with y index changing fastest.
-        tfInputFloatBuffer.flip();
-        try (Tensor<Float> tfInputTensor = Tensor.create(new long[]{tfNumInBatchSoFar, inputSF * patchWidthAndHeightPixels * patchWidthAndHeightPixels}, tfInputFloatBuffer)) {
-            if (tfSession == null) {
-                tfSession = new Session(tfExecutionGraph);
-            }
-            List<Tensor<?>> tfOutputs = tfSession.runner().feed("input", tfInputTensor).fetch("output/Sigmoid").run();
-            Tensor<Float> tfOutput = tfOutputs.get(0).expect(Float.class);
-            final long[] rshape = tfOutput.shape();
-            if (tfOutput.numDimensions() != 2 || rshape[0] != tfNumInBatchSoFar || rshape[1] != 1) {
-                throw new RuntimeException(
-                        String.format(
-                                "Expected model to produce a [N 1] shaped tensor where N is the tfBatchSizeEvents, instead it produced one with shape %s",
-                                Arrays.toString(rshape)));
-            }
-            float[] outputVector = new float[tfNumInBatchSoFar];
-            FloatBuffer fb = FloatBuffer.wrap(outputVector);
-            tfOutput.writeTo(fb);
-            tfOutput.close();
+        try {
+            final float[] outputVector = inferenceBackend == InferenceBackend.PureJava ? classifyEventsPureJava() : classifyEventsTensorFlow();
 
             int idx = 0;
             for (BasicEvent ev : eventList) {
@@ -475,9 +468,6 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                 }
                 idx++;
             }
-            tfInputFloatBuffer.clear();
-            eventList.clear();
-            tfNumInBatchSoFar = 0;
         } catch (Exception ex) {
             log.log(Level.SEVERE, "Exception running network: " + ex.toString(), ex.getCause());
             if (tfSession != null) {
@@ -486,9 +476,61 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                 setFilterEnabled(false);
                 resetFilter();
             }
+        } finally {
+            tfInputFloatBuffer.clear();
+            eventList.clear();
+            tfNumInBatchSoFar = 0;
         }
     }
 
+    /**
+     * Runs the batch through the TensorFlow session
+     *
+     * @return the classification of each event in the batch
+     */
+    private float[] classifyEventsTensorFlow() {
+        // Create input tensor with channel first. Each event's input TI patch is a vector arranged according to for loop order above,
+        // i.e. y last order, with y index changing fastest.
+        tfInputFloatBuffer.flip();
+        try (Tensor<Float> tfInputTensor = Tensor.create(new long[]{tfNumInBatchSoFar, inputSF * patchWidthAndHeightPixels * patchWidthAndHeightPixels}, tfInputFloatBuffer)) {
+            if (tfSession == null) {
+                tfSession = new Session(tfExecutionGraph);
+            }
+            List<Tensor<?>> tfOutputs = tfSession.runner().feed("input", tfInputTensor).fetch("output/Sigmoid").run();
+            try (Tensor<Float> tfOutput = tfOutputs.get(0).expect(Float.class)) {
+                final long[] rshape = tfOutput.shape();
+                if (tfOutput.numDimensions() != 2 || rshape[0] != tfNumInBatchSoFar || rshape[1] != 1) {
+                    throw new RuntimeException(
+                            String.format(
+                                    "Expected model to produce a [N 1] shaped tensor where N is the tfBatchSizeEvents, instead it produced one with shape %s",
+                                    Arrays.toString(rshape)));
+                }
+                if (tfOutputVector == null || tfOutputVector.length < tfNumInBatchSoFar) {
+                    tfOutputVector = new float[tfBatchSizeEvents];
+                }
+                tfOutput.writeTo(FloatBuffer.wrap(tfOutputVector, 0, tfNumInBatchSoFar));
+                return tfOutputVector;
+            }
+        }
+    }
+
+    /**
+     * Runs the batch through the pure Java MLP, directly on the array backing
+     * the input buffer
+     *
+     * @return the classification of each event in the batch
+     */
+    private float[] classifyEventsPureJava() {
+        if (pureJavaMlp == null) {
+            throw new IllegalStateException("no network loaded for the PureJava inference backend");
+        }
+        final int numInputs = inputSF * patchWidthAndHeightPixels * patchWidthAndHeightPixels;
+        if (pureJavaMlp.getNumInputs() != numInputs || pureJavaMlp.getNumOutputs() != 1) {
+            throw new IllegalStateException(String.format("network %s does not take %d inputs and produce 1 output", pureJavaMlp, numInputs));
+        }
+        return pureJavaMlp.classify(tfInputFloatBuffer.array(), tfNumInBatchSoFar);
+    }
+
     private String USAGE = "MLPFilter needs at least 2 arguments: noisefilter <command> <args>\nCommands are: setParameters dt xx thr xx\n";
 
     // remote control for experiments e.g. with python / UDP remote control 
@@ -536,7 +578,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
     @Override
     public void initFilter() {
         // if dnn was loaded before, load it now
-        if (preferenceExists(KEY_NETWORK_FILENAME) && tfExecutionGraph == null) {
+        if (preferenceExists(KEY_NETWORK_FILENAME) && !isNetworkLoaded()) {
             File f = new File(getString(KEY_NETWORK_FILENAME, getDefaultSettingsFolder()));
             if (f.exists() && f.isFile()) {
                 try {
@@ -701,6 +743,12 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         if (f == null) {
             throw new IOException("null file");
         }
+        if (inferenceBackend == InferenceBackend.PureJava) {
+            log.info("loading network for pure Java inference from file " + f);
+            pureJavaMlp = MLPPureJava.loadFrozenGraphDef(f, "output/Sigmoid");
+            log.info(pureJavaMlp.toString());
+            return setInputSizeFromNumInputs(f, pureJavaMlp.getNumInputs());
+        }
         ArrayList<String> ioLayers = new ArrayList();
         String sizeMsg = "";
         try {
@@ -735,17 +783,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                     Output output = o.output(onum);
                     Shape shape = output.shape();
                     if (opnum == 0) { // assume input layer
-                        long nin = shape.size(1);
-                        double sqrt = (Math.sqrt(nin));
-                        boolean usesPolarity = sqrt % 1 != 0;
-                        if (usesPolarity) {
-                            sqrt = Math.sqrt(nin / 2);
-                        }
-                        int tiInputDim = (int) Math.round(sqrt);
-                        sizeMsg = String.format("<html>Loaded MLP named \"%s\". <p>Set patchWidthAndHeightPixels=%d and useTIandPol=%s from input # pixels=%d", f.toString(), tiInputDim, usesPolarity, nin);
-                        log.info(sizeMsg);
-                        setPatchWidthAndHeightPixels(tiInputDim);
-                        setUseTIandPol(usesPolarity);
+                        sizeMsg = setInputSizeFromNumInputs(f, shape.size(1));
                     }
                     b.append(opnum++ + ": " + o.toString() + "\t" + output.toString() + "\n");
 //                        int numDimensions = shape.numDimensions();
@@ -765,6 +803,27 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         return sizeMsg;
     }
 
+    /**
+     * Sets the patch size and polarity input from the number of MLP inputs
+     *
+     * @param f the network file, for the message
+     * @param nin the number of inputs
+     * @return String message
+     */
+    private String setInputSizeFromNumInputs(File f, long nin) {
+        double sqrt = (Math.sqrt(nin));
+        boolean usesPolarity = sqrt % 1 != 0;
+        if (usesPolarity) {
+            sqrt = Math.sqrt(nin / 2);
+        }
+        int tiInputDim = (int) Math.round(sqrt);
+        String sizeMsg = String.format("<html>Loaded MLP named \"%s\". <p>Set patchWidthAndHeightPixels=%d and useTIandPol=%s from input # pixels=%d", f.toString(), tiInputDim, usesPolarity, nin);
+        log.info(sizeMsg);
+        setPatchWidthAndHeightPixels(tiInputDim);
+        setUseTIandPol(usesPolarity);
+        return sizeMsg;
+    }
+
     private String getExtension(File f) {
         String ext = null;
         String s = f.getName();
@@ -941,6 +1000,42 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         checkMlpInputFloatBufferSize();
     }
 
+    /**
+     * @return true if a network is loaded for the present inferenceBackend
+     */
+    private boolean isNetworkLoaded() {
+        return inferenceBackend == InferenceBackend.PureJava ? pureJavaMlp != null : tfExecutionGraph != null;
+    }
+
+    /**
+     * @return the inferenceBackend
+     */
+    public InferenceBackend getInferenceBackend() {
+        return inferenceBackend;
+    }
+
+    /**
+     * Sets the inference engine and loads the last network into it if there
+     * is none loaded yet
+     *
+     * @param inferenceBackend the inferenceBackend to set
+     */
+    synchronized public void setInferenceBackend(InferenceBackend inferenceBackend) {
+        InferenceBackend old = this.inferenceBackend;
+        this.inferenceBackend = inferenceBackend;
+        putString("inferenceBackend", inferenceBackend.toString());
+        getSupport().firePropertyChange("inferenceBackend", old, this.inferenceBackend);
+        if (old != inferenceBackend && !isNetworkLoaded() && preferenceExists(KEY_NETWORK_FILENAME)) {
+            File f = new File(getString(KEY_NETWORK_FILENAME, getDefaultSettingsFolder()));
+            try {
+                loadNetwork(f);
+            } catch (Exception ex) {
+                log.warning("Couldn't load network " + f + " for " + inferenceBackend + " inference: Caught " + ex.toString());
+            }
+        }
+        resetFilter();
+    }
+
     /**
      * @return the tiPatchMethod
      */
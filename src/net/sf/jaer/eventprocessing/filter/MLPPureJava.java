@@ -0,0 +1,668 @@
+package net.sf.jaer.eventprocessing.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure Java inference of the fully connected multilayer perceptron used by
+ * {@link MLPNoiseFilter}, so that the filter can run without the native
+ * TensorFlow library.
+ * <p>
+ * The weights are read directly from the same frozen TensorFlow GraphDef
+ * protobuf (.pb) file that the TensorFlow backend loads. The graph must be a
+ * chain of MatMul, BiasAdd (or Add) and Relu, Relu6, Tanh or Sigmoid
+ * operations starting from the input placeholder, with the weights stored as
+ * float Const nodes; Identity nodes (e.g. the variable reads and inference
+ * time dropout) are skipped.
+ * <p>
+ * A batch of inputs is processed in blocks of events so that the activations
+ * of a block stay in cache while all layers are computed, and the blocks are
+ * split across the common fork-join pool for large batches. All activation
+ * buffers are kept and reused for the next batch.
+ */
+public class MLPPureJava {
+
+    /**
+     * Batches with fewer multiply-accumulates than this run on the calling
+     * thread
+     */
+    public static final long MIN_PARALLEL_MACS = 1 << 18;
+    /**
+     * Number of events computed through all layers together
+     */
+    private static final int EVENT_BLOCK = 64;
+
+    /**
+     * The supported activation functions
+     */
+    public enum Activation {
+        Linear, Relu, Relu6, Tanh, Sigmoid
+    };
+
+    /**
+     * One fully connected layer
+     */
+    public static class Layer {
+
+        /**
+         * Weights, nInputs rows of nOutputs, i.e. weight from input i to output
+         * o is at i*nOutputs+o
+         */
+        final float[] weights;
+        final float[] biases;
+        final int nInputs, nOutputs;
+        Activation activation = Activation.Linear;
+
+        Layer(float[] weights, int nInputs, int nOutputs) {
+            this.weights = weights;
+            this.nInputs = nInputs;
+            this.nOutputs = nOutputs;
+            this.biases = new float[nOutputs];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d -> %d %s", nInputs, nOutputs, activation);
+        }
+    }
+
+    private final ArrayList<Layer> layers = new ArrayList();
+    private final String fileName;
+    private float[][] activations = new float[0][]; // outputs of each layer for the present batch
+
+    // the present batch, set by classify() for the tasks
+    private float[] input;
+
+    private MLPPureJava(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Loads the network from a frozen TensorFlow GraphDef protobuf file.
+     *
+     * @param f the .pb file
+     * @param outputNodeName the name of the output operation, e.g.
+     * "output/Sigmoid", or null to use the last node of the graph
+     * @return the network
+     * @throws IOException if the file cannot be read or the graph is not a
+     * supported multilayer perceptron
+     */
+    public static MLPPureJava loadFrozenGraphDef(File f, String outputNodeName) throws IOException {
+        if (f == null || !f.isFile()) {
+            throw new IOException("pure Java MLP needs a frozen GraphDef .pb file, not " + f);
+        }
+        final GraphDef graph = new GraphDef(Files.readAllBytes(f.toPath()));
+        final MLPPureJava net = new MLPPureJava(f.getName());
+        String out = outputNodeName;
+        if (out == null || !graph.nodes.containsKey(out)) {
+            out = graph.lastNodeName;
+        }
+        net.build(graph, out, 0);
+        if (net.layers.isEmpty()) {
+            throw new IOException("no MatMul layers found in " + f);
+        }
+        for (int l = 1; l < net.layers.size(); l++) {
+            if (net.layers.get(l).nInputs != net.layers.get(l - 1).nOutputs) {
+                throw new IOException(String.format("layer %d has %d inputs but layer %d has %d outputs", l, net.layers.get(l).nInputs, l - 1, net.layers.get(l - 1).nOutputs));
+            }
+        }
+        return net;
+    }
+
+    /**
+     * Adds the layers computing node name, in order from the input.
+     */
+    private void build(final GraphDef graph, final String name, final int depth) throws IOException {
+        if (depth > 1000) {
+            throw new IOException("graph is too deep or has a cycle at " + name);
+        }
+        final Node n = graph.node(name);
+        switch (n.op) {
+            case "Placeholder":
+                return;
+            case "Identity":
+                build(graph, n.input(0), depth + 1);
+                return;
+            case "MatMul": {
+                if (n.transposeA) {
+                    throw new IOException("MatMul " + name + " with transposed input is not supported");
+                }
+                build(graph, n.input(0), depth + 1);
+                final Tensor k = graph.constant(n.input(1));
+                if (k.shape.length != 2) {
+                    throw new IOException("kernel of " + name + " is not a matrix");
+                }
+                final int nIn = (int) (n.transposeB ? k.shape[1] : k.shape[0]), nOut = (int) (n.transposeB ? k.shape[0] : k.shape[1]);
+                float[] w = k.values;
+                if (n.transposeB) {
+                    w = new float[nIn * nOut];
+                    for (int o = 0; o < nOut; o++) {
+                        for (int i = 0; i < nIn; i++) {
+                            w[(i * nOut) + o] = k.values[(o * nIn) + i];
+                        }
+                    }
+                }
+                layers.add(new Layer(w, nIn, nOut));
+                return;
+            }
+            case "BiasAdd":
+            case "Add":
+            case "AddV2": {
+                // one input is the constant bias, the other the layer
+                final boolean firstIsConst = graph.isConstant(n.input(0));
+                build(graph, n.input(firstIsConst ? 1 : 0), depth + 1);
+                final Tensor b = graph.constant(n.input(firstIsConst ? 0 : 1));
+                final Layer layer = lastLayer(name);
+                if (b.values.length != layer.nOutputs || layer.activation != Activation.Linear) {
+                    throw new IOException(String.format("bias of %s has %d values for layer %s", name, b.values.length, layer));
+                }
+                for (int o = 0; o < layer.nOutputs; o++) {
+                    layer.biases[o] += b.values[o];
+                }
+                return;
+            }
+            case "Relu":
+            case "Relu6":
+            case "Tanh":
+            case "Sigmoid": {
+                build(graph, n.input(0), depth + 1);
+                final Layer layer = lastLayer(name);
+                if (layer.activation != Activation.Linear) {
+                    throw new IOException("two activations in a row at " + name);
+                }
+                layer.activation = Activation.valueOf(n.op);
+                return;
+            }
+            default:
+                throw new IOException("operation " + n.op + " of node " + name + " is not supported by the pure Java MLP");
+        }
+    }
+
+    private Layer lastLayer(String name) throws IOException {
+        if (layers.isEmpty()) {
+            throw new IOException(name + " is not preceded by a MatMul");
+        }
+        return layers.get(layers.size() - 1);
+    }
+
+    /**
+     * @return the number of inputs per event
+     */
+    public int getNumInputs() {
+        return layers.get(0).nInputs;
+    }
+
+    /**
+     * @return the number of outputs per event
+     */
+    public int getNumOutputs() {
+        return layers.get(layers.size() - 1).nOutputs;
+    }
+
+    /**
+     * @return the number of multiply-accumulates per event
+     */
+    public long getMacsPerEvent() {
+        long macs = 0;
+        for (Layer l : layers) {
+            macs += (long) l.nInputs * l.nOutputs;
+        }
+        return macs;
+    }
+
+    /**
+     * @return the layers, from input to output
+     */
+    public List<Layer> getLayers() {
+        return layers;
+    }
+
+    /**
+     * Computes the network outputs for a batch of events.
+     *
+     * @param input the inputs, getNumInputs() values per event, one event
+     * after the other
+     * @param nEvents the number of events in the batch
+     * @return the outputs, getNumOutputs() values per event. The array is
+     * reused for the next batch and may be longer than needed.
+     */
+    public float[] classify(final float[] input, final int nEvents) {
+        if (activations.length != layers.size()) {
+            activations = new float[layers.size()][];
+        }
+        for (int l = 0; l < layers.size(); l++) {
+            final int len = nEvents * layers.get(l).nOutputs;
+            if (activations[l] == null || activations[l].length < len) {
+                activations[l] = new float[len];
+            }
+        }
+        this.input = input;
+        final int nBlocks = (nEvents + EVENT_BLOCK - 1) / EVENT_BLOCK;
+        if (nEvents * getMacsPerEvent() < MIN_PARALLEL_MACS || nBlocks < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            compute(0, nEvents);
+        } else {
+            ForkJoinPool.commonPool().invoke(new ClassifyTask(0, nBlocks, nEvents));
+        }
+        this.input = null;
+        return activations[layers.size() - 1];
+    }
+
+    /**
+     * Computes all layers for events e0 to e1-1, block by block.
+     */
+    private void compute(final int e0, final int e1) {
+        for (int b0 = e0; b0 < e1; b0 += EVENT_BLOCK) {
+            final int b1 = Math.min(e1, b0 + EVENT_BLOCK);
+            float[] x = input;
+            for (int l = 0; l < layers.size(); l++) {
+                final float[] y = activations[l];
+                computeLayer(layers.get(l), x, y, b0, b1);
+                x = y;
+            }
+        }
+    }
+
+    private static void computeLayer(final Layer layer, final float[] x, final float[] y, final int e0, final int e1) {
+        final float[] w = layer.weights, b = layer.biases;
+        final int nIn = layer.nInputs, nOut = layer.nOutputs;
+        for (int e = e0; e < e1; e++) {
+            final int xi = e * nIn, yo = e * nOut;
+            System.arraycopy(b, 0, y, yo, nOut);
+            for (int i = 0; i < nIn; i++) {
+                final float a = x[xi + i];
+                if (a == 0) {
+                    continue; // the TI patches are mostly empty
+                }
+                final int wi = i * nOut;
+                for (int o = 0; o < nOut; o++) {
+                    y[yo + o] += a * w[wi + o];
+                }
+            }
+            switch (layer.activation) {
+                case Relu:
+                    for (int o = yo; o < yo + nOut; o++) {
+                        y[o] = y[o] > 0 ? y[o] : 0;
+                    }
+                    break;
+                case Relu6:
+                    for (int o = yo; o < yo + nOut; o++) {
+                        y[o] = y[o] > 0 ? (y[o] < 6 ? y[o] : 6) : 0;
+                    }
+                    break;
+                case Tanh:
+                    for (int o = yo; o < yo + nOut; o++) {
+                        y[o] = (float) Math.tanh(y[o]);
+                    }
+                    break;
+                case Sigmoid:
+                    for (int o = yo; o < yo + nOut; o++) {
+                        y[o] = (float) (1 / (1 + Math.exp(-y[o])));
+                    }
+                    break;
+                default:
+            }
+        }
+    }
+
+    /**
+     * Splits the event blocks in halves
+     */
+    private class ClassifyTask extends RecursiveAction {
+
+        final int lo, hi, nEvents;
+
+        ClassifyTask(int lo, int hi, int nEvents) {
+            this.lo = lo;
+            this.hi = hi;
+            this.nEvents = nEvents;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                final int mid = (lo + hi) >>> 1;
+                invokeAll(new ClassifyTask(lo, mid, nEvents), new ClassifyTask(mid, hi, nEvents));
+            } else {
+                MLPPureJava.this.compute(lo * EVENT_BLOCK, Math.min(nEvents, hi * EVENT_BLOCK));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("MLPPureJava " + fileName + ":");
+        for (Layer l : layers) {
+            sb.append(" [").append(l).append("]");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A float tensor from a Const node
+     */
+    private static class Tensor {
+
+        long[] shape = new long[0];
+        float[] values = new float[0];
+    }
+
+    /**
+     * The parts of a NodeDef that are needed here
+     */
+    private static class Node {
+
+        String name, op;
+        final ArrayList<String> inputs = new ArrayList();
+        boolean transposeA, transposeB;
+        Tensor value;
+
+        /**
+         * @return input number i, without output index and skipping control
+         * inputs
+         */
+        String input(int i) throws IOException {
+            int k = 0;
+            for (String s : inputs) {
+                if (s.startsWith("^")) {
+                    continue;
+                }
+                if (k++ == i) {
+                    final int colon = s.indexOf(':');
+                    return colon < 0 ? s : s.substring(0, colon);
+                }
+            }
+            throw new IOException("node " + name + " has no input " + i);
+        }
+    }
+
+    /**
+     * Minimal reader of the protobuf wire format of a TensorFlow GraphDef,
+     * keeping only node names, ops, inputs, MatMul transposes and float Const
+     * values.
+     */
+    private static class GraphDef {
+
+        // field numbers from tensorflow graph.proto, node_def.proto, attr_value.proto, tensor.proto and tensor_shape.proto
+        private static final int GRAPH_NODE = 1;
+        private static final int NODE_NAME = 1, NODE_OP = 2, NODE_INPUT = 3, NODE_ATTR = 5;
+        private static final int ENTRY_KEY = 1, ENTRY_VALUE = 2;
+        private static final int ATTR_B = 5, ATTR_TENSOR = 8;
+        private static final int TENSOR_DTYPE = 1, TENSOR_SHAPE = 2, TENSOR_CONTENT = 4, TENSOR_FLOAT_VAL = 5;
+        private static final int SHAPE_DIM = 2, DIM_SIZE = 1;
+        private static final int DT_FLOAT = 1;
+
+        final HashMap<String, Node> nodes = new HashMap();
+        String lastNodeName = null;
+
+        GraphDef(byte[] bytes) throws IOException {
+            final Reader r = new Reader(ByteBuffer.wrap(bytes));
+            while (r.hasMore()) {
+                final int tag = r.tag();
+                if ((tag >>> 3) == GRAPH_NODE && (tag & 7) == Reader.LENGTH_DELIMITED) {
+                    final Node n = parseNode(r.message());
+                    nodes.put(n.name, n);
+                    lastNodeName = n.name;
+                } else {
+                    r.skip(tag);
+                }
+            }
+            if (nodes.isEmpty()) {
+                throw new IOException("no nodes found, not a GraphDef protobuf");
+            }
+        }
+
+        Node node(String name) throws IOException {
+            final Node n = nodes.get(name);
+            if (n == null) {
+                throw new IOException("graph has no node " + name);
+            }
+            return n;
+        }
+
+        boolean isConstant(String name) throws IOException {
+            Node n = node(name);
+            while (n.op.equals("Identity")) {
+                n = node(n.input(0));
+            }
+            return n.op.equals("Const");
+        }
+
+        Tensor constant(String name) throws IOException {
+            Node n = node(name);
+            while (n.op.equals("Identity")) {
+                n = node(n.input(0));
+            }
+            if (!n.op.equals("Const") || n.value == null) {
+                throw new IOException(name + " is not a float constant; freeze the graph before loading it");
+            }
+            return n.value;
+        }
+
+        private static Node parseNode(Reader r) throws IOException {
+            final Node n = new Node();
+            while (r.hasMore()) {
+                final int tag = r.tag();
+                switch (tag >>> 3) {
+                    case NODE_NAME:
+                        n.name = r.string();
+                        break;
+                    case NODE_OP:
+                        n.op = r.string();
+                        break;
+                    case NODE_INPUT:
+                        n.inputs.add(r.string());
+                        break;
+                    case NODE_ATTR:
+                        parseAttr(n, r.message());
+                        break;
+                    default:
+                        r.skip(tag);
+                }
+            }
+            return n;
+        }
+
+        private static void parseAttr(Node n, Reader entry) throws IOException {
+            String key = null;
+            Reader value = null;
+            while (entry.hasMore()) {
+                final int tag = entry.tag();
+                if ((tag >>> 3) == ENTRY_KEY) {
+                    key = entry.string();
+                } else if ((tag >>> 3) == ENTRY_VALUE) {
+                    value = entry.message();
+                } else {
+                    entry.skip(tag);
+                }
+            }
+            if (key == null || value == null) {
+                return;
+            }
+            while (value.hasMore()) {
+                final int tag = value.tag();
+                if ((tag >>> 3) == ATTR_B && key.equals("transpose_a")) {
+                    n.transposeA = value.varint() != 0;
+                } else if ((tag >>> 3) == ATTR_B && key.equals("transpose_b")) {
+                    n.transposeB = value.varint() != 0;
+                } else if ((tag >>> 3) == ATTR_TENSOR && key.equals("value")) {
+                    n.value = parseTensor(value.message());
+                } else {
+                    value.skip(tag);
+                }
+            }
+        }
+
+        private static Tensor parseTensor(Reader r) throws IOException {
+            final Tensor t = new Tensor();
+            int dtype = 0;
+            byte[] content = null;
+            final ArrayList<Float> floatVal = new ArrayList();
+            final ArrayList<Long> dims = new ArrayList();
+            while (r.hasMore()) {
+                final int tag = r.tag();
+                switch (tag >>> 3) {
+                    case TENSOR_DTYPE:
+                        dtype = (int) r.varint();
+                        break;
+                    case TENSOR_SHAPE: {
+                        final Reader shape = r.message();
+                        while (shape.hasMore()) {
+                            final int stag = shape.tag();
+                            if ((stag >>> 3) == SHAPE_DIM) {
+                                final Reader dim = shape.message();
+                                long size = 0;
+                                while (dim.hasMore()) {
+                                    final int dtag = dim.tag();
+                                    if ((dtag >>> 3) == DIM_SIZE) {
+                                        size = dim.varint();
+                                    } else {
+                                        dim.skip(dtag);
+                                    }
+                                }
+                                dims.add(size);
+                            } else {
+                                shape.skip(stag);
+                            }
+                        }
+                        break;
+                    }
+                    case TENSOR_CONTENT:
+                        content = r.bytes();
+                        break;
+                    case TENSOR_FLOAT_VAL:
+                        if ((tag & 7) == Reader.LENGTH_DELIMITED) { // packed
+                            final Reader packed = r.message();
+                            while (packed.hasMore()) {
+                                floatVal.add(packed.fixed32());
+                            }
+                        } else {
+                            floatVal.add(r.fixed32());
+                        }
+                        break;
+                    default:
+                        r.skip(tag);
+                }
+            }
+            if (dtype != DT_FLOAT) {
+                return null;
+            }
+            t.shape = new long[dims.size()];
+            long n = 1;
+            for (int i = 0; i < t.shape.length; i++) {
+                t.shape[i] = dims.get(i);
+                n *= t.shape[i];
+            }
+            t.values = new float[(int) n];
+            if (content != null) {
+                ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(t.values);
+            } else if (floatVal.size() == 1) { // a single value is repeated to fill the shape
+                Arrays.fill(t.values, floatVal.get(0));
+            } else {
+                for (int i = 0; i < Math.min(t.values.length, floatVal.size()); i++) {
+                    t.values[i] = floatVal.get(i);
+                }
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Reads protobuf wire format fields from a buffer
+     */
+    private static class Reader {
+
+        static final int VARINT = 0, FIXED64 = 1, LENGTH_DELIMITED = 2, FIXED32 = 5;
+        private final ByteBuffer buf;
+
+        Reader(ByteBuffer buf) {
+            this.buf = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        boolean hasMore() {
+            return buf.hasRemaining();
+        }
+
+        int tag() throws IOException {
+            return (int) varint();
+        }
+
+        long varint() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (!buf.hasRemaining()) {
+                    throw new IOException("truncated protobuf");
+                }
+                final byte b = buf.get();
+                v |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IOException("malformed varint in protobuf");
+        }
+
+        float fixed32() throws IOException {
+            if (buf.remaining() < 4) {
+                throw new IOException("truncated protobuf");
+            }
+            return buf.getFloat();
+        }
+
+        Reader message() throws IOException {
+            final int len = length();
+            final ByteBuffer b = buf.slice();
+            b.limit(len);
+            buf.position(buf.position() + len);
+            return new Reader(b);
+        }
+
+        byte[] bytes() throws IOException {
+            final byte[] b = new byte[length()];
+            buf.get(b);
+            return b;
+        }
+
+        String string() throws IOException {
+            return new String(bytes(), StandardCharsets.UTF_8);
+        }
+
+        private int length() throws IOException {
+            final long len = varint();
+            if (len < 0 || len > buf.remaining()) {
+                throw new IOException("bad length " + len + " in protobuf");
+            }
+            return (int) len;
+        }
+
+        void skip(int tag) throws IOException {
+            switch (tag & 7) {
+                case VARINT:
+                    varint();
+                    break;
+                case FIXED64:
+                    buf.position(buf.position() + 8);
+                    break;
+                case LENGTH_DELIMITED: {
+                    final int len = length(); // read before taking the position, which it advances
+                    buf.position(buf.position() + len);
+                    break;
+                }
+                case FIXED32:
+                    buf.position(buf.position() + 4);
+                    break;
+                default:
+                    throw new IOException("unsupported protobuf wire type " + (tag & 7));
+            }
+        }
+    }
+}
@@ -181,6 +181,11 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
     private final long MAX_FILTER_PROCESSING_TIME_MS = 500000; // times out to avoid using up all heap
     private TextRenderer textRenderer = null;
 
+    private boolean verifyParallelTiles = getBoolean("verifyParallelTiles", false);
+    private AbstractNoiseFilter verifyFilter = null; // copy of selectedFilter that runs with the other parallelTilesEnabled
+    private EventPacket<PolarityEvent> verifyPacket = null;
+    private long verifyEventCount = 0, verifyMismatchCount = 0;
+
     public NoiseTesterFilter(AEChip chip) {
         super(chip);
 
@@ -215,6 +220,7 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
         setPropertyTooltip(TT_DISP, "overlayFN", "<html><p>Overlay FN in green <br>(signal events incorrectly classified as noise)");
         setPropertyTooltip(TT_DISP, "rocHistoryLength", "Number of samples of ROC point to show.");
         setPropertyTooltip(TT_DISP, "clearROCHistory", "Clears samples from display.");
+        setPropertyTooltip(TT_PERF, "verifyParallelTiles", "<html>Verifies that the selected filter produces the same output with and without parallelTilesEnabled<p>by running a copy of it in the other mode on a copy of each packet and counting events with different results.");
     }
 
     @Override
@@ -299,6 +305,11 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
         gl.glRasterPos3f(0, getAnnotationRasterYPosition("NTF") + 10, 0);
         s = String.format("In sigRate=%s noiseRate=%s, Out sigRate=%s noiseRate=%s Hz", eng.format(inSignalRateHz), eng.format(inNoiseRateHz), eng.format(outSignalRateHz), eng.format(outNoiseRateHz));
         glut.glutBitmapString(GLUT.BITMAP_HELVETICA_18, s);
+        if (verifyParallelTiles) {
+            gl.glRasterPos3f(0, getAnnotationRasterYPosition("NTF") + 20, 0);
+            s = String.format("Parallel tiles verification: %,d mismatches in %,d events", verifyMismatchCount, verifyEventCount);
+            glut.glutBitmapString(GLUT.BITMAP_HELVETICA_18, s);
+        }
         gl.glPopMatrix();
 
 //        nnbHistograms.draw(gl);  shows neighbor distributions, not informative
@@ -633,7 +644,13 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
             for (EventFilter2D f : getEnclosedFilterChain()) {
                 ((AbstractNoiseFilter) f).setRecordFilteredOutEvents(true);
             }
+            if (verifyParallelTiles) {
+                runVerifyFilter(signalAndNoisePacket);
+            }
             EventPacket<PolarityEvent> passedSignalAndNoisePacket = (EventPacket<PolarityEvent>) getEnclosedFilterChain().filterPacket(signalAndNoisePacket);
+            if (verifyParallelTiles) {
+                compareVerifyFilterOutput(signalAndNoisePacket);
+            }
             if (selectedFilter != null) {
 
                 ArrayList<FilteredEventWithNNb> negativeList = selectedFilter.getNegativeEvents();
@@ -1440,6 +1457,103 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
         }
     }
 
+    @Override
+    public void setParallelTilesEnabled(boolean parallelTilesEnabled) {
+        super.setParallelTilesEnabled(parallelTilesEnabled);
+        for (AbstractNoiseFilter f : noiseFilters) {
+            f.setParallelTilesEnabled(parallelTilesEnabled);
+        }
+    }
+
+    @Override
+    public void setParallelTileSize(int parallelTileSize) {
+        super.setParallelTileSize(parallelTileSize);
+        for (AbstractNoiseFilter f : noiseFilters) {
+            f.setParallelTileSize(parallelTileSize);
+        }
+    }
+
+    /**
+     * Runs a copy of the selected filter, with the same state but the other
+     * parallelTilesEnabled, on a copy of the packet, so that its output can be
+     * compared with the selected filter by compareVerifyFilterOutput.
+     *
+     * @param packet the packet before it is filtered by the selected filter
+     */
+    private void runVerifyFilter(EventPacket<PolarityEvent> packet) {
+        if (selectedFilter == null) {
+            return;
+        }
+        if (verifyFilter == null || verifyFilter.getClass() != selectedFilter.getClass()) {
+            try {
+                verifyFilter = selectedFilter.getClass().getConstructor(AEChip.class).newInstance(chip);
+                verifyFilter.initFilter();
+            } catch (ReflectiveOperationException ex) {
+                log.warning("could not construct copy of " + selectedFilter + " for verification: " + ex);
+                verifyFilter = null;
+                return;
+            }
+        }
+        if (!verifyFilter.copyStateFrom(selectedFilter)) {
+            log.warning(selectedFilter.getClass().getSimpleName() + " does not support parallel tiles; disabling verifyParallelTiles");
+            verifyFilter = null;
+            setVerifyParallelTiles(false);
+            return;
+        }
+        verifyFilter.parallelTilesEnabled = !selectedFilter.isParallelTilesEnabled(); // set field to not change the stored preference
+        verifyFilter.parallelTileSize = selectedFilter.getParallelTileSize();
+        if (verifyPacket == null) {
+            verifyPacket = new EventPacket(PolarityEvent.class);
+        }
+        verifyPacket.copyFrom(packet);
+        verifyFilter.filterPacket(verifyPacket);
+    }
+
+    /**
+     * Counts the events that the selected filter and the verification filter
+     * did not filter the same way.
+     *
+     * @param packet the packet after it was filtered by the selected filter
+     */
+    private void compareVerifyFilterOutput(EventPacket<PolarityEvent> packet) {
+        if (verifyFilter == null || verifyPacket == null) {
+            return;
+        }
+        final BasicEvent[] a = packet.getElementData(), b = verifyPacket.getElementData();
+        final int n = Math.min(packet.getSize(), verifyPacket.getSize());
+        int mismatches = 0;
+        for (int i = 0; i < n; i++) {
+            if (a[i].isFilteredOut() != b[i].isFilteredOut()) {
+                mismatches++;
+            }
+        }
+        verifyEventCount += n;
+        verifyMismatchCount += mismatches;
+        if (mismatches > 0) {
+            log.warning(String.format("%s: output with parallelTilesEnabled=%s differs from parallelTilesEnabled=%s for %,d of %,d events",
+                    selectedFilter.getClass().getSimpleName(), selectedFilter.isParallelTilesEnabled(), verifyFilter.isParallelTilesEnabled(), mismatches, n));
+        }
+    }
+
+    /**
+     * @return the verifyParallelTiles
+     */
+    public boolean isVerifyParallelTiles() {
+        return verifyParallelTiles;
+    }
+
+    /**
+     * @param verifyParallelTiles the verifyParallelTiles to set
+     */
+    public void setVerifyParallelTiles(boolean verifyParallelTiles) {
+        boolean old = this.verifyParallelTiles;
+        this.verifyParallelTiles = verifyParallelTiles;
+        putBoolean("verifyParallelTiles", verifyParallelTiles);
+        verifyEventCount = 0;
+        verifyMismatchCount = 0;
+        getSupport().firePropertyChange("verifyParallelTiles", old, this.verifyParallelTiles);
+    }
+
     @Override
     public synchronized void setSigmaDistPixels(int sigmaDistPixels) {
         super.setSigmaDistPixels(sigmaDistPixels); //To change body of generated methods, choose Tools | Templates.
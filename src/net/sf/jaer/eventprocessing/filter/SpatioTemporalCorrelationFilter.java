@@ -11,6 +11,7 @@ import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.PolarityEvent;
 import net.sf.jaer.eventio.AEInputStream;
@@ -44,6 +45,7 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
 
     int[][] timestampImage; // timestamp image
     byte[][] polImage; // -1 is OFF +1 is ON, last event polarities according to getPolaritySignum
+    private final TileKernel tileKernel = new TileKernel();
 
     public SpatioTemporalCorrelationFilter(AEChip chip) {
         super(chip);
@@ -77,7 +79,16 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
         final boolean fhp = filterHotPixels;
         final NnbRange nnbRange = new NnbRange();
 
-        if (record) { // branch here to save a tiny bit if not instrumenting denoising
+        if (isParallelTilesUsed(in)) {
+            final ColumnarEventPacket c = getColumnarPacket(in);
+            final TiledNoiseFilterExecutor executor = getTiledExecutor();
+            tileKernel.dt = dt;
+            tileKernel.hasPolarity = PolarityEvent.class.isAssignableFrom(in.getEventClass());
+            executor.process(c, subsampleBy, ssx, ssy, sigmaDistPixels, timestampImage, polImage, tileKernel);
+            numShotNoiseTests += executor.sumCounts(0);
+            numAlternatingPolarityShotNoiseEventsFilteredOut += executor.sumCounts(1);
+            applyTiledDecisions(c, executor);
+        } else if (record) { // branch here to save a tiny bit if not instrumenting denoising
             for (BasicEvent e : in) {
                 if (e == null) {
                     continue;
@@ -215,6 +226,90 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
         }
     }
 
+    /**
+     * The per-event part of filterPacket for parallel tiles, with the same
+     * logic as the sequential loops. The tile counts are the shot noise tests
+     * (0) and the events filtered out by them (1).
+     */
+    private class TileKernel implements TiledNoiseFilterExecutor.Kernel {
+
+        int dt;
+        boolean hasPolarity;
+
+        @Override
+        public boolean filterOut(TiledNoiseFilterExecutor.Tile tile, ColumnarEventPacket c, int i, int x, int y) {
+            final int[] map = tile.timestamps;
+            final int ts = c.timestamp[i];
+            final int idx = tile.index(x, y);
+            if (map[idx] == DEFAULT_TIMESTAMP) {
+                return !letFirstEventThrough;
+            }
+            // same range as NnbRange.compute
+            final int d = sigmaDistPixels;
+            final int x0 = x < d ? 0 : x - d, y0 = y < d ? 0 : y - d;
+            final int x1 = x >= ssx - d ? ssx - d : x + d, y1 = y >= ssy - d ? ssy - d : y + d;
+            int ncorrelated = 0;
+            outerloop:
+            for (int xx = x0; xx <= x1; xx++) {
+                for (int yy = y0; yy <= y1; yy++) {
+                    if (filterHotPixels && xx == x && yy == y) {
+                        continue;
+                    }
+                    final int lastT = map[tile.index(xx, yy)];
+                    if ((ts - lastT) < dt && lastT != DEFAULT_TIMESTAMP) {
+                        ncorrelated++;
+                        if (ncorrelated >= numMustBeCorrelated) {
+                            break outerloop;
+                        }
+                    }
+                }
+            }
+            if (ncorrelated < numMustBeCorrelated) {
+                return true;
+            }
+            // same test as testFilterOutShotNoiseOppositePolarity
+            if (!filterAlternativePolarityShotNoiseEnabled || !hasPolarity) {
+                return false;
+            }
+            tile.counts[0]++;
+            if (polaritySignum(c, i) == tile.polarities[idx]) {
+                return false;
+            }
+            if (1e-6f * (ts - map[idx]) > shotNoiseCorrelationTimeS) {
+                return false;
+            }
+            tile.counts[1]++;
+            return true;
+        }
+
+        @Override
+        public void update(TiledNoiseFilterExecutor.Tile tile, ColumnarEventPacket c, int i, int x, int y) {
+            final int idx = tile.index(x, y);
+            tile.timestamps[idx] = c.timestamp[i];
+            if (hasPolarity) {
+                tile.polarities[idx] = polaritySignum(c, i);
+            }
+        }
+
+        private byte polaritySignum(ColumnarEventPacket c, int i) {
+            return c.type[i] == 0 ? (byte) -1 : (byte) 1; // PolarityEvent type is 0 for Off
+        }
+    }
+
+    @Override
+    protected boolean copyStateFrom(AbstractNoiseFilter other) {
+        super.copyStateFrom(other);
+        final SpatioTemporalCorrelationFilter o = (SpatioTemporalCorrelationFilter) other;
+        numMustBeCorrelated = o.numMustBeCorrelated;
+        filterAlternativePolarityShotNoiseEnabled = o.filterAlternativePolarityShotNoiseEnabled;
+        shotNoiseCorrelationTimeS = o.shotNoiseCorrelationTimeS;
+        sxm1 = o.sxm1;
+        sym1 = o.sym1;
+        timestampImage = copyMap(o.timestampImage, timestampImage);
+        polImage = copyMap(o.polImage, polImage);
+        return true;
+    }
+
     @Override
     public synchronized final void resetFilter() {
         super.resetFilter();
@@ -0,0 +1,419 @@
+package net.sf.jaer.eventprocessing.filter;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import net.sf.jaer.event.ColumnarEventPacket;
+
+/**
+ * Runs a neighborhood noise filter such as {@link BackgroundActivityFilter} in
+ * parallel over spatial tiles of its past event (timestamp) map, using the
+ * common fork-join pool.
+ * <p>
+ * The map is split into square tiles. Each tile owns the events that fall
+ * into it and processes them in packet order against a private copy of its
+ * part of the map, extended by a halo border of the neighborhood radius.
+ * Events that fall into the halo of a tile are also given to that tile, only
+ * to update its copy of the halo. Each tile therefore sees exactly the
+ * neighborhood that the sequential filter would see for each of its events,
+ * and the filter output is identical to the sequential filter, provided that
+ * <ul>
+ * <li>the decision for an event only depends on the map within the halo
+ * radius, and on parameters that are not changed by the events, and
+ * <li>the map update by an event does not depend on the decision, except
+ * through what is stored at the event's own pixel.
+ * </ul>
+ * Once all tiles have finished, the interior of each tile is written back to
+ * the shared map, which stays the state of the filter between packets so that
+ * the filter can switch between the sequential and parallel modes at any
+ * time.
+ * <p>
+ * The executor only computes the decisions; the filter applies them to the
+ * packet afterwards in packet order, so that statistics and the recorded lists
+ * of filtered events are the same as for the sequential filter. A filter uses
+ * it like this
+ * <pre>
+ * final ColumnarEventPacket c = getColumnarPacket(in);
+ * getTiledExecutor().process(c, subsampleBy, sx, sy, 1, timestampImage, null, kernel);
+ * applyTiledDecisions(c, getTiledExecutor());
+ * </pre>
+ *
+ * @see AbstractNoiseFilter#isParallelTilesEnabled()
+ */
+public class TiledNoiseFilterExecutor {
+
+    /** Default tile size in (subsampled) map pixels */
+    public static final int DEFAULT_TILE_SIZE = 64;
+    /**
+     * Packets with fewer events than this are not worth splitting and should
+     * be processed by the sequential filter.
+     */
+    public static final int MIN_PARALLEL_PACKET_SIZE = 2048;
+    /** Number of filter-specific counters in each {@link Tile} */
+    public static final int NUM_COUNTS = 4;
+
+    private static final byte DECISION_NONE = 0, DECISION_IN = 1, DECISION_OUT = 2;
+    private static final int HALO_BIT = 0x80000000;
+
+    /**
+     * The per-event part of a noise filter, called from the pool threads. An
+     * implementation must only use the tile and the read-only columns of the
+     * packet, since tiles are processed concurrently.
+     */
+    public interface Kernel {
+
+        /**
+         * Decides about an event that is owned by the tile. Called before
+         * {@link #update}.
+         *
+         * @param tile the tile, whose maps hold the past events of the
+         * neighborhood of the event
+         * @param c the packet
+         * @param i the event index in c
+         * @param x the subsampled x address
+         * @param y the subsampled y address
+         * @return true to filter out the event
+         */
+        boolean filterOut(Tile tile, ColumnarEventPacket c, int i, int x, int y);
+
+        /**
+         * Updates the tile maps with an event; called for events owned by the
+         * tile after {@link #filterOut} and for events in the halo of the tile.
+         *
+         * @param tile the tile
+         * @param c the packet
+         * @param i the event index in c
+         * @param x the subsampled x address
+         * @param y the subsampled y address
+         */
+        void update(Tile tile, ColumnarEventPacket c, int i, int x, int y);
+    }
+
+    /**
+     * A tile with its private copy of the maps, including the halo.
+     */
+    public static final class Tile {
+
+        /** Owned interior, inclusive map coordinates */
+        private int tx0, tx1, ty0, ty1;
+        /** Origin and size of the local maps including halo */
+        private int x0, y0, w, h;
+        /** Local copy of the timestamp map, stored by column like map[x][y] */
+        public int[] timestamps = new int[0];
+        /** Local copy of the polarity map, or null if the filter has none */
+        public byte[] polarities = null;
+        /**
+         * Counters for filter-specific statistics, cleared for each packet;
+         * sum them with {@link TiledNoiseFilterExecutor#sumCounts(int)}
+         */
+        public final int[] counts = new int[NUM_COUNTS];
+        private int[] events = new int[256];
+        private int numEvents = 0;
+        private boolean active = false;
+
+        /**
+         * Returns the index into the local maps for a map location within the
+         * tile or its halo.
+         *
+         * @param x the subsampled x address
+         * @param y the subsampled y address
+         * @return the index into {@link #timestamps} and {@link #polarities}
+         */
+        public int index(final int x, final int y) {
+            return (x - x0) * h + (y - y0);
+        }
+
+        private void add(final int e) {
+            if (numEvents == events.length) {
+                events = Arrays.copyOf(events, events.length * 2);
+            }
+            events[numEvents++] = e;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Tile x=[%d,%d] y=[%d,%d] with %d events", tx0, tx1, ty0, ty1, numEvents);
+        }
+    }
+
+    private int tileSize = DEFAULT_TILE_SIZE;
+    private Tile[] tiles = null;
+    private int tilesX, tilesY, mapSizeX, mapSizeY, tilesTileSize, tilesHalo;
+    private Tile[] activeTiles = new Tile[0];
+    private int numActiveTiles = 0;
+    private byte[] decisions = new byte[0];
+
+    // the arguments of the present process call, used by the tasks
+    private ColumnarEventPacket packet;
+    private int subsampleBy;
+    private int[][] timestampMap;
+    private byte[][] polarityMap;
+    private Kernel kernel;
+
+    /**
+     * Decides about all events of a packet in parallel.
+     *
+     * @param c the packet, loaded from the filter input
+     * @param subsampleBy the address right shift to map coordinates
+     * @param maxX events with subsampled x outside [0,maxX] are filtered out
+     * without calling the kernel
+     * @param maxY events with subsampled y outside [0,maxY] are filtered out
+     * without calling the kernel
+     * @param halo the neighborhood radius in map pixels that the kernel reads
+     * around an event
+     * @param timestampMap the timestamp map of the filter, [x][y]
+     * @param polarityMap the polarity map of the filter, or null
+     * @param kernel the kernel
+     */
+    public void process(final ColumnarEventPacket c, final int subsampleBy, final int maxX, final int maxY, final int halo,
+            final int[][] timestampMap, final byte[][] polarityMap, final Kernel kernel) {
+        final int n = c.getSize();
+        if (decisions.length < n) {
+            decisions = new byte[n];
+        } else {
+            Arrays.fill(decisions, 0, n, DECISION_NONE);
+        }
+        allocateTiles(timestampMap.length, timestampMap[0].length, halo);
+        for (Tile t : tiles) {
+            t.numEvents = 0;
+            t.active = false;
+            Arrays.fill(t.counts, 0);
+        }
+        numActiveTiles = 0;
+
+        // partition the events into the tiles in packet order
+        final short[] xs = c.x, ys = c.y;
+        final int ts = tilesTileSize;
+        for (PrimitiveIterator.OfInt it = c.inputIndices(); it.hasNext();) {
+            final int i = it.nextInt();
+            if (c.isSpecial(i)) {
+                continue;
+            }
+            final int x = xs[i] >> subsampleBy, y = ys[i] >> subsampleBy;
+            if ((x < 0) || (x > maxX) || (y < 0) || (y > maxY)) {
+                decisions[i] = DECISION_OUT;
+                continue;
+            }
+            final int otx = x / ts, oty = y / ts;
+            final Tile owner = tiles[(otx * tilesY) + oty];
+            owner.add(i);
+            if (!owner.active) {
+                owner.active = true;
+                activeTiles[numActiveTiles++] = owner;
+            }
+            final int tx0 = Math.max(0, x - halo) / ts, tx1 = Math.min(mapSizeX - 1, x + halo) / ts;
+            final int ty0 = Math.max(0, y - halo) / ts, ty1 = Math.min(mapSizeY - 1, y + halo) / ts;
+            if (tx0 == tx1 && ty0 == ty1) {
+                continue; // not in any halo
+            }
+            for (int tx = tx0; tx <= tx1; tx++) {
+                for (int ty = ty0; ty <= ty1; ty++) {
+                    if (tx != otx || ty != oty) {
+                        tiles[(tx * tilesY) + ty].add(i | HALO_BIT);
+                    }
+                }
+            }
+        }
+
+        this.packet = c;
+        this.subsampleBy = subsampleBy;
+        this.timestampMap = timestampMap;
+        this.polarityMap = polarityMap;
+        this.kernel = kernel;
+        try {
+            // all tiles must have loaded their halos before any tile writes back its interior
+            runTiles(false);
+            runTiles(true);
+        } finally {
+            this.packet = null;
+            this.timestampMap = null;
+            this.polarityMap = null;
+            this.kernel = null;
+        }
+    }
+
+    private void runTiles(final boolean store) {
+        if (numActiveTiles == 0) {
+            return;
+        }
+        if (numActiveTiles == 1) {
+            new TileTask(0, 1, store).compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(new TileTask(0, numActiveTiles, store));
+        }
+    }
+
+    /**
+     * Processes or stores a range of the active tiles, splitting the range in
+     * halves.
+     */
+    private class TileTask extends RecursiveAction {
+
+        final int lo, hi;
+        final boolean store;
+
+        TileTask(int lo, int hi, boolean store) {
+            this.lo = lo;
+            this.hi = hi;
+            this.store = store;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                final int mid = (lo + hi) >>> 1;
+                invokeAll(new TileTask(lo, mid, store), new TileTask(mid, hi, store));
+            } else if (store) {
+                storeTile(activeTiles[lo]);
+            } else {
+                processTile(activeTiles[lo]);
+            }
+        }
+    }
+
+    private void processTile(final Tile t) {
+        final int[][] tsMap = timestampMap;
+        final byte[][] polMap = polarityMap;
+        final int size = t.w * t.h;
+        if (t.timestamps.length < size) {
+            t.timestamps = new int[size];
+        }
+        for (int xx = 0; xx < t.w; xx++) {
+            System.arraycopy(tsMap[t.x0 + xx], t.y0, t.timestamps, xx * t.h, t.h);
+        }
+        if (polMap != null) {
+            if (t.polarities == null || t.polarities.length < size) {
+                t.polarities = new byte[size];
+            }
+            for (int xx = 0; xx < t.w; xx++) {
+                System.arraycopy(polMap[t.x0 + xx], t.y0, t.polarities, xx * t.h, t.h);
+            }
+        }
+        final ColumnarEventPacket c = packet;
+        final short[] xs = c.x, ys = c.y;
+        final int shift = subsampleBy;
+        final Kernel k = kernel;
+        final int[] events = t.events;
+        for (int j = 0; j < t.numEvents; j++) {
+            final int e = events[j];
+            final int i = e & ~HALO_BIT;
+            final int x = xs[i] >> shift, y = ys[i] >> shift;
+            if (e == i) {
+                decisions[i] = k.filterOut(t, c, i, x, y) ? DECISION_OUT : DECISION_IN;
+            }
+            k.update(t, c, i, x, y);
+        }
+    }
+
+    private void storeTile(final Tile t) {
+        final int[][] tsMap = timestampMap;
+        final byte[][] polMap = polarityMap;
+        final int hh = t.ty1 - t.ty0 + 1;
+        for (int x = t.tx0; x <= t.tx1; x++) {
+            final int offset = t.index(x, t.ty0);
+            System.arraycopy(t.timestamps, offset, tsMap[x], t.ty0, hh);
+            if (polMap != null) {
+                System.arraycopy(t.polarities, offset, polMap[x], t.ty0, hh);
+            }
+        }
+    }
+
+    private void allocateTiles(final int sx, final int sy, final int halo) {
+        // the halo must not reach beyond the neighboring tile
+        final int size = Math.max(tileSize, halo + 1);
+        if (tiles != null && sx == mapSizeX && sy == mapSizeY && size == tilesTileSize && halo == tilesHalo) {
+            return;
+        }
+        mapSizeX = sx;
+        mapSizeY = sy;
+        tilesTileSize = size;
+        tilesHalo = halo;
+        tilesX = (sx + size - 1) / size;
+        tilesY = (sy + size - 1) / size;
+        tiles = new Tile[tilesX * tilesY];
+        activeTiles = new Tile[tiles.length];
+        for (int tx = 0; tx < tilesX; tx++) {
+            for (int ty = 0; ty < tilesY; ty++) {
+                final Tile t = new Tile();
+                t.tx0 = tx * size;
+                t.tx1 = Math.min(sx, (tx + 1) * size) - 1;
+                t.ty0 = ty * size;
+                t.ty1 = Math.min(sy, (ty + 1) * size) - 1;
+                t.x0 = Math.max(0, t.tx0 - halo);
+                t.y0 = Math.max(0, t.ty0 - halo);
+                t.w = Math.min(sx - 1, t.tx1 + halo) - t.x0 + 1;
+                t.h = Math.min(sy - 1, t.ty1 + halo) - t.y0 + 1;
+                tiles[(tx * tilesY) + ty] = t;
+            }
+        }
+    }
+
+    /**
+     * Returns the decision for an event of the last processed packet.
+     *
+     * @param i the event index
+     * @return true if the event was filtered out, false if it passed or was
+     * not decided, e.g. because it is special or was already filtered out
+     */
+    public boolean isFilteredOut(final int i) {
+        return decisions[i] == DECISION_OUT;
+    }
+
+    /**
+     * @param i the event index
+     * @return true if the event was decided in the last processed packet
+     */
+    public boolean isDecided(final int i) {
+        return decisions[i] != DECISION_NONE;
+    }
+
+    /**
+     * Sums a filter-specific counter over the tiles of the last processed
+     * packet.
+     *
+     * @param k the counter index, 0 to NUM_COUNTS-1
+     * @return the sum
+     */
+    public int sumCounts(final int k) {
+        int sum = 0;
+        for (int j = 0; j < numActiveTiles; j++) {
+            sum += activeTiles[j].counts[k];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of tiles that owned events in the last processed
+     * packet
+     */
+    public int getNumActiveTiles() {
+        return numActiveTiles;
+    }
+
+    /**
+     * @return the tile size in map pixels
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the tile size. Smaller tiles balance the load better between
+     * threads but copy relatively more halo.
+     *
+     * @param tileSize the tile size in map pixels; it is enlarged if needed to
+     * be larger than the halo
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize < 8) {
+            tileSize = 8;
+        }
+        this.tileSize = tileSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s with %d tiles of size %d, %d active", getClass().getSimpleName(), tiles == null ? 0 : tiles.length, tileSize, numActiveTiles);
+    }
+}
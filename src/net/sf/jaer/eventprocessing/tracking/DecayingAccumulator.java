@@ -0,0 +1,322 @@
+package net.sf.jaer.eventprocessing.tracking;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Accumulator array for Hough transforms whose cells all decay by a common
+ * factor, e.g. after each packet, in constant time rather than by multiplying
+ * every cell.
+ * <p>
+ * Cell values are stored relative to a scale that {@link #decay} multiplies;
+ * the decay is applied when a cell is read or written. The stored values are
+ * rescaled, in a single pass over the array, only when the scale gets very
+ * small or large. Since all cells decay alike, decay does not change the
+ * order of the cells, and {@link #compare} compares the stored values.
+ * <p>
+ * If constructed with ordered peaks, the cells are also kept in an indexed
+ * binary max-heap ordered by value and then by index, so that
+ * {@link #findPeak} can visit the cells from the largest downwards. Cells
+ * that are changed are only marked; {@link #findPeak} first moves each of them
+ * to its place in the heap, once however many votes it got. The cost of
+ * finding a peak thus grows with the number of changed cells and the log of
+ * the array size, not with the array size.
+ */
+public class DecayingAccumulator {
+
+    /** The stored values are rescaled when the scale leaves the range MIN_SCALE to MAX_SCALE */
+    private static final double MIN_SCALE = 1e-12, MAX_SCALE = 1e12;
+
+    private final int size;
+    private final float[] values; // the value of cell i is values[i]*scale
+    private double scale = 1, inverseScale = 1;
+    private final int[] heap; // cells in heap order, heap[0] is the largest; null without ordered peaks
+    private final int[] heapPosition; // position in heap of each cell
+    private final float[] heapValues; // the values the heap is ordered by, which lag values for changed cells
+    private final int[] changedCells; // cells whose value changed since the heap was last updated
+    private int numChangedCells = 0;
+    private final boolean[] changed;
+    private int[] walk = new int[64]; // heap positions still to be visited by findPeak, itself kept as a heap
+    private int walkSize = 0;
+
+    /**
+     * Constructs a new accumulator with all cells zero.
+     *
+     * @param size the number of cells, e.g. nx*ny for a 2D accumulator
+     * indexed by x*ny+y
+     * @param orderedPeaks true to maintain the heap used by
+     * {@link #findPeak}
+     */
+    public DecayingAccumulator(int size, boolean orderedPeaks) {
+        this.size = size;
+        values = new float[size];
+        if (orderedPeaks) {
+            heap = new int[size];
+            heapPosition = new int[size];
+            heapValues = new float[size];
+            changedCells = new int[size];
+            changed = new boolean[size];
+        } else {
+            heap = null;
+            heapPosition = null;
+            heapValues = null;
+            changedCells = null;
+            changed = null;
+        }
+        clear();
+    }
+
+    /**
+     * @return the number of cells
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sets all cells to zero.
+     */
+    public final void clear() {
+        Arrays.fill(values, 0);
+        scale = 1;
+        inverseScale = 1;
+        if (heap != null) {
+            Arrays.fill(heapValues, 0);
+            for (int i = 0; i < size; i++) { // with equal values, higher indexes are larger
+                heap[i] = size - 1 - i;
+                heapPosition[size - 1 - i] = i;
+            }
+            Arrays.fill(changed, false);
+            numChangedCells = 0;
+        }
+    }
+
+    /**
+     * @param i the cell
+     * @return the value of the cell
+     */
+    public float get(int i) {
+        return (float) (values[i] * scale);
+    }
+
+    /**
+     * Adds a vote to a cell.
+     *
+     * @param i the cell
+     * @param weight the weight of the vote, can be negative
+     */
+    public void add(int i, float weight) {
+        values[i] += (float) (weight * inverseScale);
+        if ((heap != null) && !changed[i]) {
+            changed[i] = true;
+            changedCells[numChangedCells++] = i;
+        }
+    }
+
+    /**
+     * Multiplies a single cell by a factor.
+     *
+     * @param i the cell
+     * @param factor the factor, not negative
+     */
+    public void multiply(int i, float factor) {
+        values[i] *= factor;
+        if ((heap != null) && !changed[i]) {
+            changed[i] = true;
+            changedCells[numChangedCells++] = i;
+        }
+    }
+
+    /**
+     * Multiplies all cells by a factor.
+     *
+     * @param factor the factor. Zero clears the accumulator.
+     * @throws IllegalArgumentException if the factor is negative, infinite or
+     * NaN, which would change the order of the cells
+     */
+    public void decay(float factor) {
+        if (factor == 0) {
+            clear();
+            return;
+        } else if (!(factor > 0) || Float.isInfinite(factor)) {
+            throw new IllegalArgumentException("decay factor " + factor + " is not a positive finite number");
+        }
+        scale *= factor;
+        inverseScale = 1 / scale;
+        if ((scale < MIN_SCALE) || (scale > MAX_SCALE)) {
+            rescale();
+        }
+    }
+
+    /**
+     * Compares the values of two cells.
+     *
+     * @param i a cell
+     * @param j another cell
+     * @return -1, 0 or 1 as the value of i is smaller than, equal to or larger
+     * than the value of j
+     */
+    public int compare(int i, int j) {
+        return values[i] < values[j] ? -1 : (values[i] > values[j] ? 1 : 0);
+    }
+
+    /**
+     * Visits the cells in order of decreasing value, and of decreasing index
+     * among equal values, and returns the first one that passes a test, e.g.
+     * the largest local maximum. Only the cells down to that one and their
+     * children in the heap are visited.
+     *
+     * @param test the test of a cell index
+     * @return the first cell that passes, or -1 if none does
+     * @throws IllegalStateException if constructed without ordered peaks
+     */
+    public int findPeak(IntPredicate test) {
+        if (heap == null) {
+            throw new IllegalStateException("accumulator was constructed without orderedPeaks");
+        }
+        updateHeap();
+        walkSize = 0;
+        if (size > 0) {
+            pushWalk(0);
+        }
+        while (walkSize > 0) {
+            final int pos = popWalk();
+            final int cell = heap[pos];
+            if (test.test(cell)) {
+                return cell;
+            }
+            final int child = (2 * pos) + 1;
+            if (child < size) {
+                pushWalk(child);
+                if ((child + 1) < size) {
+                    pushWalk(child + 1);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Multiplies the stored values by the scale and rebuilds the heap, since rounding can make cells equal */
+    private void rescale() {
+        for (int i = 0; i < size; i++) {
+            values[i] = (float) (values[i] * scale);
+        }
+        scale = 1;
+        inverseScale = 1;
+        if (heap != null) {
+            rebuildHeap();
+        }
+    }
+
+    /** Moves the changed cells to their places in the heap, or rebuilds the heap if many cells changed */
+    private void updateHeap() {
+        if (numChangedCells > (size >> 4)) {
+            rebuildHeap();
+            return;
+        }
+        for (int k = 0; k < numChangedCells; k++) {
+            final int i = changedCells[k];
+            changed[i] = false;
+            final float old = heapValues[i];
+            heapValues[i] = values[i];
+            if (values[i] > old) {
+                siftUp(heapPosition[i]);
+            } else if (values[i] < old) {
+                siftDown(heapPosition[i]);
+            }
+        }
+        numChangedCells = 0;
+    }
+
+    private void rebuildHeap() {
+        System.arraycopy(values, 0, heapValues, 0, size);
+        for (int pos = (size / 2) - 1; pos >= 0; pos--) {
+            siftDown(pos);
+        }
+        for (int k = 0; k < numChangedCells; k++) {
+            changed[changedCells[k]] = false;
+        }
+        numChangedCells = 0;
+    }
+
+    /** @return true if cell i goes above cell j in the heap */
+    private boolean above(int i, int j) {
+        return (heapValues[i] > heapValues[j]) || ((heapValues[i] == heapValues[j]) && (i > j));
+    }
+
+    private void siftUp(int pos) {
+        final int cell = heap[pos];
+        while (pos > 0) {
+            final int parent = (pos - 1) >> 1;
+            if (!above(cell, heap[parent])) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            heapPosition[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = cell;
+        heapPosition[cell] = pos;
+    }
+
+    private void siftDown(int pos) {
+        final int cell = heap[pos];
+        while (true) {
+            int child = (2 * pos) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (((child + 1) < size) && above(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!above(heap[child], cell)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            heapPosition[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = cell;
+        heapPosition[cell] = pos;
+    }
+
+    private void pushWalk(int pos) {
+        if (walkSize == walk.length) {
+            walk = Arrays.copyOf(walk, 2 * walk.length);
+        }
+        int k = walkSize++;
+        while (k > 0) {
+            final int parent = (k - 1) >> 1;
+            if (!above(heap[pos], heap[walk[parent]])) {
+                break;
+            }
+            walk[k] = walk[parent];
+            k = parent;
+        }
+        walk[k] = pos;
+    }
+
+    private int popWalk() {
+        final int top = walk[0];
+        final int last = walk[--walkSize];
+        int k = 0;
+        while (true) {
+            int child = (2 * k) + 1;
+            if (child >= walkSize) {
+                break;
+            }
+            if (((child + 1) < walkSize) && above(heap[walk[child + 1]], heap[walk[child]])) {
+                child++;
+            }
+            if (!above(heap[walk[child]], heap[last])) {
+                break;
+            }
+            walk[k] = walk[child];
+            k = child;
+        }
+        if (walkSize > 0) {
+            walk[k] = last;
+        }
+        return top;
+    }
+}
@@ -13,6 +13,7 @@ import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.Observable;
+import java.util.function.IntPredicate;
 
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLAutoDrawable;
@@ -31,6 +32,11 @@ import ch.unizh.ini.jaer.projects.labyrinthkalman.WeightedEvent;
 
 /**
  * A simple circle tracker based on a hough transform that correctly tracks the maximum even when it's location changes out from under us.
+ * <p>
+ * With lazyAccumulatorEnabled, the Hough space is a {@link DecayingAccumulator} that decays all points at once and keeps them
+ * ordered by value, so that for a single maximum (nrMax=1) the largest local maximum is found by visiting the largest points
+ * rather than every point of the camera. The maximum found is the same, except that the choice between points whose values
+ * differ only by float rounding can differ.
  * @author Jan Funke
  */
 @Description("Circle tracker based on a hough transform")
@@ -40,6 +46,15 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 	int cameraX;
 	int cameraY;
 	float[][] accumulatorArray;
+	// used instead of accumulatorArray when lazyAccumulatorEnabled, point x,y is cell x*sizeY+y
+	DecayingAccumulator accumulator;
+	int accumulatorSizeY;
+	private final IntPredicate localMaximumTest = new IntPredicate() {
+		@Override
+		public boolean test(int cell) {
+			return islocmax(cell / accumulatorSizeY, cell % accumulatorSizeY);
+		}
+	};
 
 	//for decay in Hough space
 	float timeStamp = 0;
@@ -75,6 +90,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 	private boolean decayMode      = getPrefs().getBoolean("HoughCricleTracker.decayMode", true);
 	private boolean drawHough      = getPrefs().getBoolean("HoughCircleTracker.drawHough", false);
 	private boolean locDepression  = getPrefs().getBoolean("HoughCirclreTracker.locDepression", true);
+	private boolean lazyAccumulatorEnabled = getPrefs().getBoolean("HoughCircleTracker.lazyAccumulatorEnabled", false);
 
 
 	public HoughCircleTracker(AEChip chip) {
@@ -87,6 +103,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 		setPropertyTooltip("nrMax","");
 		setPropertyTooltip("decayMode","");
 		setPropertyTooltip("drawHough","overlays the Hough space real values on the sensor output");
+		setPropertyTooltip("lazyAccumulatorEnabled","decays the Hough space lazily and keeps it ordered by value, rather than decaying and scanning all points for each packet; faster when each packet changes only a small part of the Hough space, and only used to find the maximum for nrMax=1");
 	}
 
 	public Object getFilterState() {
@@ -122,7 +139,14 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 
 		System.out.println("HoughCircleTracker initialising...");
 
-		accumulatorArray = new float[chip.getSizeX()][chip.getSizeY()];
+		if (lazyAccumulatorEnabled) {
+			accumulatorArray = null;
+			accumulator = new DecayingAccumulator(chip.getSizeX() * chip.getSizeY(), true);
+			accumulatorSizeY = chip.getSizeY();
+		} else {
+			accumulatorArray = new float[chip.getSizeX()][chip.getSizeY()];
+			accumulator = null;
+		}
 
 		if((chip.getSizeX()==0) || (chip.getSizeY()==0)){
 			return;
@@ -131,9 +155,11 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 		cameraX = chip.getSizeX();
 		cameraY = chip.getSizeY();
 
-		for(int i=0;i<chip.getSizeX();i++){
-			for(int j=0; j < chip.getSizeY();j++){
-				accumulatorArray[i][j]=0;
+		if (accumulatorArray != null) {
+			for(int i=0;i<chip.getSizeX();i++){
+				for(int j=0; j < chip.getSizeY();j++){
+					accumulatorArray[i][j]=0;
+				}
 			}
 		}
 
@@ -191,6 +217,16 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 		this.decayMode = decayMode;
 	}
 
+	public boolean isLazyAccumulatorEnabled(){
+		return lazyAccumulatorEnabled;
+	}
+
+	synchronized public void setLazyAccumulatorEnabled(boolean lazyAccumulatorEnabled){
+		getPrefs().putBoolean("HoughCircleTracker.lazyAccumulatorEnabled",lazyAccumulatorEnabled);
+		this.lazyAccumulatorEnabled = lazyAccumulatorEnabled;
+		resetFilter();
+	}
+
 	public boolean getDrawHough(){
 		return drawHough;
 	}
@@ -292,7 +328,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 		cameraY=chip.getSizeY();
 		cameraX=chip.getSizeX();
 
-		if((accumulatorArray == null) || (maxValue == null) || (maxCoordinate == null)) {
+		if(((accumulatorArray == null) && (accumulator == null)) || (maxValue == null) || (maxCoordinate == null)) {
 			return;
 		}
 
@@ -304,7 +340,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 			for (int x = 0; x < cameraX; x++) {
 				for (int y = 0; y < cameraY; y++) {
 
-					float red   = accumulatorArray[x][y]/maxValue[0];
+					float red   = houghValue(x,y)/maxValue[0];
 					float green = 1.0f - red;
 
 					gl.glColor4f(red,green,0.0f,.3f);
@@ -511,6 +547,13 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 			|| ((y-locMaxRad) < 0) || ((y+locMaxRad) > (chip.getSizeY()-1))) {
 			return false;
 		}
+		if (accumulator != null) {
+			final int c = (x*accumulatorSizeY)+y;
+			return (accumulator.compare(c, c+1) >= 0) && (accumulator.compare(c, c-1) >= 0)
+				&& (accumulator.compare(c, c+accumulatorSizeY) >= 0) && (accumulator.compare(c, c-accumulatorSizeY) >= 0)
+				&& (accumulator.compare(c, (c+accumulatorSizeY)-1) >= 0) && (accumulator.compare(c, (c-accumulatorSizeY)+1) >= 0)
+				&& (accumulator.compare(c, c+accumulatorSizeY+1) >= 0) && (accumulator.compare(c, c-accumulatorSizeY-1) >= 0);
+		}
 		if(accumulatorArray[x][y]<accumulatorArray[x][y+1]) {
 			return false;
 		}
@@ -549,14 +592,22 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 		}
 
 		// increase the value of the hough point
-		accumulatorArray[x][y] = accumulatorArray[x][y] + weight;
+		final float value;
+		if (accumulator != null) {
+			final int c = (x*accumulatorSizeY)+y;
+			accumulator.add(c, weight);
+			value = accumulator.get(c);
+		} else {
+			accumulatorArray[x][y] = accumulatorArray[x][y] + weight;
+			value = accumulatorArray[x][y];
+		}
 
 		// check if this is a new maximum
 		for(int i=0; i<nrMax; i++)
 		{
-			if (accumulatorArray[x][y] >= maxValue[i]) {
+			if (value >= maxValue[i]) {
 
-				maxValue[i] = accumulatorArray[x][y];
+				maxValue[i] = value;
 
 				if ((maxValue[i] > threshold) && (maxCoordinate[i] != null)){
 					maxCoordinate[i].x = x;
@@ -581,10 +632,17 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 			float decay_factor = 1.0f/(0.0001f * decay * delta_t);
 
 			//for an exponentially decaying hough-space-weight.
-			for (int x = 0; x < cameraX; x++) {
-				for (int y = 0; y < cameraY; y++) {
-					accumulatorArray[x][y] *= decay_factor;
+			if (accumulator != null) {
+				// a timestamp reset or repeated timestamp gives a negative or infinite factor, which would scramble the Hough space
+				if ((decay_factor > 0) && !Float.isInfinite(decay_factor)) {
+					accumulator.decay(decay_factor);
+				}
+			} else {
+				for (int x = 0; x < cameraX; x++) {
+					for (int y = 0; y < cameraY; y++) {
+						accumulatorArray[x][y] *= decay_factor;
 
+					}
 				}
 			}
 		}
@@ -625,25 +683,37 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 		{
 			maxValue[i] = 0;
 		}
-		for (int x = 0; x < cameraX; x++) {
-			for (int y = 0; y < cameraY; y++) {
+		if ((accumulator != null) && (nrMax == 1)) {
+			// same as the scan below: the largest local maximum, and the last one in scan order among equal ones
+			final int c = accumulator.findPeak(localMaximumTest);
+			if ((c >= 0) && (accumulator.get(c) >= maxValue[0])) {
+				maxValue[0] = accumulator.get(c);
+				if (maxValue[0] > threshold){
+					maxCoordinate[0].x = c / accumulatorSizeY;
+					maxCoordinate[0].y = c % accumulatorSizeY;
+				}
+			}
+		} else {
+			for (int x = 0; x < cameraX; x++) {
+				for (int y = 0; y < cameraY; y++) {
 
-				for(int i=0; i<nrMax; i++)
-				{
-					if ((accumulatorArray[x][y] >= maxValue[i])
-						&& islocmax(x,y)) {
+					for(int i=0; i<nrMax; i++)
+					{
+						if ((houghValue(x,y) >= maxValue[i])
+							&& islocmax(x,y)) {
 
-						maxValue[i] = accumulatorArray[x][y];
+							maxValue[i] = houghValue(x,y);
 
-						if (maxValue[i] > threshold){
-							maxCoordinate[i].x = x;
-							maxCoordinate[i].y = y;
+							if (maxValue[i] > threshold){
+								maxCoordinate[i].x = x;
+								maxCoordinate[i].y = y;
+							}
+							i += nrMax;
 						}
-						i += nrMax;
 					}
 				}
-			}
 
+			}
 		}
 
 		OutputEventIterator itr = out.outputIterator();
@@ -657,15 +727,15 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 				if(((x-1) > 0) && ((x+1) < (chip.getSizeX()-1))
 					&& ((y-1) > 0) && ((y+1) < (chip.getSizeY()-1)))
 				{
-					accumulatorArray[x][y] *= 0.01f;
-					accumulatorArray[x][y+1] *= 0.1f;
-					accumulatorArray[x][y-1] *= 0.1f;
-					accumulatorArray[x+1][y] *= 0.1f;
-					accumulatorArray[x-1][y] *= 0.1f;
-					accumulatorArray[x+1][y+1] *= 0.1f;
-					accumulatorArray[x-1][y+1] *= 0.1f;
-					accumulatorArray[x-1][y-1] *= 0.1f;
-					accumulatorArray[x-1][y-1] *= 0.1f;
+					multiplyHoughPoint(x,y,0.01f);
+					multiplyHoughPoint(x,y+1,0.1f);
+					multiplyHoughPoint(x,y-1,0.1f);
+					multiplyHoughPoint(x+1,y,0.1f);
+					multiplyHoughPoint(x-1,y,0.1f);
+					multiplyHoughPoint(x+1,y+1,0.1f);
+					multiplyHoughPoint(x-1,y+1,0.1f);
+					multiplyHoughPoint(x-1,y-1,0.1f);
+					multiplyHoughPoint(x-1,y-1,0.1f);
 				}
 
 			}
@@ -680,6 +750,18 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater
 		return out;
 	}
 
+	float houghValue(int x, int y) {
+		return accumulator != null ? accumulator.get((x*accumulatorSizeY)+y) : accumulatorArray[x][y];
+	}
+
+	void multiplyHoughPoint(int x, int y, float factor) {
+		if (accumulator != null) {
+			accumulator.multiply((x*accumulatorSizeY)+y, factor);
+		} else {
+			accumulatorArray[x][y] *= factor;
+		}
+	}
+
 	synchronized public boolean isLogDataEnabled() {
 		return logDataEnabled;
 	}
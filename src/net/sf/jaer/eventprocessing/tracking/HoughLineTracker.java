@@ -49,6 +49,12 @@ import net.sf.jaer.util.filter.LowpassFilter;
  * Each point is splatted in its p, theta form into an accumulator array; the
  * array maximum value is computed for each packet and the resulting p,theta
  * values are lowpass filtered to form the output.
+ * <p>
+ * With lazyAccumulatorEnabled, the accumulator is a {@link DecayingAccumulator}
+ * that decays all cells at once and the maximum is tracked as votes are added,
+ * so the cost per packet is proportional to the number of votes rather than to
+ * the size of the accumulator. The line found is the same, except that the
+ * choice between cells whose values differ only by float rounding can differ.
  *
  * @author tobi
  * @see LineDetector
@@ -73,6 +79,9 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
     private boolean showHoughWindow = false;
     private float rhoLimit;
     private float[][] accumArray;
+    private boolean lazyAccumulatorEnabled = getPrefs().getBoolean("LineTracker.lazyAccumulatorEnabled", false);
+    private DecayingAccumulator accumulator; // used instead of accumArray when lazyAccumulatorEnabled
+    private int accumulatorMaxCell = -1; // cell theta*nRho+rho of the maximum of accumulator, -1 if there are no votes
     private int nTheta, nRho;
     private float tauMs = getPrefs().getFloat("LineTracker.tauMs", 10);
 
@@ -106,6 +115,7 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
         setPropertyTooltip("rhoResPixels", "quantization in pixels of hough transform map");
         setPropertyTooltip("showHoughWindow", "shows the hough transform integrator array");
         setPropertyTooltip("tauMs", "time constant in ms of line lowpass");
+        setPropertyTooltip("lazyAccumulatorEnabled", "decays the hough accumulator lazily and tracks its maximum as votes are added, rather than decaying and scanning all cells for each packet; faster for fine thetaResDeg and rhoResPixels when packets have fewer votes than the accumulator has cells");
     }
 
     /**
@@ -149,7 +159,14 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
         // rho can span this +/- limit after hough transform of event
         // coordinate which shifted so that middle of chip is zero
         nRho = (int) ((2 * rhoLimit) / rhoResPixels);
-        accumArray = new float[nTheta][nRho];
+        if (lazyAccumulatorEnabled) {
+            accumArray = null;
+            accumulator = new DecayingAccumulator(nTheta * nRho, false);
+        } else {
+            accumArray = new float[nTheta][nRho];
+            accumulator = null;
+        }
+        accumulatorMaxCell = -1;
         //        accumUpdateTime=new int[nTheta][nRho];
         accumMax = Float.NEGATIVE_INFINITY;
         // precompute sin/cos for accumulator array updates for quantized angle values
@@ -232,6 +249,20 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
      * @param rhoNumber the rho (radius) number. rho is spaced by rhoResPixels.
      */
     private void updateHoughAccumulator(int thetaNumber, int rhoNumber) {
+        if (accumulator != null) {
+            // the maximum only changes to a cell that gets a vote; on ties the first cell in the order of decayAccumArray wins
+            final int cell = (thetaNumber * nRho) + rhoNumber;
+            accumulator.add(cell, 1);
+            if (accumulatorMaxCell < 0) {
+                accumulatorMaxCell = cell;
+            } else {
+                final int c = accumulator.compare(cell, accumulatorMaxCell);
+                if ((c > 0) || ((c == 0) && (cell < accumulatorMaxCell))) {
+                    accumulatorMaxCell = cell;
+                }
+            }
+            return;
+        }
         float f = accumArray[thetaNumber][rhoNumber];
         f++;
         accumArray[thetaNumber][rhoNumber] = f; // update the accumulator
@@ -299,7 +330,7 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
 
             @Override
             synchronized public void display(GLAutoDrawable drawable) {
-                if (accumArray == null) {
+                if ((accumArray == null) && (accumulator == null)) {
                     return;
                 }
                 GL2 gl = drawable.getGL().getGL2();
@@ -309,7 +340,7 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
                 gl.glClear(GL.GL_COLOR_BUFFER_BIT);
                 for (int i = 0; i < nTheta; i++) {
                     for (int j = 0; j < nRho; j++) {
-                        float f = accumArray[i][j] / accumMax;
+                        float f = (accumulator != null ? accumulator.get((i * nRho) + j) : accumArray[i][j]) / accumMax;
                         gl.glColor3f(f, f, f);
                         gl.glRectf(i, j, i + 1, j + 1);
                     }
@@ -397,6 +428,18 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
     // also determines maximum accumulator value and sets line estimate according to this
 
     private void decayAccumArray() {
+        if (accumulator != null) {
+            accumulator.decay(houghDecayFactor);
+            if (houghDecayFactor == 0) {
+                accumulatorMaxCell = -1; // cleared
+            }
+            accumMax = accumulatorMaxCell >= 0 ? accumulator.get(accumulatorMaxCell) : 0;
+            if (accumMax > 0) {
+                thetaMaxIndex = accumulatorMaxCell / nRho;
+                rhoMaxIndex = accumulatorMaxCell % nRho;
+            }
+            return;
+        }
         accumMax = 0;
         for (int theta = 0; theta < nTheta; theta++) {
             float[] f = accumArray[theta];
@@ -413,6 +456,16 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
         }
     }
 
+    public boolean isLazyAccumulatorEnabled() {
+        return lazyAccumulatorEnabled;
+    }
+
+    synchronized public void setLazyAccumulatorEnabled(boolean lazyAccumulatorEnabled) {
+        this.lazyAccumulatorEnabled = lazyAccumulatorEnabled;
+        getPrefs().putBoolean("LineTracker.lazyAccumulatorEnabled", lazyAccumulatorEnabled);
+        resetFilter();
+    }
+
     public boolean isShowHoughWindow() {
         return showHoughWindow;
     }
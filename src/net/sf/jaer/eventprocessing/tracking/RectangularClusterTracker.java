@@ -162,6 +162,7 @@ public class RectangularClusterTracker extends EventFilter2D
     private float smoothPosition = getFloat("smoothPosition", .001f);
     private float smoothIntegral = getFloat("smoothIntegral", .001f);
     private float surroundInhibitionCost = getFloat("surroundInhibitionCost", 1);
+    private boolean spatialIndexEnabled = getBoolean("spatialIndexEnabled", false);
 
     /**
      * The list of clusters (visible and invisible).
@@ -216,6 +217,8 @@ public class RectangularClusterTracker extends EventFilter2D
 
     protected FastClusterFinder fastClusterFinder = new FastClusterFinder();
 
+    protected ClusterGridIndex clusterGridIndex = new ClusterGridIndex();
+
     /**
      * Creates a new instance of RectangularClusterTracker.
      *
@@ -310,6 +313,8 @@ public class RectangularClusterTracker extends EventFilter2D
         setPropertyTooltip(global, "filterEventsEnabled",
                 "<html>If disabled, input packet is unaltered. <p>If enabled, output packet contains RectangularClusterTrackerEvent, <br>events refer to containing cluster, and non-owned events are discarded.");
         setPropertyTooltip(global, "maxNumClusters", "Sets the maximum potential number of clusters");
+        setPropertyTooltip(global, "spatialIndexEnabled",
+                "<html>Looks up the clusters that can take an event in a grid of cells rather than testing all clusters.<br>Gives the same result, but the cost per event stays nearly constant with many clusters.");
         setPropertyTooltip(pi, "smoothMove", "<html>Use the PI controller to update particle position and velocity"
                 + "<br>float errX = (event.x - location.x);\n"
                 + "				<br>float errY = (event.y - location.y);\n"
@@ -838,6 +843,7 @@ public class RectangularClusterTracker extends EventFilter2D
         initDefaults();
         defaultClusterRadius = Math.max(chip.getSizeX(), chip.getSizeY()) * getClusterSize();
         fastClusterFinder.init();
+        clusterGridIndex.init();
     }
 
     private void initDefaults() {
@@ -874,6 +880,7 @@ public class RectangularClusterTracker extends EventFilter2D
         for (Cluster c : clusters) {
             c.getLastPacketLocation().setLocation(c.location);
         }
+        clusterGridIndex.beginPacket(in);
 
         // for each event, see which cluster it is closest to and appendCopy it to this cluster.
         // if its too far from any cluster, make a new cluster if we have not jet
@@ -894,6 +901,7 @@ public class RectangularClusterTracker extends EventFilter2D
                 } else {
                     closest.addEvent(ev);
                 }
+                clusterGridIndex.update(closest); // it may have moved or grown
             } else if (clusters.size() < maxNumClusters) { // start a new cluster
                 Cluster newCluster;
                 if (filterEventsEnabled) {
@@ -902,9 +910,13 @@ public class RectangularClusterTracker extends EventFilter2D
                     newCluster = createCluster(ev);
                 }
                 clusters.add(newCluster);
+                clusterGridIndex.add(newCluster);
             }
 
             updatedClusterList = maybeCallUpdateObservers(in, (lastTimestamp = ev.timestamp)); // callback to update()
+            if (updatedClusterList) {
+                clusterGridIndex.revalidate(); // clusters may have been pruned, merged or moved
+            }
 
             if (logDataEnabled) {
                 logData(ev, (EventPacket<BasicEvent>) in);
@@ -926,6 +938,7 @@ public class RectangularClusterTracker extends EventFilter2D
         // oe.setY((short) c.getLocation().y);
         // oe.setCluster(c);
         // }
+        clusterGridIndex.endPacket();
         return out;
     }
 
@@ -971,6 +984,9 @@ public class RectangularClusterTracker extends EventFilter2D
      * <p>
      * The cluster radius is actually defined for x and y directions since the
      * cluster may not have a square aspect ratio.
+     * <p>
+     * During {@link #track} only the clusters that the
+     * {@link ClusterGridIndex} finds near the event are tested.
      *
      * @param event the event
      * @return closest cluster object (a cluster with a distance - that distance
@@ -980,7 +996,7 @@ public class RectangularClusterTracker extends EventFilter2D
         float minDistance = Float.MAX_VALUE;
         Cluster closest = null;
         float currentDistance = 0;
-        for (Cluster c : clusters) {
+        for (Cluster c : clusterGridIndex.getCandidates(event)) {
             float rX = c.radiusX;
             float rY = c.radiusY; // this is surround region for purposes of dynamicSize scaling of cluster size or
             // aspect ratio
@@ -1025,7 +1041,7 @@ public class RectangularClusterTracker extends EventFilter2D
         float minDistance = Float.MAX_VALUE;
         Cluster closest = null;
         float currentDistance = 0;
-        for (Cluster c : clusters) {
+        for (Cluster c : clusterGridIndex.getCandidates(event)) {
             float rX = c.radiusX;
             float rY = c.radiusY; // this is surround region for purposes of dynamicSize scaling of cluster size or
             // aspect ratio
@@ -2878,6 +2894,7 @@ public class RectangularClusterTracker extends EventFilter2D
         averageVelocityPPT.x = 0;
         averageVelocityPPT.y = 0;
         fastClusterFinder.reset();
+        clusterGridIndex.reset();
         initialAngle = 0;
     }
 
@@ -3047,6 +3064,266 @@ public class RectangularClusterTracker extends EventFilter2D
         }
     }
 
+    /**
+     * A uniform grid of the clusters that can take an event, which replaces
+     * the scan over all clusters in {@link #getNearestCluster} and
+     * {@link #getFirstContainingCluster} by a scan over the few clusters
+     * registered in the grid cell of the event.
+     * <p>
+     * Each cluster is registered in all cells overlapped by a conservative box
+     * around its capture region: the box swept by the predicted cluster center
+     * over the time range of the packet, expanded by the largest distance at
+     * which {@link Cluster#distanceToX} and {@link Cluster#distanceToY} can
+     * still put an event within the cluster radius. The clusters of a cell
+     * are kept in the order of the cluster list, so the first containing
+     * cluster, and the nearest cluster among equally near ones, are the same
+     * as with the full scan.
+     * <p>
+     * The grid is only used within {@link #track}, which updates it for each
+     * cluster that takes an event, for each new cluster, and after each update
+     * of the cluster list. Outside of track, and for events outside the time
+     * range of the packet, all clusters are scanned.
+     */
+    protected class ClusterGridIndex {
+
+        /**
+         * The cell size in bits, i.e. cells are 16x16 pixels
+         */
+        final int CELL_SHIFT = 4;
+        /**
+         * Extra pixels added to the capture radius to cover rounding
+         */
+        final float MARGIN_PIXELS = 2;
+        private ArrayList<Cluster>[] cells = null;
+        private HashMap<Cluster, Entry> map = new HashMap<>();
+        private int nx = 0, ny = 0;
+        private boolean valid = false;
+        private int tMin, tMax;
+        private int nextRank = 0;
+
+        /**
+         * The position of a cluster in the cluster list and the range of
+         * cells it is registered in.
+         */
+        private class Entry {
+
+            int rank;
+            int x0, y0, x1 = -1, y1 = -1;
+
+            Entry(int rank) {
+                this.rank = rank;
+            }
+        }
+
+        void init() {
+            nx = ((chip.getSizeX() - 1) >> CELL_SHIFT) + 1;
+            ny = ((chip.getSizeY() - 1) >> CELL_SHIFT) + 1;
+            if (nx < 1 || ny < 1) {
+                nx = 1;
+                ny = 1;
+            }
+            @SuppressWarnings("unchecked")
+            final ArrayList<Cluster>[] newCells = (ArrayList<Cluster>[]) new ArrayList<?>[nx * ny];
+            cells = newCells;
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = new ArrayList<>();
+            }
+            map.clear();
+            valid = false;
+        }
+
+        /**
+         * Clears the index
+         */
+        protected void reset() {
+            if (cells == null) {
+                init();
+            } else {
+                for (ArrayList<Cluster> l : cells) {
+                    l.clear();
+                }
+                map.clear();
+                valid = false;
+            }
+        }
+
+        /**
+         * Validates the index for a packet and registers all clusters for the
+         * time range of the packet. Does nothing but invalidate the index if
+         * spatialIndexEnabled is false.
+         *
+         * @param in the packet about to be tracked
+         */
+        protected void beginPacket(EventPacket<? extends BasicEvent> in) {
+            valid = false;
+            if (!spatialIndexEnabled || in.isEmpty()) {
+                return;
+            }
+            tMin = in.getFirstTimestamp();
+            tMax = in.getLastTimestamp();
+            if ((tMax - tMin) < 0) {
+                return; // time went backwards within packet, scan all clusters
+            }
+            if (cells == null) {
+                init();
+            }
+            valid = true;
+            revalidate();
+        }
+
+        /**
+         * Invalidates the index at the end of a packet, since clusters may be
+         * changed outside of track.
+         */
+        protected void endPacket() {
+            valid = false;
+        }
+
+        /**
+         * Returns the clusters that can take an event, in the order of the
+         * cluster list.
+         *
+         * @param e the event
+         * @return the clusters of the cell of the event, or all clusters if the
+         * index cannot be used for the event
+         */
+        protected java.util.List<Cluster> getCandidates(BasicEvent e) {
+            if (!valid || ((e.timestamp - tMin) < 0) || ((tMax - e.timestamp) < 0)) {
+                return clusters;
+            }
+            final int x = e.x >> CELL_SHIFT, y = e.y >> CELL_SHIFT;
+            if ((x < 0) || (x >= nx) || (y < 0) || (y >= ny)) {
+                return clusters;
+            }
+            return cells[x + (nx * y)];
+        }
+
+        /**
+         * Registers all clusters again. If the cluster list has changed other
+         * than by appending clusters the cells are rebuilt so that they keep
+         * the order of the list.
+         */
+        protected void revalidate() {
+            if (!valid) {
+                return;
+            }
+            boolean sameOrder = map.size() == clusters.size();
+            int rank = 0;
+            if (sameOrder) {
+                for (Cluster c : clusters) {
+                    Entry en = map.get(c);
+                    if ((en == null) || (en.rank != rank++)) {
+                        sameOrder = false;
+                        break;
+                    }
+                }
+            }
+            if (sameOrder) {
+                for (Cluster c : clusters) {
+                    update(c);
+                }
+                return;
+            }
+            for (ArrayList<Cluster> l : cells) {
+                l.clear();
+            }
+            map.clear();
+            rank = 0;
+            for (Cluster c : clusters) {
+                Entry en = new Entry(rank++);
+                map.put(c, en);
+                register(c, en);
+            }
+            nextRank = rank;
+        }
+
+        /**
+         * Registers a new cluster that was appended to the cluster list.
+         *
+         * @param c the cluster
+         */
+        protected void add(Cluster c) {
+            if (!valid) {
+                return;
+            }
+            Entry en = new Entry(nextRank++);
+            map.put(c, en);
+            register(c, en);
+        }
+
+        /**
+         * Registers a cluster again after it has moved or changed size.
+         *
+         * @param c the cluster
+         */
+        protected void update(Cluster c) {
+            if (!valid) {
+                return;
+            }
+            Entry en = map.get(c);
+            if (en == null) {
+                valid = false; // unknown cluster, scan all clusters for the rest of the packet
+                return;
+            }
+            register(c, en);
+        }
+
+        private void register(Cluster c, Entry en) {
+            float rX = c.radiusX, rY = c.radiusY;
+            if (dynamicSizeEnabled) {
+                rX *= surround;
+                rY *= surround;
+            }
+            // |event-center| is at most sqrt(rX^2+rY^2) within the rotated rectangle
+            // and at most sqrt(2)*radius within the elliptical radius
+            final float r = Math.max((float) Math.sqrt((rX * rX) + (rY * rY)), 1.4143f * c.getRadius()) + MARGIN_PIXELS;
+            // predicted center is location-velocityPPT*(t-lastUpdateTime), see distanceToX
+            final float dt0 = tMin - c.lastUpdateTime, dt1 = tMax - c.lastUpdateTime;
+            final float xa = c.location.x - (c.velocityPPT.x * dt0), xb = c.location.x - (c.velocityPPT.x * dt1);
+            final float ya = c.location.y - (c.velocityPPT.y * dt0), yb = c.location.y - (c.velocityPPT.y * dt1);
+            final float xmin = Math.min(xa, xb) - r, xmax = Math.max(xa, xb) + r;
+            final float ymin = Math.min(ya, yb) - r, ymax = Math.max(ya, yb) + r;
+            int x0, y0, x1, y1;
+            if (Float.isNaN(xmin + xmax + ymin + ymax)) {
+                x0 = 0; // be safe and register everywhere
+                y0 = 0;
+                x1 = nx - 1;
+                y1 = ny - 1;
+            } else {
+                x0 = clamp((int) Math.floor(xmin) >> CELL_SHIFT, nx);
+                x1 = clamp((int) Math.floor(xmax) >> CELL_SHIFT, nx);
+                y0 = clamp((int) Math.floor(ymin) >> CELL_SHIFT, ny);
+                y1 = clamp((int) Math.floor(ymax) >> CELL_SHIFT, ny);
+            }
+            if ((x0 == en.x0) && (y0 == en.y0) && (x1 == en.x1) && (y1 == en.y1)) {
+                return;
+            }
+            for (int y = en.y0; y <= en.y1; y++) {
+                for (int x = en.x0; x <= en.x1; x++) {
+                    cells[x + (nx * y)].remove(c);
+                }
+            }
+            en.x0 = x0;
+            en.y0 = y0;
+            en.x1 = x1;
+            en.y1 = y1;
+            for (int y = y0; y <= y1; y++) {
+                for (int x = x0; x <= x1; x++) {
+                    final ArrayList<Cluster> l = cells[x + (nx * y)];
+                    int i = l.size();
+                    while ((i > 0) && (map.get(l.get(i - 1)).rank > en.rank)) {
+                        i--;
+                    }
+                    l.add(i, c);
+                }
+            }
+        }
+
+        private int clamp(int i, int n) {
+            return i < 0 ? 0 : (i >= n ? n - 1 : i);
+        }
+    }
+
     public void doSelectVanishingPoint() {
         if (glCanvas == null) {
             return;
@@ -3865,6 +4142,28 @@ public class RectangularClusterTracker extends EventFilter2D
     }
     // </editor-fold>
 
+    // <editor-fold defaultstate="collapsed" desc="getter/setter for --SpatialIndexEnabled--">
+    /**
+     * @return the spatialIndexEnabled
+     */
+    public boolean isSpatialIndexEnabled() {
+        return spatialIndexEnabled;
+    }
+
+    /**
+     * Sets whether clusters are looked up in a {@link ClusterGridIndex}
+     * rather than by testing all clusters. The result is the same; the index
+     * only makes the cost per event nearly independent of the number of
+     * clusters.
+     *
+     * @param spatialIndexEnabled the spatialIndexEnabled to set
+     */
+    public void setSpatialIndexEnabled(boolean spatialIndexEnabled) {
+        this.spatialIndexEnabled = spatialIndexEnabled;
+        putBoolean("spatialIndexEnabled", spatialIndexEnabled);
+    }
+    // </editor-fold>
+
     // <editor-fold defaultstate="collapsed" desc="getter/setter for --AngleFollowsVelocity--">
     /**
      * @return the angleFollowsVelocity
@@ -61,6 +61,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.BackingStoreException;
@@ -143,6 +144,7 @@ import net.sf.jaer.util.EngineeringFormat;
 import net.sf.jaer.util.ExceptionListener;
 import net.sf.jaer.util.HexString;
 import net.sf.jaer.util.MenuScroller;
+import net.sf.jaer.util.RecyclingHandoffQueue;
 import net.sf.jaer.util.RecentFiles;
 import net.sf.jaer.util.RemoteControl;
 import net.sf.jaer.util.RemoteControlCommand;
@@ -296,6 +298,11 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     private boolean enableFiltersOnStartup = prefs.getBoolean("AEViewer.enableFiltersOnStartup", false);
     private long loggingTimeLimit = 0, loggingStartTime = System.currentTimeMillis();
     private boolean logFilteredEventsEnabled = prefs.getBoolean("AEViewer.logFilteredEventsEnabled", false);
+    // async logging writes the logged events to disk on a writer thread, see AEFileOutputStream
+    private boolean asyncLoggingEnabled = prefs.getBoolean("AEViewer.asyncLoggingEnabled", false);
+    private boolean asyncLoggingDropWhenDiskBusy = prefs.getBoolean("AEViewer.asyncLoggingDropWhenDiskBusy", false);
+    // pipelined mode runs acquisition and rendering on their own threads, see ViewLoop
+    private volatile boolean pipelinedProcessingEnabled = prefs.getBoolean("AEViewer.pipelinedProcessingEnabled", false);
     private DynamicFontSizeJLabel statisticsLabel;
     private boolean filterFrameBuilt = false; // flag to signal that the frame should be rebuilt when initially shown or when chip is changed
     private AEChip chip;
@@ -541,7 +548,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         autoscaleContrastEnabledCheckBoxMenuItem.setSelected(getRenderer().isAutoscaleEnabled());
         pauseRenderingCheckBoxMenuItem.setSelected(false);// not isPaused because aePlayer doesn't exist yet
         viewRenderBlankFramesCheckBoxMenuItem.setSelected(isRenderBlankFramesEnabled());
+        pipelinedProcessingCheckBoxMenuItem.setSelected(isPipelinedProcessingEnabled());
         logFilteredEventsCheckBoxMenuItem.setSelected(logFilteredEventsEnabled);
+        asyncLoggingCheckBoxMenuItem.setSelected(asyncLoggingEnabled);
+        asyncLoggingDropWhenDiskBusyCheckBoxMenuItem.setSelected(asyncLoggingDropWhenDiskBusy);
         enableFiltersOnStartupCheckBoxMenuItem.setSelected(enableFiltersOnStartup);
         setJogNCount.setText("Set forward/reverse jog packet count N... (currently " + getAePlayer().getJogPacketCount() + ")");
 
@@ -1433,6 +1443,24 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
      * This thread is the main animation loop that acquires events and renders
      * them to the canvas for active rendering. The other components render
      * themselves on the usual Swing rendering thread.
+     * <p>
+     * If pipelined processing is enabled (see
+     * {@link #setPipelinedProcessingEnabled(boolean)}) the loop is split into
+     * three stages that run on their own threads and are connected by bounded
+     * hand-off queues of recycled packets:
+     * <ol>
+     * <li>The AcquisitionThread grabs LIVE data from the hardware interface
+     * and copies it into recycled AEPacketRaw buffers, so that a slow packet
+     * never keeps the driver buffers from being drained.
+     * <li>The ViewLoop itself takes all pending raw packets, extracts, filters,
+     * logs and writes them to the output streams.
+     * <li>The RenderThread renders a copy of the latest filtered packet and
+     * paints the canvas. If the renderer must see every packet (e.g. to build
+     * APS frames, or when accumulating), no packet is dropped and the ViewLoop
+     * waits for the renderer instead; acquisition still never waits.
+     * </ol>
+     * The per-stage queue depths and latencies are available from
+     * {@link #getPipelineStatistics()}.
      */
     class ViewLoop extends Thread {
 
@@ -1446,6 +1474,27 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         private AEPacketRaw emptyRawPacket;
         private EventPacket emptyCookedPacket;
 
+        // pipelined processing
+        private static final int ACQUISITION_QUEUE_CAPACITY = 32, RENDER_QUEUE_CAPACITY = 2;
+        private static final long ACQUISITION_INTERVAL_MS = 1, IDLE_INTERVAL_MS = 20, RENDER_TIMEOUT_MS = 1000;
+        private static final float STAGE_TIME_MIXING_FACTOR = 0.05f;
+        /**
+         * Hands raw packets from the AcquisitionThread to this ViewLoop
+         */
+        final RecyclingHandoffQueue<AEPacketRaw> acquisitionQueue = new RecyclingHandoffQueue<>("acquisition", ACQUISITION_QUEUE_CAPACITY, () -> new AEPacketRaw());
+        /**
+         * Hands copies of filtered packets from this ViewLoop to the
+         * RenderThread
+         */
+        final RecyclingHandoffQueue<EventPacket> renderQueue = new RecyclingHandoffQueue<>("render", RENDER_QUEUE_CAPACITY, () -> new EventPacket(chip.getEventClass()));
+        private AcquisitionThread acquisitionThread = null;
+        private RenderThread renderThread = null;
+        private final AEPacketRaw pipelinedRawPacket = new AEPacketRaw();
+        private final Object inputLock = new Object(), renderLock = new Object();
+        // running averages of the time in us spent by each stage per packet
+        private volatile float acquisitionTimeUs = 0, extractionTimeUs = 0, filteringTimeUs = 0, renderingTimeUs = 0;
+        private volatile long acquisitionBackpressureCount = 0, acquisitionDroppedEventsCount = 0;
+
         public ViewLoop() {
             super();
             setName("AEViewer.ViewLoop");
@@ -1469,6 +1518,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             }
             while (stop == false/*&& !isInterrupslsted()*/) { // the only way to break out of the run loop is either setting stop true or by some uncaught exception.
                 setTitleAccordingToState();
+                if (isPipelinedProcessingEnabled()) {
+                    startPipelineThreads();
+                }
                 fpsDelay(); // delay at start so all the below that breaks out of loop still has a delay to avoid CPU hog
                 if (!isPaused() || (isSingleStep() && !isInterrupted())) { // we check interrupted to make sure we are not getting data after being interrupted
                     // if !paused we always get data. below, if singleStepEnabled, we set paused after getting data.
@@ -1497,21 +1549,32 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                         }
 
                     } else {
-                        rawPacket = grabInput();
+                        if (isPipelinedAcquisition()) {
+                            rawPacket = takePipelinedInput();
+                        } else {
+                            synchronized (inputLock) {
+                                rawPacket = grabInput();
+                            }
+                        }
                         if (rawPacket == null) {
                             log.warning("null rawPacket, probably at OUT marker or end of file");
                             continue;
                         }
 
                         numRawEvents = rawPacket.getNumEvents();
+                        long startNs = System.nanoTime();
                         cookedPacket = extractPacket(rawPacket);
                         if (cookedPacket == null) {
                             log.warning("packet became null after extracting events from raw input packet");
                             continue;
                         }
                         numEvents = cookedPacket.getSize();
+                        long extractedNs = System.nanoTime();
 
                         cookedPacket = filterPacket(cookedPacket);
+                        long filteredNs = System.nanoTime();
+                        extractionTimeUs += STAGE_TIME_MIXING_FACTOR * (((extractedNs - startNs) * 1e-3f) - extractionTimeUs);
+                        filteringTimeUs += STAGE_TIME_MIXING_FACTOR * (((filteredNs - extractedNs) * 1e-3f) - filteringTimeUs);
 
                     }
                     chip.setLastData(cookedPacket);// set the rendered data for use by various methods
@@ -1531,12 +1594,24 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
 
                 } // if (!isPaused() || isSingleStep())
 
+                if (isPipelinedRendering()) {
+                    // the RenderThread renders a copy of this packet while we go on with the next one
+                    if (cookedPacket != null) {
+                        handOffForRendering(cookedPacket);
+                    }
+                    getFrameRater().takeAfter();
+                    renderCount++;
+                    continue;
+                }
+
                 adaptRenderSkipping(); // try to keep up with desired frame rate
 
                 if ((cookedPacket != null) && (skipPacketsRenderingCount-- <= 0)) {
                     // we only got new events if we were NOT paused. but now we can apply filters, different rendering methods, etc in 'paused' condition
                     try {
-                        renderPacket(cookedPacket);
+                        synchronized (renderLock) {
+                            renderPacket(cookedPacket);
+                        }
                     } catch (RuntimeException e) {
                         String cause = " unknown cause";
                         if (e.getCause() != null) {
@@ -1559,6 +1634,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
 
             // Loop Cleanup
             log.info("AEViewer.run() ending: stop=" + stop + " isInterrupted=" + isInterrupted());
+            stopPipelineThreads();
             if (aemon != null) {
                 aemon.close();
             }
@@ -1572,12 +1648,27 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         } // viewLoop.run()
 
         private void renderPacket(EventPacket cookedPacket) {
+            renderPacket(cookedPacket, true);
+        }
+
+        /**
+         * Renders the packet and optionally paints the canvas.
+         *
+         * @param cookedPacket the packet to render
+         * @param paint true to paint the canvas after rendering, false to only
+         * accumulate the packet in the renderer, e.g. when more packets will
+         * follow immediately
+         */
+        private void renderPacket(EventPacket cookedPacket, boolean paint) {
             if (aePlayer.isChoosingFile() || (cookedPacket == null) || (!isRenderBlankFramesEnabled() && (cookedPacket.getSize() == 0))) {
                 return;
             } // don't render while filechooser is active
             if (!(getRenderer().isAccumulateEnabled() && isPaused())) {
                 getRenderer().render(cookedPacket);
             }
+            if (!paint) {
+                return;
+            }
             if (isActiveRenderingEnabled()) {
                 chipCanvas.paintFrame(); // actively paint frame now, either with OpenGL or Java2D, depending on switch
             } else {
@@ -1586,6 +1677,251 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
 
         } // renderEvents
 
+        /**
+         * @return true if LIVE data should be taken from the AcquisitionThread
+         * rather than grabbed by the ViewLoop
+         */
+        private boolean isPipelinedAcquisition() {
+            return isPipelinedProcessingEnabled() && (getPlayMode() == PlayMode.LIVE) && !isPaused();
+        }
+
+        /**
+         * @return true if packets should be rendered by the RenderThread. When
+         * paused or single stepping we go back to rendering here so that the
+         * last packet can be refiltered and rerendered.
+         */
+        private boolean isPipelinedRendering() {
+            return isPipelinedProcessingEnabled() && !isPaused() && !isSingleStep();
+        }
+
+        /**
+         * @return true if the renderer must see every packet because it builds
+         * up state over packets, so we cannot drop packets for it
+         */
+        private boolean isRenderEveryPacket() {
+            return getRenderer().isAccumulateEnabled()
+                    || ((getRenderer() instanceof DavisRenderer) && ((DavisRenderer) getRenderer()).isDisplayFrames());
+        }
+
+        /**
+         * Starts the AcquisitionThread and RenderThread if they are not
+         * running. They stop by themselves when pipelined processing is
+         * disabled or the ViewLoop is stopped. Only called from the ViewLoop.
+         */
+        private void startPipelineThreads() {
+            if ((acquisitionThread == null) || !acquisitionThread.isAlive()) {
+                acquisitionThread = new AcquisitionThread();
+                acquisitionThread.start();
+            }
+            if ((renderThread == null) || !renderThread.isAlive()) {
+                renderThread = new RenderThread();
+                renderThread.start();
+            }
+        }
+
+        /**
+         * Interrupts the pipeline threads, which then recycle their queued
+         * packets and end. We don't join them, since the RenderThread might be
+         * waiting for the Swing thread that is calling us.
+         */
+        private void stopPipelineThreads() {
+            final Thread a = acquisitionThread, r = renderThread;
+            if (a != null) {
+                a.interrupt();
+            }
+            if (r != null) {
+                r.interrupt();
+            }
+        }
+
+        /**
+         * Takes all the raw packets that the AcquisitionThread has queued
+         * since the last call and concatenates them, waiting up to one frame
+         * for the first one.
+         *
+         * @return the concatenated packet, owned by the ViewLoop and reused on
+         * the next call
+         */
+        private AEPacketRaw takePipelinedInput() {
+            pipelinedRawPacket.clear();
+            pipelinedRawPacket.overrunOccuredFlag = false;
+            try {
+                AEPacketRaw p = acquisitionQueue.poll(1000 / Math.max(1, getFrameRater().getDesiredFPS()), TimeUnit.MILLISECONDS);
+                while (p != null) {
+                    appendRawPacket(p, pipelinedRawPacket);
+                    acquisitionQueue.recycle(p);
+                    p = acquisitionQueue.poll();
+                }
+            } catch (InterruptedException e) {
+                // return what we have, the loop will check stop
+            }
+            overrunOccurred = pipelinedRawPacket.overrunOccuredFlag;
+            return pipelinedRawPacket;
+        }
+
+        /**
+         * Copies a deep copy of the filtered packet to the render queue. If
+         * the renderer must see every packet we wait for room in the queue,
+         * otherwise the oldest queued packet is replaced so that the renderer
+         * always gets the latest one.
+         */
+        private void handOffForRendering(EventPacket cookedPacket) {
+            EventPacket copy = renderQueue.obtain();
+            if (copy.getClass() != cookedPacket.getClass()) {
+                copy = cookedPacket.constructNewPacket();
+            }
+            copy.copyFrom(cookedPacket);
+            try {
+                if (isRenderEveryPacket()) {
+                    if (!renderQueue.offer(copy, RENDER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        renderQueue.recycle(copy); // RenderThread is stuck or gone, don't hang the ViewLoop
+                    }
+                } else {
+                    renderQueue.offerReplacingOldest(copy);
+                }
+            } catch (InterruptedException e) {
+                renderQueue.recycle(copy);
+            }
+        }
+
+        /**
+         * Grabs LIVE data from the hardware interface as fast as it comes and
+         * hands copies of it to the ViewLoop. If the ViewLoop falls so far
+         * behind that the acquisition queue fills up, new data is accumulated
+         * in the pending buffer until there is room again, up to
+         * AEPacketRaw.MAX_PACKET_SIZE_EVENTS events. Beyond that new data is
+         * dropped and the overrun flag of the pending packet is set, so that
+         * a stalled ViewLoop cannot make memory and latency grow without
+         * bound.
+         */
+        private class AcquisitionThread extends Thread {
+
+            AcquisitionThread() {
+                super("AEViewer.AcquisitionThread");
+                setDaemon(true);
+            }
+
+            @Override
+            public void run() {
+                AEPacketRaw pending = null;
+                while (!stop && isPipelinedProcessingEnabled() && !isInterrupted()) {
+                    try {
+                        if (!isPipelinedAcquisition()) {
+                            Thread.sleep(IDLE_INTERVAL_MS);
+                            continue;
+                        }
+                        long startNs = System.nanoTime();
+                        AEPacketRaw raw;
+                        synchronized (inputLock) {
+                            raw = isPipelinedAcquisition() ? grabInput() : null;
+                            if ((raw != null) && (raw.getNumEvents() > 0)) {
+                                if (pending == null) {
+                                    pending = acquisitionQueue.obtain();
+                                    pending.clear();
+                                    pending.overrunOccuredFlag = false;
+                                }
+                                if ((pending.getNumEvents() == 0) || ((pending.getNumEvents() + raw.getNumEvents()) <= AEPacketRaw.MAX_PACKET_SIZE_EVENTS)) {
+                                    appendRawPacket(raw, pending); // copy now, the interface reuses its buffer on the next acquire
+                                } else {
+                                    pending.overrunOccuredFlag = true;
+                                    acquisitionDroppedEventsCount += raw.getNumEvents();
+                                }
+                            }
+                        }
+                        if (pending != null) {
+                            if (acquisitionQueue.offer(pending)) {
+                                pending = null;
+                            } else {
+                                acquisitionBackpressureCount++;
+                            }
+                        }
+                        acquisitionTimeUs += STAGE_TIME_MIXING_FACTOR * (((System.nanoTime() - startNs) * 1e-3f) - acquisitionTimeUs);
+                        Thread.sleep(ACQUISITION_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        break;
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "AcquisitionThread caught " + e.toString(), e);
+                    }
+                }
+                acquisitionQueue.recycle(pending);
+                acquisitionQueue.clear();
+                log.info(getName() + " ending");
+            }
+        }
+
+        /**
+         * Renders the packets that the ViewLoop hands off and paints the
+         * canvas.
+         */
+        private class RenderThread extends Thread {
+
+            RenderThread() {
+                super("AEViewer.RenderThread");
+                setDaemon(true);
+            }
+
+            @Override
+            public void run() {
+                while (!stop && isPipelinedProcessingEnabled() && !isInterrupted()) {
+                    try {
+                        final boolean renderEveryPacket = isRenderEveryPacket();
+                        EventPacket packet = renderEveryPacket ? renderQueue.poll(IDLE_INTERVAL_MS, TimeUnit.MILLISECONDS)
+                                : renderQueue.pollLatest(IDLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        if (packet == null) {
+                            continue;
+                        }
+                        long startNs = System.nanoTime();
+                        synchronized (renderLock) {
+                            if (renderEveryPacket) {
+                                // accumulate all waiting packets, paint only once
+                                EventPacket next;
+                                while ((next = renderQueue.poll()) != null) {
+                                    renderPacket(packet, false);
+                                    renderQueue.recycle(packet);
+                                    packet = next;
+                                }
+                            }
+                            renderPacket(packet, true);
+                        }
+                        renderingTimeUs += STAGE_TIME_MIXING_FACTOR * (((System.nanoTime() - startNs) * 1e-3f) - renderingTimeUs);
+                        numFilteredEvents = packet.getSizeNotFilteredOut();
+                        makeStatisticsLabel(packet);
+                        renderQueue.recycle(packet);
+                    } catch (InterruptedException e) {
+                        break;
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "RenderThread caught " + e.toString(), e);
+                    }
+                }
+                renderQueue.clear();
+                log.info(getName() + " ending");
+            }
+        }
+
+        /**
+         * Appends the events of src to dest, enlarging dest if needed. Unlike
+         * AEPacketRaw.append this does not check the time order, because live
+         * data can legally wrap or be reset.
+         */
+        private void appendRawPacket(AEPacketRaw src, AEPacketRaw dest) {
+            final int n = src.getNumEvents(), start = dest.getNumEvents();
+            dest.ensureCapacity(start + n);
+            System.arraycopy(src.getAddresses(), 0, dest.getAddresses(), start, n);
+            System.arraycopy(src.getTimestamps(), 0, dest.getTimestamps(), start, n);
+            dest.setNumEvents(start + n);
+            dest.overrunOccuredFlag |= src.overrunOccuredFlag;
+            dest.systemModificationTimeNs = src.systemModificationTimeNs;
+        }
+
+        /**
+         * @return a description of the pipeline stage queues and times
+         */
+        String getPipelineStatistics() {
+            return String.format("acquire %.0fus (%d backpressured, %d events dropped), extract %.0fus, filter %.0fus, render %.0fus; %s; %s",
+                    acquisitionTimeUs, acquisitionBackpressureCount, acquisitionDroppedEventsCount, extractionTimeUs, filteringTimeUs, renderingTimeUs,
+                    acquisitionQueue.toString(), renderQueue.toString());
+        }
+
         private EventPacket extractPacket(AEPacketRaw aeRaw) {
             boolean subsamplingEnabled = getRenderer().isSubsamplingEnabled();
             if (isPaused()) {
@@ -1608,6 +1944,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
          */
         public void stopThread() {
             stop = true;
+            stopPipelineThreads();
         }
 
         private void adaptRenderSkipping() {
@@ -1894,26 +2231,14 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             // write to network socket if a client has opened a socket to us
             // we serve up events on this socket
 
-            if ((getAeServerSocket() != null) && (getAeServerSocket().getAESocket() != null)) {
-                AESocket s = getAeServerSocket().getAESocket();
-                try {
-                    if (!isLogFilteredEventsEnabled()) {
-                        s.writePacket(rawPacket);
-                    } else {
-                        // send the reconstructed packet after filtering
-                        AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(cookedPacket);
-                        s.writePacket(aeRawRecon);
-                    }
-                } catch (IOException e) {
-                    log.warning("sending packet " + rawPacket + " from " + this + " to " + s + " failed, closing socket");
-                    try {
-                        s.close();
-                    } catch (IOException e2) {
-                        log.log(Level.SEVERE, e2.toString(), e2);
-
-                    } finally {
-                        getAeServerSocket().setSocket(null);
-                    }
+            // the server queues the packet for each client and its own thread sends it, so this never blocks
+            if ((getAeServerSocket() != null) && (getAeServerSocket().getNumClients() > 0)) {
+                if (!isLogFilteredEventsEnabled()) {
+                    getAeServerSocket().writePacket(rawPacket);
+                } else {
+                    // send the reconstructed packet after filtering
+                    AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(cookedPacket);
+                    getAeServerSocket().writePacket(aeRawRecon);
                 }
             }
 
@@ -2554,6 +2879,8 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         loggingPlaybackImmediatelyCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         loggingSetTimelimitMenuItem = new javax.swing.JMenuItem();
         logFilteredEventsCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
+        asyncLoggingCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
+        asyncLoggingDropWhenDiskBusyCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         networkSeparator = new javax.swing.JSeparator();
         remoteMenu = new javax.swing.JMenu();
         openSocketInputStreamMenuItem = new javax.swing.JMenuItem();
@@ -2585,6 +2912,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         viewRenderBlankFramesCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         jSeparator2 = new javax.swing.JSeparator();
         skipPacketsRenderingCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
+        pipelinedProcessingCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         jSeparator3 = new javax.swing.JSeparator();
         cycleColorRenderingMethodMenuItem = new javax.swing.JMenuItem();
         increaseContrastMenuItem = new javax.swing.JMenuItem();
@@ -2857,6 +3185,24 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             }
         });
         fileMenu.add(logFilteredEventsCheckBoxMenuItem);
+
+        asyncLoggingCheckBoxMenuItem.setText("Write logged data on a background thread");
+        asyncLoggingCheckBoxMenuItem.setToolTipText("<html>Logging copies events into large buffers that are written to disk by a writer thread,<br>so that a slow disk does not hold up acquisition. Takes effect when logging is started.");
+        asyncLoggingCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                asyncLoggingCheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(asyncLoggingCheckBoxMenuItem);
+
+        asyncLoggingDropWhenDiskBusyCheckBoxMenuItem.setText("Drop logged data when the disk falls behind");
+        asyncLoggingDropWhenDiskBusyCheckBoxMenuItem.setToolTipText("<html>When all background logging buffers are waiting for the disk, drop the events that do not fit and count them,<br>rather than holding up acquisition until the disk catches up. Takes effect when logging is started.");
+        asyncLoggingDropWhenDiskBusyCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                asyncLoggingDropWhenDiskBusyCheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(asyncLoggingDropWhenDiskBusyCheckBoxMenuItem);
         fileMenu.add(networkSeparator);
 
         remoteMenu.setMnemonic('r');
@@ -3065,6 +3411,15 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         });
         graphicsSubMenu.add(skipPacketsRenderingCheckBoxMenuItem);
 
+        pipelinedProcessingCheckBoxMenuItem.setText("Pipelined acquisition, processing and rendering");
+        pipelinedProcessingCheckBoxMenuItem.setToolTipText("<html>Runs live acquisition and rendering on their own threads,<br>so that slow rendering does not hold up acquisition and processing");
+        pipelinedProcessingCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                pipelinedProcessingCheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        graphicsSubMenu.add(pipelinedProcessingCheckBoxMenuItem);
+
         viewMenu.add(graphicsSubMenu);
         viewMenu.add(jSeparator3);
 
@@ -4441,6 +4796,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         try {
             loggingFile = new File(filename);
             loggingOutputStream = new AEFileOutputStream(new FileOutputStream(loggingFile), chip, dataFileVersionNum); // tobi changed to 8k buffer (from 400k) because this has measurablly better performance than super large buffer
+            if (isAsyncLoggingEnabled()) {
+                loggingOutputStream.enableAsyncWriting(isAsyncLoggingDropWhenDiskBusy());
+            }
 
             if (getPlayMode() == PlayMode.PLAYBACK) { // change listener for rewind to stop logging
                 getAePlayer().getAEInputStream().getSupport().addPropertyChangeListener(AEInputStream.EVENT_REWOUND, new PropertyChangeListener() {
@@ -5478,6 +5836,14 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             setLogFilteredEventsEnabled(logFilteredEventsCheckBoxMenuItem.isSelected());
 	}//GEN-LAST:event_logFilteredEventsCheckBoxMenuItemActionPerformed
 
+    private void asyncLoggingCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_asyncLoggingCheckBoxMenuItemActionPerformed
+        setAsyncLoggingEnabled(asyncLoggingCheckBoxMenuItem.isSelected());
+    }//GEN-LAST:event_asyncLoggingCheckBoxMenuItemActionPerformed
+
+    private void asyncLoggingDropWhenDiskBusyCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_asyncLoggingDropWhenDiskBusyCheckBoxMenuItemActionPerformed
+        setAsyncLoggingDropWhenDiskBusy(asyncLoggingDropWhenDiskBusyCheckBoxMenuItem.isSelected());
+    }//GEN-LAST:event_asyncLoggingDropWhenDiskBusyCheckBoxMenuItemActionPerformed
+
 	private void loggingSetTimelimitMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_loggingSetTimelimitMenuItemActionPerformed
             String ans = JOptionPane.showInputDialog(this, "Enter logging time limit, e.g. 1000 (ms implied) 2m 30s, 1h 15m, 35m (0 for no limit)", loggingTimeLimit);
 
@@ -5646,6 +6012,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         setRenderBlankFramesEnabled(viewRenderBlankFramesCheckBoxMenuItem.isSelected());
     }//GEN-LAST:event_viewRenderBlankFramesCheckBoxMenuItemActionPerformed
 
+    private void pipelinedProcessingCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_pipelinedProcessingCheckBoxMenuItemActionPerformed
+        setPipelinedProcessingEnabled(pipelinedProcessingCheckBoxMenuItem.isSelected());
+    }//GEN-LAST:event_pipelinedProcessingCheckBoxMenuItemActionPerformed
+
     private void viewActiveRenderingEnabledMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_viewActiveRenderingEnabledMenuItemActionPerformed
         setActiveRenderingEnabled(viewActiveRenderingEnabledMenuItem.isSelected());
     }//GEN-LAST:event_viewActiveRenderingEnabledMenuItemActionPerformed
@@ -5878,6 +6248,43 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         prefs.putBoolean("AEViewer.renderBlankFramesEnabled", renderBlankFramesEnabled);
     }
 
+    /**
+     * @return true if acquisition, processing and rendering run on separate
+     * threads
+     * @see ViewLoop
+     */
+    public boolean isPipelinedProcessingEnabled() {
+        return pipelinedProcessingEnabled;
+    }
+
+    /**
+     * Enables pipelined mode, in which live acquisition and rendering run on
+     * their own threads connected to the ViewLoop by bounded queues of
+     * recycled packets. The ViewLoop then only extracts, filters, logs and
+     * writes output streams, so a slow OpenGL paint no longer stalls the
+     * acquisition of USB buffers.
+     *
+     * @param pipelinedProcessingEnabled true to enable
+     * @see ViewLoop
+     */
+    public void setPipelinedProcessingEnabled(boolean pipelinedProcessingEnabled) {
+        this.pipelinedProcessingEnabled = pipelinedProcessingEnabled;
+        prefs.putBoolean("AEViewer.pipelinedProcessingEnabled", pipelinedProcessingEnabled);
+        log.info("pipelined processing enabled=" + pipelinedProcessingEnabled);
+    }
+
+    /**
+     * Returns the statistics of the pipelined mode: the average time spent in
+     * each stage and the depth, latency and drop counts of the hand-off
+     * queues.
+     *
+     * @return the statistics string
+     * @see #setPipelinedProcessingEnabled(boolean)
+     */
+    public String getPipelineStatistics() {
+        return viewLoop.getPipelineStatistics();
+    }
+
     public javax.swing.JMenu getFileMenu() {
         return fileMenu;
     }
@@ -5975,6 +6382,64 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         logFilteredEventsCheckBoxMenuItem.setSelected(logFilteredEventsEnabled);
     }
 
+    /**
+     * @return true if logging writes to disk on a background thread
+     * @see AEFileOutputStream#enableAsyncWriting(boolean)
+     */
+    public boolean isAsyncLoggingEnabled() {
+        return asyncLoggingEnabled;
+    }
+
+    /**
+     * Sets whether logging copies events into large buffers that are written
+     * to disk by a writer thread, so that a slow disk does not stall
+     * acquisition. Takes effect the next time logging is started.
+     *
+     * @param asyncLoggingEnabled true to enable
+     * @see #setAsyncLoggingDropWhenDiskBusy(boolean)
+     */
+    public void setAsyncLoggingEnabled(boolean asyncLoggingEnabled) {
+        this.asyncLoggingEnabled = asyncLoggingEnabled;
+        prefs.putBoolean("AEViewer.asyncLoggingEnabled", asyncLoggingEnabled);
+        asyncLoggingCheckBoxMenuItem.setSelected(asyncLoggingEnabled);
+    }
+
+    /**
+     * @return true if async logging drops events when the disk falls behind,
+     * false if it waits for the disk
+     */
+    public boolean isAsyncLoggingDropWhenDiskBusy() {
+        return asyncLoggingDropWhenDiskBusy;
+    }
+
+    /**
+     * Sets what async logging does when all its buffers are waiting for the
+     * disk: wait for the disk, which loses no logged data but holds up the
+     * ViewLoop (the default), or drop the events that do not fit and count
+     * them.
+     *
+     * @param asyncLoggingDropWhenDiskBusy true to drop events
+     */
+    public void setAsyncLoggingDropWhenDiskBusy(boolean asyncLoggingDropWhenDiskBusy) {
+        this.asyncLoggingDropWhenDiskBusy = asyncLoggingDropWhenDiskBusy;
+        prefs.putBoolean("AEViewer.asyncLoggingDropWhenDiskBusy", asyncLoggingDropWhenDiskBusy);
+        asyncLoggingDropWhenDiskBusyCheckBoxMenuItem.setSelected(asyncLoggingDropWhenDiskBusy);
+    }
+
+    /**
+     * Returns the statistics of the logging output stream, i.e. the queue
+     * depth, write rate and dropped events of async logging.
+     *
+     * @return the statistics, or null if not logging
+     */
+    public String getLoggingStatistics() {
+        final AEFileOutputStream os = loggingOutputStream;
+        if (!loggingEnabled || os == null) {
+            return null;
+        }
+        return os.getAsyncStatistics();
+    }
+
     /**
      * Returns the enclosing JAERViewer, which is the top level object in jAER.
      *
@@ -6193,6 +6658,8 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     private javax.swing.JMenuItem jogBackwardsMI;
     private javax.swing.JMenuItem jogForwardMI;
     private javax.swing.JCheckBoxMenuItem logFilteredEventsCheckBoxMenuItem;
+    private javax.swing.JCheckBoxMenuItem asyncLoggingCheckBoxMenuItem;
+    private javax.swing.JCheckBoxMenuItem asyncLoggingDropWhenDiskBusyCheckBoxMenuItem;
     private javax.swing.JToggleButton loggingButton;
     private javax.swing.JMenuItem loggingMenuItem;
     private javax.swing.JCheckBoxMenuItem loggingPlaybackImmediatelyCheckBoxMenuItem;
@@ -6232,6 +6699,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     private javax.swing.JMenuItem setMarkInMI;
     private javax.swing.JMenuItem setMarkOutMI;
     private javax.swing.JButton showConsoleOutputButton;
+    private javax.swing.JCheckBoxMenuItem pipelinedProcessingCheckBoxMenuItem;
     private javax.swing.JCheckBoxMenuItem skipPacketsRenderingCheckBoxMenuItem;
     private javax.swing.JPanel statisticsPanel;
     private javax.swing.JTextField statusTextField;
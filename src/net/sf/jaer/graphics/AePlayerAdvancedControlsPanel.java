@@ -668,7 +668,9 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
                                 if (true) {
                                     p = v.aePlayer; // we want local play here!
                                     is = p.getAEInputStream();
-                                    if (is != null) {
+                                    if (is instanceof AEFileInputStream && ((AEFileInputStream) is).positionToTimestamp(time)) {
+                                        // jumped directly to the time using the timestamp index
+                                    } else if (is != null) {
                                         is.rewind();
                                     } else {
                                         log.warning("null ae input stream on reposition");
@@ -51,6 +51,15 @@ public class BinocularDVSRenderer extends DavisRenderer{
         createDisparityColors();
     }
 
+    /**
+     * This renderer writes the maps in its own render method without marking
+     * the changed tiles
+     */
+    @Override
+    protected boolean isDirtyRegionTrackingSupported() {
+        return false;
+    }
+
     @Override
     public synchronized void render (final EventPacket packet){
         if ( packet == null ){
@@ -195,6 +195,17 @@ public class ChipCanvas implements GLEventListener, Observer {
         origin3dy = prefs.getInt("ChipCanvas.origin3dy", 0);
         prefs.getInt("borderSpacePixels", 20);
 
+        if (GraphicsEnvironment.isHeadless()) {
+            // no display, e.g. HeadlessFilterChainRunner on a server; don't touch OpenGL, which exits the JVM if it is not available
+            log.info("headless, not creating the OpenGL canvas; getCanvas() returns null");
+            scaleChipPixels2ScreenPixels = prefs.getFloat(scalePrefsKey(), 4);
+            chip.addObserver(this);
+            if (displayMethods.isEmpty() && (chip.getCanvas() != null) && (chip.getCanvas().getDisplayMethod() != null)) {
+                displayMethods.add(chip.getCanvas().getDisplayMethod());
+            }
+            return;
+        }
+
         // GraphicsEnvironment ge=GraphicsEnvironment.getLocalGraphicsEnvironment();
         // GraphicsDevice[] gs=ge.getScreenDevices(); // TODO it could be that remote session doesn't show screen that
         // used to be used. Should check that we are not offscreen. Otherwise registy edit is required to show window!
@@ -595,7 +606,8 @@ public class ChipCanvas implements GLEventListener, Observer {
      * The actual drawing surface is a Canvas and this method returns a
      * reference to it.
      *
-     * @return the actual drawing Canvas.
+     * @return the actual drawing Canvas, or null if
+     * java.awt.GraphicsEnvironment.isHeadless()
      */
     public Canvas getCanvas() {
         return drawable;
@@ -885,6 +897,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * @see #display(com.jogamp.opengl.GLAutoDrawable)
      */
     public void paintFrame() {
+        if (drawable == null) {
+            return;
+        }
 //        synchronized (drawable.getTreeLock()) {
         try {
 //                drawable.getContext().makeCurrent();
@@ -911,7 +926,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * calls repaint on the drawable
      */
     public void repaint() {
-        drawable.repaint();
+        if (drawable != null) {
+            drawable.repaint();
+        }
     }
 
     /**
@@ -920,7 +937,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * @param tm time to repaint within, in ms
      */
     public void repaint(final long tm) {
-        drawable.repaint(tm);
+        if (drawable != null) {
+            drawable.repaint(tm);
+        }
     }
 
     /**
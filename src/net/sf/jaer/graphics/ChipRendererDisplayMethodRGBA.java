@@ -79,9 +79,15 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
         boolean displayEvents = false;
         boolean displayFrames = true;
         boolean displayAnnotation = false;
+        DirtyTileRGBAMap pixmapTiles = null, dvsEventsTiles = null, annotateTiles = null; // non-null for dirty region rendering
 
         if (renderer instanceof DavisRenderer) {
             final DavisRenderer frameRenderer = (DavisRenderer) renderer;
+            if (frameRenderer.isDirtyRegionRenderingActive()) {
+                pixmapTiles = frameRenderer.getPixmapTiles();
+                dvsEventsTiles = frameRenderer.getDvsEventsTiles();
+                annotateTiles = frameRenderer.getAnnotateTiles();
+            }
             dvsEventsMap = frameRenderer.getDvsEventsMap();
 //			offMap = frameRenderer.getOffMap();
             annotateMap = frameRenderer.getAnnotateMap();
@@ -116,14 +122,12 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
                 gl.glRotatef((float) ((imageTransform.rotationRad * 180) / Math.PI), 0, 0, 1);
                 gl.glTranslatef(imageTransform.translationPixels.x - sx, imageTransform.translationPixels.y - sy, 0);
             }
-            gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
-            gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
+            bindTexture(gl, 0, pixmapTiles, pixmap, width, height);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, nearestFilter);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, nearestFilter);
             gl.glTexEnvf(GL2ES1.GL_TEXTURE_ENV, GL2ES1.GL_TEXTURE_ENV_MODE, GL2ES1.GL_REPLACE);
-            gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, width, height, 0, GL.GL_RGBA, GL.GL_FLOAT, pixmap);
 
             gl.glEnable(GL.GL_TEXTURE_2D);
             drawPolygon(gl, width, height);
@@ -136,17 +140,14 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
             // DVS event histograms are written with Alpha=0 when the frame is cleared, same for annotation maps. When events occur, they replace the APS values
             gl.glEnable(GL2.GL_ALPHA_TEST);
             gl.glAlphaFunc(GL2.GL_GREATER, 0);
-            gl.glBindTexture(GL.GL_TEXTURE_2D, 1);
-            gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
+            bindTexture(gl, 1, dvsEventsTiles, dvsEventsMap, width, height);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, nearestFilter);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, nearestFilter);
             gl.glTexEnvf(GL2ES1.GL_TEXTURE_ENV, GL2ES1.GL_TEXTURE_ENV_MODE, GL2ES1.GL_REPLACE);
-            gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, width, height, 0, GL.GL_RGBA, GL.GL_FLOAT, dvsEventsMap);
 
             gl.glEnable(GL.GL_TEXTURE_2D);
-            gl.glBindTexture(GL.GL_TEXTURE_2D, 1);
             drawPolygon(gl, width, height);
             gl.glDisable(GL.GL_TEXTURE_2D);
             gl.glDisable(GL2.GL_ALPHA_TEST);
@@ -195,8 +196,7 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
 //            gl.glTexEnvf(GL2ES1.GL_TEXTURE_ENV, GL2ES1.GL_TEXTURE_ENV_MODE, GL2ES1.GL_ADD);
 //            gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, width, height, 0, GL.GL_RGBA, GL.GL_FLOAT, annotateMap);
 
-            gl.glBindTexture(GL.GL_TEXTURE_2D, 1);
-            gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
+            bindTexture(gl, 1, annotateTiles, annotateMap, width, height);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP);
             gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, nearestFilter);
@@ -215,10 +215,7 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
 //            gl.glTexEnvf(GL2ES1.GL_TEXTURE_ENV, GL2.GL_OPERAND0_ALPHA, GL2.GL_SRC_ALPHA);
 //            gl.glTexEnvf(GL2ES1.GL_TEXTURE_ENV, GL2.GL_OPERAND1_ALPHA, GL2.GL_SRC_ALPHA);
 
-            gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, width, height, 0, GL.GL_RGBA, GL.GL_FLOAT, annotateMap);
-
             gl.glEnable(GL.GL_TEXTURE_2D);
-            gl.glBindTexture(GL.GL_TEXTURE_2D, 1);
             drawPolygon(gl, width, height);
             gl.glDisable(GL.GL_TEXTURE_2D);
             gl.glDisable(GL2.GL_ALPHA_TEST);
@@ -281,6 +278,29 @@ public class ChipRendererDisplayMethodRGBA extends DisplayMethod implements Disp
         }
     }
 
+    /**
+     * Binds the texture for one of the maps and loads it. Without tiles the
+     * whole float map is uploaded to the fixed texture name; with tiles only
+     * the changed tiles of the packed map are uploaded to its own texture.
+     *
+     * @param gl
+     * @param name the texture name used for full uploads
+     * @param tiles the packed tiles of map, or null
+     * @param map the float RGBA map
+     * @param width texture width
+     * @param height texture height
+     */
+    private void bindTexture(final GL2 gl, final int name, final DirtyTileRGBAMap tiles, final FloatBuffer map, final int width, final int height) {
+        if (tiles != null) {
+            tiles.pack(map.array()); // normally already done by the renderer, picks up later annotation
+            tiles.upload(gl);
+        } else {
+            gl.glBindTexture(GL.GL_TEXTURE_2D, name);
+            gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
+            gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, width, height, 0, GL.GL_RGBA, GL.GL_FLOAT, map);
+        }
+    }
+
     private void drawPolygon(final GL2 gl, final int width, final int height) {
         final double xRatio = (double) chip.getSizeX() / (double) width;
         final double yRatio = (double) chip.getSizeY() / (double) height;
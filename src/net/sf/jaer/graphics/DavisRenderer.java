@@ -128,6 +128,22 @@ public class DavisRenderer extends AEChipRenderer {
      */
     private int dvsDownsamplingValue = 0, dvsDownsamplingCount = 0;
 
+    /**
+     * When enabled, only the changed tiles of the maps are reset, converted to
+     * packed 8-bit RGBA and uploaded by ChipRendererDisplayMethodRGBA
+     */
+    protected boolean dirtyRegionRenderingEnabled = prefs.getBoolean("DavisRenderer.dirtyRegionRenderingEnabled", false);
+    /**
+     * Packed copies and changed tiles of pixmap, dvsEventsMap and annotateMap
+     */
+    protected final DirtyTileRGBAMap pixmapTiles = new DirtyTileRGBAMap(), dvsEventsTiles = new DirtyTileRGBAMap(), annotateTiles = new DirtyTileRGBAMap();
+    /**
+     * Incremented each time the content of grayBuffer, which is used to reset
+     * the maps, changes
+     */
+    private int grayBufferGeneration = 0;
+    private float grayBufferFillValue = Float.NaN; // value grayBuffer is filled with by resetAnnotationFrame, NaN if unknown
+
     public DavisRenderer(final AEChip chip) {
         super(chip);
 
@@ -205,6 +221,9 @@ public class DavisRenderer extends AEChipRenderer {
         }
         grayValue = value;
         grayBuffer.rewind();
+        grayBufferGeneration++;
+        grayBufferFillValue = Float.NaN;
+        pixmapTiles.markAllDirty();
         System.arraycopy(grayBuffer.array(), 0, pixmap.array(), 0, n);
         System.arraycopy(grayBuffer.array(), 0, pixBuffer.array(), 0, n);
         pixmap.rewind();
@@ -227,9 +246,15 @@ public class DavisRenderer extends AEChipRenderer {
             // Fill maps with fully transparent values
             grayBuffer = FloatBuffer.allocate(n); // BufferUtil.newFloatBuffer(n);
             Arrays.fill(grayBuffer.array(), 0);
+            grayBufferGeneration++;
+            grayBufferFillValue = 0;
         }
         grayBuffer.rewind();
-        System.arraycopy(grayBuffer.array(), 0, dvsEventsMap.array(), 0, n);
+        if (isDirtyRegionRenderingActive()) {
+            dvsEventsTiles.clearTouched(dvsEventsMap.array(), grayBuffer.array(), grayBufferGeneration);
+        } else {
+            System.arraycopy(grayBuffer.array(), 0, dvsEventsMap.array(), 0, n);
+        }
         dvsEventsMap.rewind();
         dvsEventsMap.limit(n);
     }
@@ -244,12 +269,25 @@ public class DavisRenderer extends AEChipRenderer {
         final int n = 4 * textureWidth * textureHeight;
         if ((grayBuffer == null) || (grayBuffer.capacity() != n)) {
             grayBuffer = FloatBuffer.allocate(n); // BufferUtil.newFloatBuffer(n);
+            grayBufferFillValue = Float.NaN;
         }
 
         grayBuffer.rewind();
-        // Fill maps with fully transparent values
-        Arrays.fill(grayBuffer.array(), resetValue);
-        System.arraycopy(grayBuffer.array(), 0, annotateMap.array(), 0, n);
+        if (isDirtyRegionRenderingActive()) {
+            if (grayBufferFillValue != resetValue) { // NaN never equals
+                Arrays.fill(grayBuffer.array(), resetValue);
+                grayBufferFillValue = resetValue;
+                grayBufferGeneration++;
+            }
+            annotateTiles.clearTouched(annotateMap.array(), grayBuffer.array(), grayBufferGeneration);
+        } else {
+            // Fill maps with fully transparent values
+            Arrays.fill(grayBuffer.array(), resetValue);
+            grayBufferFillValue = resetValue;
+            grayBufferGeneration++;
+            System.arraycopy(grayBuffer.array(), 0, annotateMap.array(), 0, n);
+            annotateTiles.markAllDirty();
+        }
 
         grayBuffer.rewind();
         annotateMap.rewind();
@@ -339,6 +377,9 @@ public class DavisRenderer extends AEChipRenderer {
         } else {
             renderDvsEvents(pkt);
         }
+        if (isDirtyRegionRenderingActive()) {
+            packDirtyTiles(); // convert here rather than on the GL thread
+        }
     }
 
     protected void renderApsDvsEvents(final EventPacket pkt) {
@@ -362,6 +403,7 @@ public class DavisRenderer extends AEChipRenderer {
             for (int i = 0; i < f.length; i++) {
                 f[i] *= fadeby;
             }
+            dvsEventsTiles.markAllDirty();
         }
         final ApsDvsEventPacket packetAPS = (ApsDvsEventPacket) pkt;
         packet = packetAPS;
@@ -430,6 +472,7 @@ public class DavisRenderer extends AEChipRenderer {
             for (int i = 0; i < f.length; i++) {
                 f[i] *= fadeby;
             }
+            dvsEventsTiles.markAllDirty();
         }
         packet = pkt;
 
@@ -547,6 +590,7 @@ public class DavisRenderer extends AEChipRenderer {
     protected void endFrame(final int ts) {
         timestampFrameEnd = ts;
         System.arraycopy(pixBuffer.array(), 0, pixmap.array(), 0, pixBuffer.array().length);
+        pixmapTiles.markAllDirty();
 
         if ((contrastController != null) && (minValue != Float.MAX_VALUE) && (maxValue != Float.MIN_VALUE)) {
             contrastController.endFrame(minValue, maxValue, timestampFrameEnd);
@@ -569,6 +613,9 @@ public class DavisRenderer extends AEChipRenderer {
         if ((index < 0) || (index >= map.length)) {
             return;
         }
+        if (dirtyRegionRenderingEnabled) {
+            markDvsEventsMapDirty(index);
+        }
 
         if (packet.getNumCellTypes() > 2) {
             checkTypeColors(packet.getNumCellTypes());
@@ -738,6 +785,9 @@ public class DavisRenderer extends AEChipRenderer {
 //            offMap = FloatBuffer.allocate(n);
             annotateMap = FloatBuffer.allocate(n);
         }
+        pixmapTiles.allocate(textureWidth, textureHeight);
+        dvsEventsTiles.allocate(textureWidth, textureHeight);
+        annotateTiles.allocate(textureWidth, textureHeight);
     }
 
     /**
@@ -852,6 +902,7 @@ public class DavisRenderer extends AEChipRenderer {
         pm[k] = g;
         pm[k + 1] = g;
         pm[k + 2] = g;
+        pixmapTiles.markDirty(x, y);
     }
 
     /**
@@ -871,6 +922,7 @@ public class DavisRenderer extends AEChipRenderer {
     @Override
     public void setAnnotateValue(final int index, final float value) {
         annotateMap.put(index, value);
+        annotateTiles.markDirtyIndex(index);
     }
 
     /**
@@ -885,6 +937,7 @@ public class DavisRenderer extends AEChipRenderer {
         annotateMap.put(index + 1, value[1]);
         annotateMap.put(index + 2, value[2]);
         annotateMap.put(index + 3, getAnnotateAlpha());
+        annotateTiles.markDirtyIndex(index);
     }
 
     /**
@@ -898,6 +951,7 @@ public class DavisRenderer extends AEChipRenderer {
         annotateMap.put(index + 1, value[1]);
         annotateMap.put(index + 2, value[2]);
         annotateMap.put(index + 3, value[3]);
+        annotateTiles.markDirtyIndex(index);
     }
 
     /**
@@ -916,6 +970,7 @@ public class DavisRenderer extends AEChipRenderer {
         annotateMap.put(index + 1, value[1]);
         annotateMap.put(index + 2, value[2]);
         annotateMap.put(index + 3, getAnnotateAlpha());
+        annotateTiles.markDirtyIndex(index);
     }
 
     /**
@@ -931,6 +986,7 @@ public class DavisRenderer extends AEChipRenderer {
         annotateMap.put(index + 1, value[1]);
         annotateMap.put(index + 2, value[2]);
         annotateMap.put(index + 3, value[3]);
+        annotateTiles.markDirtyIndex(index);
     }
 
     /**
@@ -943,6 +999,7 @@ public class DavisRenderer extends AEChipRenderer {
     public void setAnnotateAlpha(final int x, final int y, final float alpha) {
         final int index = getPixMapIndex(x, y);
         annotateMap.put(index + 3, alpha);
+        annotateTiles.markDirtyIndex(index);
     }
 
     /**
@@ -1091,6 +1148,106 @@ public class DavisRenderer extends AEChipRenderer {
         displayAnnotation = extRender;
     }
 
+    /**
+     * Returns whether dirty region rendering is selected.
+     *
+     * @return the dirtyRegionRenderingEnabled
+     * @see #setDirtyRegionRenderingEnabled(boolean)
+     */
+    public boolean isDirtyRegionRenderingEnabled() {
+        return dirtyRegionRenderingEnabled;
+    }
+
+    /**
+     * Selects dirty region rendering. The renderer then tracks which 16x16
+     * pixel tiles of the maps are written, resets only those tiles, converts
+     * them to packed 8-bit RGBA after each packet and the display method
+     * uploads only them to persistent textures. Code that writes the pixmap
+     * array directly must then call {@link #markPixmapDirty()}.
+     *
+     * @param dirtyRegionRenderingEnabled the dirtyRegionRenderingEnabled to
+     * set
+     */
+    public synchronized void setDirtyRegionRenderingEnabled(final boolean dirtyRegionRenderingEnabled) {
+        this.dirtyRegionRenderingEnabled = dirtyRegionRenderingEnabled;
+        prefs.putBoolean("DavisRenderer.dirtyRegionRenderingEnabled", dirtyRegionRenderingEnabled);
+        // the maps were written without tracking before
+        grayBufferGeneration++;
+        pixmapTiles.markAllDirty();
+        dvsEventsTiles.markAllDirty();
+        annotateTiles.markAllDirty();
+    }
+
+    /**
+     * Returns true when dirty region rendering is enabled and supported by
+     * this renderer
+     *
+     * @return true to render with the tile maps
+     * @see #isDirtyRegionTrackingSupported()
+     */
+    public boolean isDirtyRegionRenderingActive() {
+        return dirtyRegionRenderingEnabled && isDirtyRegionTrackingSupported();
+    }
+
+    /**
+     * Subclasses that write the maps in their own render method without
+     * marking the changed tiles must override this to return false.
+     *
+     * @return true for this class
+     */
+    protected boolean isDirtyRegionTrackingSupported() {
+        return true;
+    }
+
+    /**
+     * Marks the whole APS frame pixmap as changed, for code that writes the
+     * pixmap array directly
+     */
+    public void markPixmapDirty() {
+        pixmapTiles.markAllDirty();
+    }
+
+    /**
+     * Marks the DVS event map tile of a pixel as changed. Subclasses that
+     * override updateEventMaps must call this for each pixel they write.
+     *
+     * @param index the pixmap index of the pixel
+     * @see #getPixMapIndex(int, int)
+     */
+    protected void markDvsEventsMapDirty(final int index) {
+        dvsEventsTiles.markDirtyIndex(index);
+    }
+
+    /**
+     * Converts the changed tiles of all maps to packed bytes
+     */
+    protected void packDirtyTiles() {
+        pixmapTiles.pack(pixmap.array());
+        dvsEventsTiles.pack(dvsEventsMap.array());
+        annotateTiles.pack(annotateMap.array());
+    }
+
+    /**
+     * @return the packed APS frame pixmap tiles
+     */
+    protected DirtyTileRGBAMap getPixmapTiles() {
+        return pixmapTiles;
+    }
+
+    /**
+     * @return the packed DVS event map tiles
+     */
+    protected DirtyTileRGBAMap getDvsEventsTiles() {
+        return dvsEventsTiles;
+    }
+
+    /**
+     * @return the packed annotation map tiles
+     */
+    protected DirtyTileRGBAMap getAnnotateTiles() {
+        return annotateTiles;
+    }
+
     public boolean isDisplayFrames() {
         return ((DvsDisplayConfigInterface) chip.getBiasgen()).isDisplayFrames();
     }
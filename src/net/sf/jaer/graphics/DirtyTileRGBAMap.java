@@ -0,0 +1,230 @@
+package net.sf.jaer.graphics;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2;
+
+/**
+ * Packed 8-bit RGBA copy of one of the float RGBA pixmaps of
+ * {@link DavisRenderer}, with bookkeeping of which 16x16 pixel tiles changed.
+ * <p>
+ * The renderer marks the tiles it writes. {@link #pack} then converts only the
+ * changed tiles to bytes, normally on the rendering thread, and
+ * {@link #upload} sends only the rows of packed tiles to a persistent texture
+ * through a persistent pixel buffer object on the GL thread. The GL texture
+ * format is 8 bits per channel anyway, so the result is the same as uploading
+ * the float map, at a quarter of the bandwidth and only for what changed.
+ * <p>
+ * The map also remembers which tiles were written since it was last cleared,
+ * so that {@link #clearTouched} can reset only those tiles of the float map.
+ */
+public class DirtyTileRGBAMap {
+
+    /**
+     * log2 of tile size in pixels
+     */
+    public static final int TILE_SHIFT = 4;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    private int width = 0, height = 0, widthShift = 0, tilesX = 0, tilesY = 0;
+    private byte[] packed = new byte[0];
+    private boolean[] dirty = new boolean[0]; // float map changed since last pack
+    private boolean[] pending = new boolean[0]; // packed but not yet uploaded
+    private boolean[] touched = new boolean[0]; // written since last clearTouched
+    private volatile boolean anyDirty = false;
+    private int clearedGeneration = -1; // generation of source used in last clearTouched, -1 for none
+
+    // GL objects, only used on GL thread
+    private int textureName = 0, pixelBufferName = 0;
+    private int glWidth = 0, glHeight = 0;
+
+    /**
+     * Sizes the map; does nothing if the size is unchanged. Everything is
+     * marked dirty after a new allocation.
+     *
+     * @param width the texture width, a power of two
+     * @param height the texture height
+     */
+    public synchronized void allocate(final int width, final int height) {
+        if ((width == this.width) && (height == this.height)) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        widthShift = Integer.numberOfTrailingZeros(width);
+        tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        packed = new byte[4 * width * height];
+        dirty = new boolean[tilesX * tilesY];
+        pending = new boolean[tilesX * tilesY];
+        touched = new boolean[tilesX * tilesY];
+        clearedGeneration = -1;
+        markAllDirty();
+    }
+
+    /**
+     * Marks the tile holding pixel x,y as changed. Out of range pixels are
+     * ignored.
+     */
+    public void markDirty(final int x, final int y) {
+        if ((x < 0) || (y < 0) || (x >= width) || (y >= height)) {
+            return;
+        }
+        final int t = ((y >> TILE_SHIFT) * tilesX) + (x >> TILE_SHIFT);
+        dirty[t] = true;
+        touched[t] = true;
+        anyDirty = true;
+    }
+
+    /**
+     * Marks the tile holding the pixel at a pixmap index as changed.
+     *
+     * @param index index of any component of the pixel in the RGBA pixmap
+     * @see DavisRenderer#getPixMapIndex(int, int)
+     */
+    public void markDirtyIndex(final int index) {
+        final int pixel = index >> 2;
+        markDirty(pixel & (width - 1), pixel >> widthShift);
+    }
+
+    /**
+     * Marks all tiles as changed
+     */
+    public void markAllDirty() {
+        Arrays.fill(dirty, true);
+        Arrays.fill(touched, true);
+        anyDirty = true;
+    }
+
+    /**
+     * Resets the tiles of map written since the last clear to the content of
+     * source, which has the same layout. If source has a different generation
+     * than the last time, i.e. its content changed, the whole map is copied.
+     *
+     * @param map the float RGBA map
+     * @param source the cleared content
+     * @param generation incremented by the caller each time source content
+     * changes
+     */
+    public synchronized void clearTouched(final float[] map, final float[] source, final int generation) {
+        final int n = 4 * width * height;
+        if (generation != clearedGeneration) {
+            System.arraycopy(source, 0, map, 0, n);
+            clearedGeneration = generation;
+            markAllDirty();
+            Arrays.fill(touched, false);
+            return;
+        }
+        for (int ty = 0; ty < tilesY; ty++) {
+            final int y0 = ty << TILE_SHIFT, y1 = Math.min(height, y0 + TILE_SIZE);
+            for (int tx = 0; tx < tilesX; tx++) {
+                final int t = (ty * tilesX) + tx;
+                if (!touched[t]) {
+                    continue;
+                }
+                final int x0 = tx << TILE_SHIFT, len = 4 * (Math.min(width, x0 + TILE_SIZE) - x0);
+                for (int y = y0; y < y1; y++) {
+                    final int i = 4 * ((y << widthShift) + x0);
+                    System.arraycopy(source, i, map, i, len);
+                }
+                touched[t] = false;
+                dirty[t] = true;
+                anyDirty = true;
+            }
+        }
+    }
+
+    /**
+     * Converts the changed tiles of the float RGBA map to packed bytes,
+     * clamping to 0-1 and rounding like GL does for a float texture upload.
+     *
+     * @param map the float RGBA map
+     */
+    public synchronized void pack(final float[] map) {
+        if (!anyDirty) {
+            return;
+        }
+        anyDirty = false;
+        final byte[] p = packed;
+        for (int ty = 0; ty < tilesY; ty++) {
+            final int y0 = ty << TILE_SHIFT, y1 = Math.min(height, y0 + TILE_SIZE);
+            for (int tx = 0; tx < tilesX; tx++) {
+                final int t = (ty * tilesX) + tx;
+                if (!dirty[t]) {
+                    continue;
+                }
+                dirty[t] = false; // cleared before packing so that a concurrent write marks it again
+                final int x0 = tx << TILE_SHIFT, len = 4 * (Math.min(width, x0 + TILE_SIZE) - x0);
+                for (int y = y0; y < y1; y++) {
+                    final int i0 = 4 * ((y << widthShift) + x0);
+                    for (int i = i0; i < (i0 + len); i++) {
+                        final float f = map[i];
+                        p[i] = (byte) (f <= 0 ? 0 : (f >= 1 ? 255 : (int) ((f * 255) + 0.5f)));
+                    }
+                }
+                pending[t] = true;
+            }
+        }
+    }
+
+    /**
+     * Uploads the packed tiles not yet uploaded to this map's texture, which
+     * is left bound to GL_TEXTURE_2D. Each band of tile rows is sent through
+     * the pixel buffer object and copied to the texture for the range of
+     * changed tiles in it.
+     *
+     * @param gl the GL context
+     * @return the texture name
+     */
+    public synchronized int upload(final GL2 gl) {
+        final int[] names = new int[1];
+        if (textureName == 0) {
+            gl.glGenTextures(1, names, 0);
+            textureName = names[0];
+            gl.glGenBuffers(1, names, 0);
+            pixelBufferName = names[0];
+        }
+        gl.glBindTexture(GL.GL_TEXTURE_2D, textureName);
+        gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
+        if ((glWidth != width) || (glHeight != height)) {
+            gl.glBindBuffer(GL2.GL_PIXEL_UNPACK_BUFFER, pixelBufferName);
+            gl.glBufferData(GL2.GL_PIXEL_UNPACK_BUFFER, packed.length, null, GL2.GL_STREAM_DRAW);
+            gl.glBindBuffer(GL2.GL_PIXEL_UNPACK_BUFFER, 0);
+            gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, width, height, 0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, ByteBuffer.wrap(packed));
+            glWidth = width;
+            glHeight = height;
+            Arrays.fill(pending, false);
+            return textureName;
+        }
+        gl.glBindBuffer(GL2.GL_PIXEL_UNPACK_BUFFER, pixelBufferName);
+        gl.glPixelStorei(GL2.GL_UNPACK_ROW_LENGTH, width);
+        for (int ty = 0; ty < tilesY; ty++) {
+            int tx0 = -1, tx1 = -1;
+            for (int tx = 0; tx < tilesX; tx++) {
+                final int t = (ty * tilesX) + tx;
+                if (pending[t]) {
+                    if (tx0 < 0) {
+                        tx0 = tx;
+                    }
+                    tx1 = tx;
+                    pending[t] = false;
+                }
+            }
+            if (tx0 < 0) {
+                continue;
+            }
+            final int y0 = ty << TILE_SHIFT, h = Math.min(height, y0 + TILE_SIZE) - y0;
+            final int x0 = tx0 << TILE_SHIFT, w = Math.min(width, (tx1 + 1) << TILE_SHIFT) - x0;
+            final int offset = 4 * (y0 << widthShift), len = 4 * (h << widthShift);
+            gl.glBufferSubData(GL2.GL_PIXEL_UNPACK_BUFFER, offset, len, ByteBuffer.wrap(packed, offset, len));
+            gl.glPixelStorei(GL2.GL_UNPACK_SKIP_PIXELS, x0);
+            gl.glTexSubImage2D(GL.GL_TEXTURE_2D, 0, x0, y0, w, h, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, offset);
+        }
+        gl.glPixelStorei(GL2.GL_UNPACK_SKIP_PIXELS, 0);
+        gl.glPixelStorei(GL2.GL_UNPACK_ROW_LENGTH, 0);
+        gl.glBindBuffer(GL2.GL_PIXEL_UNPACK_BUFFER, 0);
+        return textureName;
+    }
+}
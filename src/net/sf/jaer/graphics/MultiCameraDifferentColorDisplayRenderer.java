@@ -50,6 +50,15 @@ public class MultiCameraDifferentColorDisplayRenderer extends DavisRenderer{
 
     }
 
+    /**
+     * This renderer writes the maps in its own render method without marking
+     * the changed tiles
+     */
+    @Override
+    protected boolean isDirtyRegionTrackingSupported() {
+        return false;
+    }
+
     @Override
     public synchronized void render (EventPacket packet){
    
@@ -63,6 +63,15 @@ public class MultiViewerFromMultiCamera extends DavisRenderer{
       
     private int lastPrintedBadEventCount = 0;
     
+    /**
+     * This renderer places the views of the cameras side by side in the maps,
+     * so the tiles cannot be found from the event addresses
+     */
+    @Override
+    protected boolean isDirtyRegionTrackingSupported() {
+        return false;
+    }
+
     @Override
     protected int getIndex(final BasicEvent ep) {
         MultiCameraApsDvsEvent e = (MultiCameraApsDvsEvent) ep;
@@ -46,6 +46,15 @@ public class MulticameraDavisRenderer extends DavisRenderer{
         createDisparityColors();
     }
 
+    /**
+     * This renderer writes the maps in its own render method without marking
+     * the changed tiles
+     */
+    @Override
+    protected boolean isDirtyRegionTrackingSupported() {
+        return false;
+    }
+
     @Override
     public synchronized void render (EventPacket packet){
         if ( packet == null ){
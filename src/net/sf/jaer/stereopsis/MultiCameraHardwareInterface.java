@@ -21,7 +21,7 @@ import java.util.logging.Logger;
 import net.sf.jaer.aemonitor.AEListener;
 import net.sf.jaer.aemonitor.AEMonitorInterface;
 import net.sf.jaer.aemonitor.AEPacketRaw;
-import net.sf.jaer.aemonitor.EventRaw;
+import net.sf.jaer.aemonitor.AEStreamMerger;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.MultiCameraApsDvsEvent;
 import net.sf.jaer.event.MultiCameraEvent;
@@ -43,8 +43,9 @@ from the devices owing to buffering.
  * <p>
  * Depending on the setting of
  * the flag in {@link #setIgnoreTimestampNonmonotonicity(boolean)}, events from one source (say the left eye)
- * are held back until it is assured there are no earlier events from the other source
-(the right eye). Setting this flag to ignore non-monotonicity substantially reduces computational overhead,
+ * are held back until it is assured there are no earlier events from the other sources,
+ * or for at most the lateness bound of the {@link AEStreamMerger} (see {@link #getStreamMerger()}).
+ * Setting this flag to ignore non-monotonicity substantially reduces computational overhead,
  * but affects many other aspects of jAER regarding it's inbuilt assumption that time increases monotonically.
  *
  * @author tobi
@@ -60,9 +61,9 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
     private AEMonitorInterface[] aemons = new AEMonitorInterface[NUM_CAMERAS];
     private boolean ignoreTimestampNonmonotonicity = false;
     private int RESET_DELAY_MS = 200; 
-    /** These FIFOs hold packets which are references to the packets from each source */
+    /** Merges the events from the cameras in timestamp order */
+    private AEStreamMerger merger;
     /** Initial capacity of output buffer that is reused for outputting merged event stream */
-    private AEFifo[] aeFifos = new AEFifo[NUM_CAMERAS];    // this packet is re-used for outputting the merged events
     public final int INITIAL_CAPACITY = CypressFX3.AE_BUFFER_SIZE;
     private AEPacketRaw aeOut = new AEPacketRaw(INITIAL_CAPACITY * NUM_CAMERAS);//    AEPacketRaw bufLeft=new AEPacketRaw(BUFFER_CAPACITY); // holds events that arrive after the last event from the other packet.
     boolean openMultipleView=true;
@@ -85,8 +86,18 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
     public MultiCameraHardwareInterface(AEMonitorInterface[] aemons) {
         for (int i = 0; i < this.aemons.length; i++) {
             this.aemons[i] = aemons[i];
-            aeFifos[i] = new AEFifo(null);
         }
+        merger = new AEStreamMerger(this.aemons.length);
+    }
+
+    /**
+     * Returns the merger of the camera streams, e.g. to set its lateness
+     * bound or read its counters of late and dropped events.
+     *
+     * @return the merger
+     */
+    public AEStreamMerger getStreamMerger() {
+        return merger;
     }
 
     /**
@@ -108,99 +119,8 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
         return support;
     }
 
-    /** A FIFO for raw events. Encapsulates an AEPacketRaw so
-     * that it is a kind of FIFO (at least FO).
-     * We can popNextEvent events from
-     * the AEFifo in their order and check if there are any more available.
-     */
-    private final class AEFifo {
-
-        long timeAcquired = 0;
-        AEPacketRaw ae;
-        int next = 0;
-
-        /** Constructs a new AE FIFO from an AEPacketRaw
-        @param ae the raw packet to use as source of events
-         */
-        AEFifo(AEPacketRaw ae) {
-            this.ae = ae;
-            next = 0;
-            timeAcquired = System.currentTimeMillis();
-        }
-
-        /** @return next event, or null if there are no more */
-        final EventRaw popNextEvent() {
-            if (next < ae.getNumEvents()) {
-                return ae.getEvent(next++);
-            } else {
-                return null;
-            }
-        }
-
-        final boolean isEmpty() {
-            if (ae == null || next >= ae.getNumEvents()) {
-                return true;
-            } else {
-                return false;
-            }
-        }
-
-        /** resets FIFO so that next event is first event
-        @param ae the raw packet that will be the new source of events
-         */
-        final void reset(AEPacketRaw ae) {
-            this.ae = ae;
-            next = 0;
-            timeAcquired = System.currentTimeMillis();
-        }
-
-        final int peekNextTimestamp() {
-            return ae.getEvent(next).timestamp;
-        }
-
-        final long getTimeAcquired() {
-            return timeAcquired;
-        }
-
-        @Override
-        final public String toString() {
-            return "AEFifo with timeAcquired=" + timeAcquired + " next=" + next + " holding " + ae.toString();
-        }
-
-        final public int size() {
-            if (ae == null) {
-                return 0;
-            }
-            return ae.getNumEvents();
-        }
-    }
     /** the two inputs have their timestamps reset when the first timestamp of each most recent packet differs by this much */
     public static final int RESET_TIMESTAMPS_THRESHOLD_DT_US = 100000;
-    int[] timestamps, addresses;
-    int count = 0;
-
-    // helper methods for cheap additions to output packet, to avoid range checks and ensureCapacity calls on every event
-    private void initAdd() {
-        aeOut.clear();
-        int cap = 0;
-        for (AEFifo f : aeFifos) {
-            cap += f.size();
-        }
-        aeOut.ensureCapacity(cap); // preallocate arrays to ensure we can write to the timestamps/addressses arrays
-        timestamps = aeOut.getTimestamps();
-        addresses = aeOut.getAddresses();
-        this.count = 0;
-    }
-
-    private void finishAdd() {
-        aeOut.setNumEvents(count);
-    }
-
-    private void addEvent(AEFifo f) {
-        EventRaw event = f.popNextEvent();     
-        timestamps[count] = event.timestamp;        
-        addresses[count++] = event.address;
-    }
 
     /** @return an AEPacketRaw of events from both devices, sorted by timestamp.
      * As a hack (hopefully temporary), the MSB is set on the raw addresses of the events from the right device. 
@@ -235,92 +155,54 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
                 aemon.acquireAvailableEventsFromDriver();
             }
 
-            for (AEFifo f : aeFifos) {
-                f.reset(null); // isEmpty will return true after this reset
-            }
+            merger.clear(); // discard the events from before the reset
             try {
                 Thread.sleep(RESET_DELAY_MS);
             } catch (InterruptedException e) {
             }
         } // requestTimestampReset
 
-        // we only popNextEvent data from a camera if we have used up all the data from it that we got before.
-        // we can only output an event (to the user) if we know it is the next event, meaning it has to be
-        // followed by an event from the other cameras.
-
-        initAdd();
-        // popNextEvent available events from all sources
+        // the merger copies the events of each camera and releases them once no earlier event can come from another camera,
+        // so we can acquire from all cameras on every call
 
+        if (ignoreTimestampNonmonotonicity) {
+            merger.flush(aeOut); // events left from when ordering was on
+        }
         for (int i = 0; i < aemons.length; i++) {
-            if (aeFifos[i].isEmpty()) {
-                aeFifos[i].reset(aemons[i].acquireAvailableEventsFromDriver());
-                labelCamera(aeFifos[i].ae, i);
-                if (requestTimestampReset) {
-                    log.info("after timestampsReset camera " + i + " acquired " + aeFifos[i].ae + " t0,t1=" + aeFifos[i].ae.getFirstTimestamp() + ", " + aeFifos[i].ae.getLastTimestamp());
-                }
+            AEPacketRaw packet = aemons[i].acquireAvailableEventsFromDriver();
+            if (packet == null) {
+                continue;
+            }
+            labelCamera(packet, i);
+            if (requestTimestampReset) {
+                log.info("after timestampsReset camera " + i + " acquired " + packet + " t0,t1=" + packet.getFirstTimestamp() + ", " + packet.getLastTimestamp());
+            }
+            if (ignoreTimestampNonmonotonicity) {
+                // here just ignore temporal ordering, pass out events from all interfaces, in order of cameras
+                appendEvents(packet);
+            } else {
+                merger.addPacket(i, packet);
             }
         }
 
         requestTimestampReset = false;
 
-//       // if we haven't gotten events from one interface for too long, reset timestamps 
-//        if( !aeRight.isEmpty()  && !aeLeft.isEmpty() && (aeRight.ae.getNumEvents()>2 || aeLeft.ae.getNumEvents()>2) ){ 
-//            // && (Math.abs(aeRight.getTimeAcquired()-aeLeft.getTimeAcquired())<RESET_TIMESTAMPS_THRESHOLD_DT_US/1000)
-//            int dt=Math.abs(aeRight.ae.getLastTimestamp()-aeLeft.ae.getLastTimestamp());
-//            if(dt>RESET_TIMESTAMPS_THRESHOLD_DT_US){
-//                log.warning("resetTimestamps because dt="+dt+" > "+RESET_TIMESTAMPS_THRESHOLD_DT_US);
-//                resetTimestamps();
-//            }
-//        }
-
-        if (ignoreTimestampNonmonotonicity) {
-            // here just igmore temporal ordering, pass out events from both interfaces, in order of cameras
-            for (AEFifo f : aeFifos) {
-                while (!f.isEmpty()) {
-                    addEvent(f);
-                }
-            }
-
-        } else {
-            // here we order the events and only pass out an event from an interface if there is a later event from the other interface
-            // each time we pop event we also check if fifo is empty. If so, we break from this loop since there is the possibility that an earlier event
-            // could come from this stream than from another one.
-            boolean eventsAvailable = isEventsFromAllAvailable();
-            while (eventsAvailable) {
-                // while both packets still have events, pick the earliest event and write it out
-                int tsMin = Integer.MAX_VALUE;
-                int ind = 0;
-                for (int i = 0; i < aeFifos.length; i++) {
-                    AEFifo f = aeFifos[i];
-                    int t = f.peekNextTimestamp();
-                    if (t < tsMin) {
-                        tsMin = t;
-                        ind = i;                        
-                    }
-                }
-                if (count==timestamps.length) {
-                    break;
-                }
-                addEvent(aeFifos[ind]);
-                if (aeFifos[ind].isEmpty()) {
-                    eventsAvailable = false;
-                    break;
-                }
-            }
+        if (!ignoreTimestampNonmonotonicity) {
+            merger.merge(aeOut);
         }
-        finishAdd();
         return aeOut;
     }
 
-    private boolean isEventsFromAllAvailable() {
-        boolean allHaveEvent = true;
-        for (AEFifo f : aeFifos) {
-            if (f.isEmpty()) {
-                allHaveEvent = false;
-                break;
-            }
-        }
-        return allHaveEvent;
+    /**
+     * Appends the events of a packet to aeOut, without the time order check of
+     * AEPacketRaw.append
+     */
+    private void appendEvents(AEPacketRaw packet) {
+        final int n = aeOut.getNumEvents(), m = packet.getNumEvents();
+        aeOut.ensureCapacity(n + m);
+        System.arraycopy(packet.getAddresses(), 0, aeOut.getAddresses(), n, m);
+        System.arraycopy(packet.getTimestamps(), 0, aeOut.getTimestamps(), n, m);
+        aeOut.setNumEvents(n + m);
     }
 
     public int getNumEventsAcquired() {
@@ -18,7 +18,7 @@ import java.util.logging.Logger;
 import net.sf.jaer.aemonitor.AEListener;
 import net.sf.jaer.aemonitor.AEMonitorInterface;
 import net.sf.jaer.aemonitor.AEPacketRaw;
-import net.sf.jaer.aemonitor.EventRaw;
+import net.sf.jaer.aemonitor.AEStreamMerger;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.hardwareinterface.HardwareInterfaceException;
 import net.sf.jaer.hardwareinterface.usb.ReaderBufferControl;
@@ -36,7 +36,7 @@ from the devices owing to buffering.
  * Depending on the setting of
  * the flag in {@link #setIgnoreTimestampNonmonotonicity(boolean)}, events from one source (say the left eye)
  * are held back until it is assured there are no earlier events from the other source
-(the right eye). Setting this flag to ignore non-monotonicity substantially reduces computational overhead,
+(the right eye), or for at most the lateness bound of the {@link AEStreamMerger} (see {@link #getStreamMerger()}). Setting this flag to ignore non-monotonicity substantially reduces computational overhead,
  * but affects many other aspects of jAER regarding it's inbuilt assumption that time increases monotonically.
  *
  * @author tobi
@@ -73,11 +73,10 @@ public class StereoPairHardwareInterface implements AEMonitorInterface,ReaderBuf
     public StereoPairHardwareInterface (AEMonitorInterface left,AEMonitorInterface right){
         aemonLeft = left;
         aemonRight = right;
-        aeLeft = new AEFifo(null);
-        aeRight = new AEFifo(null);
     }
-    /** These FIFOs hold packets which are references to the packets from each source */
-    private AEFifo aeLeft, aeRight;    // this packet is re-used for outputting the merged events
+    /** Merges the events from the two eyes in timestamp order; stream 0 is the left eye, stream 1 the right eye */
+    private AEStreamMerger merger = new AEStreamMerger(2);
+    // this packet is re-used for outputting the merged events
     private AEPacketRaw aeOut = new AEPacketRaw(INITIAL_CAPACITY * 2);//    AEPacketRaw bufLeft=new AEPacketRaw(BUFFER_CAPACITY); // holds events that arrive after the last event from the other packet.
 
     public AEMonitorInterface getAemonLeft (){
@@ -114,94 +113,19 @@ public class StereoPairHardwareInterface implements AEMonitorInterface,ReaderBuf
     public PropertyChangeSupport getReaderSupport (){
         return support;
     }
-    /** A FIFO for raw events. Encapsulates an AEPacketRaw so
-     * that it is a kind of FIFO (at least FO).
-     * We can popNextEvent events from
-     * the AEFifo in their order and check if there are any more available.
-     */
-    private final class AEFifo{
-        long timeAcquired = 0;
-        AEPacketRaw ae;
-        int next = 0;
-
-        /** Constructs a new AE FIFO from an AEPacketRaw
-        @param ae the raw packet to use as source of events
-         */
-        AEFifo (AEPacketRaw ae){
-            this.ae = ae;
-            next = 0;
-            timeAcquired = System.currentTimeMillis();
-        }
-
-        /** @return next event, or null if there are no more */
-        final EventRaw popNextEvent (){
-            if ( next < ae.getNumEvents() ){
-                return ae.getEvent(next++);
-            } else{
-                return null;
-            }
-        }
-
-        final boolean isEmpty (){
-            if ( ae == null || next >= ae.getNumEvents() ){
-                return true;
-            } else{
-                return false;
-            }
-        }
-
-        /** resets FIFO so that next event is first event
-        @param ae the raw packet that will be the new source of events
-         */
-        final void reset (AEPacketRaw ae){
-            this.ae = ae;
-            next = 0;
-            timeAcquired = System.currentTimeMillis();
-        }
 
-        final int peekNextTimestamp (){
-            return ae.getEvent(next).timestamp;
-        }
-
-        final long getTimeAcquired (){
-            return timeAcquired;
-        }
-
-        @Override
-        final public String toString (){
-            return "AEFifo with timeAcquired=" + timeAcquired + " next=" + next + " holding " + ae.toString();
-        }
-
-        final public int size (){
-            if ( ae == null ){
-                return 0;
-            }
-            return ae.getNumEvents();
-        }
+    /**
+     * Returns the merger of the two eyes, e.g. to set its lateness bound or
+     * read its counters of late and dropped events.
+     *
+     * @return the merger
+     */
+    public AEStreamMerger getStreamMerger (){
+        return merger;
     }
+
     /** the two inputs have their timestamps reset when the first timestamp of each most recent packet differs by this much */
     public static final int RESET_TIMESTAMPS_THRESHOLD_DT_US = 100000;
-    int[] timestamps, addresses;
-    int count = 0;
-
-    // helper methods for cheap additions to output packet, to avoid range checks and ensureCapacity calls on every event
-    private void initAdd (){
-        aeOut.clear();
-        aeOut.ensureCapacity(aeLeft.size() + aeRight.size()); // preallocate arrays to ensure we can write to the timestamps/addressses arrays
-        timestamps = aeOut.getTimestamps();
-        addresses = aeOut.getAddresses();
-        count = 0;
-    }
-
-    private void finishAdd (){
-        aeOut.setNumEvents(count);
-    }
-
-    private void addEvent (AEFifo f){
-        EventRaw event = f.popNextEvent();
-        timestamps[count] = event.timestamp;
-        addresses[count++] = event.address;
-    }
 
     /** @return an AEPacketRaw of events from both devices, sorted by timestamp.
      * As a hack (hopefully temporary), the MSB is set on the raw addresses of the events from the right device. 
@@ -214,7 +138,6 @@ public class StereoPairHardwareInterface implements AEMonitorInterface,ReaderBuf
         if ( !aemonRight.isEventAcquisitionEnabled() ){
             getAemonRight().setEventAcquisitionEnabled(true);
         }
-        int nleft = 0, nright = 0;
 
         if ( requestTimestampReset ){
             log.info("resetting timestamps on both interfaces RIGHT=" + getAemonRight() + " LEFT=" + getAemonLeft());
@@ -234,8 +157,7 @@ public class StereoPairHardwareInterface implements AEMonitorInterface,ReaderBuf
             getAemonLeft().acquireAvailableEventsFromDriver();
             getAemonRight().acquireAvailableEventsFromDriver(); // flush events that may be old
 
-            aeRight.reset(null); // isEmpty will return true
-            aeLeft.reset(null);
+            merger.clear(); // discard the events from before the reset
 
             try{
                 Thread.sleep(RESET_DELAY_MS);
@@ -259,71 +181,52 @@ public class StereoPairHardwareInterface implements AEMonitorInterface,ReaderBuf
 //            }
         } // requestTimestampReset
 
-        // we only popNextEvent data from an eye if we have used up all the data from it that we got before.
-        // we can only output an event (to the user) if we know it is the next event, meaning it has to be
-        // followed by an event from the other retina.
-
-        initAdd();
-        // popNextEvent available events from both sources
-        if ( aeLeft.isEmpty() ){
-            aeLeft.reset(getAemonLeft().acquireAvailableEventsFromDriver());
-            labelLeftEye(aeLeft.ae);
+        // the merger copies the events of each eye and releases them once no earlier event can come from the other eye,
+        // so we can acquire from both eyes on every call
+        AEPacketRaw left = getAemonLeft().acquireAvailableEventsFromDriver();
+        AEPacketRaw right = getAemonRight().acquireAvailableEventsFromDriver();
+        if ( left != null ){
+            labelLeftEye(left);
             if ( requestTimestampReset ){
-                log.info("after timestampsReset LEFT acquired " + aeLeft.ae + " t0,t1=" + aeLeft.ae.getFirstTimestamp() + ", " + aeLeft.ae.getLastTimestamp());
+                log.info("after timestampsReset LEFT acquired " + left + " t0,t1=" + left.getFirstTimestamp() + ", " + left.getLastTimestamp());
             }
         }
-        if ( aeRight.isEmpty() ){
-            aeRight.reset(getAemonRight().acquireAvailableEventsFromDriver());
-            labelRightEye(aeRight.ae);
+        if ( right != null ){
+            labelRightEye(right);
             if ( requestTimestampReset ){
-                log.info("after timestampsReset RIGHT acquired " + aeRight.ae + " t0,t1=" + aeRight.ae.getFirstTimestamp() + ", " + aeRight.ae.getLastTimestamp());
+                log.info("after timestampsReset RIGHT acquired " + right + " t0,t1=" + right.getFirstTimestamp() + ", " + right.getLastTimestamp());
             }
         }
 
         requestTimestampReset = false;
 
-//       // if we haven't gotten events from one interface for too long, reset timestamps 
-//        if( !aeRight.isEmpty()  && !aeLeft.isEmpty() && (aeRight.ae.getNumEvents()>2 || aeLeft.ae.getNumEvents()>2) ){ 
-//            // && (Math.abs(aeRight.getTimeAcquired()-aeLeft.getTimeAcquired())<RESET_TIMESTAMPS_THRESHOLD_DT_US/1000)
-//            int dt=Math.abs(aeRight.ae.getLastTimestamp()-aeLeft.ae.getLastTimestamp());
-//            if(dt>RESET_TIMESTAMPS_THRESHOLD_DT_US){
-//                log.warning("resetTimestamps because dt="+dt+" > "+RESET_TIMESTAMPS_THRESHOLD_DT_US);
-//                resetTimestamps();
-//            }
-//        }
-
         if ( !ignoreTimestampNonmonotonicity ){
-            // here we order the events and only pass out an event from an interface if there is a later event from the other interface
-            while ( !aeLeft.isEmpty() && !aeRight.isEmpty() ){
-                // while both packets still have events, pick the earliest event and write it out
-                int tsLeft = aeLeft.peekNextTimestamp(), tsRight = aeRight.peekNextTimestamp(); // TODO if there is a big wrap in one interface then times can differ by 1 hour!
-                if((long)tsLeft*(long)tsRight<0) {
-                    log.warning("huge time difference between left and right eyes detected, flushing both eye event buffers");
-                    aeLeft.reset(null);
-                    aeRight.reset(null);
-                    return aeOut;
-                }
-                if ( tsLeft < tsRight ){
-                    addEvent(aeLeft);
-                    nleft++;
-                } else{
-                    addEvent(aeRight);
-                    nright++;
-                }
-            }
+            // here we order the events and only pass out an event from an interface if there is a later event from the other interface,
+            // or it is older than the lateness bound. A timestamp wrap on one interface makes the merger discard its buffered events.
+            merger.addPacket(0,left);
+            merger.addPacket(1,right);
+            merger.merge(aeOut);
         } else{
             // here just igmore temporal ordering, pass out events from both interfaces, right first
-            while ( !aeRight.isEmpty() ){
-                addEvent(aeRight);
-            }
-            while ( !aeLeft.isEmpty() ){
-                addEvent(aeLeft);
-            }
+            merger.flush(aeOut); // events left from when ordering was on
+            appendEvents(right);
+            appendEvents(left);
         }
-        finishAdd();
         return aeOut;
     }
 
+    /** Appends the events of a packet to aeOut, without the time order check of AEPacketRaw.append */
+    private void appendEvents (AEPacketRaw packet){
+        if ( packet == null ){
+            return;
+        }
+        final int n = aeOut.getNumEvents(), m = packet.getNumEvents();
+        aeOut.ensureCapacity(n + m);
+        System.arraycopy(packet.getAddresses(),0,aeOut.getAddresses(),n,m);
+        System.arraycopy(packet.getTimestamps(),0,aeOut.getTimestamps(),n,m);
+        aeOut.setNumEvents(n + m);
+    }
+
     public int getNumEventsAcquired (){
         return aeOut.getNumEvents();
     }
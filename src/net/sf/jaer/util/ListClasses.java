@@ -9,6 +9,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -74,6 +75,18 @@ public class ListClasses {
      * @return list of all fully qualified class names
      */
     public static List<String> listClasses() {
+        return listClasses(Collections.<File>emptyList());
+    }
+
+    /**
+     * Iterate over the system classpath defined by "java.class.path" searching
+     * for all .class files available, except in some classpath elements
+     *
+     * @param excludedClasspathElements the folders or jar files not to search,
+     * e.g. one whose classes are already known
+     * @return list of all fully qualified class names
+     */
+    public static List<String> listClasses(Collection<File> excludedClasspathElements) {
         List<String> classNames = new ArrayList<String>(INIT_SIZE);
         try {
             // get the system classpath
@@ -95,6 +108,10 @@ public class ListClasses {
                 }
                 File classpathElement = new File(token);
                 if(classpathElement.isFile() && !token.endsWith(INCLUDED_JAR)) continue; // skip all files that are not jAER.jar
+                if (isExcluded(classpathElement, excludedClasspathElements)) {
+                    log.log(Level.INFO, "skipping excluded classpath element {0}", token);
+                    continue;
+                }
                 classNames.addAll(classpathElement.isDirectory()
                         //?loadClassesFromDir(classpathElement.list(new CLASSFilter()))
                         ? loadClassesFromDir(null, classpathElement, classpathElement)
@@ -109,6 +126,21 @@ public class ListClasses {
         return classNames;
     }
 
+    private static boolean isExcluded(File classpathElement, Collection<File> excludedClasspathElements) {
+        for (File f : excludedClasspathElements) {
+            try {
+                if (f.getCanonicalFile().equals(classpathElement.getCanonicalFile())) {
+                    return true;
+                }
+            } catch (IOException e) {
+                if (f.getAbsoluteFile().equals(classpathElement.getAbsoluteFile())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private static List<String> loadClassesFromJar(File jarFile) {
         List<String> files = new ArrayList<String>(INIT_SIZE);
         try {
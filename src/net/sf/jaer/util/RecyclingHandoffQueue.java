@@ -0,0 +1,347 @@
+package net.sf.jaer.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A bounded hand-off queue between two threads (a producer stage and a
+ * consumer stage) that recycles the buffers that are passed through it, so that
+ * steady state operation does not allocate any memory.
+ * <p>
+ * The producer obtains an empty buffer with {@link #obtain()}, fills it, and
+ * hands it to the consumer with one of the offer methods. The consumer
+ * takes filled buffers with {@link #poll()}, {@link #poll(long, TimeUnit)} or
+ * {@link #pollLatest()} and gives them back with {@link #recycle(Object)} when
+ * it is done with them. Buffers are not cleared by the queue; the producer is
+ * responsible for overwriting the old contents.
+ * <p>
+ * The queue keeps statistics of the queue depth and the latency from hand-off
+ * to removal, and counts the buffers that were dropped because the consumer
+ * could not keep up.
+ *
+ * @param <T> the type of buffer, e.g. AEPacketRaw or EventPacket
+ */
+public class RecyclingHandoffQueue<T> {
+
+    /** Time constant in samples of the running latency average */
+    private static final float LATENCY_MIXING_FACTOR = 0.05f;
+
+    private final String name;
+    private final Supplier<T> factory;
+    private final Object[] items;
+    private final long[] handoffTimesNs;
+    private int head = 0, count = 0;
+    private final ArrayDeque<T> free = new ArrayDeque();
+
+    private long numHandedOff = 0, numDropped = 0, numAllocated = 0;
+    private int maxDepth = 0;
+    private float averageLatencyUs = 0;
+    private long maxLatencyNs = 0;
+
+    /**
+     * Constructs a new queue.
+     *
+     * @param name the name used in toString and logging
+     * @param capacity the maximum number of filled buffers that can be waiting
+     * for the consumer
+     * @param factory constructs new buffers when the pool of recycled buffers
+     * is empty
+     */
+    public RecyclingHandoffQueue(String name, int capacity, Supplier<T> factory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+        }
+        this.name = name;
+        this.factory = factory;
+        items = new Object[capacity];
+        handoffTimesNs = new long[capacity];
+    }
+
+    /**
+     * Returns an empty buffer for the producer to fill, either a recycled one
+     * or a newly constructed one.
+     *
+     * @return the buffer; its contents are whatever it held last
+     */
+    public T obtain() {
+        synchronized (free) {
+            T t = free.pollFirst();
+            if (t != null) {
+                return t;
+            }
+            numAllocated++;
+        }
+        return factory.get();
+    }
+
+    /**
+     * Returns a buffer to the pool so that it can be reused by the producer.
+     *
+     * @param item the buffer, null is ignored
+     */
+    public void recycle(T item) {
+        if (item == null) {
+            return;
+        }
+        synchronized (free) {
+            free.addFirst(item);
+        }
+    }
+
+    /**
+     * Hands a filled buffer to the consumer if there is room, without
+     * blocking.
+     *
+     * @param item the filled buffer
+     * @return true if the buffer was queued, false if the queue was full, in
+     * which case the caller still owns the buffer
+     */
+    public synchronized boolean offer(T item) {
+        if (count == items.length) {
+            return false;
+        }
+        enqueue(item);
+        return true;
+    }
+
+    /**
+     * Hands a filled buffer to the consumer, discarding (recycling) the oldest
+     * queued buffer if the queue is full. Use this when the consumer only needs
+     * the most recent data, e.g. for rendering.
+     *
+     * @param item the filled buffer
+     * @return true if an older buffer was dropped to make room
+     */
+    public synchronized boolean offerReplacingOldest(T item) {
+        boolean dropped = false;
+        if (count == items.length) {
+            recycle(dequeue());
+            numDropped++;
+            dropped = true;
+        }
+        enqueue(item);
+        return dropped;
+    }
+
+    /**
+     * Hands a filled buffer to the consumer, waiting up to the timeout for
+     * room if the queue is full.
+     *
+     * @param item the filled buffer
+     * @param timeout the maximum time to wait
+     * @param unit the unit of timeout
+     * @return true if the buffer was queued, false if the timeout expired, in
+     * which case the caller still owns the buffer
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNs = unit.toNanos(timeout);
+        final long endNs = System.nanoTime() + remainingNs;
+        while (count == items.length) {
+            if (remainingNs <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNs);
+            remainingNs = endNs - System.nanoTime();
+        }
+        enqueue(item);
+        return true;
+    }
+
+    /**
+     * Returns the oldest filled buffer without blocking.
+     *
+     * @return the buffer, or null if none is queued
+     */
+    public synchronized T poll() {
+        if (count == 0) {
+            return null;
+        }
+        return dequeue();
+    }
+
+    /**
+     * Returns the oldest filled buffer, waiting up to the timeout for one to be
+     * handed off.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of timeout
+     * @return the buffer, or null if the timeout expired
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!awaitItem(timeout, unit)) {
+            return null;
+        }
+        return dequeue();
+    }
+
+    /**
+     * Returns the newest filled buffer without blocking and recycles all older
+     * ones. The recycled buffers are counted as dropped.
+     *
+     * @return the newest buffer, or null if none is queued
+     */
+    public synchronized T pollLatest() {
+        if (count == 0) {
+            return null;
+        }
+        while (count > 1) {
+            recycle(dequeue());
+            numDropped++;
+        }
+        return dequeue();
+    }
+
+    /**
+     * Waits up to the timeout for a buffer to be handed off, then returns the
+     * newest filled buffer and recycles all older ones. The recycled buffers
+     * are counted as dropped.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of timeout
+     * @return the newest buffer, or null if the timeout expired
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized T pollLatest(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!awaitItem(timeout, unit)) {
+            return null;
+        }
+        return pollLatest();
+    }
+
+    /**
+     * Recycles all queued buffers, e.g. when the producer or consumer is
+     * stopped.
+     */
+    public synchronized void clear() {
+        while (count > 0) {
+            recycle(dequeue());
+        }
+    }
+
+    /**
+     * Waits for count to become nonzero; must be called holding the monitor.
+     *
+     * @return true if there is an item, false if the timeout expired
+     */
+    private boolean awaitItem(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNs = unit.toNanos(timeout);
+        final long endNs = System.nanoTime() + remainingNs;
+        while (count == 0) {
+            if (remainingNs <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNs);
+            remainingNs = endNs - System.nanoTime();
+        }
+        return true;
+    }
+
+    private void enqueue(T item) {
+        final int tail = (head + count) % items.length;
+        items[tail] = item;
+        handoffTimesNs[tail] = System.nanoTime();
+        count++;
+        numHandedOff++;
+        if (count > maxDepth) {
+            maxDepth = count;
+        }
+        notifyAll();
+    }
+
+    private T dequeue() {
+        @SuppressWarnings("unchecked")
+        final T item = (T) items[head];
+        final long latencyNs = System.nanoTime() - handoffTimesNs[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        count--;
+        averageLatencyUs += LATENCY_MIXING_FACTOR * ((latencyNs * 1e-3f) - averageLatencyUs);
+        if (latencyNs > maxLatencyNs) {
+            maxLatencyNs = latencyNs;
+        }
+        notifyAll();
+        return item;
+    }
+
+    /**
+     * @return the number of filled buffers currently waiting for the consumer
+     */
+    public synchronized int getDepth() {
+        return count;
+    }
+
+    /**
+     * @return the maximum number of buffers that can be waiting
+     */
+    public int getCapacity() {
+        return items.length;
+    }
+
+    /**
+     * @return the maximum depth since construction or the last
+     * {@link #resetStatistics()}
+     */
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the running average of the time in us between hand-off and
+     * removal by the consumer
+     */
+    public synchronized float getAverageLatencyUs() {
+        return averageLatencyUs;
+    }
+
+    /**
+     * @return the maximum latency in us since construction or the last
+     * {@link #resetStatistics()}
+     */
+    public synchronized float getMaxLatencyUs() {
+        return maxLatencyNs * 1e-3f;
+    }
+
+    /**
+     * @return the total number of buffers handed to the consumer
+     */
+    public synchronized long getNumHandedOff() {
+        return numHandedOff;
+    }
+
+    /**
+     * @return the number of buffers that were discarded because the consumer
+     * did not keep up
+     */
+    public synchronized long getNumDropped() {
+        return numDropped;
+    }
+
+    /**
+     * @return the number of buffers constructed by the factory
+     */
+    public long getNumAllocated() {
+        synchronized (free) {
+            return numAllocated;
+        }
+    }
+
+    /**
+     * Resets the hand-off, drop and maximum statistics.
+     */
+    public synchronized void resetStatistics() {
+        numHandedOff = 0;
+        numDropped = 0;
+        maxDepth = count;
+        maxLatencyNs = 0;
+        averageLatencyUs = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: depth %d/%d (max %d), latency avg %.0fus max %.0fus, %d handed off, %d dropped",
+                name, count, items.length, maxDepth, averageLatencyUs, maxLatencyNs * 1e-3f, numHandedOff, numDropped);
+    }
+}
@@ -25,6 +25,10 @@ import javax.swing.SwingWorker;
  * Finds subclasses of a given class name in classes on the loaded classpath.
  * Classes are cached in a HashMap to reduce cost of subsequent lookups.
  * <p>
+ * The subclasses are normally read from the {@link SubclassIndex} generated
+ * at build time; the classpath is only scanned if there is no index for the
+ * class or a rescan is requested.
+ * <p>
  * See http://www.javaworld.com/javaworld/javatips/jw-javatip113.html?page=2
  *
  * @author tobi
@@ -33,8 +37,6 @@ public class SubclassFinder {
 
     private static Preferences prefs = Preferences.userNodeForPackage(SubclassFinder.class); // used to store keys/values of cache filenames
     private final static Logger log = Logger.getLogger("SubclassFinder");
-// TODO needs a way of caching in preferences the list of classes and the number or checksum of classes,
-    // to reduce startup time, since this lookup of subclasses takes 10s of seconds on some machines
 
     private static HashMap<String, String> className2subclassListFileNameMap = null; // map from super class to filename of file that holds the subclasses
     private static final String SUBCLASS_FINDERFILENAME_HASH_MAP_PREFS_KEY = "SubclassFinder.filenameHashMap";
@@ -172,8 +174,27 @@ public class SubclassFinder {
                 log.warning("tried to find subclasses of null class name, returning empty list");
                 return classes;
             }
+            // see if the index generated at build time can be used, which avoids loading the classes it covers
+            File indexedClasspathElement = null;
+            final HashSet<String> indexedNames = new HashSet<>();
+            if (useCacheIfAvailable) {
+                ArrayList<ClassNameWithDescriptionAndDevelopmentStatus> indexed = SubclassIndex.getSubclasses(superClassName);
+                indexedClasspathElement = SubclassIndex.getClasspathElement(superClassName);
+                if (indexed != null && indexedClasspathElement != null) {
+                    classes.addAll(indexed);
+                    for (ClassNameWithDescriptionAndDevelopmentStatus c : indexed) {
+                        indexedNames.add(c.getClassName());
+                    }
+                    if (tableModel != null) {
+                        publish(indexed.toArray(new ClassNameWithDescriptionAndDevelopmentStatus[indexed.size()]));
+                    }
+                    log.info("Read " + classes.size() + " subclasses of " + superClassName + " from build-time index of " + indexedClasspathElement + " in " + (System.currentTimeMillis() - startTime) + "ms");
+                } else {
+                    indexedClasspathElement = null;
+                }
+            }
             // see if cache should be used
-            if (useCacheIfAvailable && className2subclassListFileNameMap != null) {
+            if (indexedClasspathElement == null && useCacheIfAvailable && className2subclassListFileNameMap != null) {
                 String cachefilename = className2subclassListFileNameMap.get(superClassName);
                 if (cachefilename == null) {
                     log.info("no cache file found for " + superClassName);
@@ -215,12 +236,18 @@ public class SubclassFinder {
                     log.info("Cache filename " + cachefilename + " does not lead to a readable file; will rescan entire classpath");
                 }
             }
-            log.info("No cache found for " + superClassName + "; now scanning entire classpath to build list of subclasses of " + superClassName);
             Class superClass = FastClassFinder.forName(superClassName);
-            List<String> allClasses = ListClasses.listClasses();  // expensive, must search all classpath and make big string array list
+            List<String> allClasses;
+            if (indexedClasspathElement != null) {
+                log.info("Scanning the rest of the classpath for subclasses of " + superClassName + " that are not in the build-time index");
+                allClasses = ListClasses.listClasses(Collections.singletonList(indexedClasspathElement));
+            } else {
+                log.info("No cache found for " + superClassName + "; now scanning entire classpath to build list of subclasses of " + superClassName);
+                allClasses = ListClasses.listClasses();  // expensive, must search all classpath and make big string array list
+            }
             int n = ".class".length();
             Class c = null;
-            if (allClasses.isEmpty()) {
+            if (allClasses.isEmpty() && indexedClasspathElement == null) {
                 log.warning("List of subclasses of " + superClassName + " is empty, is there something wrong with your classpath. Do you have \"compile on save\" turned on? (This option can break the SubclassFinder).");
             }
             int i = 0;
@@ -241,6 +268,9 @@ public class SubclassFinder {
                     if (s.indexOf("$") != -1) {
                         continue allclassloop; // inner class
                     }
+                    if (indexedNames.contains(s)) {
+                        continue; // e.g. jAER.jar listed twice on the classpath
+                    }
                     for (String excl : exclusionList) {
                         if (s.matches(excl)) {
                             continue allclassloop;
@@ -268,7 +298,9 @@ public class SubclassFinder {
                     log.warning(t + " while seeing if " + superClass + " isAssignableFrom " + c);
                 }
             }
-            if (!allClasses.isEmpty()) {
+            if (indexedClasspathElement != null) {
+                // the index is read again next time, so only the rest of the classpath needs scanning
+            } else if (!allClasses.isEmpty()) {
                 // store cache
                 String tmpDir = System.getProperty("java.io.tmpdir");
                 String cacheFileName = superClassName + "-subclass-cache.txt";
@@ -342,19 +374,45 @@ public class SubclassFinder {
      * @see #findSubclassesOf(java.lang.String)
      */
     public static ArrayList<String> findSubclassesOf(String superClassName, final ProgressMonitor progressMonitor) { // TODO this doesn't work, monitor bar does not update and just shows blank, even if this method is executed in a SwingWorker thread
+        return findSubclassesOf(superClassName, progressMonitor, true);
+    }
+
+    /**
+     * Finds and returns list of fully-qualified name Strings of all subclases
+     * of a class.
+     *
+     * @param superClassName the fully qualified name, e.g.
+     * net.sf.jaer.chip.AEChip
+     * @param progressMonitor updated during search
+     * @param useIndex true to take the subclasses in the classpath element
+     * that holds the build-time {@link SubclassIndex} from the index, if it is
+     * up to date, and only scan the rest of the classpath; false to scan the
+     * whole classpath
+     * @return list of fully qualified class names that are subclasses (and not
+     * the same as) the argument
+     */
+    public static ArrayList<String> findSubclassesOf(String superClassName, final ProgressMonitor progressMonitor, boolean useIndex) {
         ArrayList<String> classes = new ArrayList<String>(1000);
         if (superClassName == null) {
             log.warning("tried to find subclasses of null class name, returning empty list");
             return classes;
         }
+        final ArrayList<String> indexed = useIndex ? SubclassIndex.getSubclassNames(superClassName) : null;
+        final File indexedClasspathElement = indexed != null ? SubclassIndex.getClasspathElement(superClassName) : null;
+        final HashSet<String> indexedNames = new HashSet<>();
+        if (indexedClasspathElement != null) {
+            classes.addAll(indexed);
+            indexedNames.addAll(indexed);
+        }
         if (progressMonitor != null) {
             progressMonitor.setNote("Building class list");
         }
         Class superClass = FastClassFinder.forName(superClassName);
-        List<String> allClasses = ListClasses.listClasses();  // expensive, must search all classpath and make big string array list
+        List<String> allClasses = indexedClasspathElement != null ? ListClasses.listClasses(Collections.singletonList(indexedClasspathElement))
+                : ListClasses.listClasses();  // expensive, must search all classpath and make big string array list
         int n = ".class".length();
         Class c = null;
-        if (allClasses.isEmpty()) {
+        if (allClasses.isEmpty() && indexedClasspathElement == null) {
             log.warning("List of subclasses of " + superClassName + " is empty, is there something wrong with your classpath. Do you have \"compile on save\" turned on? (This option can break the SubclassFinder).");
         }
         int i = 0;
@@ -380,6 +438,9 @@ public class SubclassFinder {
                 if (s.indexOf("$") != -1) {
                     continue; // inner class
                 }
+                if (indexedNames.contains(s)) {
+                    continue;
+                }
                 for (String excl : exclusionList) {
                     if (s.matches(excl)) {
                         continue allclassloop;
@@ -0,0 +1,392 @@
+package net.sf.jaer.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+import net.sf.jaer.DevelopmentStatus;
+
+/**
+ * The list of subclasses of AEChip, EventFilter2D etc, generated when jAER is
+ * built so that the class choosers do not have to scan the classpath at
+ * startup.
+ * <p>
+ * The index is written by {@link #main} from the -post-compile target in
+ * build.xml into build/classes/{@value #INDEX_RESOURCE_FOLDER}, and so ends up
+ * in jAER.jar. There is one file per super class, named by its fully
+ * qualified name with the extension .txt, with one line per concrete subclass
+ * that holds the class name, the DevelopmentStatus and the Description
+ * separated by tabs. Reading it does not load the subclasses themselves.
+ * <p>
+ * The index only covers the classpath element it is in, i.e. build/classes or
+ * jAER.jar; {@link SubclassFinder} still scans the other classpath elements.
+ * An index that is older than any class in its classpath element, e.g.
+ * because classes were compiled outside the ant build with NetBeans compile
+ * on save, or because writing the index failed, is not used, and the whole
+ * classpath is scanned as before.
+ */
+public class SubclassIndex {
+
+    private final static Logger log = Logger.getLogger("SubclassFinder");
+
+    /**
+     * Resource folder (relative to the classpath root) holding the index files
+     */
+    public static final String INDEX_RESOURCE_FOLDER = "META-INF/jaer/subclass-index";
+
+    /**
+     * The super classes indexed by default, i.e. those that are chosen with
+     * ClassChooserDialog
+     */
+    public static final String[] DEFAULT_SUPER_CLASSES = {"net.sf.jaer.chip.AEChip", "net.sf.jaer.eventprocessing.EventFilter2D"};
+
+    /** The index of one super class */
+    private static class Index {
+
+        final ArrayList<ClassNameWithDescriptionAndDevelopmentStatus> subclasses;
+        final File classpathElement; // the folder or jar file of the index, null if unknown
+
+        Index(ArrayList<ClassNameWithDescriptionAndDevelopmentStatus> subclasses, File classpathElement) {
+            this.subclasses = subclasses;
+            this.classpathElement = classpathElement;
+        }
+    }
+
+    private static final HashMap<String, Index> cache = new HashMap<>();
+
+    private SubclassIndex() {
+    }
+
+    /**
+     * Returns the indexed subclasses of a class.
+     *
+     * @param superClassName the fully qualified name, e.g.
+     * net.sf.jaer.chip.AEChip
+     * @return a new list of the concrete subclasses in the classpath element
+     * of the index, or null if there is no index for this class or it is older
+     * than the classes
+     * @see #getClasspathElement(java.lang.String)
+     */
+    public static synchronized ArrayList<ClassNameWithDescriptionAndDevelopmentStatus> getSubclasses(String superClassName) {
+        final Index index = getIndex(superClassName);
+        return index == null ? null : new ArrayList<>(index.subclasses);
+    }
+
+    /**
+     * Returns the classpath element whose classes are indexed, so that only
+     * the other elements need to be scanned.
+     *
+     * @param superClassName the fully qualified name
+     * @return the folder or jar file holding the index, or null if there is no
+     * index for this class, it is older than the classes, or its location is
+     * not a file
+     */
+    public static synchronized File getClasspathElement(String superClassName) {
+        final Index index = getIndex(superClassName);
+        return index == null ? null : index.classpathElement;
+    }
+
+    private static Index getIndex(String superClassName) {
+        if (superClassName == null) {
+            return null;
+        }
+        if (!cache.containsKey(superClassName)) {
+            cache.put(superClassName, read(superClassName)); // cache null too, to look for a missing index only once
+        }
+        return cache.get(superClassName);
+    }
+
+    /**
+     * Returns the indexed subclass names of a class.
+     *
+     * @param superClassName the fully qualified name
+     * @return the fully qualified names of the subclasses, or null if there is
+     * no index for this class
+     */
+    public static ArrayList<String> getSubclassNames(String superClassName) {
+        ArrayList<ClassNameWithDescriptionAndDevelopmentStatus> list = getSubclasses(superClassName);
+        if (list == null) {
+            return null;
+        }
+        ArrayList<String> names = new ArrayList<>(list.size());
+        for (ClassNameWithDescriptionAndDevelopmentStatus c : list) {
+            names.add(c.getClassName());
+        }
+        return names;
+    }
+
+    private static Index read(String superClassName) {
+        final String resource = INDEX_RESOURCE_FOLDER + "/" + superClassName + ".txt";
+        final URL url = SubclassIndex.class.getClassLoader().getResource(resource);
+        if (url == null) {
+            log.info("no build-time subclass index " + resource + " on classpath");
+            return null;
+        }
+        File classpathElement = null;
+        try {
+            if ("file".equals(url.getProtocol())) {
+                final File indexFile = new File(url.toURI());
+                classpathElement = indexFile;
+                for (int i = resource.split("/").length; i > 0 && classpathElement != null; i--) {
+                    classpathElement = classpathElement.getParentFile();
+                }
+                if (classpathElement != null && newestClassFileTime(classpathElement) > indexFile.lastModified()) {
+                    log.info("build-time subclass index " + indexFile + " is older than classes in " + classpathElement + ", not using it");
+                    return null;
+                }
+            } else if ("jar".equals(url.getProtocol())) {
+                final String path = url.getPath(); // file:/.../jAER.jar!/META-INF/...
+                classpathElement = new File(new URL(path.substring(0, path.indexOf("!/"))).toURI());
+                if (isStale(classpathElement, resource)) {
+                    log.info("build-time subclass index " + resource + " in " + classpathElement + " is older than its classes, not using it");
+                    return null;
+                }
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            log.warning("could not check build-time subclass index " + url + ", not using it: " + e.toString());
+            return null;
+        }
+        ArrayList<ClassNameWithDescriptionAndDevelopmentStatus> list = new ArrayList<>(500);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 3);
+                DevelopmentStatus status = null;
+                if (fields.length > 1 && !fields[1].isEmpty()) {
+                    try {
+                        status = new IndexedDevelopmentStatus(DevelopmentStatus.Status.valueOf(fields[1]));
+                    } catch (IllegalArgumentException e) {
+                        log.warning("unknown DevelopmentStatus " + fields[1] + " for " + fields[0] + " in " + resource);
+                    }
+                }
+                String description = fields.length > 2 && !fields[2].isEmpty() ? unescape(fields[2]) : null;
+                list.add(new ClassNameWithDescriptionAndDevelopmentStatus(fields[0], description, status));
+            }
+        } catch (IOException e) {
+            log.warning("could not read subclass index " + resource + ": " + e.toString());
+            return null;
+        }
+        log.info("read " + list.size() + " subclasses of " + superClassName + " from build-time index " + url);
+        return new Index(list, classpathElement);
+    }
+
+    /**
+     * @return the latest modification time of the class files in a folder and
+     * its subfolders
+     */
+    private static long newestClassFileTime(File folder) {
+        long newest = 0;
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return newest;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                newest = Math.max(newest, newestClassFileTime(f));
+            } else if (f.getName().endsWith(".class")) {
+                newest = Math.max(newest, f.lastModified());
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * @return true if any class file in a jar is newer than the index entry
+     */
+    private static boolean isStale(File jar, String resource) throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            final JarEntry indexEntry = jarFile.getJarEntry(resource);
+            if (indexEntry == null) {
+                return true;
+            }
+            final long indexTime = indexEntry.getTime();
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+                final JarEntry e = entries.nextElement();
+                if (e.getName().endsWith(".class") && e.getTime() > indexTime) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the index of subclasses of each super class found in a folder of
+     * compiled classes.
+     *
+     * @param classesFolder the root of the compiled classes, e.g.
+     * build/classes; the classes must also be on the classpath
+     * @param superClassNames the fully qualified super class names
+     * @return the total number of subclasses indexed
+     * @throws IOException if an index file cannot be written
+     */
+    public static int writeIndex(File classesFolder, String[] superClassNames) throws IOException {
+        ArrayList<String> classNames = new ArrayList<>(5000);
+        listClassFiles(classesFolder, "", classNames);
+        Collections.sort(classNames);
+        File indexFolder = new File(classesFolder, INDEX_RESOURCE_FOLDER.replace('/', File.separatorChar));
+        if (!indexFolder.isDirectory() && !indexFolder.mkdirs()) {
+            throw new IOException("could not make folder " + indexFolder);
+        }
+        ClassLoader loader = SubclassIndex.class.getClassLoader();
+        int total = 0;
+        for (String superClassName : superClassNames) {
+            Class superClass;
+            try {
+                superClass = Class.forName(superClassName, false, loader);
+            } catch (ClassNotFoundException e) {
+                log.warning("super class " + superClassName + " not found, skipping it");
+                continue;
+            }
+            File indexFile = new File(indexFolder, superClassName + ".txt");
+            int n = 0;
+            try (PrintWriter out = new PrintWriter(indexFile, "UTF-8")) {
+                out.println("# subclasses of " + superClassName + " generated by " + SubclassIndex.class.getName() + "; class name<TAB>DevelopmentStatus<TAB>Description");
+                for (String s : classNames) {
+                    Class c;
+                    try {
+                        c = Class.forName(s, false, loader); // don't initialize, to not run static initializers that need native libraries
+                    } catch (ClassNotFoundException | LinkageError e) {
+                        continue; // e.g. a class that needs a library not on the classpath, which could not be used anyhow
+                    }
+                    if (c == superClass || Modifier.isAbstract(c.getModifiers()) || !superClass.isAssignableFrom(c)) {
+                        continue;
+                    }
+                    ClassNameWithDescriptionAndDevelopmentStatus d = new ClassNameWithDescriptionAndDevelopmentStatus(c);
+                    out.print(d.getClassName());
+                    out.print('\t');
+                    if (d.getDevelopmentStatus() != null) {
+                        out.print(d.getDevelopmentStatus().value().name());
+                    }
+                    out.print('\t');
+                    if (d.getDescription() != null) {
+                        out.print(escape(d.getDescription()));
+                    }
+                    out.println();
+                    n++;
+                }
+            }
+            log.info("wrote " + n + " subclasses of " + superClassName + " to " + indexFile);
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Adds the names of the top level classes in folder to the list
+     */
+    private static void listClassFiles(File folder, String packagePrefix, ArrayList<String> classNames) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (f.isDirectory()) {
+                listClassFiles(f, packagePrefix + name + ".", classNames);
+            } else if (name.endsWith(".class") && name.indexOf('$') == -1) { // inner classes are not listed, as in SubclassFinder
+                classNames.add(packagePrefix + name.substring(0, name.length() - ".class".length()));
+            }
+        }
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') == -1) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                switch (next) {
+                    case 't':
+                        ch = '\t';
+                        break;
+                    case 'r':
+                        ch = '\r';
+                        break;
+                    case 'n':
+                        ch = '\n';
+                        break;
+                    default:
+                        ch = next;
+                }
+            }
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The DevelopmentStatus of an indexed class, which is read from the index
+     * without loading the class
+     */
+    private static class IndexedDevelopmentStatus implements DevelopmentStatus {
+
+        private final Status status;
+
+        IndexedDevelopmentStatus(Status status) {
+            this.status = status;
+        }
+
+        @Override
+        public Status value() {
+            return status;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return DevelopmentStatus.class;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + DevelopmentStatus.class.getName() + "(" + status + ")";
+        }
+    }
+
+    /**
+     * Writes the index; called from build.xml after compiling.
+     *
+     * @param args the compiled classes folder, optionally followed by the
+     * super class names to index (default {@link #DEFAULT_SUPER_CLASSES})
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("usage: SubclassIndex classesFolder [superClassName ...]");
+            System.exit(1);
+        }
+        String[] superClassNames = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_SUPER_CLASSES;
+        try {
+            long startTime = System.currentTimeMillis();
+            int n = writeIndex(new File(args[0]), superClassNames);
+            System.out.println("SubclassIndex: indexed " + n + " classes in " + (System.currentTimeMillis() - startTime) + "ms");
+            System.exit(0);
+        } catch (IOException e) {
+            System.err.println("SubclassIndex: " + e.toString());
+            System.exit(1);
+        }
+    }
+}
@@ -997,42 +997,123 @@ public class AVIOutputStream implements VideoFrameWriterInterface {
 			}
 			break;
 		}
-		case JPG: {
-			videoFrameChunk = new DataChunk("00dc");
-			ImageWriter iw = ImageIO.getImageWritersByMIMEType("image/jpeg")
-					.next();
-			ImageWriteParam iwParam = iw.getDefaultWriteParam();
-			iwParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-			iwParam.setCompressionQuality(quality);
-			MemoryCacheImageOutputStream imgOut = new MemoryCacheImageOutputStream(
-					videoFrameChunk.getOutputStream());
-			iw.setOutput(imgOut);
-			IIOImage img = new IIOImage(image, null, null);
-			iw.write(null, img, iwParam);
-			iw.dispose();
-			break;
-		}
+		case JPG:
 		case PNG:
 		default: {
 			videoFrameChunk = new DataChunk("00dc");
-			ImageWriter iw = ImageIO.getImageWritersByMIMEType("image/png")
-					.next();
+			encodeImage(videoFrameChunk.getOutputStream(), image, videoFormat,
+					quality);
+			break;
+		}
+		}
+		long length = getRelativeStreamPosition() - offset;
+		moviChunk.add(videoFrameChunk);
+		videoFrameChunk.finish();
+
+		videoFrames.add(new Sample(videoFrameChunk.chunkType, frameRate,
+				offset, length - 8, isSync));
+		if (getRelativeStreamPosition() > 1L << 32) {
+			throw new IOException("AVI file is larger than 4 GB");
+		}
+	}
+
+	/**
+	 * Compresses an image to JPG or PNG (the default for any other format), as
+	 * {@link #writeFrame(BufferedImage)} does for these formats. The method
+	 * does not use the state of any stream, so frames can be encoded
+	 * concurrently on several threads and written afterwards in order with
+	 * {@link #writeEncodedFrame}.
+	 * 
+	 * @param out
+	 *            receives the encoded image
+	 * @param image
+	 *            the frame image
+	 * @param format
+	 *            JPG or PNG
+	 * @param quality
+	 *            the JPG compression quality, 0 to 1
+	 * @throws IOException
+	 *             if encoding fails
+	 */
+	public static void encodeImage(OutputStream out, BufferedImage image,
+			VideoFormat format, float quality) throws IOException {
+		ImageWriter iw = ImageIO.getImageWritersByMIMEType(
+				format == VideoFormat.JPG ? "image/jpeg" : "image/png").next();
+		try {
 			ImageWriteParam iwParam = iw.getDefaultWriteParam();
+			if (format == VideoFormat.JPG) {
+				iwParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				iwParam.setCompressionQuality(quality);
+			}
 			MemoryCacheImageOutputStream imgOut = new MemoryCacheImageOutputStream(
-					videoFrameChunk.getOutputStream());
+					out);
 			iw.setOutput(imgOut);
 			IIOImage img = new IIOImage(image, null, null);
 			iw.write(null, img, iwParam);
+			imgOut.flush();
+		} finally {
 			iw.dispose();
-			break;
 		}
+	}
+
+	/**
+	 * Returns true if frames of the video format of this stream can be
+	 * compressed with {@link #encodeImage} and written with
+	 * {@link #writeEncodedFrame}, i.e. the format is JPG or PNG.
+	 */
+	public boolean isEncodedFrameFormat() {
+		return videoFormat == VideoFormat.JPG || videoFormat == VideoFormat.PNG;
+	}
+
+	/**
+	 * Returns the video format of this stream.
+	 */
+	public VideoFormat getVideoFormat() {
+		return videoFormat;
+	}
+
+	/**
+	 * Writes a frame that was compressed by {@link #encodeImage} to the video
+	 * track. The result is the same as writing the image with
+	 * {@link #writeFrame(BufferedImage)}.
+	 * 
+	 * @param encoded
+	 *            the encoded image
+	 * @param width
+	 *            the image width
+	 * @param height
+	 *            the image height
+	 * @throws IllegalArgumentException
+	 *             if the dimension of the frame does not match the dimension
+	 *             of the video track.
+	 * @throws IOException
+	 *             if writing the frame failed.
+	 */
+	public void writeEncodedFrame(SeekableByteArrayOutputStream encoded,
+			int width, int height) throws IOException {
+		if (!isEncodedFrameFormat()) {
+			throw new IllegalStateException("encoded frames cannot be written in format " + videoFormat);
 		}
+		ensureOpen();
+		ensureStarted();
+		if (imgWidth == -1) {
+			imgWidth = width;
+			imgHeight = height;
+		} else if (imgWidth != width || imgHeight != height) {
+			throw new IllegalArgumentException("Dimensions of image["
+					+ videoFrames.size() + "] (width=" + width + ", height="
+					+ height + ") differs from image[0] (width=" + imgWidth
+					+ ", height=" + imgHeight);
+		}
+		long offset = getRelativeStreamPosition();
+		DataChunk videoFrameChunk = new DataChunk("00dc");
+		encoded.toOutputStream(videoFrameChunk.getOutputStream());
 		long length = getRelativeStreamPosition() - offset;
 		moviChunk.add(videoFrameChunk);
 		videoFrameChunk.finish();
 
 		videoFrames.add(new Sample(videoFrameChunk.chunkType, frameRate,
-				offset, length - 8, isSync));
+				offset, length - 8, true));
 		if (getRelativeStreamPosition() > 1L << 32) {
 			throw new IOException("AVI file is larger than 4 GB");
 		}
@@ -79,6 +79,11 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
     private int frameRate = getInt("frameRate", 30);
     private boolean writeOnlyWhenMousePressed = getBoolean("writeOnlyWhenMousePressed", false);
     protected volatile boolean writeEnabled = true;
+    private boolean asyncEncodingEnabled = getBoolean("asyncEncodingEnabled", false);
+    private int asyncEncoderQueueLength = getInt("asyncEncoderQueueLength", 16);
+    private int asyncEncoderThreads = getInt("asyncEncoderThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private boolean dropFramesWhenEncoderBusy = getBoolean("dropFramesWhenEncoderBusy", false);
+    private long framesDropped = 0;
 
     public enum OutputContainer {
         AVI, AnimatedGIF, ImageSequence
@@ -105,6 +110,12 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         setPropertyTooltip("saveFramesAsIndividualImageFiles", "If selected, then the frames are saved as individual image files in the selected folder");
         setPropertyTooltip("writeOnlyWhenMousePressed", "If selected, then the frames are are saved only when the mouse is pressed in the AEViewer window");
         setPropertyTooltip("writeEnabled", "Selects if writing frames is enabled. Use this to temporarily disable output, or in conjunction with writeOnlyWhenMousePressed");
+        String enc = "Encoder";
+        setPropertyTooltip(enc, "asyncEncodingEnabled", "<html>Compresses and writes frames on background encoder threads instead of in the filter chain.<br>Takes effect when the next recording is started.");
+        setPropertyTooltip(enc, "asyncEncoderQueueLength", "Number of frames that can wait for the background encoder");
+        setPropertyTooltip(enc, "asyncEncoderThreads", "Number of threads compressing JPG or PNG AVI frames; other formats use a single encoder thread");
+        setPropertyTooltip(enc, "dropFramesWhenEncoderBusy", "<html>If set, frames are dropped when the encoder queue is full, so that the filter chain is never stalled.<br>If not set, the filter chain waits for the encoder, so no frames are lost.");
+        setPropertyTooltip(enc, "framesDropped", "READONLY, shows number of frames dropped because the background encoder was busy");
         chip.getSupport().addPropertyChangeListener(this);
 
     }
@@ -262,7 +273,7 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
                 return;
             }
             frameSequenceOutputFolder = selectedFile;
-            setVideoOutputStream(new ImageSequenceWriter(frameSequenceOutputFolder));
+            setVideoOutputStream(wrapForAsyncEncoding(new ImageSequenceWriter(frameSequenceOutputFolder)));
             if (rewindBeforeRecording) {
                 ignoreRewinwdEventFlag = true;
                 chip.getAeViewer().getAePlayer().rewind();
@@ -329,6 +340,9 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
     synchronized public void doFinishRecording() {
         if (getVideoOutputStream() != null) {
             try {
+                if (getVideoOutputStream() instanceof AsyncVideoFrameWriter) {
+                    log.info("waiting for background encoder to write queued frames: " + getVideoOutputStream());
+                }
                 getVideoOutputStream().close();
                 setVideoOutputStream(null);
                 if (timecodeWriter != null) {
@@ -411,6 +425,7 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
             log.warning("Cannot open timecode file: " + e.toString());
         }
         log.info("Opened output file " + f.toString() + " with format " + format);
+        videoOutputStream = wrapForAsyncEncoding(videoOutputStream);
         setFramesWritten(0);
         getSupport().firePropertyChange("framesWritten", null, framesWritten);
         if (!isWriteOnlyWhenMousePressed()) {
@@ -419,6 +434,64 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         return videoOutputStream;
     }
 
+    /**
+     * Wraps the stream in an AsyncVideoFrameWriter if asyncEncodingEnabled
+     *
+     * @param stream the stream
+     * @return the stream, or the AsyncVideoFrameWriter writing to it
+     */
+    protected VideoFrameWriterInterface wrapForAsyncEncoding(VideoFrameWriterInterface stream) {
+        setFramesDropped(0);
+        if (!asyncEncodingEnabled || stream == null || stream instanceof AsyncVideoFrameWriter) {
+            return stream;
+        }
+        AsyncVideoFrameWriter async = new AsyncVideoFrameWriter(stream, asyncEncoderQueueLength, asyncEncoderThreads, !dropFramesWhenEncoderBusy);
+        log.info("writing frames with " + async);
+        return async;
+    }
+
+    /**
+     * Sets up the background encoder for recordings started from now on
+     * without storing the settings in the preferences, e.g. for batch
+     * conversion.
+     *
+     * @param enabled true to encode in the background
+     * @param encoderThreads the number of threads compressing JPG or PNG
+     * frames
+     * @param dropWhenBusy true to drop frames when the encoder is busy, false
+     * to wait for it
+     */
+    public void configureAsyncEncoding(boolean enabled, int encoderThreads, boolean dropWhenBusy) {
+        this.asyncEncodingEnabled = enabled;
+        this.asyncEncoderThreads = Math.max(1, encoderThreads);
+        this.dropFramesWhenEncoderBusy = dropWhenBusy;
+    }
+
+    /**
+     * Writes the frame to the video output stream, or hands it to the
+     * background encoder.
+     *
+     * @param bufferedImage the frame; it may be reused when this method
+     * returns
+     * @return true if the frame was written or queued, false if it was
+     * dropped because the background encoder was busy, in which case no
+     * timecode should be written and the frame should not be counted
+     * @throws IOException if the frame could not be written
+     */
+    protected boolean writeFrameToStream(BufferedImage bufferedImage) throws IOException {
+        VideoFrameWriterInterface stream = getVideoOutputStream();
+        if (stream instanceof AsyncVideoFrameWriter) {
+            AsyncVideoFrameWriter async = (AsyncVideoFrameWriter) stream;
+            if (!async.offerFrame(bufferedImage)) {
+                setFramesDropped(async.getFramesDropped());
+                return false;
+            }
+            return true;
+        }
+        stream.writeFrame(bufferedImage);
+        return true;
+    }
+
     /**
      * @return the writeTimecodeFile
      */
@@ -490,7 +563,9 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         }
         if (isWriteEnabled()) {
             try {
-                getVideoOutputStream().writeFrame(bufferedImage);
+                if (!writeFrameToStream(bufferedImage)) {
+                    return;
+                }
                 if (isWriteTimecodeFile()) {
                     writeTimecode(timecode);
                 }
@@ -506,6 +581,7 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
     private class ImageSequenceWriter implements VideoFrameWriterInterface {
 
         File folder;
+        int frameNumber = framesWritten; // counted here since frames may be written by the background encoder after framesWritten was incremented
 
         public ImageSequenceWriter(File folder) {
             this.folder = folder;
@@ -519,8 +595,8 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         @Override
         public void writeFrame(BufferedImage img) throws IOException {
             String fmt = getFormat().toString().toLowerCase();
-            String filename = String.format("%05d.%s", framesWritten, fmt);
-            String path = frameSequenceOutputFolder + File.separator + filename;
+            String filename = String.format("%05d.%s", frameNumber++, fmt);
+            String path = folder + File.separator + filename;
             File file = new File(path);
             ImageIO.write(img, fmt, file);
         }
@@ -790,4 +866,88 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         putString("outputContainer", this.outputContainer.toString());
     }
 
+    /**
+     * @return the asyncEncodingEnabled
+     */
+    public boolean isAsyncEncodingEnabled() {
+        return asyncEncodingEnabled;
+    }
+
+    /**
+     * @param asyncEncodingEnabled the asyncEncodingEnabled to set; takes
+     * effect for the next recording
+     */
+    public void setAsyncEncodingEnabled(boolean asyncEncodingEnabled) {
+        this.asyncEncodingEnabled = asyncEncodingEnabled;
+        putBoolean("asyncEncodingEnabled", asyncEncodingEnabled);
+    }
+
+    /**
+     * @return the asyncEncoderQueueLength
+     */
+    public int getAsyncEncoderQueueLength() {
+        return asyncEncoderQueueLength;
+    }
+
+    /**
+     * @param asyncEncoderQueueLength the asyncEncoderQueueLength to set
+     */
+    public void setAsyncEncoderQueueLength(int asyncEncoderQueueLength) {
+        if (asyncEncoderQueueLength < 1) {
+            asyncEncoderQueueLength = 1;
+        }
+        this.asyncEncoderQueueLength = asyncEncoderQueueLength;
+        putInt("asyncEncoderQueueLength", asyncEncoderQueueLength);
+    }
+
+    /**
+     * @return the asyncEncoderThreads
+     */
+    public int getAsyncEncoderThreads() {
+        return asyncEncoderThreads;
+    }
+
+    /**
+     * @param asyncEncoderThreads the asyncEncoderThreads to set
+     */
+    public void setAsyncEncoderThreads(int asyncEncoderThreads) {
+        if (asyncEncoderThreads < 1) {
+            asyncEncoderThreads = 1;
+        }
+        this.asyncEncoderThreads = asyncEncoderThreads;
+        putInt("asyncEncoderThreads", asyncEncoderThreads);
+    }
+
+    /**
+     * @return the dropFramesWhenEncoderBusy
+     */
+    public boolean isDropFramesWhenEncoderBusy() {
+        return dropFramesWhenEncoderBusy;
+    }
+
+    /**
+     * @param dropFramesWhenEncoderBusy the dropFramesWhenEncoderBusy to set
+     */
+    public void setDropFramesWhenEncoderBusy(boolean dropFramesWhenEncoderBusy) {
+        this.dropFramesWhenEncoderBusy = dropFramesWhenEncoderBusy;
+        putBoolean("dropFramesWhenEncoderBusy", dropFramesWhenEncoderBusy);
+    }
+
+    /**
+     * @return the number of frames dropped in the present recording because
+     * the background encoder was busy
+     */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * @param framesDropped the framesDropped to set
+     */
+    public void setFramesDropped(long framesDropped) {
+        long old = this.framesDropped;
+        this.framesDropped = framesDropped;
+        getSupport().firePropertyChange("framesDropped", old, framesDropped);
+    }
+
 }
@@ -0,0 +1,321 @@
+package net.sf.jaer.util.avioutput;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import net.sf.jaer.util.RecyclingHandoffQueue;
+
+/**
+ * Writes video frames on a background encoder thread, so that compressing and
+ * writing the frames does not stall the filter chain.
+ * <p>
+ * {@link #writeFrame} copies the image into a recycled frame buffer and hands
+ * it to the encoder through a bounded {@link RecyclingHandoffQueue}. When the
+ * queue is full the caller either waits for the encoder (back-pressure, which
+ * loses no frames and is what offline conversion wants) or the frame is
+ * dropped and counted (for live recording, where latency matters more).
+ * <p>
+ * If the underlying stream is an {@link AVIOutputStream} in JPG or PNG format,
+ * the frames are compressed by several encoder threads and the compressed
+ * frames are written to the file in their original order by the single
+ * writer thread. Other formats (RAW, RLE, GIF, image sequences) are written by
+ * the writer thread alone, since their encoding depends on the previous
+ * frame or the underlying writer is not thread safe.
+ */
+public class AsyncVideoFrameWriter implements VideoFrameWriterInterface {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+    /**
+     * How long the writer thread waits for a frame before writing the frames
+     * still being encoded
+     */
+    private static final long POLL_INTERVAL_MS = 20;
+
+    /**
+     * A frame buffer passed from the producer to the encoder, with the buffer
+     * its compressed image is written to
+     */
+    private static class Frame {
+
+        BufferedImage image = null;
+        final SeekableByteArrayOutputStream encoded = new SeekableByteArrayOutputStream();
+    }
+
+    private final VideoFrameWriterInterface writer;
+    private final AVIOutputStream encodedAvi; // non-null if frames are compressed by the encoder pool
+    private final RecyclingHandoffQueue<Frame> queue;
+    private final boolean blockWhenFull;
+    private final ExecutorService encoderPool;
+    private final int numEncoderThreads;
+    private final ArrayDeque<Future<Frame>> encoding = new ArrayDeque(); // frames being compressed, in order; only used by writer thread
+    private final Thread writerThread;
+    private volatile boolean closing = false;
+    private volatile IOException error = null;
+    private volatile long framesEncoded = 0;
+    private long framesDropped = 0;
+
+    /**
+     * Starts the encoder for an output stream.
+     *
+     * @param writer the stream the frames are written to; it is only used by
+     * the writer thread from now on
+     * @param queueCapacity the maximum number of frames waiting to be encoded
+     * @param numEncoderThreads the number of threads compressing JPG or PNG
+     * AVI frames; 1 to compress on the writer thread
+     * @param blockWhenFull true to make writeFrame wait when the queue is
+     * full, false to drop the frame
+     */
+    public AsyncVideoFrameWriter(VideoFrameWriterInterface writer, int queueCapacity, int numEncoderThreads, boolean blockWhenFull) {
+        this.writer = writer;
+        this.blockWhenFull = blockWhenFull;
+        this.numEncoderThreads = Math.max(1, numEncoderThreads);
+        if (this.numEncoderThreads > 1 && writer instanceof AVIOutputStream && ((AVIOutputStream) writer).isEncodedFrameFormat()) {
+            encodedAvi = (AVIOutputStream) writer;
+            encoderPool = Executors.newFixedThreadPool(this.numEncoderThreads, r -> {
+                Thread t = new Thread(r, "AsyncVideoFrameWriter encoder");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            encodedAvi = null;
+            encoderPool = null;
+        }
+        queue = new RecyclingHandoffQueue<>("AsyncVideoFrameWriter", Math.max(1, queueCapacity), () -> new Frame());
+        writerThread = new Thread(this::writeLoop, "AsyncVideoFrameWriter writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Copies the image and queues it for encoding.
+     *
+     * @param img the image; the caller may reuse it as soon as this method
+     * returns
+     * @throws IOException if a previous frame could not be written, or if
+     * interrupted while waiting for room in the queue
+     */
+    @Override
+    public void writeFrame(BufferedImage img) throws IOException {
+        offerFrame(img);
+    }
+
+    /**
+     * Copies the image and queues it for encoding.
+     *
+     * @param img the image; the caller may reuse it as soon as this method
+     * returns
+     * @return true if the frame was queued, false if it was dropped because
+     * the queue was full and blockWhenFull is false
+     * @throws IOException if a previous frame could not be written, or if
+     * interrupted while waiting for room in the queue
+     */
+    public boolean offerFrame(BufferedImage img) throws IOException {
+        checkError();
+        if (closing) {
+            throw new IOException("writer is closed");
+        }
+        Frame f = queue.obtain();
+        copy(img, f);
+        try {
+            if (blockWhenFull) {
+                while (!queue.offer(f, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    checkError(); // don't wait forever for a writer that died
+                }
+                return true;
+            }
+            if (queue.offer(f)) {
+                return true;
+            }
+            queue.recycle(f);
+            framesDropped++;
+            return false;
+        } catch (InterruptedException e) {
+            queue.recycle(f);
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for encoder: " + e.toString());
+        }
+    }
+
+    /**
+     * Writes all queued frames, stops the encoder threads and closes the
+     * underlying stream.
+     *
+     * @throws IOException if a frame or the end of the stream could not be
+     * written
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+        }
+        if (encoderPool != null) {
+            encoderPool.shutdownNow();
+        }
+        try {
+            writer.close();
+        } finally {
+            log.info("closed " + toString());
+        }
+        checkError();
+    }
+
+    private void checkError() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Copies img into the frame's image, reallocating it if the size or
+     * color model changed
+     */
+    private static void copy(BufferedImage img, Frame f) {
+        BufferedImage dst = f.image;
+        if (dst == null || dst.getWidth() != img.getWidth() || dst.getHeight() != img.getHeight()
+                || dst.getType() != img.getType() || !dst.getColorModel().equals(img.getColorModel())) {
+            dst = new BufferedImage(img.getColorModel(), img.getColorModel().createCompatibleWritableRaster(img.getWidth(), img.getHeight()),
+                    img.isAlphaPremultiplied(), null);
+            f.image = dst;
+        }
+        if (img.getRaster().getDataBuffer() instanceof DataBufferInt && dst.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            final int[] src = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            final int[] d = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+            if (src.length == d.length) {
+                System.arraycopy(src, 0, d, 0, src.length);
+                return;
+            }
+        }
+        dst.setData(img.getRaster());
+    }
+
+    /**
+     * The writer thread: takes frames in order, compresses them directly or
+     * on the encoder pool, and writes them to the stream
+     */
+    private void writeLoop() {
+        try {
+            while (true) {
+                Frame f = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (f == null) {
+                    if (!encoding.isEmpty()) {
+                        writeEncoded(encoding.pollFirst()); // idle, write what is ready
+                        continue;
+                    }
+                    if (closing && queue.getDepth() == 0) {
+                        break;
+                    }
+                    continue;
+                }
+                if (error != null) {
+                    queue.recycle(f); // discard the rest after an error
+                    continue;
+                }
+                if (encoderPool == null) {
+                    try {
+                        writer.writeFrame(f.image);
+                        framesEncoded++;
+                    } finally {
+                        queue.recycle(f);
+                    }
+                } else {
+                    final Frame frame = f;
+                    final float quality = encodedAvi.getVideoCompressionQuality();
+                    encoding.addLast(encoderPool.submit(() -> {
+                        frame.encoded.reset();
+                        AVIOutputStream.encodeImage(frame.encoded, frame.image, encodedAvi.getVideoFormat(), quality);
+                        return frame;
+                    }));
+                    while (encoding.size() >= 2 * numEncoderThreads) {
+                        writeEncoded(encoding.pollFirst());
+                    }
+                }
+            }
+            while (!encoding.isEmpty()) {
+                writeEncoded(encoding.pollFirst());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warning("AsyncVideoFrameWriter: could not write frame: " + e.toString());
+            error = e instanceof IOException ? (IOException) e : new IOException(e);
+            drainAfterError();
+        } catch (InterruptedException e) {
+            error = new IOException("writer thread interrupted");
+            drainAfterError();
+        }
+    }
+
+    /**
+     * Waits for the oldest frame being compressed and writes it
+     */
+    private void writeEncoded(Future<Frame> future) throws IOException, InterruptedException {
+        try {
+            final Frame f = future.get();
+            try {
+                encodedAvi.writeEncodedFrame(f.encoded, f.image.getWidth(), f.image.getHeight());
+                framesEncoded++;
+            } finally {
+                queue.recycle(f);
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * Discards queued frames after an error so that producers waiting for room
+     * do not block; they see the error on their next call
+     */
+    private void drainAfterError() {
+        for (Future<Frame> future : encoding) {
+            future.cancel(true);
+        }
+        encoding.clear();
+        queue.clear();
+    }
+
+    /**
+     * @return the number of frames written to the stream so far
+     */
+    public long getFramesEncoded() {
+        return framesEncoded;
+    }
+
+    /**
+     * @return the number of frames dropped because the queue was full
+     */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * @return the number of frames waiting to be encoded
+     */
+    public int getQueueDepth() {
+        return queue.getDepth();
+    }
+
+    /**
+     * @return the underlying stream
+     */
+    public VideoFrameWriterInterface getWriter() {
+        return writer;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncVideoFrameWriter (%s, %d encoder threads, %s when full): %d frames written, %d dropped; %s",
+                writer.getClass().getSimpleName(), encoderPool == null ? 1 : numEncoderThreads, blockWhenFull ? "blocking" : "dropping",
+                framesEncoded, framesDropped, queue.toString());
+    }
+}
@@ -15,8 +15,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -170,10 +175,11 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 if (isWriteDvsFrames() && (getVideoOutputStream() != null) && isWriteEnabled()) {
                     BufferedImage bi = toImage(dvsFrame);
                     try {
-                        writeTimecode(e.timestamp);
-                        writeTargetLocation(e.timestamp, framesWritten);
-                        getVideoOutputStream().writeFrame(bi);
-                        incrementFramecountAndMaybeCloseOutput();
+                        if (writeFrameToStream(bi)) { // not dropped by busy background encoder
+                            writeTimecode(e.timestamp);
+                            writeTargetLocation(e.timestamp, framesWritten);
+                            incrementFramecountAndMaybeCloseOutput();
+                        }
                     } catch (IOException ex) {
                         doFinishRecording();
                         log.warning(ex.toString());
@@ -761,11 +767,14 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
             + "     [-timeslicemethod=EventCount|TimeIntervalUs] [-numevents=2000] [-framedurationus=10000]\n"
             + "     [-rectify=false] [-normalize=true] [-showoutput=true]  [-maxframes=0] \n "
             + "     [-enablefilters=false] \n"
-            + "         inputFile.aedat [outputfile.avi]"
+            + "     [-threads=N] \n"
+            + "         inputFile.aedat [outputfile.avi]\n"
+            + "         or inputFolder [outputFolder]"
             + "\n"
             + "numevents and framedurationus are exclusively possible\n"
             + "Arguments values are assigned with =, not space\n"
-            + "If outputfile is not provided its name is generated from the input file with appended .avi";
+            + "If outputfile is not provided its name is generated from the input file with appended .avi\n"
+            + "If a folder is given, all .aedat files in it are converted, threads files at a time (default: number of cores)";
 
     public static final HashMap<String, String> chipClassesMap = new HashMap();
 
@@ -779,7 +788,6 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
         log.setLevel(Level.WARNING); // default only warnings, -verbose adds info logging
 
         // make hashmap of common chip classes
-        boolean enableFilters = false;
         chipClassesMap.put("dvs128", "ch.unizh.ini.jaer.chip.retina.DVS128");
         chipClassesMap.put("davis240c", "eu.seebetter.ini.chips.davis.DAVIS240C");
         chipClassesMap.put("davis346blue", "eu.seebetter.ini.chips.davis.Davis346blue");
@@ -812,6 +820,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
         opt.getSet().addOption("showoutput", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
         opt.getSet().addOption("maxframes", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
         opt.getSet().addOption("writetargetlocations", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("threads", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
         opt.getSet().addOption("verbose", Multiplicity.ZERO_OR_ONE);
         if (!opt.check()) {
             log.warning(opt.getCheckErrors());
@@ -828,6 +837,11 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
         }
 
         String inpfilename = opt.getSet().getData().get(0);
+        File inp = new File(inpfilename);
+        if (inp.isDirectory()) {
+            File outDir = opt.getSet().getData().size() == 2 ? new File(opt.getSet().getData().get(1)) : inp;
+            System.exit(convertFolder(opt, args, inp, outDir));
+        }
         if (!(inpfilename.toLowerCase().endsWith("aedat"))) {
             log.warning("Warning: Input filename does not end with aedat: " + inpfilename);
         }
@@ -838,7 +852,83 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
             outfilename = inpfilename.substring(0, inpfilename.lastIndexOf(".")) + ".avi";
             log.info("Writing to output file " + outfilename);
         }
+        // encode on all cores while this thread extracts and renders the slices
+        System.exit(convertFile(opt, args, inp, new File(outfilename), Runtime.getRuntime().availableProcessors(), true));
+    }
+
+    /**
+     * Converts all .aedat files in a folder, several files at a time.
+     *
+     * @param opt the command line options
+     * @param args the command line, written to the timecode files
+     * @param inpDir the folder holding the recordings
+     * @param outDir the folder to write the AVI files to
+     * @return the process exit status, 0 if all files were converted
+     */
+    private static int convertFolder(final Options opt, final String[] args, File inpDir, final File outDir) {
+        File[] files = inpDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".aedat"));
+        if (files == null || files.length == 0) {
+            log.warning("no .aedat files found in " + inpDir);
+            return 1;
+        }
+        Arrays.sort(files);
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            log.warning("could not make output folder " + outDir);
+            return 1;
+        }
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        if (opt.getSet().isSet("threads")) {
+            try {
+                numThreads = Integer.parseInt(opt.getSet().getOption("threads").getResultValue(0));
+            } catch (NumberFormatException e) {
+                log.warning("Bad threads argument: " + e.toString());
+                return 1;
+            }
+        }
+        numThreads = Math.max(1, Math.min(numThreads, files.length));
+        final int encoderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / numThreads);
+        log.setLevel(Level.INFO);
+        log.info(String.format("converting %d files from %s to %s, %d at a time", files.length, inpDir, outDir, numThreads));
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        ArrayList<Future<Integer>> results = new ArrayList();
+        for (final File f : files) {
+            final String name = f.getName();
+            final File outfile = new File(outDir, name.substring(0, name.lastIndexOf(".")) + ".avi");
+            results.add(pool.submit(() -> convertFile(opt, args, f, outfile, encoderThreads, false)));
+        }
+        pool.shutdown();
+        int status = 0, numFailed = 0;
+        for (int i = 0; i < files.length; i++) {
+            try {
+                int s = results.get(i).get();
+                if (s != 0) {
+                    status = s;
+                    numFailed++;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                log.warning("converting " + files[i] + " failed: " + e.toString());
+                status = 1;
+                numFailed++;
+            }
+        }
+        log.info(String.format("converted %d of %d files", files.length - numFailed, files.length));
+        return status;
+    }
 
+    /**
+     * Converts one recording to an AVI file with a new chip and writer, with
+     * the background encoder waiting for no frames to be lost.
+     *
+     * @param opt the command line options
+     * @param args the command line, written to the timecode file
+     * @param inpfile the recording
+     * @param outfile the AVI file
+     * @param encoderThreads the number of background encoder threads
+     * @param showProgress true to print the number of frames written
+     * @return the exit status, 0 for success
+     */
+    private static int convertFile(Options opt, String[] args, File inpfile, File outfile, int encoderThreads, boolean showProgress) {
+        boolean enableFilters = false;
         AEChip chip = null;
         String chipname = null;
         if (opt.getSet().isSet("aechip")) {
@@ -859,15 +949,14 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
             chip = constructor.newInstance((java.lang.Object[]) null);
         } catch (Exception ex) {
             log.warning("Could not construct instance of aechip=" + chipname + ": " + ex.toString());
-            System.exit(1);
+            return 1;
         }
 
         AEFileInputStream ais = null;
-        File inpfile = new File(inpfilename);
-        File outfile = new File(outfilename);
         AEPacketRaw aeRaw = null;
 
         final DvsSliceAviWriter writer = new DvsSliceAviWriter(chip);
+        writer.configureAsyncEncoding(true, encoderThreads, false);
 
         boolean oldCloseOnRewind = writer.isCloseOnRewind();
         writer.setCloseOnRewind(false);
@@ -883,7 +972,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.getDvsFrame().setOutputImageWidth(n);
             } catch (NumberFormatException e) {
                 log.warning("Bad width argument: " + e.toString());
-                System.exit(1);
+                return 1;
             }
         }
 
@@ -893,7 +982,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.getDvsFrame().setOutputImageHeight(n);
             } catch (NumberFormatException e) {
                 log.warning("Bad height argument: " + e.toString());
-                System.exit(1);
+                return 1;
             }
         }
 
@@ -903,7 +992,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.setCompressionQuality(f);
             } catch (NumberFormatException e) {
                 log.warning("Bad quality argument: " + e.toString());
-                System.exit(1);
+                return 1;
             }
         }
 
@@ -923,7 +1012,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.setFrameRate(n);
             } catch (NumberFormatException e) {
                 log.warning("Bad framerate argument: " + e.toString());
-                System.exit(1);
+                return 1;
             }
         }
 
@@ -933,7 +1022,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.getDvsFrame().setDvsGrayScale(n);
             } catch (NumberFormatException e) {
                 log.warning("Bad grayscale argument: " + e.toString());
-                System.exit(1);
+                return 1;
             }
         }
 
@@ -968,7 +1057,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.getDvsFrame().setDvsEventsPerFrame(n);
             } catch (NumberFormatException e) {
                 log.warning("Bad numevents argument: " + e.toString());
-                System.exit(1);
+                return 1;
             }
         }
         if (opt.getSet().isSet("framedurationus")) {
@@ -977,7 +1066,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.getDvsFrame().setTimeDurationUsPerFrame(n);
             } catch (NumberFormatException e) {
                 log.warning("Bad numevents argument: " + e.toString());
-                System.exit(1);
+                return 1;
             }
         }
         if (opt.getSet().isSet("timeslicemethod")) {
@@ -987,7 +1076,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.getDvsFrame().setTimeSliceMethod(method);
             } catch (Exception e) {
                 log.warning("Bad timeslicemethod argument: " + e.toString() + "; use EventCount or TimeIntervalUs");
-                System.exit(1);
+                return 1;
             }
         }
 
@@ -1028,7 +1117,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.setMaxFrames(n);
             } catch (NumberFormatException e) {
                 log.warning("Bad maxframes argument: " + e.toString());
-                System.exit(1);
+                return 1;
             }
         } else {
             writer.setMaxFrames(0);
@@ -1042,11 +1131,14 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
             ais.getSupport().addPropertyChangeListener(writer); // get informed about rewind events
         } catch (IOException ex) {
             log.warning("Couldn't open file " + inpfile + " from working directory " + System.getProperty("user.dir") + " : " + ex.toString());
-            System.exit(1);
+            writer.doFinishRecording();
+            return 1;
         }
 
         EventExtractor2D extractor = chip.getEventExtractor();
-        System.out.print(String.format("Frames written: \n"));
+        if (showProgress) {
+            System.out.print(String.format("Frames written: \n"));
+        }
 
         FilterChain filterChain = chip.getFilterChain();
         filterChain.add(writer);
@@ -1084,7 +1176,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                     writer.filterPacket(cooked); // make sure writer is run this way at least
                 }
                 int numFramesWritten = writer.getFramesWritten();
-                if (numFramesWritten >= (lastNumFramesWritten + 20)) {
+                if (showProgress && numFramesWritten >= (lastNumFramesWritten + 20)) {
                     lastNumFramesWritten = numFramesWritten;
                     System.out.print(String.format("%d frames            \r", numFramesWritten));
                 }
@@ -1105,7 +1197,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                     log.setLevel(Level.INFO);
                     log.info("Closed output file " + outfile.getAbsolutePath() + " after wriring " + writer.getFramesWritten() + " frames");
                 }
-                System.exit(0);
+                return 0;
             } catch (IOException e) {
                 e.printStackTrace();
                 try {
@@ -1118,10 +1210,10 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                         log.setLevel(Level.INFO);
                         log.info("Closed output file " + outfile.getAbsolutePath() + " after wriring " + writer.getFramesWritten() + " frames");
                     }
-                    System.exit(1);
+                    return 1;
                 } catch (Exception e3) {
                     log.warning("Exception closing file: " + e3.getMessage());
-                    System.exit(1);
+                    return 1;
                 }
             }
         } // end of loop to read and write file
@@ -1152,7 +1244,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 writer.getDvsFrame().isNormalizeDVSForZsNullhop(),
                 writer.isShowOutput(), writer.getMaxFrames()));
         log.info("Successfully wrote file " + outfile.getAbsolutePath() + " with " + writer.getFramesWritten() + " frames");
-        System.exit(0);
+        return 0;
     }
 
 }
@@ -0,0 +1,144 @@
+package net.sf.jaer.util.histogram;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of non-negative long values, e.g. latencies in ns,
+ * with bins that are linear within each power of two, in the style of HDR
+ * histograms. Each power of two is split into {@link #SUB_BINS} bins, so the
+ * relative resolution is better than 1/SUB_BINS over the whole range of long.
+ * <p>
+ * Adding a value does not allocate and costs a few instructions, so the
+ * histogram can be updated for every packet. It is not thread safe.
+ */
+public class LogLinearHistogram {
+
+    /** log2 of the number of sub-bins per power of two */
+    private static final int SUB_BITS = 4;
+    /** Number of linear sub-bins per power of two */
+    public static final int SUB_BINS = 1 << SUB_BITS;
+    private static final int NUM_BINS = (64 - SUB_BITS + 1) * SUB_BINS;
+
+    private final long[] counts = new long[NUM_BINS];
+    private long n = 0, sum = 0;
+    private long min = Long.MAX_VALUE, max = 0;
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value; negative values are counted as 0
+     */
+    public void add(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[binOf(value)]++;
+        n++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+        if (value < min) {
+            min = value;
+        }
+    }
+
+    private static int binOf(final long v) {
+        if (v < SUB_BINS) {
+            return (int) v;
+        }
+        final int exp = 63 - Long.numberOfLeadingZeros(v); // >= SUB_BITS
+        final int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BINS - 1);
+        return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    /** @return the smallest value that falls in bin */
+    private static long lowerBound(final int bin) {
+        if (bin < SUB_BINS) {
+            return bin;
+        }
+        final int exp = (bin >>> SUB_BITS) + SUB_BITS - 1;
+        final int sub = bin & (SUB_BINS - 1);
+        return ((long) (SUB_BINS + sub)) << (exp - SUB_BITS);
+    }
+
+    /** @return the largest value that falls in bin */
+    private static long upperBound(final int bin) {
+        if (bin < SUB_BINS) {
+            return bin;
+        }
+        final int exp = (bin >>> SUB_BITS) + SUB_BITS - 1;
+        return lowerBound(bin) + (1L << (exp - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Returns a value at a percentile, accurate to the bin resolution. The
+     * upper bound of the bin is returned, clipped to the maximum value added.
+     *
+     * @param percentile the percentile, 0-100, e.g. 50 for the median
+     * @return the value, or 0 if the histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil((percentile / 100) * n));
+        long cum = 0;
+        for (int i = 0; i < NUM_BINS; i++) {
+            cum += counts[i];
+            if (cum >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Adds all the counts of another histogram to this one.
+     *
+     * @param other the other histogram
+     */
+    public void add(LogLinearHistogram other) {
+        for (int i = 0; i < NUM_BINS; i++) {
+            counts[i] += other.counts[i];
+        }
+        n += other.n;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+        min = Math.min(min, other.min);
+    }
+
+    /** Clears all the counts. */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        n = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /** @return the number of values added */
+    public long getN() {
+        return n;
+    }
+
+    /** @return the mean value, or 0 if empty */
+    public double getMean() {
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    /** @return the maximum value added, or 0 if empty */
+    public long getMax() {
+        return max;
+    }
+
+    /** @return the minimum value added, or 0 if empty */
+    public long getMin() {
+        return n == 0 ? 0 : min;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("N=%d mean=%.0f p50=%d p99=%d max=%d", n, getMean(), getValueAtPercentile(50), getValueAtPercentile(99), max);
+    }
+}